@@ -47,6 +47,10 @@ public class RMQConfigure {
 
     private boolean enableDashBoardCollect;
 
+    private int dashboardCollectThreadNum = 8;
+
+    private int dashboardDataRetentionDays = 30;
+
     private String msgTrackTopicName;
 
     private boolean loginRequired = false;
@@ -118,6 +122,22 @@ public class RMQConfigure {
         this.enableDashBoardCollect = Boolean.valueOf(enableDashBoardCollect);
     }
 
+    public int getDashboardCollectThreadNum() {
+        return dashboardCollectThreadNum;
+    }
+
+    public void setDashboardCollectThreadNum(int dashboardCollectThreadNum) {
+        this.dashboardCollectThreadNum = dashboardCollectThreadNum;
+    }
+
+    public int getDashboardDataRetentionDays() {
+        return dashboardDataRetentionDays;
+    }
+
+    public void setDashboardDataRetentionDays(int dashboardDataRetentionDays) {
+        this.dashboardDataRetentionDays = dashboardDataRetentionDays;
+    }
+
     public String getMsgTrackTopicName() {
         return msgTrackTopicName;
     }
@@ -49,6 +49,12 @@ public class DashboardController {
         return dashboardService.queryTopicData(date,topicName);
     }
 
+    @RequestMapping(value = "/topic.range.query", method = RequestMethod.GET)
+    @ResponseBody
+    public Object topicRange(@RequestParam String topicName, @RequestParam long begin, @RequestParam long end) {
+        return dashboardService.queryTopicData(topicName, begin, end);
+    }
+
     @RequestMapping(value = "/topicCurrent", method = RequestMethod.GET)
     @ResponseBody
     public Object topicCurrent() {
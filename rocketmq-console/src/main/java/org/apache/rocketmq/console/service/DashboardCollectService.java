@@ -16,17 +16,21 @@
  */
 package org.apache.rocketmq.console.service;
 
-import com.google.common.cache.LoadingCache;
 import java.io.File;
 import java.util.List;
 import java.util.Map;
+import org.apache.rocketmq.console.service.timeseries.TimeSeriesStore;
 
 public interface DashboardCollectService {
-    // todo just move the task to org.apache.rocketmq.console.task.DashboardCollectTask
-    // the code can be reconstruct
-    LoadingCache<String, List<String>> getBrokerMap();
+    /**
+     * Series per broker holding the average TPS.
+     */
+    TimeSeriesStore getBrokerStore();
 
-    LoadingCache<String, List<String>> getTopicMap();
+    /**
+     * Series per topic holding in TPS, in message count today, out TPS and out message count today.
+     */
+    TimeSeriesStore getTopicStore();
 
     Map<String, List<String>> jsonDataFile2map(File file);
 
@@ -37,6 +37,13 @@ public interface DashboardService {
      */
     List<String> queryTopicData(String date, String topicName);
 
+    /**
+     * @param topicName
+     * @param begin timestamp in milliseconds, inclusive
+     * @param end timestamp in milliseconds, inclusive
+     */
+    List<String> queryTopicData(String topicName, long begin, long end);
+
     List<String> queryTopicCurrentData();
 
 }
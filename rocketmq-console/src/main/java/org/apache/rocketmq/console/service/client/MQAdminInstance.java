@@ -29,9 +29,16 @@ import org.apache.rocketmq.tools.admin.DefaultMQAdminExtImpl;
 import org.apache.rocketmq.tools.admin.MQAdminExt;
 import org.joor.Reflect;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 public class MQAdminInstance {
     private static final ThreadLocal<DefaultMQAdminExt> MQ_ADMIN_EXT_THREAD_LOCAL = new ThreadLocal<DefaultMQAdminExt>();
     private static final ThreadLocal<Integer> INIT_COUNTER = new ThreadLocal<Integer>();
+    /**
+     * Threads starting an admin instance within the same millisecond would otherwise share its client instance name
+     * and fail to register.
+     */
+    private static final AtomicLong INSTANCE_SEQ = new AtomicLong();
 
     public static MQAdminExt threadLocalMQAdminExt() {
         DefaultMQAdminExt defaultMQAdminExt = MQ_ADMIN_EXT_THREAD_LOCAL.get();
@@ -66,7 +73,7 @@ public class MQAdminInstance {
             else {
                 defaultMQAdminExt = new DefaultMQAdminExt(rpcHook);
             }
-            defaultMQAdminExt.setInstanceName(Long.toString(System.currentTimeMillis()));
+            defaultMQAdminExt.setInstanceName(System.currentTimeMillis() + "_" + INSTANCE_SEQ.incrementAndGet());
             defaultMQAdminExt.start();
             MQ_ADMIN_EXT_THREAD_LOCAL.set(defaultMQAdminExt);
             INIT_COUNTER.set(1);
@@ -19,13 +19,8 @@ package org.apache.rocketmq.console.service.impl;
 import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
 import com.google.common.base.Charsets;
+import com.google.common.base.Function;
 import com.google.common.base.Throwables;
-import com.google.common.base.Ticker;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
-import com.google.common.cache.RemovalListener;
-import com.google.common.cache.RemovalNotification;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.io.Files;
@@ -34,9 +29,12 @@ import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import org.apache.rocketmq.console.config.RMQConfigure;
 import org.apache.rocketmq.console.service.DashboardCollectService;
+import org.apache.rocketmq.console.service.timeseries.TimeSeriesStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -49,55 +47,43 @@ public class DashboardCollectServiceImpl implements DashboardCollectService {
 
     private final static Logger log = LoggerFactory.getLogger(DashboardCollectServiceImpl.class);
 
-    private LoadingCache<String, List<String>> brokerMap = CacheBuilder.newBuilder()
-        .maximumSize(1000)
-        .concurrencyLevel(10)
-        .recordStats()
-        .ticker(Ticker.systemTicker())
-        .removalListener(new RemovalListener<Object, Object>() {
-            @Override
-            public void onRemoval(RemovalNotification<Object, Object> notification) {
-                log.debug(notification.getKey() + " was removed, cause is " + notification.getCause());
-            }
-        })
-        .build(
-            new CacheLoader<String, List<String>>() {
+    private static final int RAW_DATA_RETENTION_DAYS = 7;
+
+    private static final long DOWNSAMPLE_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private TimeSeriesStore brokerStore;
+
+    private TimeSeriesStore topicStore;
+
+    @PostConstruct
+    public void init() {
+        final String dataLocationPath = rmqConfigure.getConsoleCollectData();
+        brokerStore = new TimeSeriesStore("broker", dataLocationPath, new int[] {5},
+            RAW_DATA_RETENTION_DAYS, rmqConfigure.getDashboardDataRetentionDays(), DOWNSAMPLE_INTERVAL_MILLIS,
+            new Function<String, Map<String, List<String>>>() {
                 @Override
-                public List<String> load(String key) {
-                    List<String> list = Lists.newArrayList();
-                    return list;
+                public Map<String, List<String>> apply(String date) {
+                    return readLegacyDataFile(new File(dataLocationPath + date + ".json"));
                 }
-            }
-        );
-
-    private LoadingCache<String, List<String>> topicMap = CacheBuilder.newBuilder()
-        .maximumSize(1000)
-        .concurrencyLevel(10)
-        .recordStats()
-        .ticker(Ticker.systemTicker())
-        .removalListener(new RemovalListener<Object, Object>() {
-            @Override
-            public void onRemoval(RemovalNotification<Object, Object> notification) {
-                log.debug(notification.getKey() + " was removed, cause is " + notification.getCause());
-            }
-        })
-        .build(
-            new CacheLoader<String, List<String>>() {
+            });
+        topicStore = new TimeSeriesStore("topic", dataLocationPath, new int[] {5, 0, 5, 0},
+            RAW_DATA_RETENTION_DAYS, rmqConfigure.getDashboardDataRetentionDays(), DOWNSAMPLE_INTERVAL_MILLIS,
+            new Function<String, Map<String, List<String>>>() {
                 @Override
-                public List<String> load(String key) {
-                    List<String> list = Lists.newArrayList();
-                    return list;
+                public Map<String, List<String>> apply(String date) {
+                    return readLegacyDataFile(new File(dataLocationPath + date + "_topic" + ".json"));
                 }
-            }
-        );
+            });
+    }
 
     @Override
-    public LoadingCache<String, List<String>> getBrokerMap() {
-        return brokerMap;
+    public TimeSeriesStore getBrokerStore() {
+        return brokerStore;
     }
+
     @Override
-    public LoadingCache<String, List<String>> getTopicMap() {
-        return topicMap;
+    public TimeSeriesStore getTopicStore() {
+        return topicStore;
     }
 
     @Override
@@ -133,25 +119,19 @@ public class DashboardCollectServiceImpl implements DashboardCollectService {
 
     @Override
     public Map<String, List<String>> getBrokerCache(String date) {
-        String dataLocationPath = rmqConfigure.getConsoleCollectData();
-        File file = new File(dataLocationPath + date + ".json");
-        if (!file.exists()) {
-            log.info(String.format("No dashboard data for broker cache data: %s", date));
-            return Maps.newHashMap();
-        }
-        return jsonDataFile2map(file);
+        return brokerStore.queryText(date);
     }
 
     @Override
     public Map<String, List<String>> getTopicCache(String date) {
-        String dataLocationPath = rmqConfigure.getConsoleCollectData();
-        File file = new File(dataLocationPath + date + "_topic" + ".json");
+        return topicStore.queryText(date);
+    }
+
+    private Map<String, List<String>> readLegacyDataFile(File file) {
         if (!file.exists()) {
-            log.info(String.format("No dashboard data for data: %s", date));
-            //throw Throwables.propagate(new ServiceException(1, "This date have't data!"));
+            log.info(String.format("No dashboard data file: %s", file));
             return Maps.newHashMap();
         }
         return jsonDataFile2map(file);
     }
-
 }
@@ -26,6 +26,8 @@ import java.util.Map;
 import javax.annotation.Resource;
 import org.apache.rocketmq.console.service.DashboardCollectService;
 import org.apache.rocketmq.console.service.DashboardService;
+import org.apache.rocketmq.console.service.timeseries.TimeSeries;
+import org.apache.rocketmq.console.service.timeseries.TimeSeriesStore;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -52,21 +54,29 @@ public class DashboardServiceImpl implements DashboardService {
      */
     @Override
     public List<String> queryTopicData(String date, String topicName) {
-        if (null != dashboardCollectService.getTopicCache(date)) {
-            return dashboardCollectService.getTopicCache(date).get(topicName);
-        }
-        return null;
+        TimeSeriesStore topicStore = dashboardCollectService.getTopicStore();
+        TimeSeries timeSeries = topicStore.query(date).get(topicName);
+        return timeSeries == null ? null : topicStore.format(timeSeries);
+    }
+
+    @Override
+    public List<String> queryTopicData(String topicName, long begin, long end) {
+        TimeSeriesStore topicStore = dashboardCollectService.getTopicStore();
+        return topicStore.format(topicStore.query(topicName, begin, end));
     }
 
     @Override
     public List<String> queryTopicCurrentData() {
         Date date = new Date();
         DateFormat format = new SimpleDateFormat("yyyy-MM-dd");
-        Map<String, List<String>> topicCache = dashboardCollectService.getTopicCache(format.format(date));
+        TimeSeriesStore topicStore = dashboardCollectService.getTopicStore();
         List<String> result = Lists.newArrayList();
-        for (Map.Entry<String, List<String>> entry : topicCache.entrySet()) {
-            List<String> value = entry.getValue();
-            result.add(entry.getKey() + "," + value.get(value.size() - 1).split(",")[4]);
+        for (Map.Entry<String, TimeSeries> entry : topicStore.query(format.format(date)).entrySet()) {
+            double[] last = entry.getValue().lastRow();
+            if (last == null) {
+                continue;
+            }
+            result.add(entry.getKey() + "," + topicStore.format(last[3], 3));
         }
         return result;
     }
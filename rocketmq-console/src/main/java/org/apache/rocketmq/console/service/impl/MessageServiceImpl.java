@@ -19,11 +19,9 @@ package org.apache.rocketmq.console.service.impl;
 
 
 import com.google.common.base.Function;
-import com.google.common.base.Predicate;
 import com.google.common.base.Throwables;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.rocketmq.acl.common.AclClientRPCHook;
@@ -33,6 +31,7 @@ import org.apache.rocketmq.client.consumer.PullResult;
 import org.apache.rocketmq.client.consumer.PullStatus;
 import org.apache.rocketmq.common.MixAll;
 import org.apache.rocketmq.common.Pair;
+import org.apache.rocketmq.common.ThreadFactoryImpl;
 import org.apache.rocketmq.common.message.MessageClientIDSetter;
 import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.common.message.MessageQueue;
@@ -58,6 +57,7 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import java.util.Collections;
 import java.util.List;
@@ -65,7 +65,13 @@ import java.util.Comparator;
 import java.util.ArrayList;
 import java.util.Set;
 import java.util.Collection;
-import java.util.Date;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -86,9 +92,24 @@ public class MessageServiceImpl implements MessageService {
      * @see org.apache.rocketmq.store.index.IndexService maxNum = Math.min(maxNum, this.defaultMessageStore.getMessageStoreConfig().getMaxMsgsNumBatch());
      */
     private final static int QUERY_MESSAGE_MAX_NUM = 64;
+
+    private final static int QUERY_MESSAGE_BY_TOPIC_MAX_NUM = 2000;
+
+    private final static int PULL_BATCH_SIZE = 32;
+
+    private final static int QUERY_THREAD_NUM = 16;
+
+    private final ExecutorService queryExecutor = new ThreadPoolExecutor(QUERY_THREAD_NUM, QUERY_THREAD_NUM,
+        60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactoryImpl("MessageQueryThread_"));
+
     @Resource
     private MQAdminExt mqAdminExt;
 
+    @PreDestroy
+    public void destroy() {
+        queryExecutor.shutdownNow();
+    }
+
     @Override
     public Pair<MessageView, List<MessageTrack>> viewMessage(String subject, final String msgId) {
         try {
@@ -104,82 +125,56 @@ public class MessageServiceImpl implements MessageService {
     @Override
     public List<MessageView> queryMessageByTopicAndKey(String topic, String key) {
         try {
-            return Lists.transform(mqAdminExt.queryMessage(topic, key, QUERY_MESSAGE_MAX_NUM, 0, System.currentTimeMillis()).getMessageList(), new Function<MessageExt, MessageView>() {
+            return Lists.newArrayList(Lists.transform(mqAdminExt.queryMessage(topic, key, QUERY_MESSAGE_MAX_NUM, 0, System.currentTimeMillis()).getMessageList(), new Function<MessageExt, MessageView>() {
                 @Override
                 public MessageView apply(MessageExt messageExt) {
                     return MessageView.fromMessageExt(messageExt);
                 }
-            });
+            }));
         } catch (Exception err) {
             throw Throwables.propagate(err);
         }
     }
 
     @Override
-    public List<MessageView> queryMessageByTopic(String topic, final long begin, final long end) {
+    public List<MessageView> queryMessageByTopic(final String topic, final long begin, final long end) {
         boolean isEnableAcl = !StringUtils.isEmpty(rMQConfigure.getAccessKey()) && !StringUtils.isEmpty(rMQConfigure.getSecretKey());
         RPCHook rpcHook = null;
         if (isEnableAcl) {
             rpcHook = new AclClientRPCHook(new SessionCredentials(rMQConfigure.getAccessKey(), rMQConfigure.getSecretKey()));
         }
-        DefaultMQPullConsumer consumer = buildDefaultMQPullConsumer(rpcHook);
-        List<MessageView> messageViewList = Lists.newArrayList();
+        final DefaultMQPullConsumer consumer = buildDefaultMQPullConsumer(rpcHook);
         try {
-            String subExpression = "*";
             consumer.start();
             Set<MessageQueue> mqs = consumer.fetchSubscribeMessageQueues(topic);
-            for (MessageQueue mq : mqs) {
-                long minOffset = consumer.searchOffset(mq, begin);
-                long maxOffset = consumer.searchOffset(mq, end);
-                READQ:
-                for (long offset = minOffset; offset <= maxOffset; ) {
-                    try {
-                        if (messageViewList.size() > 2000) {
-                            break;
-                        }
-                        PullResult pullResult = consumer.pull(mq, subExpression, offset, 32);
-                        offset = pullResult.getNextBeginOffset();
-                        switch (pullResult.getPullStatus()) {
-                            case FOUND:
-
-                                List<MessageView> messageViewListByQuery = Lists.transform(pullResult.getMsgFoundList(), new Function<MessageExt, MessageView>() {
-                                    @Override
-                                    public MessageView apply(MessageExt messageExt) {
-                                        messageExt.setBody(null);
-                                        return MessageView.fromMessageExt(messageExt);
-                                    }
-                                });
-                                List<MessageView> filteredList = Lists.newArrayList(Iterables.filter(messageViewListByQuery, new Predicate<MessageView>() {
-                                    @Override
-                                    public boolean apply(MessageView messageView) {
-                                        if (messageView.getStoreTimestamp() < begin || messageView.getStoreTimestamp() > end) {
-                                            logger.info("begin={} end={} time not in range {} {}", begin, end, messageView.getStoreTimestamp(), new Date(messageView.getStoreTimestamp()).toString());
-                                        }
-                                        return messageView.getStoreTimestamp() >= begin && messageView.getStoreTimestamp() <= end;
-                                    }
-                                }));
-                                messageViewList.addAll(filteredList);
-                                break;
-                            case NO_MATCHED_MSG:
-                            case NO_NEW_MSG:
-                            case OFFSET_ILLEGAL:
-                                break READQ;
-                        }
-                    } catch (Exception e) {
-                        break;
+            List<Callable<List<MessageExt>>> tasks = new ArrayList<>(mqs.size());
+            for (final MessageQueue mq : mqs) {
+                tasks.add(new Callable<List<MessageExt>>() {
+                    @Override
+                    public List<MessageExt> call() throws Exception {
+                        // only the newest messages of every queue can make it into the result
+                        QueueOffsetInfo queueOffset = searchQueueOffset(consumer, 0, mq, begin, end);
+                        long start = Math.max(queueOffset.getStart(), queueOffset.getEnd() - QUERY_MESSAGE_BY_TOPIC_MAX_NUM);
+                        return pullMessages(consumer, mq, start, queueOffset.getEnd(), begin, end, false);
                     }
+                });
+            }
+            List<List<MessageExt>> messagesOfQueues = new ArrayList<>(mqs.size());
+            for (Future<List<MessageExt>> future : queryExecutor.invokeAll(tasks)) {
+                try {
+                    messagesOfQueues.add(future.get());
+                } catch (ExecutionException e) {
+                    logger.warn("op=queryMessageByTopic topic={} pull queue failed", topic, e.getCause());
                 }
             }
-            Collections.sort(messageViewList, new Comparator<MessageView>() {
-                @Override
-                public int compare(MessageView o1, MessageView o2) {
-                    if (o1.getStoreTimestamp() - o2.getStoreTimestamp() == 0) {
-                        return 0;
+            // built once here, a transformed view would convert the messages again on every access
+            return Lists.newArrayList(Lists.transform(mergeByStoreTimestamp(messagesOfQueues, QUERY_MESSAGE_BY_TOPIC_MAX_NUM),
+                new Function<MessageExt, MessageView>() {
+                    @Override
+                    public MessageView apply(MessageExt messageExt) {
+                        return MessageView.fromMessageExt(messageExt);
                     }
-                    return (o1.getStoreTimestamp() > o2.getStoreTimestamp()) ? -1 : 1;
-                }
-            });
-            return messageViewList;
+                }));
         } catch (Exception e) {
             throw Throwables.propagate(e);
         } finally {
@@ -249,138 +244,43 @@ public class MessageServiceImpl implements MessageService {
 
     }
 
-    private MessagePageTask queryFirstMessagePage(MessageQueryByPage query) {
+    private MessagePageTask queryFirstMessagePage(final MessageQueryByPage query) {
         boolean isEnableAcl = !StringUtils.isEmpty(rMQConfigure.getAccessKey()) && !StringUtils.isEmpty(rMQConfigure.getSecretKey());
         RPCHook rpcHook = null;
         if (isEnableAcl) {
             rpcHook = new AclClientRPCHook(new SessionCredentials(rMQConfigure.getAccessKey(), rMQConfigure.getSecretKey()));
         }
-        DefaultMQPullConsumer consumer = buildDefaultMQPullConsumer(rpcHook);
+        final DefaultMQPullConsumer consumer = buildDefaultMQPullConsumer(rpcHook);
 
         long total = 0;
         List<QueueOffsetInfo> queueOffsetInfos = new ArrayList<>();
 
-        List<MessageView> messageViews = new ArrayList<>();
-
         try {
             consumer.start();
             Collection<MessageQueue> messageQueues = consumer.fetchSubscribeMessageQueues(query.getTopic());
+            List<Callable<QueueOffsetInfo>> tasks = new ArrayList<>(messageQueues.size());
             int idx = 0;
-            for (MessageQueue messageQueue : messageQueues) {
-                Long minOffset = consumer.searchOffset(messageQueue, query.getBegin());
-                Long maxOffset = consumer.searchOffset(messageQueue, query.getEnd()) + 1;
-                queueOffsetInfos.add(new QueueOffsetInfo(idx++, minOffset, maxOffset, minOffset, minOffset, messageQueue));
-            }
-
-            // check first offset has message
-            // filter the begin time
-            for (QueueOffsetInfo queueOffset : queueOffsetInfos) {
-                Long start = queueOffset.getStart();
-                boolean hasData = false;
-                boolean hasIllegalOffset = true;
-                while (hasIllegalOffset) {
-                    PullResult pullResult = consumer.pull(queueOffset.getMessageQueues(), "*", start, 32);
-                    if (pullResult.getPullStatus() == PullStatus.FOUND) {
-                        hasData = true;
-                        List<MessageExt> msgFoundList = pullResult.getMsgFoundList();
-                        for (MessageExt messageExt : msgFoundList) {
-                            if (messageExt.getStoreTimestamp() < query.getBegin()) {
-                                start++;
-                            } else {
-                                hasIllegalOffset = false;
-                                break;
-                            }
-                        }
-                    } else {
-                        hasIllegalOffset = false;
+            for (final MessageQueue messageQueue : messageQueues) {
+                final int queueIdx = idx++;
+                tasks.add(new Callable<QueueOffsetInfo>() {
+                    @Override
+                    public QueueOffsetInfo call() throws Exception {
+                        return searchQueueOffset(consumer, queueIdx, messageQueue, query.getBegin(), query.getEnd());
                     }
-                }
-                if (!hasData) {
-                    queueOffset.setEnd(queueOffset.getStart());
-                }
-                queueOffset.setStart(start);
-                queueOffset.setStartOffset(start);
-                queueOffset.setEndOffset(start);
+                });
             }
-
-            // filter the end time
-            for (QueueOffsetInfo queueOffset : queueOffsetInfos) {
-                if (queueOffset.getStart().equals(queueOffset.getEnd())) {
-                    continue;
-                }
-                long end = queueOffset.getEnd();
-                long pullOffset = end;
-                int pullSize = 32;
-                boolean hasIllegalOffset = true;
-                while (hasIllegalOffset) {
-
-                    if (pullOffset - pullSize > queueOffset.getStart()) {
-                        pullOffset = pullOffset - pullSize;
-                    } else {
-                        pullOffset = queueOffset.getStartOffset();
-                        pullSize = (int) (end - pullOffset);
-                    }
-                    PullResult pullResult = consumer.pull(queueOffset.getMessageQueues(), "*", pullOffset, pullSize);
-                    if (pullResult.getPullStatus() == PullStatus.FOUND) {
-                        List<MessageExt> msgFoundList = pullResult.getMsgFoundList();
-                        for (int i = msgFoundList.size() - 1; i >= 0; i--) {
-                            MessageExt messageExt = msgFoundList.get(i);
-                            if (messageExt.getStoreTimestamp() < query.getBegin()) {
-                                end--;
-                            } else {
-                                hasIllegalOffset = false;
-                                break;
-                            }
-                        }
-                    } else {
-                        hasIllegalOffset = false;
-                    }
-                    if (pullOffset == queueOffset.getStartOffset()) {
-                        break;
-                    }
-                }
-                queueOffset.setEnd(end);
+            for (Future<QueueOffsetInfo> future : queryExecutor.invokeAll(tasks)) {
+                QueueOffsetInfo queueOffset = future.get();
+                queueOffsetInfos.add(queueOffset);
                 total += queueOffset.getEnd() - queueOffset.getStart();
             }
 
-            long pageSize = total > query.getPageSize() ? query.getPageSize() : total;
-
-
             // move startOffset
             int next = moveStartOffset(queueOffsetInfos, query);
             moveEndOffset(queueOffsetInfos, query, next);
 
             // find the first page of message
-            for (QueueOffsetInfo queueOffsetInfo : queueOffsetInfos) {
-                Long start = queueOffsetInfo.getStartOffset();
-                Long end = queueOffsetInfo.getEndOffset();
-                long size = Math.min(end - start, pageSize);
-                if (size == 0) {
-                    continue;
-                }
-
-                while (size > 0) {
-                    PullResult pullResult = consumer.pull(queueOffsetInfo.getMessageQueues(), "*", start, 32);
-                    if (pullResult.getPullStatus() == PullStatus.FOUND) {
-                        List<MessageExt> poll = pullResult.getMsgFoundList();
-                        if (poll.size() == 0) {
-                            break;
-                        }
-                        List<MessageView> collect = poll.stream()
-                                .map(MessageView::fromMessageExt).collect(Collectors.toList());
-
-                        for (MessageView view : collect) {
-                            if (size > 0) {
-                                messageViews.add(view);
-                                size--;
-                            }
-                        }
-                    } else {
-                        break;
-                    }
-
-                }
-            }
+            List<MessageView> messageViews = pullPage(consumer, queueOffsetInfos, query);
             PageImpl<MessageView> page = new PageImpl<>(messageViews, query.page(), total);
             return new MessagePageTask(page, queueOffsetInfos);
         } catch (Exception e) {
@@ -397,7 +297,6 @@ public class MessageServiceImpl implements MessageService {
             rpcHook = new AclClientRPCHook(new SessionCredentials(rMQConfigure.getAccessKey(), rMQConfigure.getSecretKey()));
         }
         DefaultMQPullConsumer consumer = buildDefaultMQPullConsumer(rpcHook);
-        List<MessageView> messageViews = new ArrayList<>();
 
         long offset = query.getPageNum() * query.getPageSize();
 
@@ -414,47 +313,141 @@ public class MessageServiceImpl implements MessageService {
             if (total <= offset) {
                 return Page.empty();
             }
-            long pageSize = total - offset > query.getPageSize() ? query.getPageSize() : total - offset;
 
             int next = moveStartOffset(queueOffsetInfos, query);
             moveEndOffset(queueOffsetInfos, query, next);
 
-            for (QueueOffsetInfo queueOffsetInfo : queueOffsetInfos) {
-                Long start = queueOffsetInfo.getStartOffset();
-                Long end = queueOffsetInfo.getEndOffset();
-                long size = Math.min(end - start, pageSize);
-                if (size == 0) {
-                    continue;
+            return new PageImpl<>(pullPage(consumer, queueOffsetInfos, query), query.page(), total);
+        } catch (Exception e) {
+            throw Throwables.propagate(e);
+        } finally {
+            consumer.shutdown();
+        }
+    }
+
+    /**
+     * Pulls the [startOffset, endOffset) window of every queue concurrently and merges them newest first. A queue
+     * whose pull fails is left out of the page.
+     */
+    private List<MessageView> pullPage(final DefaultMQPullConsumer consumer, List<QueueOffsetInfo> queueOffsetInfos,
+        final MessageQueryByPage query) throws Exception {
+        List<Callable<List<MessageExt>>> tasks = new ArrayList<>(queueOffsetInfos.size());
+        for (final QueueOffsetInfo queueOffsetInfo : queueOffsetInfos) {
+            if (queueOffsetInfo.getEndOffset() <= queueOffsetInfo.getStartOffset()) {
+                continue;
+            }
+            tasks.add(new Callable<List<MessageExt>>() {
+                @Override
+                public List<MessageExt> call() throws Exception {
+                    return pullMessages(consumer, queueOffsetInfo.getMessageQueues(), queueOffsetInfo.getStartOffset(),
+                        queueOffsetInfo.getEndOffset(), query.getBegin(), query.getEnd(), true);
                 }
+            });
+        }
+        List<List<MessageExt>> messagesOfQueues = new ArrayList<>(tasks.size());
+        for (Future<List<MessageExt>> future : queryExecutor.invokeAll(tasks)) {
+            try {
+                messagesOfQueues.add(future.get());
+            } catch (ExecutionException e) {
+                logger.warn("op=queryMessageByPage topic={} pull queue failed", query.getTopic(), e.getCause());
+            }
+        }
+        return mergeByStoreTimestamp(messagesOfQueues, query.getPageSize()).stream()
+            .map(MessageView::fromMessageExt).collect(Collectors.toList());
+    }
 
-                while (size > 0) {
-                    PullResult pullResult = consumer.pull(queueOffsetInfo.getMessageQueues(), "*", start, 32);
-                    if (pullResult.getPullStatus() == PullStatus.FOUND) {
-                        List<MessageExt> poll = pullResult.getMsgFoundList();
-                        if (poll.size() == 0) {
-                            break;
-                        }
-                        List<MessageView> collect = poll.stream()
-                                .map(MessageView::fromMessageExt).collect(Collectors.toList());
-
-                        for (MessageView view : collect) {
-                            if (size > 0) {
-                                messageViews.add(view);
-                                size--;
-                            }
-                        }
-                    } else {
-                        break;
-                    }
+    /**
+     * Narrows the offsets the broker found by time to the exact [begin, end] store time window with a binary
+     * search per boundary, instead of scanning the queue message by message.
+     */
+    private QueueOffsetInfo searchQueueOffset(DefaultMQPullConsumer consumer, int idx, MessageQueue mq, long begin,
+        long end) throws Exception {
+        long minOffset = Math.max(consumer.searchOffset(mq, begin), 0);
+        long maxOffset = Math.max(consumer.searchOffset(mq, end) + 1, minOffset);
+        long start = searchOffsetByStoreTimestamp(consumer, mq, minOffset, maxOffset, begin);
+        long stop = searchOffsetByStoreTimestamp(consumer, mq, start, maxOffset, end == Long.MAX_VALUE ? end : end + 1);
+        return new QueueOffsetInfo(idx, start, stop, start, start, mq);
+    }
+
+    /**
+     * @return the first offset in [low, high) whose message is stored at or after {@code timestamp}, or high if none
+     */
+    private long searchOffsetByStoreTimestamp(DefaultMQPullConsumer consumer, MessageQueue mq, long low, long high,
+        long timestamp) throws Exception {
+        while (low < high) {
+            long mid = low + (high - low) / 2;
+            PullResult pullResult = consumer.pull(mq, "*", mid, 1);
+            if (pullResult.getPullStatus() != PullStatus.FOUND || pullResult.getMsgFoundList().isEmpty()) {
+                high = mid;
+                continue;
+            }
+            MessageExt messageExt = pullResult.getMsgFoundList().get(0);
+            if (messageExt.getStoreTimestamp() < timestamp) {
+                low = Math.min(Math.max(mid, messageExt.getQueueOffset()) + 1, high);
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
 
+    /**
+     * @return at most {@code to - from} messages stored in [begin, end], pulled from offset {@code from} on
+     */
+    private List<MessageExt> pullMessages(DefaultMQPullConsumer consumer, MessageQueue mq, long from, long to,
+        long begin, long end, boolean withBody) throws Exception {
+        List<MessageExt> messages = new ArrayList<>();
+        long offset = from;
+        READQ:
+        while (offset < to && messages.size() < to - from) {
+            PullResult pullResult = consumer.pull(mq, "*", offset, (int) Math.min(PULL_BATCH_SIZE, to - offset));
+            if (pullResult.getPullStatus() != PullStatus.FOUND) {
+                break;
+            }
+            for (MessageExt messageExt : pullResult.getMsgFoundList()) {
+                if (messages.size() >= to - from) {
+                    break READQ;
                 }
+                if (messageExt.getStoreTimestamp() < begin || messageExt.getStoreTimestamp() > end) {
+                    continue;
+                }
+                if (!withBody) {
+                    messageExt.setBody(null);
+                }
+                messages.add(messageExt);
+            }
+            offset = pullResult.getNextBeginOffset();
+        }
+        return messages;
+    }
+
+    /**
+     * K-way merges messages of several queues, each sorted by store time, into at most {@code limit} messages
+     * newest first.
+     */
+    private static List<MessageExt> mergeByStoreTimestamp(final List<List<MessageExt>> messagesOfQueues, int limit) {
+        // heap entries are {queue index, position in that queue}, every queue is consumed from its tail
+        PriorityQueue<int[]> heap = new PriorityQueue<>(Math.max(messagesOfQueues.size(), 1), new Comparator<int[]>() {
+            @Override
+            public int compare(int[] o1, int[] o2) {
+                return Long.compare(messagesOfQueues.get(o2[0]).get(o2[1]).getStoreTimestamp(),
+                    messagesOfQueues.get(o1[0]).get(o1[1]).getStoreTimestamp());
+            }
+        });
+        for (int i = 0; i < messagesOfQueues.size(); i++) {
+            if (!messagesOfQueues.get(i).isEmpty()) {
+                heap.add(new int[] {i, messagesOfQueues.get(i).size() - 1});
+            }
+        }
+        List<MessageExt> result = new ArrayList<>(limit);
+        while (!heap.isEmpty() && result.size() < limit) {
+            int[] head = heap.poll();
+            result.add(messagesOfQueues.get(head[0]).get(head[1]));
+            if (head[1] > 0) {
+                heap.add(new int[] {head[0], head[1] - 1});
             }
-            return new PageImpl<>(messageViews, query.page(), total);
-        } catch (Exception e) {
-            throw Throwables.propagate(e);
-        } finally {
-            consumer.shutdown();
         }
+        return result;
     }
 
     private int moveStartOffset(List<QueueOffsetInfo> queueOffsets, MessageQueryByPage query) {
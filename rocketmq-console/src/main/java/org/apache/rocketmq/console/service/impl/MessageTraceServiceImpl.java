@@ -18,6 +18,8 @@
 package org.apache.rocketmq.console.service.impl;
 
 import com.google.common.base.Function;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
 
 import com.google.common.base.Throwables;
@@ -25,6 +27,7 @@ import com.google.common.base.Throwables;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import javax.annotation.Resource;
 
@@ -60,6 +63,14 @@ public class MessageTraceServiceImpl implements MessageTraceService {
     @Resource
     private RMQConfigure rmqConfigure;
 
+    /**
+     * Graphs whose producer and consumers have all been traced, by msgId
+     */
+    private final Cache<String, MessageTraceGraph> traceGraphCache = CacheBuilder.newBuilder()
+        .maximumSize(1000)
+        .expireAfterWrite(1, TimeUnit.MINUTES)
+        .build();
+
     @Override
     public List<MessageTraceView> queryMessageTraceKey(String key) {
         String queryTopic = rmqConfigure.getMsgTrackTopicName();
@@ -87,41 +98,79 @@ public class MessageTraceServiceImpl implements MessageTraceService {
 
     @Override
     public MessageTraceGraph queryMessageTraceGraph(String key) {
-        List<MessageTraceView> messageTraceViews = queryMessageTraceKey(key);
-        return buildMessageTraceGraph(messageTraceViews);
+        MessageTraceGraph messageTraceGraph = traceGraphCache.getIfPresent(key);
+        if (messageTraceGraph != null) {
+            return messageTraceGraph;
+        }
+        MessageTraceGraphBuilder graphBuilder = new MessageTraceGraphBuilder();
+        graphBuilder.addAll(queryMessageTraceKey(key));
+        messageTraceGraph = graphBuilder.build();
+        if (graphBuilder.isFinished()) {
+            traceGraphCache.put(key, messageTraceGraph);
+        }
+        return messageTraceGraph;
     }
 
-    private MessageTraceGraph buildMessageTraceGraph(List<MessageTraceView> messageTraceViews) {
-        MessageTraceGraph messageTraceGraph = new MessageTraceGraph();
-        messageTraceGraph.setMessageTraceViews(messageTraceViews);
-        if (CollectionUtils.isEmpty(messageTraceViews)) {
-            return messageTraceGraph;
+    /**
+     * Builds the graph incrementally, indexing the consume traces by requestId as they arrive
+     */
+    private class MessageTraceGraphBuilder {
+        private final List<MessageTraceView> messageTraceViews = new ArrayList<>();
+
+        private final List<TraceNode> transactionNodeList = new ArrayList<>();
+
+        private final Map<String, Pair<MessageTraceView, MessageTraceView>> requestIdTracePairMap = Maps.newHashMap();
+
+        private ProducerNode producerNode;
+
+        void addAll(List<MessageTraceView> views) {
+            for (MessageTraceView messageTraceView : views) {
+                messageTraceViews.add(messageTraceView);
+                switch (TraceType.valueOf(messageTraceView.getTraceType())) {
+                    case Pub:
+                        producerNode = buildMessageRoot(messageTraceView);
+                        break;
+                    case EndTransaction:
+                        transactionNodeList.add(buildTransactionNode(messageTraceView));
+                        break;
+                    case SubBefore:
+                    case SubAfter:
+                        putIntoMessageTraceViewGroupMap(messageTraceView, requestIdTracePairMap);
+                        break;
+                    default:
+                        break;
+                }
+            }
         }
-        ProducerNode producerNode = null;
-        List<TraceNode> transactionNodeList = new ArrayList<>();
-        Map<String, Pair<MessageTraceView, MessageTraceView>> requestIdTracePairMap = Maps.newHashMap();
-        for (MessageTraceView messageTraceView : messageTraceViews) {
-            switch (TraceType.valueOf(messageTraceView.getTraceType())) {
-                case Pub:
-                    producerNode = buildMessageRoot(messageTraceView);
-                    break;
-                case EndTransaction:
-                    transactionNodeList.add(buildTransactionNode(messageTraceView));
-                    break;
-                case SubBefore:
-                case SubAfter:
-                    putIntoMessageTraceViewGroupMap(messageTraceView, requestIdTracePairMap);
-                    break;
-                default:
-                    break;
+
+        /**
+         * @return true if the message has been produced and every consume has finished
+         */
+        boolean isFinished() {
+            if (producerNode == null) {
+                return false;
             }
+            for (Pair<MessageTraceView, MessageTraceView> traceNodePair : requestIdTracePairMap.values()) {
+                if (traceNodePair.getObject1() == null || traceNodePair.getObject2() == null) {
+                    return false;
+                }
+            }
+            return true;
         }
-        if (producerNode != null) {
-            producerNode.setTransactionNodeList(sortTraceNodeListByBeginTimestamp(transactionNodeList));
+
+        MessageTraceGraph build() {
+            MessageTraceGraph messageTraceGraph = new MessageTraceGraph();
+            messageTraceGraph.setMessageTraceViews(messageTraceViews);
+            if (CollectionUtils.isEmpty(messageTraceViews)) {
+                return messageTraceGraph;
+            }
+            if (producerNode != null) {
+                producerNode.setTransactionNodeList(sortTraceNodeListByBeginTimestamp(transactionNodeList));
+            }
+            messageTraceGraph.setProducerNode(producerNode);
+            messageTraceGraph.setSubscriptionNodeList(buildSubscriptionNodeList(requestIdTracePairMap));
+            return messageTraceGraph;
         }
-        messageTraceGraph.setProducerNode(producerNode);
-        messageTraceGraph.setSubscriptionNodeList(buildSubscriptionNodeList(requestIdTracePairMap));
-        return messageTraceGraph;
     }
 
     private TraceNode buildTransactionNode(MessageTraceView messageTraceView) {
@@ -134,6 +183,9 @@ public class MessageTraceServiceImpl implements MessageTraceService {
         for (Pair<MessageTraceView, MessageTraceView> traceNodePair : requestIdTracePairMap.values()) {
             MessageTraceView subBeforeTrace = traceNodePair.getObject1();
             MessageTraceView subAfterTrace = traceNodePair.getObject2();
+            if (subBeforeTrace == null || subAfterTrace == null) {
+                continue;
+            }
             List<TraceNode> traceNodeList = subscriptionTraceNodeMap.computeIfAbsent(subBeforeTrace.getGroupName(),
                 (o) -> Lists.newArrayList());
             TraceNode consumeNode = new TraceNode();
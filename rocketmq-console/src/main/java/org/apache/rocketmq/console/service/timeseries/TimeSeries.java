@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.rocketmq.console.service.timeseries;
+
+import java.util.Arrays;
+
+/**
+ * An append-only series of samples kept column by column in primitive arrays,
+ * one timestamp array plus one value array per column.
+ */
+public class TimeSeries {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final int columns;
+
+    private long[] timestamps;
+
+    private double[][] values;
+
+    private int size;
+
+    public TimeSeries(int columns) {
+        this(columns, INITIAL_CAPACITY);
+    }
+
+    public TimeSeries(int columns, int capacity) {
+        this.columns = columns;
+        this.timestamps = new long[Math.max(capacity, 1)];
+        this.values = new double[columns][timestamps.length];
+    }
+
+    /**
+     * @return false if the sample is older than the last one and was dropped
+     */
+    public synchronized boolean append(long timestamp, double... row) {
+        if (row.length != columns) {
+            throw new IllegalArgumentException(String.format("expect %d values but got %d", columns, row.length));
+        }
+        if (size > 0 && timestamp < timestamps[size - 1]) {
+            return false;
+        }
+        if (size == timestamps.length) {
+            int newCapacity = timestamps.length << 1;
+            timestamps = Arrays.copyOf(timestamps, newCapacity);
+            for (int i = 0; i < columns; i++) {
+                values[i] = Arrays.copyOf(values[i], newCapacity);
+            }
+        }
+        timestamps[size] = timestamp;
+        for (int i = 0; i < columns; i++) {
+            values[i][size] = row[i];
+        }
+        size++;
+        return true;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized long timestampAt(int index) {
+        checkIndex(index);
+        return timestamps[index];
+    }
+
+    public synchronized double valueAt(int index, int column) {
+        checkIndex(index);
+        return values[column][index];
+    }
+
+    public synchronized double[] row(int index) {
+        checkIndex(index);
+        double[] row = new double[columns];
+        for (int i = 0; i < columns; i++) {
+            row[i] = values[i][index];
+        }
+        return row;
+    }
+
+    /**
+     * @return the values of the latest sample, or null if the series is empty
+     */
+    public synchronized double[] lastRow() {
+        return size == 0 ? null : row(size - 1);
+    }
+
+    /**
+     * @return a copy holding the samples whose timestamp is in [begin, end]
+     */
+    public synchronized TimeSeries range(long begin, long end) {
+        int from = lowerBound(begin);
+        int to = lowerBound(end == Long.MAX_VALUE ? end : end + 1);
+        return copy(from, to);
+    }
+
+    /**
+     * Averages the samples of every {@code intervalMillis} bucket into one sample stamped with the
+     * bucket start.
+     */
+    public synchronized TimeSeries downsample(long intervalMillis) {
+        TimeSeries result = new TimeSeries(columns, size);
+        int i = 0;
+        while (i < size) {
+            long bucket = timestamps[i] - timestamps[i] % intervalMillis;
+            double[] sum = new double[columns];
+            int count = 0;
+            while (i < size && timestamps[i] - bucket < intervalMillis) {
+                for (int c = 0; c < columns; c++) {
+                    sum[c] += values[c][i];
+                }
+                count++;
+                i++;
+            }
+            for (int c = 0; c < columns; c++) {
+                sum[c] /= count;
+            }
+            result.append(bucket, sum);
+        }
+        return result;
+    }
+
+    private TimeSeries copy(int from, int to) {
+        int length = Math.max(to - from, 0);
+        TimeSeries result = new TimeSeries(columns, length);
+        if (length > 0) {
+            System.arraycopy(timestamps, from, result.timestamps, 0, length);
+            for (int c = 0; c < columns; c++) {
+                System.arraycopy(values[c], from, result.values[c], 0, length);
+            }
+        }
+        result.size = length;
+        return result;
+    }
+
+    private int lowerBound(long timestamp) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] < timestamp) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+    }
+}
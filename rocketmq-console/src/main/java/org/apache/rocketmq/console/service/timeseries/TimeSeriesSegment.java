@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.rocketmq.console.service.timeseries;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.CountingInputStream;
+import com.google.common.io.Files;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Binary, append-only file holding one day of samples for a set of series.
+ * <p>
+ * Layout: a header {@code magic, columns, downsampleInterval} followed by records, either a series
+ * definition {@code 1, name} or a sample {@code 2, seriesId, timestamp, value * columns}. Series ids
+ * are assigned in definition order, so a partially written or corrupt tail is simply truncated on load,
+ * and a file whose header is corrupt is moved aside.
+ */
+public class TimeSeriesSegment {
+    private final static Logger log = LoggerFactory.getLogger(TimeSeriesSegment.class);
+
+    private static final int MAGIC = 0x54534547;
+
+    private static final byte SERIES_RECORD = 1;
+
+    private static final byte SAMPLE_RECORD = 2;
+
+    private static final int HEADER_LENGTH = 16;
+
+    private final File file;
+
+    private final int columns;
+
+    private long downsampleInterval;
+
+    private final Map<String, TimeSeries> seriesMap = Maps.newLinkedHashMap();
+
+    private final Map<String, Integer> seriesIds = Maps.newHashMap();
+
+    private TimeSeriesSegment(File file, int columns) {
+        this.file = file;
+        this.columns = columns;
+    }
+
+    /**
+     * Loads the segment, or an empty one if the file does not exist yet.
+     */
+    public static TimeSeriesSegment load(File file, int columns) throws IOException {
+        TimeSeriesSegment segment = new TimeSeriesSegment(file, columns);
+        if (!file.exists()) {
+            return segment;
+        }
+        long validLength = 0;
+        List<TimeSeries> seriesById = Lists.newArrayList();
+        CountingInputStream counting = new CountingInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try (DataInputStream in = new DataInputStream(counting)) {
+            if (file.length() < HEADER_LENGTH) {
+                // a crash while the header was written, the segment starts over
+                validLength = 0;
+            }
+            else if (in.readInt() != MAGIC || in.readInt() != columns) {
+                File corrupt = new File(file.getPath() + ".corrupt");
+                log.warn("{} is not a time series segment with {} columns, moved to {}", file, columns, corrupt);
+                in.close();
+                Files.move(file, corrupt);
+                return segment;
+            }
+            else {
+                segment.downsampleInterval = in.readLong();
+                validLength = readRecords(in, counting, segment, seriesById);
+            }
+        }
+        if (validLength < file.length()) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(validLength);
+            }
+        }
+        return segment;
+    }
+
+    /**
+     * @return the downsample interval in the header of the segment, without reading its records
+     */
+    public static long readDownsampleInterval(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readInt();
+            in.readInt();
+            return in.readLong();
+        }
+    }
+
+    /**
+     * Rewrites a whole segment, used when downsampling a finished day.
+     */
+    public static void write(File file, int columns, long downsampleInterval,
+        Map<String, TimeSeries> seriesMap) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        Files.createParentDirs(tmp);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            writeHeader(out, columns, downsampleInterval);
+            int id = 0;
+            for (Map.Entry<String, TimeSeries> entry : seriesMap.entrySet()) {
+                writeSeries(out, entry.getKey());
+                writeSamples(out, id++, entry.getValue(), 0, entry.getValue().size());
+            }
+        }
+        Files.move(tmp, file);
+    }
+
+    /**
+     * Appends the samples of every series from its index in {@code fromIndexes} on. If the write fails,
+     * the file is truncated back to its previous length and the new series are not recorded.
+     *
+     * @return the size of every series once written, to be used as next {@code fromIndexes}
+     */
+    public Map<String, Integer> append(Map<String, TimeSeries> series,
+        Map<String, Integer> fromIndexes) throws IOException {
+        Map<String, Integer> written = Maps.newHashMap();
+        Map<String, Integer> newSeriesIds = Maps.newHashMap();
+        Files.createParentDirs(file);
+        long previousLength = file.exists() ? file.length() : 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)))) {
+            if (previousLength == 0) {
+                writeHeader(out, columns, downsampleInterval);
+            }
+            for (Map.Entry<String, TimeSeries> entry : series.entrySet()) {
+                String name = entry.getKey();
+                Integer id = seriesIds.get(name);
+                if (id == null) {
+                    writeSeries(out, name);
+                    id = seriesIds.size() + newSeriesIds.size();
+                    newSeriesIds.put(name, id);
+                }
+                Integer from = fromIndexes.get(name);
+                int to = entry.getValue().size();
+                writeSamples(out, id, entry.getValue(), from == null ? 0 : from, to);
+                written.put(name, to);
+            }
+        }
+        catch (IOException e) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(previousLength);
+            }
+            catch (IOException truncateException) {
+                log.warn("truncate {} after a failed append failed", file, truncateException);
+            }
+            throw e;
+        }
+        seriesIds.putAll(newSeriesIds);
+        return written;
+    }
+
+    /**
+     * @return the series read by {@link #load(File, int)}
+     */
+    public Map<String, TimeSeries> getSeriesMap() {
+        return seriesMap;
+    }
+
+    public long getDownsampleInterval() {
+        return downsampleInterval;
+    }
+
+    /**
+     * Reads the records up to the end of the file, or up to the first torn or corrupt one.
+     *
+     * @return the length of the file up to the end of the last valid record
+     */
+    private static long readRecords(DataInputStream in, CountingInputStream counting, TimeSeriesSegment segment,
+        List<TimeSeries> seriesById) {
+        int columns = segment.columns;
+        double[] row = new double[columns];
+        long validLength = counting.getCount();
+        try {
+            while (true) {
+                int type = in.read();
+                if (type == -1) {
+                    return validLength;
+                }
+                if (type == SERIES_RECORD) {
+                    String name = in.readUTF();
+                    TimeSeries series = new TimeSeries(columns);
+                    segment.seriesIds.put(name, seriesById.size());
+                    segment.seriesMap.put(name, series);
+                    seriesById.add(series);
+                }
+                else if (type == SAMPLE_RECORD) {
+                    int id = in.readInt();
+                    long timestamp = in.readLong();
+                    for (int i = 0; i < columns; i++) {
+                        row[i] = in.readDouble();
+                    }
+                    if (id < 0 || id >= seriesById.size()) {
+                        return validLength;
+                    }
+                    seriesById.get(id).append(timestamp, row);
+                }
+                else {
+                    return validLength;
+                }
+                validLength = counting.getCount();
+            }
+        }
+        catch (IOException e) {
+            // a crash may leave a partial record behind, it is dropped with what follows
+            return validLength;
+        }
+    }
+
+    private static void writeHeader(DataOutputStream out, int columns, long downsampleInterval) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(columns);
+        out.writeLong(downsampleInterval);
+    }
+
+    private static void writeSeries(DataOutputStream out, String name) throws IOException {
+        out.writeByte(SERIES_RECORD);
+        out.writeUTF(name);
+    }
+
+    private static void writeSamples(DataOutputStream out, int id, TimeSeries series, int from,
+        int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            out.writeByte(SAMPLE_RECORD);
+            out.writeInt(id);
+            out.writeLong(series.timestampAt(i));
+            for (int c = 0; c < series.getColumns(); c++) {
+                out.writeDouble(series.valueAt(i, c));
+            }
+        }
+    }
+}
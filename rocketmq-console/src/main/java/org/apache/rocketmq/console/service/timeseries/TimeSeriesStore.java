@@ -0,0 +1,347 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.rocketmq.console.service.timeseries;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.lang3.time.DateFormatUtils;
+import org.apache.commons.lang3.time.DateUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores dashboard samples as {@link TimeSeries}, one {@link TimeSeriesSegment} file per day.
+ * <p>
+ * The current day lives in memory and only the samples collected since the last {@link #flush()}
+ * are appended to its segment. Finished days are read back on demand. By {@link #expireSegments()},
+ * once they are older than the raw retention they are rewritten downsampled, and once they are older
+ * than the retention they are deleted.
+ */
+public class TimeSeriesStore {
+    private final static Logger log = LoggerFactory.getLogger(TimeSeriesStore.class);
+
+    private static final String DATE_PATTERN = "yyyy-MM-dd";
+
+    private static final String SEGMENT_FILE_SUFFIX = ".seg";
+
+    private final String name;
+
+    private final String dataLocationPath;
+
+    private final int[] scales;
+
+    private final int rawRetentionDays;
+
+    private final int retentionDays;
+
+    private final long downsampleInterval;
+
+    private final Function<String, Map<String, List<String>>> legacyReader;
+
+    private String currentDate;
+
+    private TimeSeriesSegment currentSegment;
+
+    private ConcurrentMap<String, TimeSeries> currentSeries = new ConcurrentHashMap<String, TimeSeries>();
+
+    private Map<String, Integer> flushedIndexes = Maps.newHashMap();
+
+    private volatile String lastExpireDate;
+
+    private final LoadingCache<String, Map<String, TimeSeries>> history = CacheBuilder.newBuilder()
+        .maximumSize(16)
+        .expireAfterAccess(10, TimeUnit.MINUTES)
+        .build(new CacheLoader<String, Map<String, TimeSeries>>() {
+            @Override
+            public Map<String, TimeSeries> load(String date) throws Exception {
+                return loadDate(date);
+            }
+        });
+
+    /**
+     * @param name the kind of series, used to name the segment files
+     * @param dataLocationPath the directory of the segment files
+     * @param scales the decimal places of every column when formatted as text
+     * @param rawRetentionDays days kept at full resolution
+     * @param retentionDays days kept at all, the range queries do not go further back
+     * @param downsampleInterval bucket size of the days older than {@code rawRetentionDays}
+     * @param legacyReader reads the json file a day was stored in before segments were used, by date
+     */
+    public TimeSeriesStore(String name, String dataLocationPath, int[] scales, int rawRetentionDays,
+        int retentionDays, long downsampleInterval, Function<String, Map<String, List<String>>> legacyReader) {
+        this.name = name;
+        this.dataLocationPath = dataLocationPath;
+        this.scales = scales;
+        this.rawRetentionDays = rawRetentionDays;
+        this.retentionDays = retentionDays;
+        this.downsampleInterval = downsampleInterval;
+        this.legacyReader = legacyReader;
+    }
+
+    public synchronized void append(String series, long timestamp, double... row) {
+        TimeSeries timeSeries = currentSeries(DateFormatUtils.format(timestamp, DATE_PATTERN)).get(series);
+        if (timeSeries == null) {
+            timeSeries = new TimeSeries(scales.length);
+            currentSeries.put(series, timeSeries);
+        }
+        timeSeries.append(timestamp, row);
+    }
+
+    /**
+     * @return the latest values collected today for {@code series}, or null if there is none
+     */
+    public double[] lastRow(String series) {
+        TimeSeries timeSeries = currentSeries(today()).get(series);
+        return timeSeries == null ? null : timeSeries.lastRow();
+    }
+
+    /**
+     * Appends the samples collected since the previous flush to the segment of the current day.
+     */
+    public synchronized void flush() throws IOException {
+        if (currentSegment == null) {
+            return;
+        }
+        boolean dirty = false;
+        for (Map.Entry<String, TimeSeries> entry : currentSeries.entrySet()) {
+            Integer flushed = flushedIndexes.get(entry.getKey());
+            if (flushed == null || flushed < entry.getValue().size()) {
+                dirty = true;
+                break;
+            }
+        }
+        if (dirty) {
+            flushedIndexes = currentSegment.append(currentSeries, flushedIndexes);
+        }
+    }
+
+    /**
+     * @param date format yyyy-MM-dd
+     */
+    public Map<String, TimeSeries> query(String date) {
+        if (date.equals(today())) {
+            return Collections.<String, TimeSeries>unmodifiableMap(currentSeries(date));
+        }
+        try {
+            return history.get(date);
+        }
+        catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * @return the samples of {@code series} whose timestamp is in [begin, end], across the days of the
+     * retention up to today
+     */
+    public TimeSeries query(String series, long begin, long end) {
+        Preconditions.checkArgument(begin <= end, "begin %s is after end %s", begin, end);
+        TimeSeries result = new TimeSeries(scales.length);
+        Calendar first = daysAgo(retentionDays);
+        Calendar day = Calendar.getInstance();
+        day.setTimeInMillis(begin);
+        day = DateUtils.truncate(day.before(first) ? first : day, Calendar.DAY_OF_MONTH);
+        Calendar last = Calendar.getInstance();
+        last.setTimeInMillis(Math.min(end, last.getTimeInMillis()));
+        last = DateUtils.truncate(last, Calendar.DAY_OF_MONTH);
+        while (!day.after(last)) {
+            String date = DateFormatUtils.format(day, DATE_PATTERN);
+            TimeSeries timeSeries = query(date).get(series);
+            if (timeSeries != null) {
+                TimeSeries range = timeSeries.range(begin, end);
+                for (int i = 0; i < range.size(); i++) {
+                    result.append(range.timestampAt(i), range.row(i));
+                }
+            }
+            day.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        return result;
+    }
+
+    /**
+     * @return the samples of the day in the {@code "timestamp,value,..."} text form of the dashboard
+     */
+    public Map<String, List<String>> queryText(String date) {
+        Map<String, List<String>> result = Maps.newHashMap();
+        for (Map.Entry<String, TimeSeries> entry : query(date).entrySet()) {
+            result.put(entry.getKey(), format(entry.getValue()));
+        }
+        return result;
+    }
+
+    public List<String> format(TimeSeries timeSeries) {
+        int size = timeSeries.size();
+        List<String> result = Lists.newArrayListWithCapacity(size);
+        for (int i = 0; i < size; i++) {
+            StringBuilder sb = new StringBuilder().append(timeSeries.timestampAt(i));
+            for (int c = 0; c < scales.length; c++) {
+                sb.append(',').append(format(timeSeries.valueAt(i, c), c));
+            }
+            result.add(sb.toString());
+        }
+        return result;
+    }
+
+    public String format(double value, int column) {
+        if (scales[column] == 0) {
+            return Long.toString(Math.round(value));
+        }
+        return new BigDecimal(value).setScale(scales[column], BigDecimal.ROUND_HALF_UP).toString();
+    }
+
+    private synchronized Map<String, TimeSeries> currentSeries(String date) {
+        if (!date.equals(currentDate)) {
+            try {
+                rollTo(date);
+            }
+            catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+        }
+        return currentSeries;
+    }
+
+    private void rollTo(String date) throws IOException {
+        String previousDate = currentDate;
+        flush();
+        TimeSeriesSegment segment = TimeSeriesSegment.load(segmentFile(date), scales.length);
+        ConcurrentMap<String, TimeSeries> series = new ConcurrentHashMap<String, TimeSeries>(segment.getSeriesMap());
+        Map<String, Integer> flushed = Maps.newHashMap();
+        for (Map.Entry<String, TimeSeries> entry : series.entrySet()) {
+            flushed.put(entry.getKey(), entry.getValue().size());
+        }
+        currentDate = date;
+        currentSegment = segment;
+        currentSeries = series;
+        flushedIndexes = flushed;
+        history.invalidate(date);
+        if (previousDate != null) {
+            history.invalidate(previousDate);
+        }
+    }
+
+    /**
+     * Downsamples the segments older than the raw retention and deletes the ones older than the retention,
+     * once a day. Only the finished days are touched, so the store is not locked meanwhile.
+     */
+    public void expireSegments() {
+        String today = today();
+        if (today.equals(lastExpireDate)) {
+            return;
+        }
+        lastExpireDate = today;
+        String deletedDate = DateFormatUtils.format(daysAgo(retentionDays), DATE_PATTERN);
+        String downsampledDate = DateFormatUtils.format(daysAgo(rawRetentionDays), DATE_PATTERN);
+        String suffix = "_" + name + SEGMENT_FILE_SUFFIX;
+        File[] files = new File(dataLocationPath).listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String fileName = file.getName();
+            if (!fileName.endsWith(suffix)) {
+                continue;
+            }
+            String date = fileName.substring(0, fileName.length() - suffix.length());
+            if (date.compareTo(deletedDate) < 0) {
+                if (file.delete()) {
+                    history.invalidate(date);
+                    log.info("delete {} dashboard data of {}", name, date);
+                }
+                continue;
+            }
+            if (date.compareTo(downsampledDate) >= 0) {
+                continue;
+            }
+            try {
+                if (TimeSeriesSegment.readDownsampleInterval(file) >= downsampleInterval) {
+                    continue;
+                }
+                TimeSeriesSegment segment = TimeSeriesSegment.load(file, scales.length);
+                Map<String, TimeSeries> downsampled = Maps.newLinkedHashMap();
+                for (Map.Entry<String, TimeSeries> entry : segment.getSeriesMap().entrySet()) {
+                    downsampled.put(entry.getKey(), entry.getValue().downsample(downsampleInterval));
+                }
+                TimeSeriesSegment.write(file, scales.length, downsampleInterval, downsampled);
+                history.invalidate(date);
+                log.info("downsample {} dashboard data of {} to {}ms", name, date, downsampleInterval);
+            }
+            catch (IOException e) {
+                log.warn("downsample dashboard data file {} failed", file, e);
+            }
+        }
+    }
+
+    private Map<String, TimeSeries> loadDate(String date) throws IOException {
+        File file = segmentFile(date);
+        if (file.exists()) {
+            return TimeSeriesSegment.load(file, scales.length).getSeriesMap();
+        }
+        Map<String, TimeSeries> result = Maps.newHashMap();
+        Map<String, List<String>> legacyData = legacyReader.apply(date);
+        if (legacyData == null) {
+            return result;
+        }
+        for (Map.Entry<String, List<String>> entry : legacyData.entrySet()) {
+            TimeSeries timeSeries = new TimeSeries(scales.length, entry.getValue().size());
+            for (String sample : entry.getValue()) {
+                String[] fields = sample.split(",");
+                if (fields.length != scales.length + 1) {
+                    continue;
+                }
+                double[] row = new double[scales.length];
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = Double.parseDouble(fields[i + 1]);
+                }
+                timeSeries.append(Long.parseLong(fields[0]), row);
+            }
+            result.put(entry.getKey(), timeSeries);
+        }
+        return result;
+    }
+
+    private File segmentFile(String date) {
+        return new File(dataLocationPath, date + "_" + name + SEGMENT_FILE_SUFFIX);
+    }
+
+    private static Calendar daysAgo(int days) {
+        Calendar calendar = DateUtils.truncate(Calendar.getInstance(), Calendar.DAY_OF_MONTH);
+        calendar.add(Calendar.DAY_OF_MONTH, -days);
+        return calendar;
+    }
+
+    private static String today() {
+        return DateFormatUtils.format(System.currentTimeMillis(), DATE_PATTERN);
+    }
+}
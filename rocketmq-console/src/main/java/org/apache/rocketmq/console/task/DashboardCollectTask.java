@@ -17,39 +17,53 @@
 package org.apache.rocketmq.console.task;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.Futures;
+import org.apache.rocketmq.client.exception.MQClientException;
+import org.apache.rocketmq.common.ThreadFactoryImpl;
+import org.apache.rocketmq.common.admin.ConsumeStats;
+import org.apache.rocketmq.common.admin.OffsetWrapper;
+import org.apache.rocketmq.common.message.MessageQueue;
 import org.apache.rocketmq.common.protocol.body.ClusterInfo;
-import org.apache.rocketmq.common.protocol.body.GroupList;
+import org.apache.rocketmq.common.protocol.body.ConsumeStatsList;
 import org.apache.rocketmq.common.protocol.body.KVTable;
 import org.apache.rocketmq.common.protocol.body.TopicList;
 import org.apache.rocketmq.common.protocol.route.BrokerData;
 import org.apache.rocketmq.common.protocol.route.TopicRouteData;
 import org.apache.rocketmq.common.topic.TopicValidator;
 import org.apache.rocketmq.console.aspect.admin.annotation.MultiMQAdminCmdMethod;
+import org.apache.rocketmq.console.service.client.MQAdminInstance;
 import org.apache.rocketmq.store.stats.BrokerStatsManager;
 import org.apache.rocketmq.tools.admin.MQAdminExt;
 import org.apache.rocketmq.tools.command.stats.StatsAllSubCommand;
 import com.google.common.base.Throwables;
-import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.io.Files;
-import java.io.File;
 import java.io.IOException;
 import java.math.BigDecimal;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import org.apache.rocketmq.common.MixAll;
 import org.apache.rocketmq.common.protocol.body.BrokerStatsData;
 import org.apache.rocketmq.console.config.RMQConfigure;
 import org.apache.rocketmq.console.service.DashboardCollectService;
-import org.apache.rocketmq.console.util.JsonUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -57,7 +71,6 @@ import org.springframework.stereotype.Component;
 
 @Component
 public class DashboardCollectTask {
-    private Date currentDate = new Date();
     @Resource
     private MQAdminExt mqAdminExt;
     @Resource
@@ -68,102 +81,240 @@ public class DashboardCollectTask {
 
     private final static Logger log = LoggerFactory.getLogger(DashboardCollectTask.class);
 
+    /**
+     * The capacity of the queue of the collect pool, the scheduler thread runs the calls itself beyond.
+     */
+    private static final int COLLECT_QUEUE_SIZE = 1024;
+
+    private static final long COLLECT_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * Routes rarely change, so they are reused across collect runs.
+     */
+    private final Cache<String, TopicRouteData> topicRouteCache = CacheBuilder.newBuilder()
+        .expireAfterWrite(5, TimeUnit.MINUTES)
+        .build();
+
+    /**
+     * The last stats of a broker stats key, reused while the offsets it counts have not moved. They are fetched again
+     * every hour anyway, as the messages of the day age out.
+     */
+    private final Cache<String, BrokerStats> brokerStatsCache = CacheBuilder.newBuilder()
+        .expireAfterWrite(1, TimeUnit.HOURS)
+        .build();
+
+    private ExecutorService collectExecutor;
+
+    @PostConstruct
+    public void init() {
+        int threadNum = rmqConfigure.getDashboardCollectThreadNum();
+        final ThreadFactory threadFactory = new ThreadFactoryImpl("DashboardCollectThread_");
+        collectExecutor = new ThreadPoolExecutor(threadNum, threadNum, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(COLLECT_QUEUE_SIZE), new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    return threadFactory.newThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            runWithMQAdminInstance(r);
+                        }
+                    });
+                }
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Every collect thread keeps its own admin instance while it lives, the calls of {@link #mqAdminExt} made from
+     * it reuse that instance instead of starting and stopping a client each. When it cannot be started the thread
+     * still runs its tasks, each call then starts its own instance.
+     */
+    private void runWithMQAdminInstance(Runnable r) {
+        boolean initialized = false;
+        try {
+            MQAdminInstance.initMQAdminInstance(COLLECT_TIMEOUT_MILLIS, rmqConfigure.getAccessKey(), rmqConfigure.getSecretKey());
+            initialized = true;
+        }
+        catch (MQClientException e) {
+            log.warn("start admin instance of collect thread failed", e);
+        }
+        try {
+            r.run();
+        }
+        finally {
+            if (initialized) {
+                MQAdminInstance.destroyMQAdminInstance();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (collectExecutor != null) {
+            collectExecutor.shutdownNow();
+        }
+    }
+
     @Scheduled(cron = "30 0/1 * * * ?")
     @MultiMQAdminCmdMethod(timeoutMillis = 5000)
     public void collectTopic() {
         if (!rmqConfigure.isEnableDashBoardCollect()) {
             return;
         }
-        
+
         Date date = new Date();
-        Stopwatch stopwatch = Stopwatch.createUnstarted();
+        Stopwatch stopwatch = Stopwatch.createStarted();
         try {
             TopicList topicList = mqAdminExt.fetchAllTopicList();
             Set<String> topicSet = topicList.getTopicList();
             this.addSystemTopic();
-            for (String topic : topicSet) {
+
+            Map<String, Future<TopicRouteData>> routeFutures = Maps.newHashMap();
+            for (final String topic : topicSet) {
                 if (topic.startsWith(MixAll.RETRY_GROUP_TOPIC_PREFIX)
                         || topic.startsWith(MixAll.DLQ_GROUP_TOPIC_PREFIX)
                         || TopicValidator.isSystemTopic(topic)) {
                     continue;
                 }
-                TopicRouteData topicRouteData = mqAdminExt.examineTopicRouteInfo(topic);
-
-                GroupList groupList = mqAdminExt.queryTopicConsumeByWho(topic);
-
-                double inTPS = 0;
-
-                long inMsgCntToday = 0;
-
-                double outTPS = 0;
-
-                long outMsgCntToday = 0;
+                routeFutures.put(topic, collectExecutor.submit(new Callable<TopicRouteData>() {
+                    @Override
+                    public TopicRouteData call() throws Exception {
+                        return topicRouteCache.get(topic, () -> mqAdminExt.examineTopicRouteInfo(topic));
+                    }
+                }));
+            }
 
+            // the offsets and consume tps of all the subscriptions of a broker are fetched with a single call
+            Map<String, List<String>> topicMasters = Maps.newHashMap();
+            Map<String, Future<ConsumeStatsList>> consumeStatsFutures = Maps.newHashMap();
+            for (Map.Entry<String, Future<TopicRouteData>> entry : routeFutures.entrySet()) {
+                TopicRouteData topicRouteData = getCollected(entry.getValue(), "route of topic " + entry.getKey());
+                if (topicRouteData == null) {
+                    continue;
+                }
+                List<String> masters = Lists.newArrayList();
                 for (BrokerData bd : topicRouteData.getBrokerDatas()) {
-                    String masterAddr = bd.getBrokerAddrs().get(MixAll.MASTER_ID);
-                    if (masterAddr != null) {
-                        try {
-                            stopwatch.start();
-                            log.info("start time: {}", stopwatch.toString());
-                            BrokerStatsData bsd = mqAdminExt.viewBrokerStatsData(masterAddr, BrokerStatsManager.TOPIC_PUT_NUMS, topic);
-                            stopwatch.stop();
-                            log.info("stop time : {}", stopwatch.toString());
-
-                            inTPS += bsd.getStatsMinute().getTps();
-                            inMsgCntToday += StatsAllSubCommand.compute24HourSum(bsd);
-                        }
-                        catch (Exception e) {
-                            stopwatch.reset();
-                            log.warn("Exception caught: mqAdminExt get broker stats data TOPIC_PUT_NUMS failed");
-                            log.warn("Response [{}] ", e.getMessage());
-                        }
+                    final String masterAddr = bd.getBrokerAddrs().get(MixAll.MASTER_ID);
+                    if (masterAddr == null) {
+                        continue;
+                    }
+                    masters.add(masterAddr);
+                    if (!consumeStatsFutures.containsKey(masterAddr)) {
+                        consumeStatsFutures.put(masterAddr, collectExecutor.submit(new Callable<ConsumeStatsList>() {
+                            @Override
+                            public ConsumeStatsList call() throws Exception {
+                                return mqAdminExt.fetchConsumeStatsInBroker(masterAddr, false, COLLECT_TIMEOUT_MILLIS);
+                            }
+                        }));
                     }
                 }
+                topicMasters.put(entry.getKey(), masters);
+            }
+            Map<String, BrokerConsumeStats> brokerConsumeStats = Maps.newHashMap();
+            for (Map.Entry<String, Future<ConsumeStatsList>> entry : consumeStatsFutures.entrySet()) {
+                brokerConsumeStats.put(entry.getKey(), new BrokerConsumeStats(
+                    getCollected(entry.getValue(), "consume stats of broker " + entry.getKey())));
+            }
 
-                if (groupList != null && !groupList.getGroupList().isEmpty()) {
-
-                    for (String group : groupList.getGroupList()) {
-                        for (BrokerData bd : topicRouteData.getBrokerDatas()) {
-                            String masterAddr = bd.getBrokerAddrs().get(MixAll.MASTER_ID);
-                            if (masterAddr != null) {
-                                try {
-                                    String statsKey = String.format("%s@%s", topic, group);
-                                    BrokerStatsData bsd = mqAdminExt.viewBrokerStatsData(masterAddr, BrokerStatsManager.GROUP_GET_NUMS, statsKey);
-                                    outTPS += bsd.getStatsMinute().getTps();
-                                    outMsgCntToday += StatsAllSubCommand.compute24HourSum(bsd);
-                                }
-                                catch (Exception e) {
-                                    log.warn("Exception caught: mqAdminExt get broker stats data GROUP_GET_NUMS failed");
-                                    log.warn("Response [{}] ", e.getMessage());
-                                }
-                            }
-                        }
+            // the put and get counts of the day are only fetched for the keys whose offsets moved
+            Map<String, List<Future<BrokerStats>>> inStatsFutures = Maps.newHashMap();
+            Map<String, List<Future<BrokerStats>>> outStatsFutures = Maps.newHashMap();
+            for (Map.Entry<String, List<String>> entry : topicMasters.entrySet()) {
+                String topic = entry.getKey();
+                List<Future<BrokerStats>> inFutures = Lists.newArrayList();
+                List<Future<BrokerStats>> outFutures = Lists.newArrayList();
+                for (String masterAddr : entry.getValue()) {
+                    BrokerConsumeStats consumeStats = brokerConsumeStats.get(masterAddr);
+                    inFutures.add(submitBrokerStats(masterAddr, BrokerStatsManager.TOPIC_PUT_NUMS, topic,
+                        consumeStats.topicOffset(topic)));
+                    for (Map.Entry<String, Long> groupOffset : consumeStats.groupOffsets(topic).entrySet()) {
+                        String statsKey = String.format("%s@%s", topic, groupOffset.getKey());
+                        outFutures.add(submitBrokerStats(masterAddr, BrokerStatsManager.GROUP_GET_NUMS, statsKey,
+                            groupOffset.getValue()));
                     }
                 }
+                inStatsFutures.put(topic, inFutures);
+                outStatsFutures.put(topic, outFutures);
+            }
 
-                List<String> list;
-                try {
-                    list = dashboardCollectService.getTopicMap().get(topic);
+            for (Map.Entry<String, List<Future<BrokerStats>>> entry : inStatsFutures.entrySet()) {
+                String topic = entry.getKey();
+                double inTPS = 0;
+                long inMsgCntToday = 0;
+                for (Future<BrokerStats> future : entry.getValue()) {
+                    BrokerStats stats = getCollected(future, "broker stats data " + BrokerStatsManager.TOPIC_PUT_NUMS);
+                    if (stats != null) {
+                        inTPS += stats.tps;
+                        inMsgCntToday += stats.countToday;
+                    }
                 }
-                catch (ExecutionException e) {
-                    throw Throwables.propagate(e);
+                double outTPS = 0;
+                for (String masterAddr : topicMasters.get(topic)) {
+                    outTPS += brokerConsumeStats.get(masterAddr).consumeTps(topic);
                 }
-                if (null == list) {
-                    list = Lists.newArrayList();
+                long outMsgCntToday = 0;
+                for (Future<BrokerStats> future : outStatsFutures.get(topic)) {
+                    BrokerStats stats = getCollected(future, "broker stats data " + BrokerStatsManager.GROUP_GET_NUMS);
+                    if (stats != null) {
+                        outMsgCntToday += stats.countToday;
+                    }
                 }
 
-                list.add(date.getTime() + "," + new BigDecimal(inTPS).setScale(5, BigDecimal.ROUND_HALF_UP) + "," + inMsgCntToday + "," + new BigDecimal(outTPS).setScale(5, BigDecimal.ROUND_HALF_UP) + "," + outMsgCntToday);
-                dashboardCollectService.getTopicMap().put(topic, list);
-
+                dashboardCollectService.getTopicStore().append(topic, date.getTime(),
+                    inTPS, inMsgCntToday, outTPS, outMsgCntToday);
             }
 
-            log.debug("Topic Collected Data in memory = {}" + JsonUtil.obj2String(dashboardCollectService.getTopicMap().asMap()));
+            log.info("collect {} topics of {} brokers cost {}", inStatsFutures.size(), consumeStatsFutures.size(), stopwatch.stop());
         }
         catch (Exception err) {
             throw Throwables.propagate(err);
         }
     }
 
+    /**
+     * @param offset the offset counted by the stats key, -1 if unknown
+     */
+    private Future<BrokerStats> submitBrokerStats(final String brokerAddr, final String statsName,
+        final String statsKey, final long offset) {
+        final String cacheKey = brokerAddr + "/" + statsName + "/" + statsKey;
+        BrokerStats cached = brokerStatsCache.getIfPresent(cacheKey);
+        if (cached != null && offset >= 0 && cached.offset == offset) {
+            // nothing was put or consumed since the last collect
+            return Futures.immediateFuture(new BrokerStats(offset, 0, cached.countToday));
+        }
+        return collectExecutor.submit(new Callable<BrokerStats>() {
+            @Override
+            public BrokerStats call() throws Exception {
+                BrokerStatsData bsd = mqAdminExt.viewBrokerStatsData(brokerAddr, statsName, statsKey);
+                BrokerStats stats = new BrokerStats(offset, bsd.getStatsMinute().getTps(),
+                    StatsAllSubCommand.compute24HourSum(bsd));
+                brokerStatsCache.put(cacheKey, stats);
+                return stats;
+            }
+        });
+    }
+
+    /**
+     * Waits for a call of the collect pool, a call not done in time is cancelled so that a slow broker cannot stall
+     * the collect.
+     *
+     * @return the result of the call, null if it failed or timed out
+     */
+    private <T> T getCollected(Future<T> future, String what) throws InterruptedException {
+        try {
+            return future.get(COLLECT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        catch (ExecutionException e) {
+            log.warn("Exception caught: mqAdminExt get {} failed", what);
+            log.warn("Response [{}] ", e.getCause().getMessage());
+            return null;
+        }
+        catch (TimeoutException e) {
+            future.cancel(true);
+            log.warn("mqAdminExt get {} timed out after {} ms", what, COLLECT_TIMEOUT_MILLIS);
+            return null;
+        }
+    }
+
     @Scheduled(cron = "0 0/1 * * * ?")
     public void collectBroker() {
         if (!rmqConfigure.isEnableDashBoardCollect()) {
@@ -184,10 +335,6 @@ public class DashboardCollectTask {
             }
             Set<Map.Entry<String, String>> entries = addresses.entrySet();
             for (Map.Entry<String, String> entry : entries) {
-                List<String> list = dashboardCollectService.getBrokerMap().get(entry.getValue());
-                if (null == list) {
-                    list = Lists.newArrayList();
-                }
                 KVTable kvTable = fetchBrokerRuntimeStats(entry.getKey(), 3);
                 if (kvTable == null) {
                     continue;
@@ -198,10 +345,8 @@ public class DashboardCollectTask {
                     totalTps = totalTps.add(new BigDecimal(tps));
                 }
                 BigDecimal averageTps = totalTps.divide(new BigDecimal(tpsArray.length), 5, BigDecimal.ROUND_HALF_UP);
-                list.add(date.getTime() + "," + averageTps.toString());
-                dashboardCollectService.getBrokerMap().put(entry.getValue(), list);
+                dashboardCollectService.getBrokerStore().append(entry.getValue(), date.getTime(), averageTps.doubleValue());
             }
-            log.debug("Broker Collected Data in memory = {}" + JsonUtil.obj2String(dashboardCollectService.getBrokerMap().asMap()));
         }
         catch (Exception e) {
             throw Throwables.propagate(e);
@@ -232,98 +377,17 @@ public class DashboardCollectTask {
         if (!rmqConfigure.isEnableDashBoardCollect()) {
             return;
         }
-        //one day refresh cache one time
-        String dataLocationPath = rmqConfigure.getConsoleCollectData();
-        DateFormat format = new SimpleDateFormat("yyyy-MM-dd");
-        String nowDateStr = format.format(new Date());
-        String currentDateStr = format.format(currentDate);
-        if (!currentDateStr.equals(nowDateStr)) {
-            dashboardCollectService.getBrokerMap().invalidateAll();
-            dashboardCollectService.getTopicMap().invalidateAll();
-            currentDate = new Date();
-        }
-        File brokerFile = new File(dataLocationPath + nowDateStr + ".json");
-        File topicFile = new File(dataLocationPath + nowDateStr + "_topic" + ".json");
         try {
-            Map<String, List<String>> brokerFileMap;
-            Map<String, List<String>> topicFileMap;
-            if (brokerFile.exists()) {
-                brokerFileMap = dashboardCollectService.jsonDataFile2map(brokerFile);
-            }
-            else {
-                brokerFileMap = Maps.newHashMap();
-                Files.createParentDirs(brokerFile);
-            }
-
-            if (topicFile.exists()) {
-                topicFileMap = dashboardCollectService.jsonDataFile2map(topicFile);
-            }
-            else {
-                topicFileMap = Maps.newHashMap();
-                Files.createParentDirs(topicFile);
-            }
-
-            brokerFile.createNewFile();
-            topicFile.createNewFile();
-
-            writeFile(dashboardCollectService.getBrokerMap(), brokerFileMap, brokerFile);
-            writeFile(dashboardCollectService.getTopicMap(), topicFileMap, topicFile);
-            log.debug("Broker Collected Data in memory = {}" + JsonUtil.obj2String(dashboardCollectService.getBrokerMap().asMap()));
-            log.debug("Topic Collected Data in memory = {}" + JsonUtil.obj2String(dashboardCollectService.getTopicMap().asMap()));
-
+            dashboardCollectService.getBrokerStore().flush();
+            dashboardCollectService.getTopicStore().flush();
+            dashboardCollectService.getBrokerStore().expireSegments();
+            dashboardCollectService.getTopicStore().expireSegments();
         }
         catch (IOException e) {
             throw Throwables.propagate(e);
         }
     }
 
-    private void writeFile(LoadingCache<String, List<String>> map, Map<String, List<String>> fileMap,
-        File file) throws IOException {
-        Map<String, List<String>> newMap = map.asMap();
-        Map<String, List<String>> resultMap = Maps.newHashMap();
-        if (fileMap.size() == 0) {
-            resultMap = newMap;
-        }
-        else {
-            for (Map.Entry<String, List<String>> entry : fileMap.entrySet()) {
-                List<String> oldList = entry.getValue();
-                List<String> newList = newMap.get(entry.getKey());
-                resultMap.put(entry.getKey(), appendData(newList, oldList));
-                if (newList == null || newList.size() == 0) {
-                    map.put(entry.getKey(), appendData(newList, oldList));
-                }
-            }
-
-            for (Map.Entry<String, List<String>> entry : newMap.entrySet()) {
-                List<String> oldList = fileMap.get(entry.getKey());
-                if (oldList == null || oldList.size() == 0) {
-                    resultMap.put(entry.getKey(), entry.getValue());
-                }
-            }
-        }
-        Files.write(JsonUtil.obj2String(resultMap).getBytes(), file);
-    }
-
-    private List<String> appendData(List<String> newTpsList, List<String> oldTpsList) {
-        List<String> result = Lists.newArrayList();
-        if (newTpsList == null || newTpsList.size() == 0) {
-            return oldTpsList;
-        }
-        if (oldTpsList == null || oldTpsList.size() == 0) {
-            return newTpsList;
-        }
-        String oldLastTps = oldTpsList.get(oldTpsList.size() - 1);
-        Long oldLastTimestamp = Long.parseLong(oldLastTps.split(",")[0]);
-        String newFirstTps = newTpsList.get(0);
-        Long newFirstTimestamp = Long.parseLong(newFirstTps.split(",")[0]);
-        if (oldLastTimestamp.longValue() < newFirstTimestamp.longValue()) {
-            result.addAll(oldTpsList);
-            result.addAll(newTpsList);
-            return result;
-        }
-        return newTpsList;
-    }
-    
     private void addSystemTopic() throws Exception {
         ClusterInfo clusterInfo = mqAdminExt.examineBrokerClusterInfo();
         HashMap<String, Set<String>> clusterTable = clusterInfo.getClusterAddrTable();
@@ -336,4 +400,82 @@ public class DashboardCollectTask {
             }
         }
     }
+
+    private static class BrokerStats {
+        private final long offset;
+        private final double tps;
+        private final long countToday;
+
+        BrokerStats(long offset, double tps, long countToday) {
+            this.offset = offset;
+            this.tps = tps;
+            this.countToday = countToday;
+        }
+    }
+
+    /**
+     * The consume stats of the subscriptions of a broker, summed by topic and by consumer group.
+     */
+    private static class BrokerConsumeStats {
+        private final Map<String, Long> topicOffsets = Maps.newHashMap();
+        private final Map<String, Map<String, Long>> groupOffsets = Maps.newHashMap();
+        private final Map<String, Double> consumeTps = Maps.newHashMap();
+
+        BrokerConsumeStats(ConsumeStatsList consumeStatsList) {
+            if (consumeStatsList == null || consumeStatsList.getConsumeStatsList() == null) {
+                return;
+            }
+            for (Map<String, List<ConsumeStats>> groupStats : consumeStatsList.getConsumeStatsList()) {
+                for (Map.Entry<String, List<ConsumeStats>> entry : groupStats.entrySet()) {
+                    for (ConsumeStats consumeStats : entry.getValue()) {
+                        add(entry.getKey(), consumeStats);
+                    }
+                }
+            }
+        }
+
+        /**
+         * A consume stats holds the queues of a single topic.
+         */
+        private void add(String group, ConsumeStats consumeStats) {
+            String topic = null;
+            long brokerOffset = 0;
+            long consumerOffset = 0;
+            for (Map.Entry<MessageQueue, OffsetWrapper> entry : consumeStats.getOffsetTable().entrySet()) {
+                topic = entry.getKey().getTopic();
+                brokerOffset += entry.getValue().getBrokerOffset();
+                consumerOffset += entry.getValue().getConsumerOffset();
+            }
+            if (topic == null) {
+                return;
+            }
+            topicOffsets.put(topic, brokerOffset);
+            Map<String, Long> offsets = groupOffsets.get(topic);
+            if (offsets == null) {
+                offsets = Maps.newHashMap();
+                groupOffsets.put(topic, offsets);
+            }
+            offsets.put(group, consumerOffset);
+            Double tps = consumeTps.get(topic);
+            consumeTps.put(topic, (tps == null ? 0 : tps) + consumeStats.getConsumeTps());
+        }
+
+        /**
+         * @return the sum of the max offsets of the queues of the topic, -1 if the topic is not consumed
+         */
+        long topicOffset(String topic) {
+            Long offset = topicOffsets.get(topic);
+            return offset == null ? -1 : offset;
+        }
+
+        Map<String, Long> groupOffsets(String topic) {
+            Map<String, Long> offsets = groupOffsets.get(topic);
+            return offsets == null ? Collections.<String, Long>emptyMap() : offsets;
+        }
+
+        double consumeTps(String topic) {
+            Double tps = consumeTps.get(topic);
+            return tps == null ? 0 : tps;
+        }
+    }
 }
@@ -39,124 +39,247 @@ public class MsgTraceDecodeUtil {
     private static final int TRACE_MSG_PUB_V3_LEN = 14;
     private static final int TRACE_MSG_PUB_V4_LEN = 15;
 
+    private static final int TRACE_MSG_SUBBEFORE_V1_LEN = 8;
+
     private static final int TRACE_MSG_SUBAFTER_V1_LEN = 6;
     private static final int TRACE_MSG_SUBAFTER_V2_LEN = 7;
     private static final int TRACE_MSG_SUBAFTER_V3_LEN = 9;
 
+    private static final MessageType[] MESSAGE_TYPES = MessageType.values();
+
+    /**
+     * Decodes trace data by scanning the separators in place instead of splitting it into
+     * intermediate string arrays, only the fields kept in the trace beans are copied out.
+     */
     public static List<TraceContext> decoderFromTraceDataString(String traceData) {
         List<TraceContext> resList = new ArrayList<TraceContext>();
         if (traceData == null || traceData.length() <= 0) {
             return resList;
         }
-        String[] contextList = traceData.split(String.valueOf(TraceConstants.FIELD_SPLITOR));
-        for (String context : contextList) {
-            String[] line = context.split(String.valueOf(TraceConstants.CONTENT_SPLITOR));
-            if (line[0].equals(Pub.name())) {
-                TraceContext pubContext = new TraceContext();
-                pubContext.setTraceType(Pub);
-                pubContext.setTimeStamp(Long.parseLong(line[1]));
-                pubContext.setRegionId(line[2]);
-                pubContext.setGroupName(line[3]);
-                TraceBean bean = new TraceBean();
-                bean.setTopic(line[4]);
-                bean.setMsgId(line[5]);
-                bean.setTags(line[6]);
-                bean.setKeys(line[7]);
-                bean.setStoreHost(line[8]);
-                bean.setBodyLength(Integer.parseInt(line[9]));
-                pubContext.setCostTime(Integer.parseInt(line[10]));
-                bean.setMsgType(MessageType.values()[Integer.parseInt(line[11])]);
-                // compatible with different version
-                switch (line.length) {
-                    case TRACE_MSG_PUB_V1_LEN:
-                        break;
-                    case TRACE_MSG_PUB_V2_LEN:
-                        pubContext.setSuccess(Boolean.parseBoolean(line[12]));
-                        break;
-                    case TRACE_MSG_PUB_V3_LEN:
-                        bean.setOffsetMsgId(line[12]);
-                        pubContext.setSuccess(Boolean.parseBoolean(line[13]));
-                        break;
-                    case TRACE_MSG_PUB_V4_LEN:
-                        bean.setOffsetMsgId(line[12]);
-                        pubContext.setSuccess(Boolean.parseBoolean(line[13]));
-                        bean.setClientHost(line[14]);
-                        break;
-                    default:
-                        bean.setOffsetMsgId(line[12]);
-                        pubContext.setSuccess(Boolean.parseBoolean(line[13]));
-                        bean.setClientHost(line[14]);
-                        log.warn("Detect new version trace msg of {} type", Pub.name());
-                        break;
+        int length = traceData.length();
+        int contextBegin = 0;
+        while (contextBegin < length) {
+            int contextEnd = traceData.indexOf(TraceConstants.FIELD_SPLITOR, contextBegin);
+            if (contextEnd < 0) {
+                contextEnd = length;
+            }
+            TraceContext context = decodeContext(new FieldReader(traceData, contextBegin, contextEnd));
+            if (context != null) {
+                resList.add(context);
+            }
+            contextBegin = contextEnd + 1;
+        }
+        return resList;
+    }
+
+    private static TraceContext decodeContext(FieldReader line) {
+        line.next();
+        if (line.fieldEquals(Pub.name())) {
+            TraceContext pubContext = new TraceContext();
+            pubContext.setTraceType(Pub);
+            pubContext.setTimeStamp(line.nextLong());
+            pubContext.setRegionId(line.nextString());
+            pubContext.setGroupName(line.nextString());
+            TraceBean bean = new TraceBean();
+            bean.setTopic(line.nextString());
+            bean.setMsgId(line.nextString());
+            bean.setTags(line.nextString());
+            bean.setKeys(line.nextString());
+            bean.setStoreHost(line.nextString());
+            bean.setBodyLength(line.nextInt());
+            pubContext.setCostTime(line.nextInt());
+            bean.setMsgType(MESSAGE_TYPES[line.nextInt()]);
+            // compatible with different version
+            switch (line.getFieldCount()) {
+                case TRACE_MSG_PUB_V1_LEN:
+                    break;
+                case TRACE_MSG_PUB_V2_LEN:
+                    pubContext.setSuccess(line.nextBoolean());
+                    break;
+                case TRACE_MSG_PUB_V3_LEN:
+                    bean.setOffsetMsgId(line.nextString());
+                    pubContext.setSuccess(line.nextBoolean());
+                    break;
+                case TRACE_MSG_PUB_V4_LEN:
+                    bean.setOffsetMsgId(line.nextString());
+                    pubContext.setSuccess(line.nextBoolean());
+                    bean.setClientHost(line.nextString());
+                    break;
+                default:
+                    bean.setOffsetMsgId(line.nextString());
+                    pubContext.setSuccess(line.nextBoolean());
+                    bean.setClientHost(line.nextString());
+                    log.warn("Detect new version trace msg of {} type", Pub.name());
+                    break;
+            }
+
+            pubContext.setTraceBeans(new ArrayList<TraceBean>(1));
+            pubContext.getTraceBeans().add(bean);
+            return pubContext;
+        } else if (line.fieldEquals(TraceType.SubBefore.name())) {
+            TraceContext subBeforeContext = new TraceContext();
+            subBeforeContext.setTraceType(TraceType.SubBefore);
+            subBeforeContext.setTimeStamp(line.nextLong());
+            subBeforeContext.setRegionId(line.nextString());
+            subBeforeContext.setGroupName(line.nextString());
+            subBeforeContext.setRequestId(line.nextString());
+            TraceBean bean = new TraceBean();
+            bean.setMsgId(line.nextString());
+            bean.setRetryTimes(line.nextInt());
+            bean.setKeys(line.nextString());
+            if (line.getFieldCount() > TRACE_MSG_SUBBEFORE_V1_LEN) {
+                bean.setClientHost(line.nextString());
+            }
+            subBeforeContext.setTraceBeans(new ArrayList<TraceBean>(1));
+            subBeforeContext.getTraceBeans().add(bean);
+            return subBeforeContext;
+        } else if (line.fieldEquals(TraceType.SubAfter.name())) {
+            TraceContext subAfterContext = new TraceContext();
+            subAfterContext.setTraceType(TraceType.SubAfter);
+            subAfterContext.setRequestId(line.nextString());
+            TraceBean bean = new TraceBean();
+            bean.setMsgId(line.nextString());
+            subAfterContext.setCostTime(line.nextInt());
+            subAfterContext.setSuccess(line.nextBoolean());
+            bean.setKeys(line.nextString());
+            subAfterContext.setTraceBeans(new ArrayList<TraceBean>(1));
+            subAfterContext.getTraceBeans().add(bean);
+            // compatible with different version
+            switch (line.getFieldCount()) {
+                case TRACE_MSG_SUBAFTER_V1_LEN:
+                    break;
+                case TRACE_MSG_SUBAFTER_V2_LEN:
+                    subAfterContext.setContextCode(line.nextInt());
+                    break;
+                case TRACE_MSG_SUBAFTER_V3_LEN:
+                    subAfterContext.setContextCode(line.nextInt());
+                    subAfterContext.setTimeStamp(line.nextLong());
+                    subAfterContext.setGroupName(line.nextString());
+                    break;
+                default:
+                    subAfterContext.setContextCode(line.nextInt());
+                    subAfterContext.setTimeStamp(line.nextLong());
+                    if (line.getFieldCount() > TRACE_MSG_SUBAFTER_V3_LEN) {
+                        subAfterContext.setGroupName(line.nextString());
+                    }
+                    log.warn("Detect new version trace msg of {} type", TraceType.SubAfter.name());
+                    break;
+            }
+            return subAfterContext;
+        } else if (line.fieldEquals(TraceType.EndTransaction.name())) {
+            TraceContext endTransactionContext = new TraceContext();
+            endTransactionContext.setTraceType(TraceType.EndTransaction);
+            endTransactionContext.setTimeStamp(line.nextLong());
+            endTransactionContext.setRegionId(line.nextString());
+            endTransactionContext.setGroupName(line.nextString());
+            TraceBean bean = new TraceBean();
+            bean.setTopic(line.nextString());
+            bean.setMsgId(line.nextString());
+            bean.setTags(line.nextString());
+            bean.setKeys(line.nextString());
+            bean.setStoreHost(line.nextString());
+            bean.setMsgType(MESSAGE_TYPES[line.nextInt()]);
+            bean.setTransactionId(line.nextString());
+            bean.setTransactionState(LocalTransactionState.valueOf(line.nextString()));
+            bean.setFromTransactionCheck(line.nextBoolean());
+            endTransactionContext.setTraceBeans(new ArrayList<TraceBean>(1));
+            endTransactionContext.getTraceBeans().add(bean);
+            return endTransactionContext;
+        }
+        return null;
+    }
+
+    /**
+     * Walks the fields of one trace context in place. Trailing empty fields are not counted,
+     * the same as {@link String#split(String)}, since the version of a trace is told by its field count.
+     */
+    private static final class FieldReader {
+        private static final int MAX_FAST_PARSE_DIGITS = 18;
+
+        private final String data;
+
+        private final int end;
+
+        private final int fieldCount;
+
+        private int position;
+
+        private int fieldBegin;
+
+        private int fieldEnd;
+
+        FieldReader(String data, int begin, int end) {
+            while (end > begin && data.charAt(end - 1) == TraceConstants.CONTENT_SPLITOR) {
+                end--;
+            }
+            int count = 1;
+            for (int i = begin; i < end; i++) {
+                if (data.charAt(i) == TraceConstants.CONTENT_SPLITOR) {
+                    count++;
                 }
+            }
+            this.data = data;
+            this.end = end;
+            this.fieldCount = count;
+            this.position = begin;
+        }
+
+        int getFieldCount() {
+            return fieldCount;
+        }
+
+        void next() {
+            if (position > end) {
+                throw new IllegalArgumentException("Trace context has only " + fieldCount + " fields");
+            }
+            fieldBegin = position;
+            int separator = data.indexOf(TraceConstants.CONTENT_SPLITOR, position);
+            fieldEnd = separator < 0 || separator > end ? end : separator;
+            position = fieldEnd + 1;
+        }
+
+        boolean fieldEquals(String value) {
+            return fieldEnd - fieldBegin == value.length() && data.regionMatches(fieldBegin, value, 0, value.length());
+        }
 
-                pubContext.setTraceBeans(new ArrayList<TraceBean>(1));
-                pubContext.getTraceBeans().add(bean);
-                resList.add(pubContext);
-            } else if (line[0].equals(TraceType.SubBefore.name())) {
-                TraceContext subBeforeContext = new TraceContext();
-                subBeforeContext.setTraceType(TraceType.SubBefore);
-                subBeforeContext.setTimeStamp(Long.parseLong(line[1]));
-                subBeforeContext.setRegionId(line[2]);
-                subBeforeContext.setGroupName(line[3]);
-                subBeforeContext.setRequestId(line[4]);
-                TraceBean bean = new TraceBean();
-                bean.setMsgId(line[5]);
-                bean.setRetryTimes(Integer.parseInt(line[6]));
-                bean.setKeys(line[7]);
-                subBeforeContext.setTraceBeans(new ArrayList<TraceBean>(1));
-                subBeforeContext.getTraceBeans().add(bean);
-                resList.add(subBeforeContext);
-            } else if (line[0].equals(TraceType.SubAfter.name())) {
-                TraceContext subAfterContext = new TraceContext();
-                subAfterContext.setTraceType(TraceType.SubAfter);
-                subAfterContext.setRequestId(line[1]);
-                TraceBean bean = new TraceBean();
-                bean.setMsgId(line[2]);
-                bean.setKeys(line[5]);
-                subAfterContext.setTraceBeans(new ArrayList<TraceBean>(1));
-                subAfterContext.getTraceBeans().add(bean);
-                subAfterContext.setCostTime(Integer.parseInt(line[3]));
-                subAfterContext.setSuccess(Boolean.parseBoolean(line[4]));
-                // compatible with different version
-                switch (line.length) {
-                    case TRACE_MSG_SUBAFTER_V1_LEN:
-                        break;
-                    case TRACE_MSG_SUBAFTER_V2_LEN:
-                        subAfterContext.setContextCode(Integer.parseInt(line[6]));
-                        break;
-                    case TRACE_MSG_SUBAFTER_V3_LEN:
-                        subAfterContext.setContextCode(Integer.parseInt(line[6]));
-                        subAfterContext.setTimeStamp(Long.parseLong(line[7]));
-                        break;
-                    default:
-                        subAfterContext.setContextCode(Integer.parseInt(line[6]));
-                        subAfterContext.setTimeStamp(Long.parseLong(line[7]));
-                        log.warn("Detect new version trace msg of {} type", TraceType.SubAfter.name());
-                        break;
+        String nextString() {
+            next();
+            return data.substring(fieldBegin, fieldEnd);
+        }
+
+        boolean nextBoolean() {
+            next();
+            return fieldEnd - fieldBegin == 4 && data.regionMatches(true, fieldBegin, "true", 0, 4);
+        }
+
+        int nextInt() {
+            long value = nextLong();
+            if ((int) value != value) {
+                throw new NumberFormatException("Value out of int range: " + value);
+            }
+            return (int) value;
+        }
+
+        long nextLong() {
+            next();
+            int i = fieldBegin;
+            boolean negative = false;
+            if (i < fieldEnd && (data.charAt(i) == '-' || data.charAt(i) == '+')) {
+                negative = data.charAt(i) == '-';
+                i++;
+            }
+            if (i == fieldEnd || fieldEnd - i > MAX_FAST_PARSE_DIGITS) {
+                return Long.parseLong(data.substring(fieldBegin, fieldEnd));
+            }
+            long value = 0;
+            for (; i < fieldEnd; i++) {
+                int digit = data.charAt(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    throw new NumberFormatException("For input string: \"" + data.substring(fieldBegin, fieldEnd) + "\"");
                 }
-                resList.add(subAfterContext);
-            } else if (line[0].equals(TraceType.EndTransaction.name())) {
-                TraceContext endTransactionContext = new TraceContext();
-                endTransactionContext.setTraceType(TraceType.EndTransaction);
-                endTransactionContext.setTimeStamp(Long.parseLong(line[1]));
-                endTransactionContext.setRegionId(line[2]);
-                endTransactionContext.setGroupName(line[3]);
-                TraceBean bean = new TraceBean();
-                bean.setTopic(line[4]);
-                bean.setMsgId(line[5]);
-                bean.setTags(line[6]);
-                bean.setKeys(line[7]);
-                bean.setStoreHost(line[8]);
-                bean.setMsgType(MessageType.values()[Integer.parseInt(line[9])]);
-                bean.setTransactionId(line[10]);
-                bean.setTransactionState(LocalTransactionState.valueOf(line[11]));
-                bean.setFromTransactionCheck(Boolean.parseBoolean(line[12]));
-                endTransactionContext.setTraceBeans(new ArrayList<TraceBean>(1));
-                endTransactionContext.getTraceBeans().add(bean);
-                resList.add(endTransactionContext);
+                value = value * 10 + digit;
             }
+            return negative ? -value : value;
         }
-        return resList;
     }
 }
@@ -36,13 +36,13 @@ public class DashboardCollectServiceImplTest extends RocketMQConsoleTestBase {
     private DashboardCollectService dashboardCollectService;
 
     @Test
-    public void getBrokerMap() throws Exception {
-        Assert.assertNotNull(dashboardCollectService.getBrokerMap());
+    public void getBrokerStore() throws Exception {
+        Assert.assertNotNull(dashboardCollectService.getBrokerStore());
     }
 
     @Test
-    public void getTopicMap() throws Exception {
-        Assert.assertNotNull(dashboardCollectService.getTopicMap());
+    public void getTopicStore() throws Exception {
+        Assert.assertNotNull(dashboardCollectService.getTopicStore());
     }
 
     @Test
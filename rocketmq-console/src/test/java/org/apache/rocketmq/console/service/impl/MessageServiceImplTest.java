@@ -18,13 +18,28 @@
 package org.apache.rocketmq.console.service.impl;
 
 import com.google.common.base.Function;
+import com.google.common.cache.Cache;
 import com.google.common.collect.Lists;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.annotation.Resource;
 import org.apache.commons.collections.CollectionUtils;
+import org.apache.rocketmq.client.consumer.DefaultMQPullConsumer;
+import org.apache.rocketmq.client.consumer.PullResult;
+import org.apache.rocketmq.client.consumer.PullStatus;
+import org.apache.rocketmq.client.exception.MQClientException;
 import org.apache.rocketmq.common.Pair;
 import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.console.model.MessagePage;
 import org.apache.rocketmq.console.model.MessageView;
+import org.apache.rocketmq.console.model.QueueOffsetInfo;
+import org.apache.rocketmq.console.model.request.MessageQuery;
 import org.apache.rocketmq.console.service.MessageService;
 import org.apache.rocketmq.console.testbase.RocketMQConsoleTestBase;
 import org.apache.rocketmq.tools.admin.MQAdminExt;
@@ -34,10 +49,21 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
 
 @RunWith(SpringRunner.class)
 @SpringBootTest
@@ -107,6 +133,101 @@ public class MessageServiceImplTest extends RocketMQConsoleTestBase {
                 return input.getMsgId();
             }
         }).contains(messageId));
+        for (int i = 1; i < messageViewList.size(); i++) {
+            Assert.assertTrue(messageViewList.get(i - 1).getStoreTimestamp() >= messageViewList.get(i).getStoreTimestamp());
+        }
+    }
+
+    @Test
+    public void queryMessageByPage() throws Exception {
+        // two queues of ten messages, stored every 10 ms and 5 ms apart from each other
+        final MessageQueue mq0 = new MessageQueue(TEST_CONSOLE_TOPIC, "broker-a", 0);
+        final MessageQueue mq1 = new MessageQueue(TEST_CONSOLE_TOPIC, "broker-a", 1);
+        final Map<MessageQueue, List<MessageExt>> queues = new HashMap<>();
+        queues.put(mq0, createQueueMessages(mq0, 1000));
+        queues.put(mq1, createQueueMessages(mq1, 1005));
+        DefaultMQPullConsumer consumer = mock(DefaultMQPullConsumer.class);
+        when(consumer.fetchSubscribeMessageQueues(anyString())).thenReturn(new LinkedHashSet<>(Lists.newArrayList(mq0, mq1)));
+        // the broker only finds coarse offsets, the exact ones are left to the binary search
+        when(consumer.searchOffset(any(MessageQueue.class), anyLong())).thenAnswer(new Answer<Long>() {
+            @Override public Long answer(InvocationOnMock invocation) {
+                return (Long) invocation.getArgument(1) < 1050 ? 0L : 9L;
+            }
+        });
+        final AtomicBoolean mq1Failing = new AtomicBoolean();
+        when(consumer.pull(any(MessageQueue.class), anyString(), anyLong(), anyInt())).thenAnswer(new Answer<PullResult>() {
+            @Override public PullResult answer(InvocationOnMock invocation) throws Exception {
+                MessageQueue mq = invocation.getArgument(0);
+                if (mq.equals(mq1) && mq1Failing.get()) {
+                    throw new MQClientException(-1, "pull failed");
+                }
+                List<MessageExt> messages = queues.get(mq);
+                int offset = (int) (long) (Long) invocation.getArgument(2);
+                if (offset >= messages.size()) {
+                    return new PullResult(PullStatus.NO_NEW_MSG, offset, 0, messages.size(), new ArrayList<MessageExt>());
+                }
+                int to = Math.min(offset + (Integer) invocation.getArgument(3), messages.size());
+                return new PullResult(PullStatus.FOUND, to, 0, messages.size(), new ArrayList<>(messages.subList(offset, to)));
+            }
+        });
+        MessageServiceImpl pageService = spy((MessageServiceImpl) messageService);
+        doReturn(consumer).when(pageService).buildDefaultMQPullConsumer(any());
+
+        MessageQuery query = new MessageQuery();
+        query.setTopic(TEST_CONSOLE_TOPIC);
+        query.setTaskId("");
+        query.setPageNum(1);
+        query.setPageSize(4);
+        query.setBegin(1020);
+        query.setEnd(1065);
+        MessagePage messagePage = pageService.queryMessageByPage(query);
+        Assert.assertEquals(10, messagePage.getPage().getTotalElements());
+        Assert.assertEquals(Lists.newArrayList(1035L, 1030L, 1025L, 1020L), storeTimestamps(messagePage));
+
+        // the offsets of the messages stored within [begin, end] are kept for the next pages
+        Field field = MessageServiceImpl.class.getDeclaredField("CACHE");
+        field.setAccessible(true);
+        List<QueueOffsetInfo> queueOffsetInfos =
+            ((Cache<String, List<QueueOffsetInfo>>) field.get(null)).getIfPresent(messagePage.getTaskId());
+        Assert.assertEquals(2, queueOffsetInfos.size());
+        for (QueueOffsetInfo queueOffsetInfo : queueOffsetInfos) {
+            Assert.assertEquals(2L, (long) queueOffsetInfo.getStart());
+            Assert.assertEquals(7L, (long) queueOffsetInfo.getEnd());
+        }
+
+        query.setTaskId(messagePage.getTaskId());
+        query.setPageNum(2);
+        Assert.assertEquals(Lists.newArrayList(1055L, 1050L, 1045L, 1040L), storeTimestamps(pageService.queryMessageByPage(query)));
+        query.setPageNum(3);
+        Assert.assertEquals(Lists.newArrayList(1065L, 1060L), storeTimestamps(pageService.queryMessageByPage(query)));
+
+        // a queue that cannot be pulled is left out of the page instead of failing it
+        mq1Failing.set(true);
+        query.setPageNum(2);
+        Assert.assertEquals(Lists.newArrayList(1050L, 1040L), storeTimestamps(pageService.queryMessageByPage(query)));
+    }
+
+    private static List<MessageExt> createQueueMessages(MessageQueue mq, long firstStoreTimestamp) {
+        List<MessageExt> messages = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            MessageExt messageExt = new MessageExt();
+            messageExt.setTopic(mq.getTopic());
+            messageExt.setBrokerName(mq.getBrokerName());
+            messageExt.setQueueId(mq.getQueueId());
+            messageExt.setQueueOffset(i);
+            messageExt.setStoreTimestamp(firstStoreTimestamp + i * 10);
+            messageExt.setBody(TEST_TOPIC_MESSAGE_BODY.getBytes());
+            messages.add(messageExt);
+        }
+        return messages;
+    }
+
+    private static List<Long> storeTimestamps(MessagePage messagePage) {
+        List<Long> storeTimestamps = new ArrayList<>();
+        for (MessageView messageView : messagePage.getPage().getContent()) {
+            storeTimestamps.add(messageView.getStoreTimestamp());
+        }
+        return storeTimestamps;
     }
 
     @Test
@@ -21,6 +21,7 @@ import lombok.SneakyThrows;
 import org.apache.rocketmq.client.QueryResult;
 import org.apache.rocketmq.client.producer.LocalTransactionState;
 import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.topic.TopicValidator;
 import org.apache.rocketmq.console.config.RMQConfigure;
 import org.apache.rocketmq.console.model.MessageTraceView;
 import org.apache.rocketmq.console.model.trace.MessageTraceGraph;
@@ -135,4 +136,21 @@ public class MessageTraceServiceImplTest {
             Assertions.assertEquals(0, view.getRetryTimes());
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    @SneakyThrows
+    public void queryMessageTraceGraphCachedTest() {
+        Mockito.when(rmqConfigure.getMsgTrackTopicName()).thenReturn("CustomTraceTopic");
+        List<MessageExt> messageTraceList = Lists.newArrayList(fakeMessageExt, fakeMessageExt2, fakeMessageExt3);
+        Mockito.when(mqAdminExt.queryMessage(Mockito.eq("CustomTraceTopic"), Mockito.anyString(),
+            Mockito.anyInt(), Mockito.anyLong(), Mockito.anyLong())).thenReturn(new QueryResult(1, messageTraceList));
+        MessageTraceGraph messageTraceGraph = messageTraceService.queryMessageTraceGraph(TEST_MESSAGE_ID);
+        Assertions.assertEquals(3, messageTraceGraph.getMessageTraceViews().size());
+        Assertions.assertSame(messageTraceGraph, messageTraceService.queryMessageTraceGraph(TEST_MESSAGE_ID));
+        Mockito.verify(mqAdminExt, Mockito.times(1)).queryMessage(Mockito.eq("CustomTraceTopic"), Mockito.anyString(),
+            Mockito.anyInt(), Mockito.anyLong(), Mockito.anyLong());
+        // the system trace topic is only the fallback of an unset trace topic
+        Mockito.verify(mqAdminExt, Mockito.never()).queryMessage(Mockito.eq(TopicValidator.RMQ_SYS_TRACE_TOPIC),
+            Mockito.anyString(), Mockito.anyInt(), Mockito.anyLong(), Mockito.anyLong());
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.rocketmq.console.service.timeseries;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.lang3.time.DateFormatUtils;
+import org.apache.rocketmq.common.UtilAll;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TimeSeriesStoreTest {
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    private File dataDir;
+
+    private Map<String, Map<String, List<String>>> legacyData = Maps.newHashMap();
+
+    @Before
+    public void init() {
+        dataDir = Files.createTempDir();
+    }
+
+    @After
+    public void destroy() throws Exception {
+        UtilAll.deleteFile(dataDir);
+    }
+
+    @Test
+    public void testAppendFlushAndReload() throws Exception {
+        long now = System.currentTimeMillis();
+        TimeSeriesStore store = newStore();
+        store.append("TopicA", now, 1.5, 10, 0.5, 3);
+        store.append("TopicB", now, 2, 20, 0, 0);
+        store.flush();
+        store.append("TopicA", now + 1, 2.5, 11, 0.5, 4);
+        store.flush();
+
+        TimeSeriesStore reloaded = newStore();
+        Assert.assertArrayEquals(new double[] {2.5, 11, 0.5, 4}, reloaded.lastRow("TopicA"), 0);
+        Map<String, List<String>> text = reloaded.queryText(today());
+        Assert.assertEquals(Lists.newArrayList(now + ",1.50000,10,0.50000,3", (now + 1) + ",2.50000,11,0.50000,4"),
+            text.get("TopicA"));
+        Assert.assertEquals(1, text.get("TopicB").size());
+    }
+
+    @Test
+    public void testPartialRecordIsTruncated() throws Exception {
+        long now = System.currentTimeMillis();
+        TimeSeriesStore store = newStore();
+        store.append("TopicA", now, 1, 1, 1, 1);
+        store.flush();
+        File segment = new File(dataDir, today() + "_topic.seg");
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            raf.seek(raf.length());
+            raf.write(new byte[] {2, 0, 0});
+        }
+
+        TimeSeriesStore reloaded = newStore();
+        reloaded.append("TopicA", now + 1, 2, 2, 2, 2);
+        reloaded.flush();
+        Assert.assertEquals(2, newStore().query(today()).get("TopicA").size());
+    }
+
+    @Test
+    public void testCorruptRecordIsTruncated() throws Exception {
+        long now = System.currentTimeMillis();
+        TimeSeriesStore store = newStore();
+        store.append("TopicA", now, 1, 1, 1, 1);
+        store.flush();
+        File segment = new File(dataDir, today() + "_topic.seg");
+        long validLength = segment.length();
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            // a complete sample record of a series that was never defined
+            raf.seek(raf.length());
+            raf.writeByte(2);
+            raf.writeInt(99);
+            raf.writeLong(now);
+            for (int i = 0; i < 4; i++) {
+                raf.writeDouble(1);
+            }
+        }
+
+        TimeSeriesStore reloaded = newStore();
+        Assert.assertNotNull(reloaded.lastRow("TopicA"));
+        Assert.assertEquals(validLength, segment.length());
+        reloaded.append("TopicB", now + 1, 2, 2, 2, 2);
+        reloaded.flush();
+        Map<String, TimeSeries> series = newStore().query(today());
+        Assert.assertEquals(1, series.get("TopicA").size());
+        Assert.assertEquals(1, series.get("TopicB").size());
+    }
+
+    @Test
+    public void testCorruptHeader() throws Exception {
+        File segment = new File(dataDir, today() + "_topic.seg");
+        Files.write(new byte[64], segment);
+
+        long now = System.currentTimeMillis();
+        TimeSeriesStore store = newStore();
+        Assert.assertNull(store.lastRow("TopicA"));
+        store.append("TopicA", now, 1, 1, 1, 1);
+        store.flush();
+        Assert.assertTrue(new File(segment.getPath() + ".corrupt").exists());
+        Assert.assertEquals(1, newStore().query(today()).get("TopicA").size());
+    }
+
+    @Test
+    public void testRangeQuery() throws Exception {
+        long now = System.currentTimeMillis();
+        TimeSeriesStore store = newStore();
+        for (int i = 0; i < 10; i++) {
+            store.append("TopicA", now + i, i, i, i, i);
+        }
+        TimeSeries range = store.query("TopicA", now + 3, now + 5);
+        Assert.assertEquals(3, range.size());
+        Assert.assertEquals(now + 3, range.timestampAt(0));
+        Assert.assertEquals(5, range.valueAt(2, 1), 0);
+
+        // the days before the retention and after today are not looked up
+        Assert.assertEquals(10, store.query("TopicA", 0, Long.MAX_VALUE).size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRangeQueryEndBeforeBegin() {
+        long now = System.currentTimeMillis();
+        newStore().query("TopicA", now, now - 1);
+    }
+
+    @Test
+    public void testExpireSegments() throws Exception {
+        Map<String, TimeSeries> day = Maps.newHashMap();
+        TimeSeries series = new TimeSeries(4);
+        for (int i = 0; i < 30; i++) {
+            series.append(i * MINUTE, i, i, i, i);
+        }
+        day.put("TopicA", series);
+        File expired = new File(dataDir, daysAgo(31) + "_topic.seg");
+        File downsampled = new File(dataDir, daysAgo(10) + "_topic.seg");
+        File raw = new File(dataDir, daysAgo(1) + "_topic.seg");
+        for (File file : new File[] {expired, downsampled, raw}) {
+            TimeSeriesSegment.write(file, 4, 0, day);
+        }
+
+        TimeSeriesStore store = newStore();
+        store.expireSegments();
+        Assert.assertFalse(expired.exists());
+        Assert.assertEquals(10 * MINUTE, TimeSeriesSegment.readDownsampleInterval(downsampled));
+        Assert.assertEquals(3, store.query(daysAgo(10)).get("TopicA").size());
+        Assert.assertEquals(30, store.query(daysAgo(1)).get("TopicA").size());
+    }
+
+    @Test
+    public void testLegacyDataFile() throws Exception {
+        Map<String, List<String>> day = Maps.newHashMap();
+        day.put("TopicA", Lists.newArrayList("1000,1.00000,5,0.00000,0", "2000,2.00000,6,1.00000,1"));
+        legacyData.put("2021-01-01", day);
+        TimeSeries series = newStore().query("2021-01-01").get("TopicA");
+        Assert.assertEquals(2, series.size());
+        Assert.assertEquals(6, series.valueAt(1, 1), 0);
+    }
+
+    @Test
+    public void testDownsample() {
+        TimeSeries series = new TimeSeries(1);
+        for (int i = 0; i < 30; i++) {
+            series.append(i * MINUTE, i);
+        }
+        TimeSeries downsampled = series.downsample(10 * MINUTE);
+        Assert.assertEquals(3, downsampled.size());
+        Assert.assertEquals(10 * MINUTE, downsampled.timestampAt(1));
+        Assert.assertEquals(14.5, downsampled.valueAt(1, 0), 0);
+    }
+
+    private TimeSeriesStore newStore() {
+        return new TimeSeriesStore("topic", dataDir.getPath(), new int[] {5, 0, 5, 0}, 7, 30, 10 * MINUTE,
+            new Function<String, Map<String, List<String>>>() {
+                @Override
+                public Map<String, List<String>> apply(String date) {
+                    return legacyData.get(date);
+                }
+            });
+    }
+
+    private static String daysAgo(int days) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.add(Calendar.DAY_OF_MONTH, -days);
+        return DateFormatUtils.format(calendar, "yyyy-MM-dd");
+    }
+
+    private static String today() {
+        return DateFormatUtils.format(System.currentTimeMillis(), "yyyy-MM-dd");
+    }
+}
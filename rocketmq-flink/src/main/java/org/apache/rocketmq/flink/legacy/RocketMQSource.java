@@ -15,6 +15,7 @@
 package org.apache.rocketmq.flink.legacy;
 
 import org.apache.rocketmq.client.consumer.DefaultMQPullConsumer;
+import org.apache.rocketmq.client.consumer.PullCallback;
 import org.apache.rocketmq.client.consumer.PullResult;
 import org.apache.rocketmq.client.exception.MQClientException;
 import org.apache.rocketmq.common.message.MessageExt;
@@ -46,8 +47,6 @@ import org.apache.flink.streaming.api.functions.source.RichParallelSourceFunctio
 import org.apache.flink.streaming.api.operators.StreamingRuntimeContext;
 import org.apache.flink.util.Preconditions;
 
-import org.apache.flink.shaded.curator4.com.google.common.util.concurrent.ThreadFactoryBuilder;
-
 import org.apache.commons.collections.map.LinkedMap;
 import org.apache.commons.lang.Validate;
 import org.slf4j.Logger;
@@ -55,25 +54,27 @@ import org.slf4j.LoggerFactory;
 
 import java.lang.management.ManagementFactory;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantLock;
 
 import static org.apache.rocketmq.flink.legacy.RocketMQConfig.CONSUMER_BATCH_SIZE;
+import static org.apache.rocketmq.flink.legacy.RocketMQConfig.CONSUMER_DELAY_WHEN_MESSAGE_NOT_FOUND;
 import static org.apache.rocketmq.flink.legacy.RocketMQConfig.CONSUMER_OFFSET_EARLIEST;
 import static org.apache.rocketmq.flink.legacy.RocketMQConfig.CONSUMER_OFFSET_LATEST;
 import static org.apache.rocketmq.flink.legacy.RocketMQConfig.CONSUMER_OFFSET_TIMESTAMP;
 import static org.apache.rocketmq.flink.legacy.RocketMQConfig.DEFAULT_CONSUMER_BATCH_SIZE;
+import static org.apache.rocketmq.flink.legacy.RocketMQConfig.DEFAULT_CONSUMER_DELAY_WHEN_MESSAGE_NOT_FOUND;
 import static org.apache.rocketmq.flink.legacy.common.util.RocketMQUtils.getInteger;
 import static org.apache.rocketmq.flink.legacy.common.util.RocketMQUtils.getLong;
 
@@ -96,7 +97,6 @@ public class RocketMQSource<OUT> extends RichParallelSourceFunction<OUT>
     private Map<MessageQueue, Long> offsetTable;
     private Map<MessageQueue, Long> restoredOffsets;
     private List<MessageQueue> messageQueues;
-    private ExecutorService executor;
 
     // watermark in source
     private WaterMarkPerQueue waterMarkPerQueue;
@@ -111,7 +111,6 @@ public class RocketMQSource<OUT> extends RichParallelSourceFunction<OUT>
     private String group;
     private transient volatile boolean restored;
     private transient boolean enableCheckpoint;
-    private volatile Object checkPointLock;
 
     private Meter tpsMetric;
 
@@ -147,9 +146,6 @@ public class RocketMQSource<OUT> extends RichParallelSourceFunction<OUT>
         if (pendingOffsetsToCommit == null) {
             pendingOffsetsToCommit = new LinkedMap();
         }
-        if (checkPointLock == null) {
-            checkPointLock = new ReentrantLock();
-        }
         if (waterMarkPerQueue == null) {
             waterMarkPerQueue = new WaterMarkPerQueue(5000);
         }
@@ -163,13 +159,6 @@ public class RocketMQSource<OUT> extends RichParallelSourceFunction<OUT>
         runningChecker = new RunningChecker();
         runningChecker.setRunning(true);
 
-        final ThreadFactory threadFactory =
-                new ThreadFactoryBuilder()
-                        .setDaemon(true)
-                        .setNameFormat("rmq-pull-thread-%d")
-                        .build();
-        executor = Executors.newCachedThreadPool(threadFactory);
-
         int indexOfThisSubTask = getRuntimeContext().getIndexOfThisSubtask();
         consumer = new DefaultMQPullConsumer(group, RocketMQConfig.buildAclRPCHook(props));
         RocketMQConfig.buildConsumerConfigs(props, consumer);
@@ -202,18 +191,27 @@ public class RocketMQSource<OUT> extends RichParallelSourceFunction<OUT>
         String tag =
                 props.getProperty(RocketMQConfig.CONSUMER_TAG, RocketMQConfig.DEFAULT_CONSUMER_TAG);
         int pullBatchSize = getInteger(props, CONSUMER_BATCH_SIZE, DEFAULT_CONSUMER_BATCH_SIZE);
+        long delayWhenMessageNotFound =
+                getLong(
+                        props,
+                        CONSUMER_DELAY_WHEN_MESSAGE_NOT_FOUND,
+                        DEFAULT_CONSUMER_DELAY_WHEN_MESSAGE_NOT_FOUND);
 
         final RuntimeContext ctx = getRuntimeContext();
-        // The lock that guarantees that record emission and state updates are atomic,
-        // from the view of taking a checkpoint.
         int taskNumber = ctx.getNumberOfParallelSubtasks();
         int taskIndex = ctx.getIndexOfThisSubtask();
         log.info("Source run, NumberOfTotalTask={}, IndexOfThisSubTask={}", taskNumber, taskIndex);
 
+        // The lock that guarantees that record emission and state updates are atomic,
+        // from the view of taking a checkpoint.
+        final Object checkPointLock = context.getCheckpointLock();
+
         timer.scheduleAtFixedRate(
                 () -> {
-                    // context.emitWatermark(waterMarkPerQueue.getCurrentWatermark());
-                    context.emitWatermark(waterMarkForAll.getCurrentWatermark());
+                    synchronized (checkPointLock) {
+                        // context.emitWatermark(waterMarkPerQueue.getCurrentWatermark());
+                        context.emitWatermark(waterMarkForAll.getCurrentWatermark());
+                    }
                 },
                 5,
                 5,
@@ -222,107 +220,150 @@ public class RocketMQSource<OUT> extends RichParallelSourceFunction<OUT>
         Collection<MessageQueue> totalQueues = consumer.fetchSubscribeMessageQueues(topic);
         messageQueues =
                 RocketMQUtils.allocate(totalQueues, taskNumber, ctx.getIndexOfThisSubtask());
+
+        // All queues are pulled asynchronously and their results are emitted from this thread.
+        // A queue has at most one pull in flight and is pulled again only once its previous
+        // batch has been emitted, so a back-pressured collect stops pulling instead of
+        // buffering.
+        BlockingQueue<PullResponse> responses = new LinkedBlockingQueue<>();
+        Map<MessageQueue, QueueState> queueStates = new HashMap<>(messageQueues.size());
         for (MessageQueue mq : messageQueues) {
-            this.executor.execute(
-                    () -> {
-                        RetryUtil.call(
-                                () -> {
-                                    while (runningChecker.isRunning()) {
-                                        try {
-                                            long offset = getMessageQueueOffset(mq);
-                                            PullResult pullResult =
-                                                    consumer.pullBlockIfNotFound(
-                                                            mq, tag, offset, pullBatchSize);
-
-                                            boolean found = false;
-                                            switch (pullResult.getPullStatus()) {
-                                                case FOUND:
-                                                    List<MessageExt> messages =
-                                                            pullResult.getMsgFoundList();
-                                                    for (MessageExt msg : messages) {
-                                                        byte[] key =
-                                                                msg.getKeys() != null
-                                                                        ? msg.getKeys()
-                                                                                .getBytes(
-                                                                                        StandardCharsets
-                                                                                                .UTF_8)
-                                                                        : null;
-                                                        byte[] value = msg.getBody();
-                                                        OUT data =
-                                                                schema.deserializeKeyAndValue(
-                                                                        key, value);
-
-                                                        // output and state update are atomic
-                                                        synchronized (checkPointLock) {
-                                                            log.debug(
-                                                                    msg.getMsgId()
-                                                                            + "_"
-                                                                            + msg.getBrokerName()
-                                                                            + " "
-                                                                            + msg.getQueueId()
-                                                                            + " "
-                                                                            + msg.getQueueOffset());
-                                                            context.collectWithTimestamp(
-                                                                    data, msg.getBornTimestamp());
-
-                                                            // update max eventTime per queue
-                                                            // waterMarkPerQueue.extractTimestamp(mq, msg.getBornTimestamp());
-                                                            waterMarkForAll.extractTimestamp(
-                                                                    msg.getBornTimestamp());
-                                                            tpsMetric.markEvent();
-                                                        }
-                                                    }
-                                                    found = true;
-                                                    break;
-                                                case NO_MATCHED_MSG:
-                                                    log.debug(
-                                                            "No matched message after offset {} for queue {}",
-                                                            offset,
-                                                            mq);
-                                                    break;
-                                                case NO_NEW_MSG:
-                                                    log.debug(
-                                                            "No new message after offset {} for queue {}",
-                                                            offset,
-                                                            mq);
-                                                    break;
-                                                case OFFSET_ILLEGAL:
-                                                    log.warn(
-                                                            "Offset {} is illegal for queue {}",
-                                                            offset,
-                                                            mq);
-                                                    break;
-                                                default:
-                                                    break;
-                                            }
-
-                                            synchronized (checkPointLock) {
-                                                updateMessageQueueOffset(
-                                                        mq, pullResult.getNextBeginOffset());
-                                            }
-
-                                            if (!found) {
-                                                RetryUtil.waitForMs(
-                                                        RocketMQConfig
-                                                                .DEFAULT_CONSUMER_DELAY_WHEN_MESSAGE_NOT_FOUND);
-                                            }
-                                        } catch (Exception e) {
-                                            throw new RuntimeException(e);
-                                        }
-                                    }
-                                    return true;
-                                },
-                                "RuntimeException");
+            queueStates.put(mq, new QueueState());
+        }
+        List<OUT> batch = new ArrayList<>(pullBatchSize);
+        while (runningChecker.isRunning()) {
+            long now = System.currentTimeMillis();
+            long pollTimeout = delayWhenMessageNotFound;
+            for (Map.Entry<MessageQueue, QueueState> entry : queueStates.entrySet()) {
+                QueueState state = entry.getValue();
+                if (state.inFlight) {
+                    continue;
+                }
+                if (state.nextPullTime > now) {
+                    pollTimeout = Math.min(pollTimeout, state.nextPullTime - now);
+                    continue;
+                }
+                pullAsync(entry.getKey(), state, tag, pullBatchSize, responses);
+            }
+
+            PullResponse response = responses.poll(Math.max(pollTimeout, 1), TimeUnit.MILLISECONDS);
+            while (response != null && runningChecker.isRunning()) {
+                QueueState state = queueStates.get(response.mq);
+                state.inFlight = false;
+                if (response.error != null) {
+                    onPullFailure(response.mq, state, response.error);
+                    response = responses.poll();
+                    continue;
+                }
+                state.retries = 0;
+                if (!emit(context, response, batch, checkPointLock)) {
+                    state.nextPullTime = System.currentTimeMillis() + delayWhenMessageNotFound;
+                }
+                response = responses.poll();
+            }
+        }
+    }
+
+    private void pullAsync(
+            MessageQueue mq,
+            QueueState state,
+            String tag,
+            int pullBatchSize,
+            BlockingQueue<PullResponse> responses) {
+        state.inFlight = true;
+        try {
+            long offset = getMessageQueueOffset(mq);
+            consumer.pullBlockIfNotFound(
+                    mq,
+                    tag,
+                    offset,
+                    pullBatchSize,
+                    new PullCallback() {
+                        @Override
+                        public void onSuccess(PullResult pullResult) {
+                            responses.add(new PullResponse(mq, offset, pullResult, null));
+                        }
+
+                        @Override
+                        public void onException(Throwable e) {
+                            responses.add(new PullResponse(mq, offset, null, e));
+                        }
                     });
+        } catch (Exception e) {
+            responses.add(new PullResponse(mq, -1, null, e));
+        }
+    }
+
+    /**
+     * Emits the messages of a pull result and advances the offset of its queue under a single
+     * acquisition of the checkpoint lock.
+     *
+     * @return whether any message was found
+     */
+    private boolean emit(
+            SourceContext<OUT> context,
+            PullResponse response,
+            List<OUT> batch,
+            Object checkPointLock)
+            throws MQClientException {
+        MessageQueue mq = response.mq;
+        PullResult pullResult = response.pullResult;
+        List<MessageExt> messages = Collections.emptyList();
+        switch (pullResult.getPullStatus()) {
+            case FOUND:
+                messages = pullResult.getMsgFoundList();
+                batch.clear();
+                for (MessageExt msg : messages) {
+                    byte[] key =
+                            msg.getKeys() != null
+                                    ? msg.getKeys().getBytes(StandardCharsets.UTF_8)
+                                    : null;
+                    batch.add(schema.deserializeKeyAndValue(key, msg.getBody()));
+                }
+                break;
+            case NO_MATCHED_MSG:
+                log.debug("No matched message after offset {} for queue {}", response.offset, mq);
+                break;
+            case NO_NEW_MSG:
+                log.debug("No new message after offset {} for queue {}", response.offset, mq);
+                break;
+            case OFFSET_ILLEGAL:
+                log.warn("Offset {} is illegal for queue {}", response.offset, mq);
+                break;
+            default:
+                break;
         }
 
-        awaitTermination();
+        // output and state update are atomic
+        synchronized (checkPointLock) {
+            for (int i = 0; i < messages.size(); i++) {
+                long bornTimestamp = messages.get(i).getBornTimestamp();
+                context.collectWithTimestamp(batch.get(i), bornTimestamp);
+                // update max eventTime per queue
+                // waterMarkPerQueue.extractTimestamp(mq, bornTimestamp);
+                waterMarkForAll.extractTimestamp(bornTimestamp);
+            }
+            updateMessageQueueOffset(mq, pullResult.getNextBeginOffset());
+        }
+        if (!messages.isEmpty()) {
+            tpsMetric.markEvent(messages.size());
+        }
+        batch.clear();
+        return !messages.isEmpty();
     }
 
-    private void awaitTermination() throws InterruptedException {
-        while (runningChecker.isRunning()) {
-            Thread.sleep(50);
+    private void onPullFailure(MessageQueue mq, QueueState state, Throwable error) {
+        if (state.retries >= RetryUtil.MAX_ATTEMPTS) {
+            throw new RuntimeException("Failed to pull messages from queue " + mq, error);
         }
+        log.error(
+                "Pull from queue {} failed, retry {}/{}",
+                mq,
+                state.retries,
+                RetryUtil.MAX_ATTEMPTS,
+                error);
+        state.nextPullTime = System.currentTimeMillis() + RetryUtil.getBackoff(state.retries);
+        state.retries++;
     }
 
     private long getMessageQueueOffset(MessageQueue mq) throws MQClientException {
@@ -525,4 +566,26 @@ public class RocketMQSource<OUT> extends RichParallelSourceFunction<OUT>
             consumer.updateConsumeOffset(entry.getKey(), entry.getValue());
         }
     }
+
+    /** Pull state of a message queue, only accessed by the thread running the source. */
+    private static class QueueState {
+        private boolean inFlight;
+        private long nextPullTime;
+        private int retries;
+    }
+
+    /** Outcome of an asynchronous pull, handed from the callback to the source thread. */
+    private static class PullResponse {
+        private final MessageQueue mq;
+        private final long offset;
+        private final PullResult pullResult;
+        private final Throwable error;
+
+        private PullResponse(MessageQueue mq, long offset, PullResult pullResult, Throwable error) {
+            this.mq = mq;
+            this.offset = offset;
+            this.pullResult = pullResult;
+            this.error = error;
+        }
+    }
 }
@@ -24,7 +24,7 @@ public class RetryUtil {
 
     private static final long INITIAL_BACKOFF = 200;
     private static final long MAX_BACKOFF = 5000;
-    private static final int MAX_ATTEMPTS = 5;
+    public static final int MAX_ATTEMPTS = 5;
 
     private RetryUtil() {}
 
@@ -36,6 +36,15 @@ public class RetryUtil {
         }
     }
 
+    /** Returns the time to wait before the given retry, following the backoff of {@link #call}. */
+    public static long getBackoff(int retries) {
+        long backoff = INITIAL_BACKOFF;
+        for (int i = 0; i < retries && backoff < MAX_BACKOFF; i++) {
+            backoff = Math.min(backoff * 2, MAX_BACKOFF);
+        }
+        return backoff;
+    }
+
     public static <T> T call(Callable<T> callable, String errorMsg) throws RuntimeException {
         long backoff = INITIAL_BACKOFF;
         int retries = 0;
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.flink.sink;
+
+import org.apache.rocketmq.flink.sink.writer.RocketMQSinkWriter;
+import org.apache.rocketmq.flink.sink.writer.serializer.RocketMQSerializationSchema;
+
+import org.apache.flink.api.connector.sink.Committer;
+import org.apache.flink.api.connector.sink.GlobalCommitter;
+import org.apache.flink.api.connector.sink.Sink;
+import org.apache.flink.api.connector.sink.SinkWriter;
+import org.apache.flink.core.io.SimpleVersionedSerializer;
+import org.apache.flink.util.Preconditions;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The Sink implementation of RocketMQ.
+ *
+ * <p>Messages are batched per message queue and sent asynchronously. Every checkpoint waits until
+ * the messages written before it are acknowledged, which gives at-least-once delivery without
+ * anything to commit afterwards, so the sink has no committer.
+ */
+public class RocketMQSink<IN> implements Sink<IN, Void, Void, Void> {
+    private static final long serialVersionUID = -1L;
+
+    private final String producerGroup;
+    private final String nameServerAddress;
+    private final int batchSize;
+    private final int batchMaxBytes;
+    private final long lingerMs;
+    private final int maxInFlightBatches;
+    private final RocketMQSerializationSchema<IN> serializationSchema;
+
+    /**
+     * @param batchSize the maximum number of messages sent in one batch
+     * @param batchMaxBytes the maximum encoded size of a batch
+     * @param lingerMs how long a batch waits for more messages, 0 to send every message at once
+     * @param maxInFlightBatches the maximum number of unacknowledged batches of a writer
+     */
+    public RocketMQSink(
+            String producerGroup,
+            String nameServerAddress,
+            int batchSize,
+            int batchMaxBytes,
+            long lingerMs,
+            int maxInFlightBatches,
+            RocketMQSerializationSchema<IN> serializationSchema) {
+        Preconditions.checkArgument(batchSize > 0, "batchSize must be positive.");
+        Preconditions.checkArgument(batchMaxBytes > 0, "batchMaxBytes must be positive.");
+        Preconditions.checkArgument(lingerMs >= 0, "lingerMs must not be negative.");
+        Preconditions.checkArgument(maxInFlightBatches > 0, "maxInFlightBatches must be positive.");
+        this.producerGroup = producerGroup;
+        this.nameServerAddress = nameServerAddress;
+        this.batchSize = batchSize;
+        this.batchMaxBytes = batchMaxBytes;
+        this.lingerMs = lingerMs;
+        this.maxInFlightBatches = maxInFlightBatches;
+        this.serializationSchema = serializationSchema;
+    }
+
+    @Override
+    public SinkWriter<IN, Void, Void> createWriter(InitContext context, List<Void> states) {
+        return new RocketMQSinkWriter<>(
+                producerGroup,
+                nameServerAddress,
+                batchSize,
+                batchMaxBytes,
+                lingerMs,
+                maxInFlightBatches,
+                serializationSchema,
+                context);
+    }
+
+    @Override
+    public Optional<Committer<Void>> createCommitter() {
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<GlobalCommitter<Void, Void>> createGlobalCommitter() {
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<SimpleVersionedSerializer<Void>> getCommittableSerializer() {
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<SimpleVersionedSerializer<Void>> getGlobalCommittableSerializer() {
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<SimpleVersionedSerializer<Void>> getWriterStateSerializer() {
+        return Optional.empty();
+    }
+}
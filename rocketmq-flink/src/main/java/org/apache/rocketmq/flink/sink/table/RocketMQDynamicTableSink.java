@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.flink.sink.table;
+
+import org.apache.rocketmq.flink.sink.RocketMQSink;
+import org.apache.rocketmq.flink.sink.writer.serializer.RocketMQRowSerializationSchema;
+
+import org.apache.flink.table.connector.ChangelogMode;
+import org.apache.flink.table.connector.sink.DynamicTableSink;
+import org.apache.flink.table.connector.sink.SinkProvider;
+import org.apache.flink.table.types.DataType;
+import org.apache.flink.table.types.logical.RowType;
+
+/** Defines the dynamic table sink of RocketMQ. */
+public class RocketMQDynamicTableSink implements DynamicTableSink {
+
+    private final DataType physicalDataType;
+    private final String topic;
+    private final String producerGroup;
+    private final String nameServerAddress;
+    private final String tag;
+    private final String encoding;
+    private final String fieldDelimiter;
+    private final int batchSize;
+    private final int batchMaxBytes;
+    private final long lingerMs;
+    private final int maxInFlightBatches;
+
+    public RocketMQDynamicTableSink(
+            DataType physicalDataType,
+            String topic,
+            String producerGroup,
+            String nameServerAddress,
+            String tag,
+            String encoding,
+            String fieldDelimiter,
+            int batchSize,
+            int batchMaxBytes,
+            long lingerMs,
+            int maxInFlightBatches) {
+        this.physicalDataType = physicalDataType;
+        this.topic = topic;
+        this.producerGroup = producerGroup;
+        this.nameServerAddress = nameServerAddress;
+        this.tag = tag;
+        this.encoding = encoding;
+        this.fieldDelimiter = fieldDelimiter;
+        this.batchSize = batchSize;
+        this.batchMaxBytes = batchMaxBytes;
+        this.lingerMs = lingerMs;
+        this.maxInFlightBatches = maxInFlightBatches;
+    }
+
+    @Override
+    public ChangelogMode getChangelogMode(ChangelogMode requestedMode) {
+        return ChangelogMode.insertOnly();
+    }
+
+    @Override
+    public SinkRuntimeProvider getSinkRuntimeProvider(Context context) {
+        return SinkProvider.of(
+                new RocketMQSink<>(
+                        producerGroup,
+                        nameServerAddress,
+                        batchSize,
+                        batchMaxBytes,
+                        lingerMs,
+                        maxInFlightBatches,
+                        new RocketMQRowSerializationSchema(
+                                topic,
+                                tag,
+                                (RowType) physicalDataType.getLogicalType(),
+                                encoding,
+                                fieldDelimiter)));
+    }
+
+    @Override
+    public DynamicTableSink copy() {
+        return new RocketMQDynamicTableSink(
+                physicalDataType,
+                topic,
+                producerGroup,
+                nameServerAddress,
+                tag,
+                encoding,
+                fieldDelimiter,
+                batchSize,
+                batchMaxBytes,
+                lingerMs,
+                maxInFlightBatches);
+    }
+
+    @Override
+    public String asSummaryString() {
+        return "RocketMQDynamicTableSink";
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.flink.sink.table;
+
+import org.apache.rocketmq.flink.source.util.TableOptionUtils;
+
+import org.apache.flink.configuration.ConfigOption;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.table.connector.sink.DynamicTableSink;
+import org.apache.flink.table.factories.DynamicTableSinkFactory;
+import org.apache.flink.table.factories.FactoryUtil;
+import org.apache.flink.table.utils.TableSchemaUtils;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.apache.flink.table.factories.FactoryUtil.createTableFactoryHelper;
+import static org.apache.rocketmq.flink.source.common.RocketMQOptions.CONSUMER_GROUP;
+import static org.apache.rocketmq.flink.source.common.RocketMQOptions.NAME_SERVER_ADDRESS;
+import static org.apache.rocketmq.flink.source.common.RocketMQOptions.OPTIONAL_BATCH_MAX_BYTES;
+import static org.apache.rocketmq.flink.source.common.RocketMQOptions.OPTIONAL_BATCH_SIZE;
+import static org.apache.rocketmq.flink.source.common.RocketMQOptions.OPTIONAL_ENCODING;
+import static org.apache.rocketmq.flink.source.common.RocketMQOptions.OPTIONAL_FIELD_DELIMITER;
+import static org.apache.rocketmq.flink.source.common.RocketMQOptions.OPTIONAL_LINGER_MS;
+import static org.apache.rocketmq.flink.source.common.RocketMQOptions.OPTIONAL_MAX_IN_FLIGHT_BATCHES;
+import static org.apache.rocketmq.flink.source.common.RocketMQOptions.OPTIONAL_TAG;
+import static org.apache.rocketmq.flink.source.common.RocketMQOptions.PRODUCER_GROUP;
+import static org.apache.rocketmq.flink.source.common.RocketMQOptions.TOPIC;
+
+/**
+ * Defines the {@link DynamicTableSinkFactory} implementation to create {@link
+ * RocketMQDynamicTableSink}.
+ */
+public class RocketMQDynamicTableSinkFactory implements DynamicTableSinkFactory {
+
+    @Override
+    public String factoryIdentifier() {
+        return "rocketmq";
+    }
+
+    @Override
+    public Set<ConfigOption<?>> requiredOptions() {
+        Set<ConfigOption<?>> requiredOptions = new HashSet<>();
+        requiredOptions.add(TOPIC);
+        requiredOptions.add(PRODUCER_GROUP);
+        requiredOptions.add(NAME_SERVER_ADDRESS);
+        return requiredOptions;
+    }
+
+    @Override
+    public Set<ConfigOption<?>> optionalOptions() {
+        Set<ConfigOption<?>> optionalOptions = new HashSet<>();
+        // a table can also be read by the source factory
+        optionalOptions.add(CONSUMER_GROUP);
+        optionalOptions.add(OPTIONAL_TAG);
+        optionalOptions.add(OPTIONAL_ENCODING);
+        optionalOptions.add(OPTIONAL_FIELD_DELIMITER);
+        optionalOptions.add(OPTIONAL_BATCH_SIZE);
+        optionalOptions.add(OPTIONAL_BATCH_MAX_BYTES);
+        optionalOptions.add(OPTIONAL_LINGER_MS);
+        optionalOptions.add(OPTIONAL_MAX_IN_FLIGHT_BATCHES);
+        return optionalOptions;
+    }
+
+    @Override
+    public DynamicTableSink createDynamicTableSink(Context context) {
+        TableOptionUtils.normalizeOptionKeys(this, context);
+        FactoryUtil.TableFactoryHelper helper = createTableFactoryHelper(this, context);
+        helper.validate();
+        Configuration configuration = Configuration.fromMap(context.getCatalogTable().getOptions());
+        return new RocketMQDynamicTableSink(
+                TableSchemaUtils.getPhysicalSchema(context.getCatalogTable().getSchema())
+                        .toPhysicalRowDataType(),
+                configuration.getString(TOPIC),
+                configuration.getString(PRODUCER_GROUP),
+                configuration.getString(NAME_SERVER_ADDRESS),
+                configuration.getString(OPTIONAL_TAG),
+                configuration.getString(OPTIONAL_ENCODING),
+                configuration.getString(OPTIONAL_FIELD_DELIMITER),
+                configuration.getInteger(OPTIONAL_BATCH_SIZE),
+                configuration.getInteger(OPTIONAL_BATCH_MAX_BYTES),
+                configuration.getLong(OPTIONAL_LINGER_MS),
+                configuration.getInteger(OPTIONAL_MAX_IN_FLIGHT_BATCHES));
+    }
+}
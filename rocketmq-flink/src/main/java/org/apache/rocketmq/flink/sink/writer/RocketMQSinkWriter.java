@@ -0,0 +1,382 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.flink.sink.writer;
+
+import org.apache.rocketmq.client.exception.MQClientException;
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.apache.rocketmq.client.producer.SendCallback;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageBatch;
+import org.apache.rocketmq.common.message.MessageClientIDSetter;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.flink.sink.writer.serializer.RocketMQSerializationSchema;
+import org.apache.rocketmq.remoting.exception.RemotingException;
+
+import org.apache.flink.annotation.VisibleForTesting;
+import org.apache.flink.api.common.serialization.SerializationSchema.InitializationContext;
+import org.apache.flink.api.connector.sink.Sink;
+import org.apache.flink.api.connector.sink.SinkWriter;
+import org.apache.flink.metrics.MetricGroup;
+import org.apache.flink.util.UserCodeClassLoader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A {@link SinkWriter} that batches messages per message queue and sends the batches
+ * asynchronously.
+ *
+ * <p>A batch is sent once it holds {@code batchSize} messages or {@code batchMaxBytes} bytes, or
+ * once it has waited {@code lingerMs}. At most {@code maxInFlightBatches} batches are
+ * unacknowledged at a time, {@link #write} blocks beyond that. {@link #prepareCommit} sends the
+ * open batches and waits for all of them to be acknowledged, so a checkpoint covers every message
+ * written before it.
+ */
+public class RocketMQSinkWriter<IN> implements SinkWriter<IN, Void, Void> {
+    private static final Logger LOG = LoggerFactory.getLogger(RocketMQSinkWriter.class);
+
+    private static final long QUEUE_REFRESH_INTERVAL_MS = 30 * 1000L;
+
+    /** Overhead of a message in an encoded batch besides its body and properties. */
+    private static final int MESSAGE_OVERHEAD_BYTES = 22;
+
+    private final DefaultMQProducer producer;
+    private final int batchSize;
+    private final int batchMaxBytes;
+    private final long lingerMs;
+    private final int maxInFlightBatches;
+    private final RocketMQSerializationSchema<IN> serializationSchema;
+    private final Sink.ProcessingTimeService timeService;
+
+    private final Semaphore inFlightBatches;
+    private final AtomicReference<Throwable> asyncError = new AtomicReference<>();
+    private final Map<MessageQueue, PendingBatch> pendingBatches = new HashMap<>();
+    private final Map<String, TopicQueues> topicQueues = new HashMap<>();
+    private boolean lingerTimerRegistered;
+
+    public RocketMQSinkWriter(
+            String producerGroup,
+            String nameServerAddress,
+            int batchSize,
+            int batchMaxBytes,
+            long lingerMs,
+            int maxInFlightBatches,
+            RocketMQSerializationSchema<IN> serializationSchema,
+            Sink.InitContext context) {
+        this(
+                createProducer(producerGroup, nameServerAddress, context.getSubtaskId()),
+                batchSize,
+                batchMaxBytes,
+                lingerMs,
+                maxInFlightBatches,
+                serializationSchema,
+                context);
+    }
+
+    @VisibleForTesting
+    RocketMQSinkWriter(
+            DefaultMQProducer producer,
+            int batchSize,
+            int batchMaxBytes,
+            long lingerMs,
+            int maxInFlightBatches,
+            RocketMQSerializationSchema<IN> serializationSchema,
+            Sink.InitContext context) {
+        this.producer = producer;
+        this.batchSize = batchSize;
+        this.batchMaxBytes = batchMaxBytes;
+        this.lingerMs = lingerMs;
+        this.maxInFlightBatches = maxInFlightBatches;
+        this.serializationSchema = serializationSchema;
+        this.timeService = context.getProcessingTimeService();
+        this.inFlightBatches = new Semaphore(maxInFlightBatches);
+        serializationSchema.open(
+                new InitializationContext() {
+                    @Override
+                    public MetricGroup getMetricGroup() {
+                        return context.metricGroup();
+                    }
+
+                    @Override
+                    public UserCodeClassLoader getUserCodeClassLoader() {
+                        return null;
+                    }
+                });
+    }
+
+    @Override
+    public void write(IN element, Context context) throws IOException {
+        checkAsyncError();
+        Message message = serializationSchema.serialize(element);
+        if (message == null) {
+            return;
+        }
+        MessageQueue messageQueue = selectQueue(message);
+        if (message.getDelayTimeLevel() > 0) {
+            // delayed messages can not be batched
+            send(messageQueue, Collections.singletonList(message));
+            return;
+        }
+        PendingBatch batch = pendingBatches.get(messageQueue);
+        if (batch == null) {
+            batch = new PendingBatch(timeService.getCurrentProcessingTime());
+            pendingBatches.put(messageQueue, batch);
+        }
+        int messageSize = estimateSize(message);
+        if (!batch.messages.isEmpty() && batch.bytes + messageSize > batchMaxBytes) {
+            flush(messageQueue);
+            batch = new PendingBatch(timeService.getCurrentProcessingTime());
+            pendingBatches.put(messageQueue, batch);
+        }
+        batch.messages.add(message);
+        batch.bytes += messageSize;
+        if (lingerMs == 0 || batch.messages.size() >= batchSize || batch.bytes >= batchMaxBytes) {
+            flush(messageQueue);
+        } else {
+            registerLingerTimer();
+        }
+    }
+
+    @Override
+    public List<Void> prepareCommit(boolean flush) throws IOException {
+        flushAll();
+        // wait until every batch written before the checkpoint is acknowledged
+        try {
+            inFlightBatches.acquire(maxInFlightBatches);
+            inFlightBatches.release(maxInFlightBatches);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for RocketMQ acknowledgements.", e);
+        }
+        checkAsyncError();
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<Void> snapshotState() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void close() {
+        producer.shutdown();
+    }
+
+    private void flushAll() throws IOException {
+        for (MessageQueue messageQueue : new ArrayList<>(pendingBatches.keySet())) {
+            flush(messageQueue);
+        }
+    }
+
+    private void flush(MessageQueue messageQueue) throws IOException {
+        PendingBatch batch = pendingBatches.remove(messageQueue);
+        if (batch != null && !batch.messages.isEmpty()) {
+            TopicQueues queues = topicQueues.get(messageQueue.getTopic());
+            if (queues != null && messageQueue.equals(queues.stickyQueue)) {
+                // unkeyed messages move on to the next queue once the sticky batch is sent
+                queues.stickyQueue = null;
+            }
+            send(messageQueue, batch.messages);
+        }
+    }
+
+    private void send(MessageQueue messageQueue, List<Message> messages) throws IOException {
+        try {
+            inFlightBatches.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the in-flight batches.", e);
+        }
+        Message message;
+        if (messages.size() == 1) {
+            message = messages.get(0);
+        } else {
+            MessageBatch batch = MessageBatch.generateFromList(messages);
+            for (Message batchMessage : batch) {
+                MessageClientIDSetter.setUniqID(batchMessage);
+            }
+            batch.setBody(batch.encode());
+            message = batch;
+        }
+        try {
+            producer.send(
+                    message,
+                    messageQueue,
+                    new SendCallback() {
+                        @Override
+                        public void onSuccess(SendResult sendResult) {
+                            inFlightBatches.release();
+                        }
+
+                        @Override
+                        public void onException(Throwable e) {
+                            LOG.error(
+                                    "Failed to send {} messages to {}.",
+                                    messages.size(),
+                                    messageQueue,
+                                    e);
+                            asyncError.compareAndSet(null, e);
+                            inFlightBatches.release();
+                        }
+                    });
+        } catch (MQClientException | RemotingException | InterruptedException e) {
+            inFlightBatches.release();
+            throw new IOException("Failed to send messages to " + messageQueue, e);
+        }
+    }
+
+    private void registerLingerTimer() {
+        if (lingerTimerRegistered) {
+            return;
+        }
+        lingerTimerRegistered = true;
+        timeService.registerProcessingTimer(
+                timeService.getCurrentProcessingTime() + lingerMs, this::onLingerTimer);
+    }
+
+    private void onLingerTimer(long time) throws IOException {
+        lingerTimerRegistered = false;
+        for (Map.Entry<MessageQueue, PendingBatch> entry :
+                new ArrayList<>(pendingBatches.entrySet())) {
+            if (entry.getValue().createTime + lingerMs <= time) {
+                flush(entry.getKey());
+            }
+        }
+        if (!pendingBatches.isEmpty()) {
+            registerLingerTimer();
+        }
+    }
+
+    /**
+     * Messages with keys are hashed to a queue to keep their order, the others stick to one queue
+     * until its batch is sent so that they fill up batches.
+     */
+    private MessageQueue selectQueue(Message message) throws IOException {
+        TopicQueues queues = topicQueues.get(message.getTopic());
+        long now = timeService.getCurrentProcessingTime();
+        if (queues == null || queues.updateTime + QUEUE_REFRESH_INTERVAL_MS < now) {
+            queues = fetchQueues(message.getTopic(), queues, now);
+        }
+        String keys = message.getKeys();
+        if (keys != null && !keys.isEmpty()) {
+            return queues.queues.get((keys.hashCode() & Integer.MAX_VALUE) % queues.queues.size());
+        }
+        if (queues.stickyQueue == null) {
+            queues.stickyQueue = queues.queues.get(queues.nextIndex++ % queues.queues.size());
+            queues.nextIndex &= Integer.MAX_VALUE;
+        }
+        return queues.stickyQueue;
+    }
+
+    private TopicQueues fetchQueues(String topic, TopicQueues previous, long now)
+            throws IOException {
+        try {
+            List<MessageQueue> messageQueues = producer.fetchPublishMessageQueues(topic);
+            if (messageQueues.isEmpty()) {
+                throw new IOException("No message queue of topic " + topic);
+            }
+            TopicQueues queues = new TopicQueues(messageQueues, now);
+            if (previous != null && messageQueues.contains(previous.stickyQueue)) {
+                queues.stickyQueue = previous.stickyQueue;
+                queues.nextIndex = previous.nextIndex;
+            }
+            topicQueues.put(topic, queues);
+            return queues;
+        } catch (MQClientException e) {
+            if (previous != null) {
+                LOG.warn("Failed to refresh the message queues of topic {}.", topic, e);
+                previous.updateTime = now;
+                return previous;
+            }
+            throw new IOException("Failed to fetch the message queues of topic " + topic, e);
+        }
+    }
+
+    private void checkAsyncError() throws IOException {
+        Throwable error = asyncError.get();
+        if (error != null) {
+            throw new IOException("Failed to send messages to RocketMQ.", error);
+        }
+    }
+
+    private static int estimateSize(Message message) {
+        int size =
+                MESSAGE_OVERHEAD_BYTES + (message.getBody() == null ? 0 : message.getBody().length);
+        if (message.getProperties() != null) {
+            for (Map.Entry<String, String> property : message.getProperties().entrySet()) {
+                size += property.getKey().length() + property.getValue().length() + 2;
+            }
+        }
+        return size;
+    }
+
+    private static DefaultMQProducer createProducer(
+            String producerGroup, String nameServerAddress, int subtaskId) {
+        DefaultMQProducer producer = new DefaultMQProducer(producerGroup);
+        producer.setNamesrvAddr(nameServerAddress);
+        producer.setInstanceName(
+                String.join(
+                        "||",
+                        ManagementFactory.getRuntimeMXBean().getName(),
+                        producerGroup,
+                        "" + subtaskId,
+                        "" + System.nanoTime()));
+        try {
+            producer.start();
+        } catch (MQClientException e) {
+            throw new RuntimeException("Failed to start the RocketMQ producer.", e);
+        }
+        return producer;
+    }
+
+    // ---------------- private helper class ------------------------
+
+    private static class PendingBatch {
+        private final long createTime;
+        private final List<Message> messages = new ArrayList<>();
+        private int bytes;
+
+        private PendingBatch(long createTime) {
+            this.createTime = createTime;
+        }
+    }
+
+    private static class TopicQueues {
+        private final List<MessageQueue> queues;
+        private long updateTime;
+        private MessageQueue stickyQueue;
+        private int nextIndex;
+
+        private TopicQueues(List<MessageQueue> queues, long updateTime) {
+            this.queues = queues;
+            this.updateTime = updateTime;
+        }
+    }
+}
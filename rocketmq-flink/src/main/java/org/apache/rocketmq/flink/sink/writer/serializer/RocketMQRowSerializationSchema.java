@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.flink.sink.writer.serializer;
+
+import org.apache.rocketmq.common.message.Message;
+
+import org.apache.flink.table.data.RowData;
+import org.apache.flink.table.types.logical.LogicalType;
+import org.apache.flink.table.types.logical.LogicalTypeRoot;
+import org.apache.flink.table.types.logical.RowType;
+
+import org.apache.commons.lang3.StringEscapeUtils;
+
+import java.io.UnsupportedEncodingException;
+import java.util.List;
+
+/**
+ * Serializes a {@link RowData} into a message whose body holds the fields separated by the field
+ * delimiter, the same text format read by the table source. A row of a single binary column is sent
+ * as is.
+ */
+public class RocketMQRowSerializationSchema implements RocketMQSerializationSchema<RowData> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String topic;
+    private final String tag;
+    private final String encoding;
+    private final String fieldDelimiter;
+    private final RowData.FieldGetter[] fieldGetters;
+    private final boolean onlyBinaryField;
+
+    public RocketMQRowSerializationSchema(
+            String topic, String tag, RowType rowType, String encoding, String fieldDelimiter) {
+        this.topic = topic;
+        this.tag = tag;
+        this.encoding = encoding;
+        this.fieldDelimiter = StringEscapeUtils.unescapeJava(fieldDelimiter);
+        List<LogicalType> fieldTypes = rowType.getChildren();
+        this.fieldGetters = new RowData.FieldGetter[fieldTypes.size()];
+        for (int i = 0; i < fieldGetters.length; i++) {
+            fieldGetters[i] = RowData.createFieldGetter(fieldTypes.get(i), i);
+        }
+        this.onlyBinaryField = fieldTypes.size() == 1 && isBinary(fieldTypes.get(0));
+    }
+
+    @Override
+    public Message serialize(RowData row) {
+        try {
+            byte[] body;
+            if (onlyBinaryField) {
+                body = (byte[]) fieldGetters[0].getFieldOrNull(row);
+            } else {
+                StringBuilder builder = new StringBuilder();
+                for (int i = 0; i < fieldGetters.length; i++) {
+                    if (i > 0) {
+                        builder.append(fieldDelimiter);
+                    }
+                    Object field = fieldGetters[i].getFieldOrNull(row);
+                    if (field instanceof byte[]) {
+                        builder.append(new String((byte[]) field, encoding));
+                    } else if (field != null) {
+                        builder.append(field);
+                    }
+                }
+                body = builder.toString().getBytes(encoding);
+            }
+            return body == null ? null : new Message(topic, tag, body);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static boolean isBinary(LogicalType type) {
+        return type.getTypeRoot() == LogicalTypeRoot.VARBINARY
+                || type.getTypeRoot() == LogicalTypeRoot.BINARY;
+    }
+}
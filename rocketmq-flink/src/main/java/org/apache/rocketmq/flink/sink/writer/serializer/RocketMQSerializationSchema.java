@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.flink.sink.writer.serializer;
+
+import org.apache.rocketmq.common.message.Message;
+
+import org.apache.flink.annotation.PublicEvolving;
+import org.apache.flink.api.common.serialization.SerializationSchema.InitializationContext;
+
+import java.io.Serializable;
+
+/** The serialization schema that turns the records of a sink into RocketMQ messages. */
+@PublicEvolving
+public interface RocketMQSerializationSchema<T> extends Serializable {
+
+    /**
+     * Initialization method for the schema. It is called before the actual working methods {@link
+     * #serialize} and thus suitable for one time setup work.
+     *
+     * @param context Contextual information that can be used during initialization.
+     */
+    default void open(InitializationContext context) {}
+
+    /**
+     * Serializes a record into a message, which carries the topic it is sent to.
+     *
+     * @param element The record to serialize.
+     * @return The message to send, or null to skip the record.
+     */
+    Message serialize(T element);
+}
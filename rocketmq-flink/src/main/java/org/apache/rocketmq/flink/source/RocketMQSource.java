@@ -18,6 +18,7 @@
 
 package org.apache.rocketmq.flink.source;
 
+import org.apache.rocketmq.flink.source.common.RocketMQOptions;
 import org.apache.rocketmq.flink.source.enumerator.RocketMQSourceEnumState;
 import org.apache.rocketmq.flink.source.enumerator.RocketMQSourceEnumStateSerializer;
 import org.apache.rocketmq.flink.source.enumerator.RocketMQSourceEnumerator;
@@ -28,6 +29,7 @@ import org.apache.rocketmq.flink.source.reader.deserializer.RocketMQDeserializat
 import org.apache.rocketmq.flink.source.split.RocketMQPartitionSplit;
 import org.apache.rocketmq.flink.source.split.RocketMQPartitionSplitSerializer;
 
+import org.apache.flink.api.common.eventtime.WatermarkStrategy;
 import org.apache.flink.api.common.serialization.DeserializationSchema;
 import org.apache.flink.api.common.typeinfo.TypeInformation;
 import org.apache.flink.api.connector.source.Boundedness;
@@ -46,9 +48,17 @@ import org.apache.flink.core.io.SimpleVersionedSerializer;
 import org.apache.flink.metrics.MetricGroup;
 import org.apache.flink.util.UserCodeClassLoader;
 
+import java.time.Duration;
 import java.util.function.Supplier;
 
-/** The Source implementation of RocketMQ. */
+/**
+ * The Source implementation of RocketMQ.
+ *
+ * <p>Every record carries the store timestamp of its message as event time. The reader emits the
+ * records of every message queue through their own split output, so the watermark strategy given to
+ * {@code StreamExecutionEnvironment#fromSource} generates watermarks per message queue and the
+ * reader forwards the minimum of them. See {@link #storeTimestampWatermarks(long, long)}.
+ */
 public class RocketMQSource<OUT>
         implements Source<OUT, RocketMQPartitionSplit, RocketMQSourceEnumState>,
                 ResultTypeQueryable<OUT> {
@@ -62,6 +72,8 @@ public class RocketMQSource<OUT>
     private final long startTime;
     private final long startOffset;
     private final long partitionDiscoveryIntervalMs;
+    private final int pullBatchSize;
+    private final int pullPrefetchDepth;
 
     // Boundedness
     private final Boundedness boundedness;
@@ -78,6 +90,34 @@ public class RocketMQSource<OUT>
             long partitionDiscoveryIntervalMs,
             Boundedness boundedness,
             RocketMQDeserializationSchema<OUT> deserializationSchema) {
+        this(
+                topic,
+                consumerGroup,
+                nameServerAddress,
+                tag,
+                stopInMs,
+                startTime,
+                startOffset,
+                partitionDiscoveryIntervalMs,
+                RocketMQOptions.OPTIONAL_PULL_BATCH_SIZE.defaultValue(),
+                RocketMQOptions.OPTIONAL_PULL_PREFETCH_DEPTH.defaultValue(),
+                boundedness,
+                deserializationSchema);
+    }
+
+    public RocketMQSource(
+            String topic,
+            String consumerGroup,
+            String nameServerAddress,
+            String tag,
+            long stopInMs,
+            long startTime,
+            long startOffset,
+            long partitionDiscoveryIntervalMs,
+            int pullBatchSize,
+            int pullPrefetchDepth,
+            Boundedness boundedness,
+            RocketMQDeserializationSchema<OUT> deserializationSchema) {
         this.topic = topic;
         this.consumerGroup = consumerGroup;
         this.nameServerAddress = nameServerAddress;
@@ -86,10 +126,35 @@ public class RocketMQSource<OUT>
         this.startTime = startTime;
         this.startOffset = startOffset;
         this.partitionDiscoveryIntervalMs = partitionDiscoveryIntervalMs;
+        this.pullBatchSize = pullBatchSize;
+        this.pullPrefetchDepth = pullPrefetchDepth;
         this.boundedness = boundedness;
         this.deserializationSchema = deserializationSchema;
     }
 
+    /**
+     * Creates a watermark strategy on the store timestamps of the messages.
+     *
+     * @param maxOutOfOrdernessMs how late a message may be stored compared to the latest one of its
+     *     queue
+     * @param splitIdleTimeoutMs after how long without messages a queue is marked idle and stops
+     *     holding back the watermark, not positive to never mark queues idle
+     */
+    public static <T> WatermarkStrategy<T> storeTimestampWatermarks(
+            long maxOutOfOrdernessMs, long splitIdleTimeoutMs) {
+        WatermarkStrategy<T> watermarkStrategy =
+                WatermarkStrategy.forBoundedOutOfOrderness(Duration.ofMillis(maxOutOfOrdernessMs));
+        return withSplitIdleness(watermarkStrategy, splitIdleTimeoutMs);
+    }
+
+    /** Marks the queues idle after {@code splitIdleTimeoutMs} without messages, if positive. */
+    public static <T> WatermarkStrategy<T> withSplitIdleness(
+            WatermarkStrategy<T> watermarkStrategy, long splitIdleTimeoutMs) {
+        return splitIdleTimeoutMs > 0
+                ? watermarkStrategy.withIdleness(Duration.ofMillis(splitIdleTimeoutMs))
+                : watermarkStrategy;
+    }
+
     @Override
     public Boundedness getBoundedness() {
         return this.boundedness;
@@ -123,6 +188,8 @@ public class RocketMQSource<OUT>
                                 stopInMs,
                                 startTime,
                                 startOffset,
+                                pullBatchSize,
+                                pullPrefetchDepth,
                                 deserializationSchema);
         RocketMQRecordEmitter<OUT> recordEmitter = new RocketMQRecordEmitter<>();
 
@@ -29,6 +29,9 @@ public class RocketMQOptions {
     public static final ConfigOption<String> CONSUMER_GROUP =
             ConfigOptions.key("consumerGroup").noDefaultValue();
 
+    public static final ConfigOption<String> PRODUCER_GROUP =
+            ConfigOptions.key("producerGroup").noDefaultValue();
+
     public static final ConfigOption<String> NAME_SERVER_ADDRESS =
             ConfigOptions.key("nameServerAddress").noDefaultValue();
 
@@ -53,6 +56,12 @@ public class RocketMQOptions {
     public static final ConfigOption<Long> OPTIONAL_PARTITION_DISCOVERY_INTERVAL_MS =
             ConfigOptions.key("partitionDiscoveryIntervalMs").longType().defaultValue(30000L);
 
+    public static final ConfigOption<Integer> OPTIONAL_PULL_BATCH_SIZE =
+            ConfigOptions.key("pullBatchSize").intType().defaultValue(64);
+
+    public static final ConfigOption<Integer> OPTIONAL_PULL_PREFETCH_DEPTH =
+            ConfigOptions.key("pullPrefetchDepth").intType().defaultValue(2);
+
     public static final ConfigOption<String> OPTIONAL_ENCODING =
             ConfigOptions.key("encoding").stringType().defaultValue("UTF-8");
 
@@ -67,4 +76,31 @@ public class RocketMQOptions {
 
     public static final ConfigOption<String> OPTIONAL_LENGTH_CHECK =
             ConfigOptions.key("lengthCheck").stringType().defaultValue("NONE");
+
+    public static final ConfigOption<Integer> OPTIONAL_BATCH_SIZE =
+            ConfigOptions.key("batchSize").intType().defaultValue(32);
+
+    public static final ConfigOption<Integer> OPTIONAL_BATCH_MAX_BYTES =
+            ConfigOptions.key("batchMaxBytes").intType().defaultValue(1024 * 1024);
+
+    public static final ConfigOption<Long> OPTIONAL_LINGER_MS =
+            ConfigOptions.key("lingerMs").longType().defaultValue(5L);
+
+    public static final ConfigOption<Integer> OPTIONAL_MAX_IN_FLIGHT_BATCHES =
+            ConfigOptions.key("maxInFlightBatches").intType().defaultValue(64);
+
+    public static final ConfigOption<Long> OPTIONAL_LOOKUP_CACHE_MAX_BYTES =
+            ConfigOptions.key("lookupCacheMaxBytes").longType().defaultValue(64 * 1024 * 1024L);
+
+    public static final ConfigOption<String> OPTIONAL_LOOKUP_SPILL_DIRECTORY =
+            ConfigOptions.key("lookupSpillDirectory").stringType().noDefaultValue();
+
+    public static final ConfigOption<Long> OPTIONAL_LOOKUP_LOAD_TIMEOUT_MS =
+            ConfigOptions.key("lookupLoadTimeoutMs").longType().defaultValue(60000L);
+
+    public static final ConfigOption<Long> OPTIONAL_WATERMARK_MAX_OUT_OF_ORDERNESS_MS =
+            ConfigOptions.key("watermarkMaxOutOfOrdernessMs").longType().defaultValue(0L);
+
+    public static final ConfigOption<Long> OPTIONAL_SPLIT_IDLE_TIMEOUT_MS =
+            ConfigOptions.key("splitIdleTimeoutMs").longType().defaultValue(-1L);
 }
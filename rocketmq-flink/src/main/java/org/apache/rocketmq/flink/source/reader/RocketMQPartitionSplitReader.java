@@ -19,8 +19,8 @@
 package org.apache.rocketmq.flink.source.reader;
 
 import org.apache.rocketmq.client.consumer.DefaultMQPullConsumer;
+import org.apache.rocketmq.client.consumer.PullCallback;
 import org.apache.rocketmq.client.consumer.PullResult;
-import org.apache.rocketmq.client.exception.MQBrokerException;
 import org.apache.rocketmq.client.exception.MQClientException;
 import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.common.message.MessageQueue;
@@ -44,42 +44,55 @@ import javax.annotation.Nullable;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import static org.apache.rocketmq.client.consumer.PullStatus.FOUND;
+import static org.apache.rocketmq.client.consumer.PullStatus.NO_NEW_MSG;
 
 /**
  * A {@link SplitReader} implementation that reads records from RocketMQ partitions.
  *
+ * <p>The assigned queues are cached when splits are added. Every queue is pulled asynchronously and
+ * up to {@code pullPrefetchDepth} pulled batches are buffered per queue, so the pulls of all queues
+ * are in flight while {@link #fetch()} hands the completed batches over.
+ *
  * <p>The returned type are in the format of {@code tuple3(record, offset and timestamp}.
  */
 public class RocketMQPartitionSplitReader<T>
         implements SplitReader<Tuple3<T, Long, Long>, RocketMQPartitionSplit> {
     private static final Logger LOG = LoggerFactory.getLogger(RocketMQPartitionSplitReader.class);
 
+    private static final long POLL_TIMEOUT_MS = 1000L;
+    private static final long PULL_RETRY_DELAY_MS = 1000L;
+
     private final String topic;
     private final String tag;
     private final long stopInMs;
     private final long startTime;
     private final long startOffset;
+    private final int pullBatchSize;
+    private final int pullPrefetchDepth;
 
     private final RocketMQDeserializationSchema<T> deserializationSchema;
-    private final Map<Tuple3<String, String, Integer>, Long> startingOffsets;
-    private final Map<Tuple3<String, String, Integer>, Long> stoppingTimestamps;
+    private final Map<MessageQueue, QueueState> assignedQueues;
+    private final BlockingQueue<PulledBatch> pulledBatches;
     private final SimpleCollector<T> collector;
+    private final List<MessageExt> singleMessage;
 
     private DefaultMQPullConsumer consumer;
 
-    private volatile boolean wakeup = false;
-
-    private static final int MAX_MESSAGE_NUMBER_PER_BLOCK = 64;
+    private volatile boolean closed = false;
 
     public RocketMQPartitionSplitReader(
             String topic,
@@ -89,16 +102,23 @@ public class RocketMQPartitionSplitReader<T>
             long stopInMs,
             long startTime,
             long startOffset,
+            int pullBatchSize,
+            int pullPrefetchDepth,
             RocketMQDeserializationSchema<T> deserializationSchema) {
+        Preconditions.checkArgument(pullBatchSize > 0, "pullBatchSize must be positive.");
+        Preconditions.checkArgument(pullPrefetchDepth > 0, "pullPrefetchDepth must be positive.");
         this.topic = topic;
         this.tag = tag;
         this.stopInMs = stopInMs;
         this.startTime = startTime;
         this.startOffset = startOffset;
+        this.pullBatchSize = pullBatchSize;
+        this.pullPrefetchDepth = pullPrefetchDepth;
         this.deserializationSchema = deserializationSchema;
-        this.startingOffsets = new HashMap<>();
-        this.stoppingTimestamps = new HashMap<>();
+        this.assignedQueues = new ConcurrentHashMap<>();
+        this.pulledBatches = new LinkedBlockingQueue<>();
         this.collector = new SimpleCollector<>();
+        this.singleMessage = Arrays.asList(new MessageExt[1]);
         initialRocketMQConsumer(consumerGroup, nameServerAddress);
     }
 
@@ -106,120 +126,34 @@ public class RocketMQPartitionSplitReader<T>
     public RecordsWithSplitIds<Tuple3<T, Long, Long>> fetch() throws IOException {
         RocketMQPartitionSplitRecords<Tuple3<T, Long, Long>> recordsBySplits =
                 new RocketMQPartitionSplitRecords<>();
-        Set<MessageQueue> messageQueues;
+        for (QueueState queueState : assignedQueues.values()) {
+            pullIfNeeded(queueState);
+        }
+        List<PulledBatch> batches = new ArrayList<>();
         try {
-            messageQueues = consumer.fetchSubscribeMessageQueues(topic);
-        } catch (MQClientException e) {
-            LOG.error(
-                    String.format(
-                            "Fetch RocketMQ subscribe message queues of topic[%s] exception.",
-                            topic),
-                    e);
-            recordsBySplits.prepareForRead();
-            return recordsBySplits;
+            PulledBatch first = pulledBatches.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            if (first != null) {
+                batches.add(first);
+                pulledBatches.drainTo(batches);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for pulled RocketMQ messages.", e);
         }
-        for (MessageQueue messageQueue : messageQueues) {
-            Tuple3<String, String, Integer> topicPartition =
-                    new Tuple3<>(
-                            messageQueue.getTopic(),
-                            messageQueue.getBrokerName(),
-                            messageQueue.getQueueId());
-            if (startingOffsets.containsKey(topicPartition)) {
-                long messageOffset = startingOffsets.get(topicPartition);
-                if (messageOffset == 0) {
-                    try {
-                        messageOffset =
-                                startTime > 0
-                                        ? consumer.searchOffset(messageQueue, startTime)
-                                        : startOffset;
-                    } catch (MQClientException e) {
-                        LOG.error(
-                                String.format(
-                                        "Search RocketMQ message offset of topic[%s] broker[%s] queue[%d] exception.",
-                                        messageQueue.getTopic(),
-                                        messageQueue.getBrokerName(),
-                                        messageQueue.getQueueId()),
-                                e);
-                    }
-                    messageOffset = messageOffset > -1 ? messageOffset : 0;
-                }
-                PullResult pullResult = null;
-                try {
-                    if (wakeup) {
-                        LOG.info(
-                                String.format(
-                                        "Wake up pulling messages of topic[%s] broker[%s] queue[%d] tag[%s] from offset[%d].",
-                                        messageQueue.getTopic(),
-                                        messageQueue.getBrokerName(),
-                                        messageQueue.getQueueId(),
-                                        tag,
-                                        messageOffset));
-                        wakeup = false;
-                        recordsBySplits.prepareForRead();
-                        return recordsBySplits;
-                    }
-                    pullResult =
-                            consumer.pullBlockIfNotFound(
-                                    messageQueue, tag, messageOffset, MAX_MESSAGE_NUMBER_PER_BLOCK);
-                } catch (MQClientException
-                        | RemotingException
-                        | MQBrokerException
-                        | InterruptedException e) {
-                    LOG.error(
-                            String.format(
-                                    "Pull RocketMQ messages of topic[%s] broker[%s] queue[%d] tag[%s] from offset[%d] exception.",
-                                    messageQueue.getTopic(),
-                                    messageQueue.getBrokerName(),
-                                    messageQueue.getQueueId(),
-                                    tag,
-                                    messageOffset),
-                            e);
-                }
-                startingOffsets.put(
-                        topicPartition,
-                        pullResult == null ? messageOffset : pullResult.getNextBeginOffset());
-                if (pullResult != null && pullResult.getPullStatus() == FOUND) {
-                    Collection<Tuple3<T, Long, Long>> recordsForSplit =
-                            recordsBySplits.recordsForSplit(
-                                    messageQueue.getTopic()
-                                            + "-"
-                                            + messageQueue.getBrokerName()
-                                            + "-"
-                                            + messageQueue.getQueueId());
-                    for (MessageExt messageExt : pullResult.getMsgFoundList()) {
-                        long stoppingTimestamp = getStoppingTimestamp(topicPartition);
-                        long storeTimestamp = messageExt.getStoreTimestamp();
-                        if (storeTimestamp > stoppingTimestamp) {
-                            finishSplitAtRecord(
-                                    topicPartition,
-                                    stoppingTimestamp,
-                                    messageExt.getQueueOffset(),
-                                    recordsBySplits);
-                            break;
-                        }
-                        // Add the record to the partition collector.
-                        try {
-                            deserializationSchema.deserialize(
-                                    Collections.singletonList(messageExt), collector);
-                            collector
-                                    .getRecords()
-                                    .forEach(
-                                            r ->
-                                                    recordsForSplit.add(
-                                                            new Tuple3<>(
-                                                                    r,
-                                                                    messageExt.getQueueOffset(),
-                                                                    messageExt
-                                                                            .getStoreTimestamp())));
-                        } catch (Exception e) {
-                            throw new IOException(
-                                    "Failed to deserialize consumer record due to", e);
-                        } finally {
-                            collector.reset();
-                        }
-                    }
-                }
+        for (PulledBatch batch : batches) {
+            if (batch == PulledBatch.WAKE_UP) {
+                LOG.debug("Wake up fetching messages of topic[{}].", topic);
+                continue;
+            }
+            QueueState queueState = batch.queueState;
+            synchronized (queueState) {
+                queueState.buffered--;
             }
+            if (queueState.finished || assignedQueues.get(queueState.messageQueue) != queueState) {
+                continue;
+            }
+            emitBatch(queueState, batch.messages, recordsBySplits);
+            pullIfNeeded(queueState);
         }
         recordsBySplits.prepareForRead();
         return recordsBySplits;
@@ -234,49 +168,179 @@ public class RocketMQPartitionSplitReader<T>
                             "The SplitChange type of %s is not supported.",
                             splitsChange.getClass()));
         }
-        // Setup the stopping timestamps.
+        // Cache the assigned queues with their starting offsets and stopping timestamps.
         splitsChange
                 .splits()
                 .forEach(
                         split -> {
-                            Tuple3<String, String, Integer> topicPartition =
-                                    new Tuple3<>(
+                            MessageQueue messageQueue =
+                                    new MessageQueue(
                                             split.getTopic(),
                                             split.getBroker(),
                                             split.getPartition());
-                            startingOffsets.put(topicPartition, split.getStartingOffset());
-                            stoppingTimestamps.put(topicPartition, split.getStoppingTimestamp());
+                            assignedQueues.put(
+                                    messageQueue,
+                                    new QueueState(
+                                            messageQueue,
+                                            split.splitId(),
+                                            split.getStartingOffset(),
+                                            split.getStoppingTimestamp()));
                         });
     }
 
     @Override
     public void wakeUp() {
         LOG.debug("Wake up the split reader in case the fetcher thread is blocking in fetch().");
-        wakeup = true;
+        pulledBatches.offer(PulledBatch.WAKE_UP);
     }
 
     @Override
     public void close() {
+        closed = true;
         consumer.shutdown();
     }
 
+    private void emitBatch(
+            QueueState queueState,
+            List<MessageExt> messages,
+            RocketMQPartitionSplitRecords<Tuple3<T, Long, Long>> recordsBySplits)
+            throws IOException {
+        Collection<Tuple3<T, Long, Long>> recordsForSplit =
+                recordsBySplits.recordsForSplit(queueState.splitId);
+        for (MessageExt messageExt : messages) {
+            long storeTimestamp = messageExt.getStoreTimestamp();
+            if (storeTimestamp > queueState.stoppingTimestamp) {
+                finishSplitAtRecord(queueState, messageExt.getQueueOffset(), recordsBySplits);
+                return;
+            }
+            // The emitter checkpoints the offset of every record, so the records are
+            // attributed to their message while the pulled batch is deserialized.
+            singleMessage.set(0, messageExt);
+            try {
+                deserializationSchema.deserialize(singleMessage, collector);
+                for (T record : collector.getRecords()) {
+                    recordsForSplit.add(
+                            new Tuple3<>(record, messageExt.getQueueOffset(), storeTimestamp));
+                }
+            } catch (Exception e) {
+                throw new IOException("Failed to deserialize consumer record due to", e);
+            } finally {
+                collector.reset();
+            }
+        }
+    }
+
+    private void pullIfNeeded(QueueState queueState) {
+        long messageOffset;
+        boolean searchOffset;
+        synchronized (queueState) {
+            if (closed
+                    || queueState.finished
+                    || assignedQueues.get(queueState.messageQueue) != queueState
+                    || queueState.inFlight
+                    || queueState.buffered >= pullPrefetchDepth
+                    || System.currentTimeMillis() < queueState.retryTime) {
+                return;
+            }
+            queueState.inFlight = true;
+            messageOffset = queueState.nextOffset;
+            searchOffset = !queueState.offsetSearched && messageOffset == 0;
+            queueState.offsetSearched = true;
+        }
+        MessageQueue messageQueue = queueState.messageQueue;
+        if (searchOffset) {
+            messageOffset = searchStartingOffset(messageQueue);
+        }
+        final long pullOffset = messageOffset;
+        try {
+            consumer.pullBlockIfNotFound(
+                    messageQueue,
+                    tag,
+                    pullOffset,
+                    pullBatchSize,
+                    new PullCallback() {
+                        @Override
+                        public void onSuccess(PullResult pullResult) {
+                            onPulled(queueState, pullOffset, pullResult);
+                        }
+
+                        @Override
+                        public void onException(Throwable e) {
+                            onPullFailed(queueState, pullOffset, e);
+                        }
+                    });
+        } catch (MQClientException | RemotingException | InterruptedException e) {
+            onPullFailed(queueState, pullOffset, e);
+        }
+    }
+
+    private void onPulled(QueueState queueState, long pullOffset, PullResult pullResult) {
+        synchronized (queueState) {
+            queueState.inFlight = false;
+            queueState.nextOffset = pullResult.getNextBeginOffset();
+            if (pullResult.getPullStatus() == FOUND) {
+                queueState.buffered++;
+                pulledBatches.offer(new PulledBatch(queueState, pullResult.getMsgFoundList()));
+            }
+        }
+        if (pullResult.getPullStatus() == NO_NEW_MSG) {
+            // the long polling of the broker has expired, let the fetcher thread pull again
+            // instead of spinning in the callback
+            pulledBatches.offer(PulledBatch.WAKE_UP);
+            return;
+        }
+        // keep the queue pipelined without waiting for the fetcher thread
+        pullIfNeeded(queueState);
+    }
+
+    private void onPullFailed(QueueState queueState, long pullOffset, Throwable e) {
+        if (!closed) {
+            LOG.error(
+                    String.format(
+                            "Pull RocketMQ messages of topic[%s] broker[%s] queue[%d] tag[%s] from offset[%d] exception.",
+                            queueState.messageQueue.getTopic(),
+                            queueState.messageQueue.getBrokerName(),
+                            queueState.messageQueue.getQueueId(),
+                            tag,
+                            pullOffset),
+                    e);
+        }
+        synchronized (queueState) {
+            queueState.inFlight = false;
+            queueState.nextOffset = pullOffset;
+            queueState.retryTime = System.currentTimeMillis() + PULL_RETRY_DELAY_MS;
+        }
+    }
+
+    private long searchStartingOffset(MessageQueue messageQueue) {
+        long messageOffset = 0;
+        try {
+            messageOffset =
+                    startTime > 0 ? consumer.searchOffset(messageQueue, startTime) : startOffset;
+        } catch (MQClientException e) {
+            LOG.error(
+                    String.format(
+                            "Search RocketMQ message offset of topic[%s] broker[%s] queue[%d] exception.",
+                            messageQueue.getTopic(),
+                            messageQueue.getBrokerName(),
+                            messageQueue.getQueueId()),
+                    e);
+        }
+        return messageOffset > -1 ? messageOffset : 0;
+    }
+
     private void finishSplitAtRecord(
-            Tuple3<String, String, Integer> topicPartition,
-            long stoppingTimestamp,
+            QueueState queueState,
             long currentOffset,
             RocketMQPartitionSplitRecords<Tuple3<T, Long, Long>> recordsBySplits) {
         LOG.debug(
                 "{} has reached stopping timestamp {}, current offset is {}",
-                topicPartition.f0 + "-" + topicPartition.f1,
-                stoppingTimestamp,
+                queueState.splitId,
+                queueState.stoppingTimestamp,
                 currentOffset);
-        recordsBySplits.addFinishedSplit(RocketMQPartitionSplit.toSplitId(topicPartition));
-        startingOffsets.remove(topicPartition);
-        stoppingTimestamps.remove(topicPartition);
-    }
-
-    private long getStoppingTimestamp(Tuple3<String, String, Integer> topicPartition) {
-        return stoppingTimestamps.getOrDefault(topicPartition, stopInMs);
+        queueState.finished = true;
+        recordsBySplits.addFinishedSplit(queueState.splitId);
+        assignedQueues.remove(queueState.messageQueue, queueState);
     }
 
     // --------------- private helper method ----------------------
@@ -360,6 +424,43 @@ public class RocketMQPartitionSplitReader<T>
         }
     }
 
+    /** The fetching progress of an assigned queue, guarded by its own monitor. */
+    private static class QueueState {
+        private final MessageQueue messageQueue;
+        private final String splitId;
+        private final long stoppingTimestamp;
+        private long nextOffset;
+        private boolean offsetSearched;
+        private boolean inFlight;
+        private int buffered;
+        private long retryTime;
+        private volatile boolean finished;
+
+        private QueueState(
+                MessageQueue messageQueue,
+                String splitId,
+                long startingOffset,
+                long stoppingTimestamp) {
+            this.messageQueue = messageQueue;
+            this.splitId = splitId;
+            this.nextOffset = startingOffset;
+            this.stoppingTimestamp = stoppingTimestamp;
+        }
+    }
+
+    /** The messages of one pull, or {@link #WAKE_UP} to unblock {@link #fetch()}. */
+    private static class PulledBatch {
+        private static final PulledBatch WAKE_UP = new PulledBatch(null, null);
+
+        private final QueueState queueState;
+        private final List<MessageExt> messages;
+
+        private PulledBatch(QueueState queueState, List<MessageExt> messages) {
+            this.queueState = queueState;
+            this.messages = messages;
+        }
+    }
+
     private static class SimpleCollector<T> implements Collector<T> {
         private final List<T> records = new ArrayList<>();
 
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.flink.source.reader.deserializer;
+
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.flink.source.reader.deserializer.RowDeserializationSchema.MetadataCollector;
+import org.apache.rocketmq.flink.source.reader.deserializer.RowDeserializationSchema.MetadataConverter;
+
+import org.apache.flink.api.common.serialization.DeserializationSchema.InitializationContext;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.table.data.RowData;
+import org.apache.flink.util.Collector;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A {@link RocketMQDeserializationSchema} that decodes message bodies with the {@link
+ * org.apache.flink.api.common.serialization.DeserializationSchema} of a table format, such as json
+ * or avro, discovered through the {@code format} option.
+ */
+public class RocketMQFormatDeserializationSchema implements RocketMQDeserializationSchema<RowData> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final org.apache.flink.api.common.serialization.DeserializationSchema<RowData>
+            formatDeserializationSchema;
+    private final boolean hasMetadata;
+    private final MetadataCollector metadataCollector;
+
+    public RocketMQFormatDeserializationSchema(
+            org.apache.flink.api.common.serialization.DeserializationSchema<RowData>
+                    formatDeserializationSchema,
+            boolean hasMetadata,
+            MetadataConverter[] metadataConverters) {
+        this.formatDeserializationSchema = formatDeserializationSchema;
+        this.hasMetadata = hasMetadata;
+        this.metadataCollector = new MetadataCollector(hasMetadata, metadataConverters);
+    }
+
+    @Override
+    public void open(InitializationContext context) {
+        try {
+            formatDeserializationSchema.open(context);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to open the format deserialization schema.", e);
+        }
+    }
+
+    @Override
+    public void deserialize(List<MessageExt> input, Collector<RowData> collector)
+            throws IOException {
+        metadataCollector.collector = collector;
+        for (MessageExt message : input) {
+            if (message.getBody() == null) {
+                continue;
+            }
+            // metadata is read from the message properties, only extract them when needed
+            metadataCollector.message =
+                    hasMetadata ? RocketMQRowDeserializationSchema.toBytesMessage(message) : null;
+            formatDeserializationSchema.deserialize(message.getBody(), metadataCollector);
+        }
+    }
+
+    @Override
+    public TypeInformation<RowData> getProducedType() {
+        return formatDeserializationSchema.getProducedType();
+    }
+}
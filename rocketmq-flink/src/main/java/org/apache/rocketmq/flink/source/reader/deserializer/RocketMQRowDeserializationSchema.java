@@ -49,12 +49,26 @@ public class RocketMQRowDeserializationSchema implements RocketMQDeserialization
             Map<String, String> properties,
             boolean hasMetadata,
             MetadataConverter[] metadataConverters) {
+        this(tableSchema, properties, hasMetadata, metadataConverters, false);
+    }
+
+    /**
+     * @param reuseRow whether the same row instance is emitted for every record, only for
+     *     collectors which do not keep the rows
+     */
+    public RocketMQRowDeserializationSchema(
+            TableSchema tableSchema,
+            Map<String, String> properties,
+            boolean hasMetadata,
+            MetadataConverter[] metadataConverters,
+            boolean reuseRow) {
         deserializationSchema =
                 new RowDeserializationSchema.Builder()
                         .setProperties(properties)
                         .setTableSchema(tableSchema)
                         .setHasMetadata(hasMetadata)
                         .setMetadataConverters(metadataConverters)
+                        .setReuseRow(reuseRow)
                         .build();
     }
 
@@ -76,25 +90,28 @@ public class RocketMQRowDeserializationSchema implements RocketMQDeserialization
     }
 
     private void extractMessages(List<MessageExt> messages) {
-        bytesMessages = new ArrayList<>(messages.size());
+        bytesMessages.clear();
         for (MessageExt message : messages) {
-            BytesMessage bytesMessage = new BytesMessage();
-            bytesMessage.setData(message.getBody());
-            if (message.getProperties() != null) {
-                bytesMessage.setProperties(message.getProperties());
-            }
-            bytesMessage.setProperty("__topic__", message.getTopic());
-            bytesMessage.setProperty(
-                    "__store_timestamp__", String.valueOf(message.getStoreTimestamp()));
-            bytesMessage.setProperty(
-                    "__born_timestamp__", String.valueOf(message.getBornTimestamp()));
-            bytesMessage.setProperty("__queue_id__", String.valueOf(message.getQueueId()));
-            bytesMessage.setProperty("__queue_offset__", String.valueOf(message.getQueueOffset()));
-            bytesMessage.setProperty("__msg_id__", message.getMsgId());
-            bytesMessage.setProperty("__keys__", message.getKeys());
-            bytesMessage.setProperty("__tags__", message.getTags());
-            bytesMessages.add(bytesMessage);
+            bytesMessages.add(toBytesMessage(message));
+        }
+    }
+
+    static BytesMessage toBytesMessage(MessageExt message) {
+        BytesMessage bytesMessage = new BytesMessage();
+        bytesMessage.setData(message.getBody());
+        if (message.getProperties() != null) {
+            bytesMessage.setProperties(message.getProperties());
         }
+        bytesMessage.setProperty("__topic__", message.getTopic());
+        bytesMessage.setProperty(
+                "__store_timestamp__", String.valueOf(message.getStoreTimestamp()));
+        bytesMessage.setProperty("__born_timestamp__", String.valueOf(message.getBornTimestamp()));
+        bytesMessage.setProperty("__queue_id__", String.valueOf(message.getQueueId()));
+        bytesMessage.setProperty("__queue_offset__", String.valueOf(message.getQueueOffset()));
+        bytesMessage.setProperty("__msg_id__", message.getMsgId());
+        bytesMessage.setProperty("__keys__", message.getKeys());
+        bytesMessage.setProperty("__tags__", message.getTags());
+        return bytesMessage;
     }
 
     @VisibleForTesting
@@ -21,6 +21,7 @@ import org.apache.rocketmq.flink.source.util.ByteSerializer;
 import org.apache.rocketmq.flink.source.util.ByteSerializer.ValueType;
 import org.apache.rocketmq.flink.source.util.StringSerializer;
 
+import org.apache.flink.annotation.VisibleForTesting;
 import org.apache.flink.api.common.serialization.DeserializationSchema.InitializationContext;
 import org.apache.flink.api.common.typeinfo.TypeInformation;
 import org.apache.flink.configuration.ConfigOption;
@@ -29,6 +30,7 @@ import org.apache.flink.configuration.Configuration;
 import org.apache.flink.table.api.TableSchema;
 import org.apache.flink.table.data.GenericRowData;
 import org.apache.flink.table.data.RowData;
+import org.apache.flink.table.data.binary.BinaryStringData;
 import org.apache.flink.table.descriptors.DescriptorProperties;
 import org.apache.flink.table.descriptors.SchemaValidator;
 import org.apache.flink.table.runtime.typeutils.InternalTypeInfo;
@@ -43,6 +45,9 @@ import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -51,6 +56,11 @@ import java.util.Set;
 
 /**
  * The row based implementation of {@link DeserializationSchema} for the deserialization of records.
+ *
+ * <p>Bodies in UTF-8 with single ASCII character delimiters are split directly on their bytes,
+ * string and integral columns are then read from the bytes without decoding the body to a {@link
+ * String}. Other bodies are decoded and split as strings. With {@code reuseRow}, the same row
+ * instance is emitted for every record, which is only safe if the collector does not keep it.
  */
 public class RowDeserializationSchema
         implements DeserializationSchema<List<BytesMessage>, RowData> {
@@ -74,12 +84,29 @@ public class RowDeserializationSchema
     private final Set<String> headerFields;
     private final Map<String, String> properties;
     private final Map<String, Integer> columnIndexMapping;
-    private final Map<Integer, Integer> dataIndexMapping;
+    private final boolean[] headerColumns;
+    /** Table column of every data field, in the order of the fields in the body. */
+    private final int[] dataColumnIndices;
+    /** Position in the body of every table column, -1 for header columns. */
+    private final int[] columnDataPositions;
+
+    private final boolean reuseRow;
+    private final boolean byteParsing;
+    private final byte fieldDelimiterByte;
+    private final byte lineDelimiterByte;
+    private transient GenericRowData reusedRow;
+    private transient int[] fieldStarts;
+    private transient int[] fieldEnds;
     private long lastLogExceptionTime;
     private long lastLogHandleFieldTime;
 
     private static final int DEFAULT_LOG_INTERVAL_MS = 60 * 1000;
 
+    /** Numbers with more characters may overflow a long and are parsed as strings. */
+    private static final int MAX_FAST_PARSE_DIGITS = 18;
+
+    private static final long NOT_A_NUMBER = Long.MIN_VALUE;
+
     public RowDeserializationSchema(
             TableSchema tableSchema,
             DirtyDataStrategy formatErrorStrategy,
@@ -92,7 +119,9 @@ public class RowDeserializationSchema
             boolean hasMetadata,
             MetadataConverter[] metadataConverters,
             List<String> headerFields,
-            Map<String, String> properties) {
+            Map<String, String> properties,
+            boolean reuseRow,
+            boolean byteParsing) {
         this.tableSchema = tableSchema;
         this.formatErrorStrategy = formatErrorStrategy;
         this.fieldMissingStrategy = fieldMissingStrategy;
@@ -105,10 +134,13 @@ public class RowDeserializationSchema
         this.headerFields = headerFields == null ? null : new HashSet<>(headerFields);
         this.properties = properties;
         this.totalColumnSize = tableSchema.getFieldNames().length;
+        this.reuseRow = reuseRow;
         int dataColumnSize = 0;
         this.fieldTypes = new ValueType[totalColumnSize];
         this.columnIndexMapping = new HashMap<>();
-        this.dataIndexMapping = new HashMap<>();
+        this.headerColumns = new boolean[totalColumnSize];
+        this.columnDataPositions = new int[totalColumnSize];
+        int[] dataColumnIndices = new int[totalColumnSize];
         for (int index = 0; index < tableSchema.getFieldNames().length; index++) {
             this.columnIndexMapping.put(tableSchema.getFieldNames()[index], index);
         }
@@ -116,12 +148,26 @@ public class RowDeserializationSchema
             ValueType type =
                     ByteSerializer.getTypeIndex(tableSchema.getFieldTypes()[index].getTypeClass());
             this.fieldTypes[index] = type;
-            if (!isHeaderField(index)) {
-                dataIndexMapping.put(dataColumnSize, index);
+            this.headerColumns[index] =
+                    this.headerFields != null
+                            && this.headerFields.contains(tableSchema.getFieldNames()[index]);
+            if (!headerColumns[index]) {
+                columnDataPositions[index] = dataColumnSize;
+                dataColumnIndices[dataColumnSize] = index;
                 dataColumnSize++;
+            } else {
+                columnDataPositions[index] = -1;
             }
         }
         this.dataColumnSize = dataColumnSize;
+        this.dataColumnIndices = Arrays.copyOf(dataColumnIndices, dataColumnSize);
+        this.fieldDelimiterByte = (byte) this.fieldDelimiter.charAt(0);
+        this.lineDelimiterByte = (byte) this.lineDelimiter.charAt(0);
+        this.byteParsing =
+                byteParsing
+                        && isUtf8Compatible(encoding)
+                        && isSingleAsciiChar(this.fieldDelimiter)
+                        && isSingleAsciiChar(this.lineDelimiter);
     }
 
     @Override
@@ -132,6 +178,8 @@ public class RowDeserializationSchema
         this.fieldDataTypes = tableSchema.getFieldDataTypes();
         this.lastLogExceptionTime = System.currentTimeMillis();
         this.lastLogHandleFieldTime = System.currentTimeMillis();
+        this.fieldStarts = new int[dataColumnSize + 1];
+        this.fieldEnds = new int[dataColumnSize + 1];
     }
 
     @Override
@@ -147,8 +195,8 @@ public class RowDeserializationSchema
         for (BytesMessage message : messages) {
             collector.message = message;
             if (isOnlyHaveVarbinaryDataField()) {
-                GenericRowData rowData = new GenericRowData(totalColumnSize);
-                int dataIndex = dataIndexMapping.get(0);
+                GenericRowData rowData = newRow();
+                int dataIndex = dataColumnIndices[0];
                 rowData.setField(dataIndex, message.getData());
                 for (int index = 0; index < totalColumnSize; index++) {
                     if (index == dataIndex) {
@@ -158,23 +206,17 @@ public class RowDeserializationSchema
                     rowData.setField(
                             index,
                             StringSerializer.deserialize(
-                                    headerValue,
-                                    fieldTypes[index],
-                                    fieldDataTypes[index],
-                                    new HashSet<>()));
+                                    headerValue, fieldTypes[index], fieldDataTypes[index], false));
                 }
                 collector.collect(rowData);
             } else if (isAllHeaderField()) {
-                GenericRowData rowData = new GenericRowData(totalColumnSize);
+                GenericRowData rowData = newRow();
                 for (int index = 0; index < totalColumnSize; index++) {
                     String headerValue = getHeaderValue(message, index);
                     rowData.setField(
                             index,
                             StringSerializer.deserialize(
-                                    headerValue,
-                                    fieldTypes[index],
-                                    fieldDataTypes[index],
-                                    new HashSet<>()));
+                                    headerValue, fieldTypes[index], fieldDataTypes[index], false));
                 }
                 collector.collect(rowData);
             } else {
@@ -182,14 +224,18 @@ public class RowDeserializationSchema
                     logger.info("Deserialize empty BytesMessage body, ignore the empty message.");
                     return;
                 }
-                deserializeBytesMessage(message, collector);
+                if (byteParsing) {
+                    parseBytesMessage(message, collector);
+                } else {
+                    deserializeBytesMessage(message, collector);
+                }
             }
         }
     }
 
     private boolean isOnlyHaveVarbinaryDataField() {
-        if (dataColumnSize == 1 && dataIndexMapping.size() == 1) {
-            int index = dataIndexMapping.get(0);
+        if (dataColumnSize == 1) {
+            int index = dataColumnIndices[0];
             return isByteArrayType(tableSchema.getFieldNames()[index]);
         }
         return false;
@@ -221,7 +267,7 @@ public class RowDeserializationSchema
             if (data == null) {
                 continue;
             }
-            GenericRowData rowData = new GenericRowData(totalColumnSize);
+            GenericRowData rowData = newRow();
             boolean skip = false;
             for (int index = 0; index < totalColumnSize; index++) {
                 try {
@@ -229,10 +275,7 @@ public class RowDeserializationSchema
                     rowData.setField(
                             index,
                             StringSerializer.deserialize(
-                                    fieldValue,
-                                    fieldTypes[index],
-                                    fieldDataTypes[index],
-                                    new HashSet<>()));
+                                    fieldValue, fieldTypes[index], fieldDataTypes[index], false));
                 } catch (Exception e) {
                     skip = handleException(rowData, index, data, e);
                 }
@@ -244,8 +287,212 @@ public class RowDeserializationSchema
         }
     }
 
+    /**
+     * Splits the lines and fields of the body on its bytes, which is safe for UTF-8 as no byte of a
+     * multi-byte character is in the ASCII range of the delimiters.
+     */
+    private void parseBytesMessage(BytesMessage message, Collector<RowData> collector) {
+        byte[] data = message.getData();
+        int lineStart = 0;
+        while (lineStart < data.length) {
+            int lineEnd = indexOf(data, lineDelimiterByte, lineStart, data.length);
+            // empty lines are dropped, like the string split does
+            if (lineEnd > lineStart) {
+                parseLine(message, data, lineStart, lineEnd, collector);
+            }
+            lineStart = lineEnd + 1;
+        }
+    }
+
+    private void parseLine(
+            BytesMessage message,
+            byte[] data,
+            int lineStart,
+            int lineEnd,
+            Collector<RowData> collector) {
+        int fieldCount;
+        if (dataColumnSize == 1) {
+            fieldStarts[0] = lineStart;
+            fieldEnds[0] = lineEnd;
+            fieldCount = 1;
+        } else {
+            fieldCount = splitFields(data, lineStart, lineEnd);
+        }
+        // missing or additional fields are mapped by data position, like the string split does
+        boolean remapped = fieldCount != dataColumnSize;
+        if (fieldCount < dataColumnSize) {
+            if (!handleFieldMissing(data, lineStart, lineEnd)) {
+                return;
+            }
+        } else if (fieldCount > dataColumnSize) {
+            if (!handleFieldIncrement(data, lineStart, lineEnd)) {
+                return;
+            }
+            fieldCount = dataColumnSize;
+        }
+        GenericRowData rowData = newRow();
+        for (int index = 0; index < totalColumnSize; index++) {
+            try {
+                if (headerColumns[index]) {
+                    rowData.setField(
+                            index,
+                            StringSerializer.deserialize(
+                                    getHeaderValue(message, index),
+                                    fieldTypes[index],
+                                    fieldDataTypes[index],
+                                    false));
+                    continue;
+                }
+                int position = remapped ? columnDataPositions[index] : index;
+                rowData.setField(
+                        index,
+                        position < fieldCount
+                                ? parseField(
+                                        data, fieldStarts[position], fieldEnds[position], index)
+                                : StringSerializer.deserialize(
+                                        null, fieldTypes[index], fieldDataTypes[index], false));
+            } catch (Exception e) {
+                if (handleException(rowData, index, splitLine(data, lineStart, lineEnd), e)) {
+                    return;
+                }
+            }
+        }
+        collector.collect(rowData);
+    }
+
+    /** Records the bounds of the fields of a line, growing the bound arrays if necessary. */
+    private int splitFields(byte[] data, int lineStart, int lineEnd) {
+        int fieldCount = 0;
+        int fieldStart = lineStart;
+        while (true) {
+            int fieldEnd = indexOf(data, fieldDelimiterByte, fieldStart, lineEnd);
+            if (fieldCount == fieldStarts.length) {
+                fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+                fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+            }
+            fieldStarts[fieldCount] = fieldStart;
+            fieldEnds[fieldCount] = fieldEnd;
+            fieldCount++;
+            if (fieldEnd == lineEnd) {
+                return fieldCount;
+            }
+            fieldStart = fieldEnd + 1;
+        }
+    }
+
+    private Object parseField(byte[] data, int start, int end, int index) {
+        switch (fieldTypes[index]) {
+            case V_String:
+                return BinaryStringData.fromBytes(data, start, end - start);
+            case V_Long:
+                if (end - start > 0 && end - start <= MAX_FAST_PARSE_DIGITS) {
+                    long value = parseLong(data, start, end);
+                    if (value != NOT_A_NUMBER) {
+                        return value;
+                    }
+                }
+                break;
+            case V_Integer:
+                if (end - start > 0 && end - start <= MAX_FAST_PARSE_DIGITS) {
+                    long value = parseLong(data, start, end);
+                    if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                        return (int) value;
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+        // the other types, and the numbers the fast path refuses, go through the string parser
+        return StringSerializer.deserialize(
+                new String(data, start, end - start, StandardCharsets.UTF_8),
+                fieldTypes[index],
+                fieldDataTypes[index],
+                false);
+    }
+
+    /** Parses a decimal number of at most 18 digits, or returns {@link #NOT_A_NUMBER}. */
+    private static long parseLong(byte[] data, int start, int end) {
+        boolean negative = data[start] == '-';
+        int index = negative || data[start] == '+' ? start + 1 : start;
+        if (index == end) {
+            return NOT_A_NUMBER;
+        }
+        long value = 0;
+        for (; index < end; index++) {
+            int digit = data[index] - '0';
+            if (digit < 0 || digit > 9) {
+                return NOT_A_NUMBER;
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    private static int indexOf(byte[] data, byte target, int from, int to) {
+        for (int index = from; index < to; index++) {
+            if (data[index] == target) {
+                return index;
+            }
+        }
+        return to;
+    }
+
+    /** Only used to log and handle malformed lines, where the fields are needed as strings. */
+    private String[] splitLine(byte[] data, int lineStart, int lineEnd) {
+        return StringUtils.splitPreserveAllTokens(
+                new String(data, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8),
+                fieldDelimiter);
+    }
+
+    private boolean handleFieldMissing(byte[] data, int lineStart, int lineEnd) {
+        switch (fieldMissingStrategy) {
+            case CUT:
+            case NULL:
+            case PAD:
+                return true;
+            default:
+                return handleFieldMissing(splitLine(data, lineStart, lineEnd)) != null;
+        }
+    }
+
+    private boolean handleFieldIncrement(byte[] data, int lineStart, int lineEnd) {
+        switch (fieldIncrementStrategy) {
+            case SKIP:
+            case SKIP_SILENT:
+            case EXCEPTION:
+                return handleFieldIncrement(splitLine(data, lineStart, lineEnd)) != null;
+            default:
+                return true;
+        }
+    }
+
+    private GenericRowData newRow() {
+        if (!reuseRow) {
+            return new GenericRowData(totalColumnSize);
+        }
+        if (reusedRow == null) {
+            reusedRow = new GenericRowData(totalColumnSize);
+        }
+        return reusedRow;
+    }
+
+    private static boolean isUtf8Compatible(String encoding) {
+        try {
+            Charset charset = Charset.forName(encoding);
+            return StandardCharsets.UTF_8.equals(charset)
+                    || StandardCharsets.US_ASCII.equals(charset);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static boolean isSingleAsciiChar(String delimiter) {
+        return delimiter.length() == 1 && delimiter.charAt(0) < 0x80;
+    }
+
     private boolean isHeaderField(int index) {
-        return headerFields != null && headerFields.contains(tableSchema.getFieldNames()[index]);
+        return headerColumns[index];
     }
 
     private String getHeaderValue(BytesMessage message, int index) {
@@ -344,10 +591,7 @@ public class RowDeserializationSchema
                 {
                     String[] res = new String[totalColumnSize];
                     for (int i = 0; i < data.length; ++i) {
-                        Object dataIndex = dataIndexMapping.get(i);
-                        if (dataIndex != null) {
-                            res[(int) dataIndex] = data[i];
-                        }
+                        res[dataColumnIndices[i]] = data[i];
                     }
                     return res;
                 }
@@ -383,10 +627,7 @@ public class RowDeserializationSchema
                 {
                     String[] res = new String[totalColumnSize];
                     for (int i = 0; i < dataColumnSize; ++i) {
-                        Object dataIndex = dataIndexMapping.get(i);
-                        if (dataIndex != null) {
-                            res[(int) dataIndex] = data[i];
-                        }
+                        res[dataColumnIndices[i]] = data[i];
                     }
                     return res;
                 }
@@ -467,6 +708,8 @@ public class RowDeserializationSchema
         private MetadataConverter[] metadataConverters;
         private List<String> headerFields;
         private Map<String, String> properties;
+        private boolean reuseRow;
+        private boolean byteParsing = true;
 
         public Builder() {}
 
@@ -525,6 +768,18 @@ public class RowDeserializationSchema
             return this;
         }
 
+        /** Emits the same row instance for every record, the collector must not keep rows. */
+        public Builder setReuseRow(boolean reuseRow) {
+            this.reuseRow = reuseRow;
+            return this;
+        }
+
+        @VisibleForTesting
+        Builder setByteParsing(boolean byteParsing) {
+            this.byteParsing = byteParsing;
+            return this;
+        }
+
         public Builder setProperties(Map<String, String> properties) {
             this.properties = properties;
             if (null == properties) {
@@ -586,7 +841,9 @@ public class RowDeserializationSchema
                     hasMetadata,
                     metadataConverters,
                     headerFields,
-                    properties);
+                    properties,
+                    reuseRow,
+                    byteParsing);
         }
     }
 
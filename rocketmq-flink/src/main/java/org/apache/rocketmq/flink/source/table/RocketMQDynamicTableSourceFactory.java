@@ -18,14 +18,18 @@
 
 package org.apache.rocketmq.flink.source.table;
 
+import org.apache.rocketmq.flink.source.util.TableOptionUtils;
+
+import org.apache.flink.api.common.serialization.DeserializationSchema;
 import org.apache.flink.configuration.ConfigOption;
 import org.apache.flink.configuration.Configuration;
 import org.apache.flink.table.api.TableSchema;
+import org.apache.flink.table.connector.format.DecodingFormat;
 import org.apache.flink.table.connector.source.DynamicTableSource;
+import org.apache.flink.table.data.RowData;
 import org.apache.flink.table.descriptors.DescriptorProperties;
-import org.apache.flink.table.factories.DynamicTableFactory;
+import org.apache.flink.table.factories.DeserializationFormatFactory;
 import org.apache.flink.table.factories.DynamicTableSourceFactory;
-import org.apache.flink.table.factories.Factory;
 import org.apache.flink.table.factories.FactoryUtil;
 import org.apache.flink.table.utils.TableSchemaUtils;
 import org.apache.flink.util.Preconditions;
@@ -34,12 +38,10 @@ import org.apache.flink.util.StringUtils;
 import org.apache.commons.lang3.time.FastDateFormat;
 
 import java.text.ParseException;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
-import java.util.stream.Collectors;
 
 import static org.apache.flink.table.factories.FactoryUtil.createTableFactoryHelper;
 import static org.apache.rocketmq.flink.source.common.RocketMQOptions.CONSUMER_GROUP;
@@ -50,17 +52,25 @@ import static org.apache.rocketmq.flink.source.common.RocketMQOptions.OPTIONAL_E
 import static org.apache.rocketmq.flink.source.common.RocketMQOptions.OPTIONAL_FIELD_DELIMITER;
 import static org.apache.rocketmq.flink.source.common.RocketMQOptions.OPTIONAL_LENGTH_CHECK;
 import static org.apache.rocketmq.flink.source.common.RocketMQOptions.OPTIONAL_LINE_DELIMITER;
+import static org.apache.rocketmq.flink.source.common.RocketMQOptions.OPTIONAL_LOOKUP_CACHE_MAX_BYTES;
+import static org.apache.rocketmq.flink.source.common.RocketMQOptions.OPTIONAL_LOOKUP_LOAD_TIMEOUT_MS;
+import static org.apache.rocketmq.flink.source.common.RocketMQOptions.OPTIONAL_LOOKUP_SPILL_DIRECTORY;
 import static org.apache.rocketmq.flink.source.common.RocketMQOptions.OPTIONAL_PARTITION_DISCOVERY_INTERVAL_MS;
+import static org.apache.rocketmq.flink.source.common.RocketMQOptions.OPTIONAL_PULL_BATCH_SIZE;
+import static org.apache.rocketmq.flink.source.common.RocketMQOptions.OPTIONAL_PULL_PREFETCH_DEPTH;
+import static org.apache.rocketmq.flink.source.common.RocketMQOptions.OPTIONAL_SPLIT_IDLE_TIMEOUT_MS;
 import static org.apache.rocketmq.flink.source.common.RocketMQOptions.OPTIONAL_START_MESSAGE_OFFSET;
 import static org.apache.rocketmq.flink.source.common.RocketMQOptions.OPTIONAL_START_TIME;
 import static org.apache.rocketmq.flink.source.common.RocketMQOptions.OPTIONAL_START_TIME_MILLS;
 import static org.apache.rocketmq.flink.source.common.RocketMQOptions.OPTIONAL_TAG;
 import static org.apache.rocketmq.flink.source.common.RocketMQOptions.OPTIONAL_TIME_ZONE;
+import static org.apache.rocketmq.flink.source.common.RocketMQOptions.OPTIONAL_WATERMARK_MAX_OUT_OF_ORDERNESS_MS;
+import static org.apache.rocketmq.flink.source.common.RocketMQOptions.PRODUCER_GROUP;
 import static org.apache.rocketmq.flink.source.common.RocketMQOptions.TOPIC;
 
 /**
  * Defines the {@link DynamicTableSourceFactory} implementation to create {@link
- * RocketMQScanTableSource}.
+ * RocketMQScanTableSource}, which serves both scans and lookups.
  */
 public class RocketMQDynamicTableSourceFactory implements DynamicTableSourceFactory {
 
@@ -83,6 +93,8 @@ public class RocketMQDynamicTableSourceFactory implements DynamicTableSourceFact
     @Override
     public Set<ConfigOption<?>> optionalOptions() {
         Set<ConfigOption<?>> optionalOptions = new HashSet<>();
+        // a table can also be written by the sink factory
+        optionalOptions.add(PRODUCER_GROUP);
         optionalOptions.add(OPTIONAL_TAG);
         optionalOptions.add(OPTIONAL_START_MESSAGE_OFFSET);
         optionalOptions.add(OPTIONAL_START_TIME_MILLS);
@@ -90,18 +102,31 @@ public class RocketMQDynamicTableSourceFactory implements DynamicTableSourceFact
         optionalOptions.add(OPTIONAL_END_TIME);
         optionalOptions.add(OPTIONAL_TIME_ZONE);
         optionalOptions.add(OPTIONAL_PARTITION_DISCOVERY_INTERVAL_MS);
+        optionalOptions.add(OPTIONAL_PULL_BATCH_SIZE);
+        optionalOptions.add(OPTIONAL_PULL_PREFETCH_DEPTH);
         optionalOptions.add(OPTIONAL_ENCODING);
         optionalOptions.add(OPTIONAL_FIELD_DELIMITER);
         optionalOptions.add(OPTIONAL_LINE_DELIMITER);
         optionalOptions.add(OPTIONAL_COLUMN_ERROR_DEBUG);
         optionalOptions.add(OPTIONAL_LENGTH_CHECK);
+        optionalOptions.add(OPTIONAL_LOOKUP_CACHE_MAX_BYTES);
+        optionalOptions.add(OPTIONAL_LOOKUP_SPILL_DIRECTORY);
+        optionalOptions.add(OPTIONAL_LOOKUP_LOAD_TIMEOUT_MS);
+        optionalOptions.add(FactoryUtil.FORMAT);
+        optionalOptions.add(OPTIONAL_WATERMARK_MAX_OUT_OF_ORDERNESS_MS);
+        optionalOptions.add(OPTIONAL_SPLIT_IDLE_TIMEOUT_MS);
         return optionalOptions;
     }
 
     @Override
     public DynamicTableSource createDynamicTableSource(Context context) {
-        transformContext(this, context);
+        TableOptionUtils.normalizeOptionKeys(this, context);
         FactoryUtil.TableFactoryHelper helper = createTableFactoryHelper(this, context);
+        // without a format, bodies are read as delimited text
+        DecodingFormat<DeserializationSchema<RowData>> decodingFormat =
+                helper.discoverOptionalDecodingFormat(
+                                DeserializationFormatFactory.class, FactoryUtil.FORMAT)
+                        .orElse(null);
         helper.validate();
         Map<String, String> rawProperties = context.getCatalogTable().getOptions();
         Configuration configuration = Configuration.fromMap(rawProperties);
@@ -146,6 +171,14 @@ public class RocketMQDynamicTableSourceFactory implements DynamicTableSourceFact
         }
         long partitionDiscoveryIntervalMs =
                 configuration.getLong(OPTIONAL_PARTITION_DISCOVERY_INTERVAL_MS);
+        int pullBatchSize = configuration.getInteger(OPTIONAL_PULL_BATCH_SIZE);
+        int pullPrefetchDepth = configuration.getInteger(OPTIONAL_PULL_PREFETCH_DEPTH);
+        long lookupCacheMaxBytes = configuration.getLong(OPTIONAL_LOOKUP_CACHE_MAX_BYTES);
+        String lookupSpillDirectory = configuration.getString(OPTIONAL_LOOKUP_SPILL_DIRECTORY);
+        long lookupLoadTimeoutMs = configuration.getLong(OPTIONAL_LOOKUP_LOAD_TIMEOUT_MS);
+        long watermarkMaxOutOfOrdernessMs =
+                configuration.getLong(OPTIONAL_WATERMARK_MAX_OUT_OF_ORDERNESS_MS);
+        long splitIdleTimeoutMs = configuration.getLong(OPTIONAL_SPLIT_IDLE_TIMEOUT_MS);
         DescriptorProperties descriptorProperties = new DescriptorProperties();
         descriptorProperties.putProperties(rawProperties);
         TableSchema physicalSchema =
@@ -161,46 +194,15 @@ public class RocketMQDynamicTableSourceFactory implements DynamicTableSourceFact
                 stopInMs,
                 startMessageOffset,
                 startMessageOffset < 0 ? startTime : -1L,
-                partitionDiscoveryIntervalMs);
-    }
-
-    private void transformContext(
-            DynamicTableFactory factory, DynamicTableFactory.Context context) {
-        Map<String, String> catalogOptions = context.getCatalogTable().getOptions();
-        Map<String, String> convertedOptions =
-                normalizeOptionCaseAsFactory(factory, catalogOptions);
-        catalogOptions.clear();
-        for (Map.Entry<String, String> entry : convertedOptions.entrySet()) {
-            catalogOptions.put(entry.getKey(), entry.getValue());
-        }
-    }
-
-    private Map<String, String> normalizeOptionCaseAsFactory(
-            Factory factory, Map<String, String> options) {
-        Map<String, String> normalizedOptions = new HashMap<>();
-        Map<String, String> requiredOptionKeysLowerCaseToOriginal =
-                factory.requiredOptions().stream()
-                        .collect(
-                                Collectors.toMap(
-                                        option -> option.key().toLowerCase(), ConfigOption::key));
-        Map<String, String> optionalOptionKeysLowerCaseToOriginal =
-                factory.optionalOptions().stream()
-                        .collect(
-                                Collectors.toMap(
-                                        option -> option.key().toLowerCase(), ConfigOption::key));
-        for (Map.Entry<String, String> entry : options.entrySet()) {
-            final String catalogOptionKey = entry.getKey();
-            final String catalogOptionValue = entry.getValue();
-            normalizedOptions.put(
-                    requiredOptionKeysLowerCaseToOriginal.containsKey(
-                                    catalogOptionKey.toLowerCase())
-                            ? requiredOptionKeysLowerCaseToOriginal.get(
-                                    catalogOptionKey.toLowerCase())
-                            : optionalOptionKeysLowerCaseToOriginal.getOrDefault(
-                                    catalogOptionKey.toLowerCase(), catalogOptionKey),
-                    catalogOptionValue);
-        }
-        return normalizedOptions;
+                partitionDiscoveryIntervalMs,
+                pullBatchSize,
+                pullPrefetchDepth,
+                lookupCacheMaxBytes,
+                lookupSpillDirectory,
+                lookupLoadTimeoutMs,
+                watermarkMaxOutOfOrdernessMs,
+                splitIdleTimeoutMs,
+                decodingFormat);
     }
 
     private Long parseDateString(String dateString, String timeZone) throws ParseException {
@@ -0,0 +1,335 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.flink.source.table;
+
+import org.apache.rocketmq.client.consumer.DefaultMQPullConsumer;
+import org.apache.rocketmq.client.consumer.PullResult;
+import org.apache.rocketmq.client.exception.MQClientException;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.flink.source.reader.deserializer.RocketMQDeserializationSchema;
+
+import org.apache.flink.annotation.VisibleForTesting;
+import org.apache.flink.api.common.ExecutionConfig;
+import org.apache.flink.api.common.serialization.DeserializationSchema.InitializationContext;
+import org.apache.flink.api.common.typeutils.TypeSerializer;
+import org.apache.flink.core.memory.DataInputDeserializer;
+import org.apache.flink.core.memory.DataOutputSerializer;
+import org.apache.flink.metrics.MetricGroup;
+import org.apache.flink.table.data.GenericRowData;
+import org.apache.flink.table.data.RowData;
+import org.apache.flink.table.functions.FunctionContext;
+import org.apache.flink.table.functions.TableFunction;
+import org.apache.flink.table.runtime.typeutils.InternalSerializers;
+import org.apache.flink.table.runtime.typeutils.InternalTypeInfo;
+import org.apache.flink.table.types.logical.LogicalType;
+import org.apache.flink.table.types.logical.RowType;
+import org.apache.flink.util.Collector;
+import org.apache.flink.util.UserCodeClassLoader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.rocketmq.client.consumer.PullStatus.FOUND;
+
+/**
+ * A lookup {@link TableFunction} that serves the latest row of every key of a RocketMQ topic.
+ *
+ * <p>On open, the whole topic is read from its earliest offsets into a {@link
+ * SpillableLookupCache}, after that a background thread keeps following the topic so that later
+ * messages replace the rows of their keys. Lookups never reach the brokers.
+ *
+ * <p>A message without body is a tombstone: it deletes the row last written by a message with the
+ * same message keys, as the compaction of the topic would.
+ */
+public class RocketMQRowDataLookupFunction extends TableFunction<RowData> {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOG = LoggerFactory.getLogger(RocketMQRowDataLookupFunction.class);
+
+    private static final long IDLE_INTERVAL_MS = 100L;
+    private static final long QUEUE_REFRESH_INTERVAL_MS = 30 * 1000L;
+
+    private final String topic;
+    private final String consumerGroup;
+    private final String nameServerAddress;
+    private final String tag;
+    private final int[] keyIndices;
+    private final int pullBatchSize;
+    private final long cacheMaxBytes;
+    private final String spillDirectory;
+    private final long loadTimeoutMs;
+    private final RocketMQDeserializationSchema<RowData> deserializationSchema;
+
+    private transient DefaultMQPullConsumer consumer;
+    private transient SpillableLookupCache<RowData> cache;
+    // Serializers are not thread-safe: rows are serialized by the updater and deserialized by eval
+    private transient TypeSerializer<RowData> rowSerializer;
+    private transient TypeSerializer<RowData> updaterRowSerializer;
+    private transient RowData.FieldGetter[] keyGetters;
+    private transient TypeSerializer<Object>[] keySerializers;
+    private transient Map<MessageQueue, Long> queueOffsets;
+    private transient Map<MessageQueue, Long> loadOffsets;
+    // Only used by the updater: the row key of the last row of every message keys, for tombstones
+    private transient Map<String, RowData> rowKeysOfMessageKeys;
+    private transient String updatingMessageKeys;
+    private transient CountDownLatch loaded;
+    private transient Thread updater;
+    private transient volatile boolean running;
+
+    private transient DataOutputSerializer serializeBuffer;
+    private transient DataInputDeserializer deserializeBuffer;
+
+    public RocketMQRowDataLookupFunction(
+            String topic,
+            String consumerGroup,
+            String nameServerAddress,
+            String tag,
+            int[] keyIndices,
+            int pullBatchSize,
+            long cacheMaxBytes,
+            String spillDirectory,
+            long loadTimeoutMs,
+            RocketMQDeserializationSchema<RowData> deserializationSchema) {
+        this.topic = topic;
+        this.consumerGroup = consumerGroup;
+        this.nameServerAddress = nameServerAddress;
+        this.tag = tag;
+        this.keyIndices = keyIndices;
+        this.pullBatchSize = pullBatchSize;
+        this.cacheMaxBytes = cacheMaxBytes;
+        this.spillDirectory = spillDirectory;
+        this.loadTimeoutMs = loadTimeoutMs;
+        this.deserializationSchema = deserializationSchema;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void open(FunctionContext context) throws Exception {
+        deserializationSchema.open(
+                new InitializationContext() {
+                    @Override
+                    public MetricGroup getMetricGroup() {
+                        return context.getMetricGroup();
+                    }
+
+                    @Override
+                    public UserCodeClassLoader getUserCodeClassLoader() {
+                        return null;
+                    }
+                });
+        InternalTypeInfo<RowData> producedType =
+                (InternalTypeInfo<RowData>) deserializationSchema.getProducedType();
+        RowType rowType = producedType.toRowType();
+        rowSerializer = producedType.createSerializer(new ExecutionConfig());
+        updaterRowSerializer = rowSerializer.duplicate();
+        keyGetters = new RowData.FieldGetter[keyIndices.length];
+        keySerializers = new TypeSerializer[keyIndices.length];
+        for (int i = 0; i < keyIndices.length; i++) {
+            LogicalType keyType = rowType.getTypeAt(keyIndices[i]);
+            keyGetters[i] = RowData.createFieldGetter(keyType, keyIndices[i]);
+            keySerializers[i] = InternalSerializers.create(keyType);
+        }
+        serializeBuffer = new DataOutputSerializer(256);
+        deserializeBuffer = new DataInputDeserializer();
+        File spillFile =
+                new File(
+                        spillDirectory == null
+                                ? System.getProperty("java.io.tmpdir")
+                                : spillDirectory,
+                        "rocketmq-lookup-" + topic + "-" + UUID.randomUUID() + ".spill");
+        cache = new SpillableLookupCache<>(cacheMaxBytes, spillFile);
+
+        if (consumer == null) {
+            consumer = createConsumer();
+        }
+        queueOffsets = new ConcurrentHashMap<>();
+        loadOffsets = new ConcurrentHashMap<>();
+        rowKeysOfMessageKeys = new HashMap<>();
+        for (MessageQueue messageQueue : consumer.fetchSubscribeMessageQueues(topic)) {
+            queueOffsets.put(messageQueue, consumer.minOffset(messageQueue));
+            loadOffsets.put(messageQueue, consumer.maxOffset(messageQueue));
+        }
+        loaded = new CountDownLatch(1);
+        running = true;
+        updater = new Thread(this::runUpdater, "RocketMQ lookup updater of " + topic);
+        updater.setDaemon(true);
+        updater.start();
+        if (!loaded.await(loadTimeoutMs, TimeUnit.MILLISECONDS)) {
+            LOG.warn(
+                    "Topic {} is not fully loaded after {} ms, lookups may miss rows until it is.",
+                    topic,
+                    loadTimeoutMs);
+        }
+    }
+
+    /** Looks up the latest row whose key fields equal {@code keys}. */
+    public void eval(Object... keys) throws IOException {
+        byte[] value = cache.get(GenericRowData.of(keys));
+        if (value != null) {
+            deserializeBuffer.setBuffer(value);
+            collect(rowSerializer.deserialize(deserializeBuffer));
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        running = false;
+        if (updater != null) {
+            updater.interrupt();
+            updater.join();
+        }
+        if (consumer != null) {
+            consumer.shutdown();
+        }
+        if (cache != null) {
+            cache.close();
+        }
+    }
+
+    @VisibleForTesting
+    boolean isLoaded() {
+        return loaded.getCount() == 0;
+    }
+
+    private void runUpdater() {
+        Collector<RowData> updateCollector =
+                new Collector<RowData>() {
+                    @Override
+                    public void collect(RowData row) {
+                        update(row);
+                    }
+
+                    @Override
+                    public void close() {}
+                };
+        long lastQueueRefreshTime = System.currentTimeMillis();
+        while (running) {
+            try {
+                boolean found = false;
+                for (Map.Entry<MessageQueue, Long> entry : queueOffsets.entrySet()) {
+                    PullResult pullResult =
+                            consumer.pull(entry.getKey(), tag, entry.getValue(), pullBatchSize);
+                    if (pullResult.getPullStatus() == FOUND) {
+                        found = true;
+                        for (MessageExt message : pullResult.getMsgFoundList()) {
+                            apply(message, updateCollector);
+                        }
+                    }
+                    entry.setValue(pullResult.getNextBeginOffset());
+                }
+                checkLoaded();
+                long now = System.currentTimeMillis();
+                if (now - lastQueueRefreshTime >= QUEUE_REFRESH_INTERVAL_MS) {
+                    lastQueueRefreshTime = now;
+                    for (MessageQueue messageQueue : consumer.fetchSubscribeMessageQueues(topic)) {
+                        if (!queueOffsets.containsKey(messageQueue)) {
+                            queueOffsets.put(messageQueue, consumer.minOffset(messageQueue));
+                        }
+                    }
+                }
+                if (!found) {
+                    Thread.sleep(IDLE_INTERVAL_MS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                LOG.warn("Failed to update the lookup cache of topic {}.", topic, e);
+                try {
+                    Thread.sleep(IDLE_INTERVAL_MS * 10);
+                } catch (InterruptedException interruptedException) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void apply(MessageExt message, Collector<RowData> updateCollector) throws IOException {
+        String messageKeys = message.getKeys();
+        if (message.getBody() == null || message.getBody().length == 0) {
+            RowData key = messageKeys == null ? null : rowKeysOfMessageKeys.remove(messageKeys);
+            if (key != null) {
+                cache.remove(key);
+            }
+            return;
+        }
+        updatingMessageKeys = messageKeys;
+        deserializationSchema.deserialize(Collections.singletonList(message), updateCollector);
+    }
+
+    private void update(RowData row) {
+        GenericRowData key = new GenericRowData(keyGetters.length);
+        for (int i = 0; i < keyGetters.length; i++) {
+            Object field = keyGetters[i].getFieldOrNull(row);
+            key.setField(i, field == null ? null : keySerializers[i].copy(field));
+        }
+        try {
+            serializeBuffer.clear();
+            updaterRowSerializer.serialize(row, serializeBuffer);
+            cache.put(key, serializeBuffer.getCopyOfBuffer());
+            if (updatingMessageKeys != null) {
+                rowKeysOfMessageKeys.put(updatingMessageKeys, key);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to cache the row of key " + key, e);
+        }
+    }
+
+    private void checkLoaded() {
+        if (loaded.getCount() == 0) {
+            return;
+        }
+        for (Map.Entry<MessageQueue, Long> entry : loadOffsets.entrySet()) {
+            Long offset = queueOffsets.get(entry.getKey());
+            if (offset != null && offset < entry.getValue()) {
+                return;
+            }
+        }
+        LOG.info("Loaded {} keys of topic {}.", cache.size(), topic);
+        loaded.countDown();
+    }
+
+    private DefaultMQPullConsumer createConsumer() throws MQClientException {
+        DefaultMQPullConsumer consumer = new DefaultMQPullConsumer(consumerGroup);
+        consumer.setNamesrvAddr(nameServerAddress);
+        consumer.setInstanceName(
+                String.join(
+                        "||",
+                        ManagementFactory.getRuntimeMXBean().getName(),
+                        topic,
+                        consumerGroup,
+                        "" + System.nanoTime()));
+        consumer.start();
+        return consumer;
+    }
+}
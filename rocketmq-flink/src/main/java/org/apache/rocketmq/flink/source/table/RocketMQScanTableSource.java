@@ -20,20 +20,33 @@ package org.apache.rocketmq.flink.source.table;
 import org.apache.rocketmq.flink.source.RocketMQSource;
 import org.apache.rocketmq.flink.source.reader.deserializer.BytesMessage;
 import org.apache.rocketmq.flink.source.reader.deserializer.RocketMQDeserializationSchema;
+import org.apache.rocketmq.flink.source.reader.deserializer.RocketMQFormatDeserializationSchema;
 import org.apache.rocketmq.flink.source.reader.deserializer.RocketMQRowDeserializationSchema;
 import org.apache.rocketmq.flink.source.reader.deserializer.RowDeserializationSchema.MetadataConverter;
 
+import org.apache.flink.api.common.eventtime.WatermarkStrategy;
+import org.apache.flink.api.common.serialization.DeserializationSchema;
+import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
 import org.apache.flink.table.api.DataTypes;
 import org.apache.flink.table.api.TableSchema;
 import org.apache.flink.table.connector.ChangelogMode;
+import org.apache.flink.table.connector.format.DecodingFormat;
+import org.apache.flink.table.connector.source.DataStreamScanProvider;
 import org.apache.flink.table.connector.source.DynamicTableSource;
+import org.apache.flink.table.connector.source.LookupTableSource;
 import org.apache.flink.table.connector.source.ScanTableSource;
 import org.apache.flink.table.connector.source.SourceProvider;
+import org.apache.flink.table.connector.source.TableFunctionProvider;
 import org.apache.flink.table.connector.source.abilities.SupportsReadingMetadata;
+import org.apache.flink.table.connector.source.abilities.SupportsSourceWatermark;
+import org.apache.flink.table.connector.source.abilities.SupportsWatermarkPushDown;
 import org.apache.flink.table.data.RowData;
 import org.apache.flink.table.data.StringData;
+import org.apache.flink.table.data.TimestampData;
 import org.apache.flink.table.descriptors.DescriptorProperties;
 import org.apache.flink.table.types.DataType;
+import org.apache.flink.util.Preconditions;
 
 import java.util.Collections;
 import java.util.LinkedHashMap;
@@ -44,8 +57,20 @@ import java.util.stream.Stream;
 import static org.apache.flink.api.connector.source.Boundedness.BOUNDED;
 import static org.apache.flink.api.connector.source.Boundedness.CONTINUOUS_UNBOUNDED;
 
-/** Defines the scan table source of RocketMQ. */
-public class RocketMQScanTableSource implements ScanTableSource, SupportsReadingMetadata {
+/**
+ * Defines the scan table source of RocketMQ. It is also a lookup table source that serves the
+ * latest row per key of the topic from a local cache, see {@link RocketMQRowDataLookupFunction}.
+ *
+ * <p>Watermarks, either declared on a column or by {@code SOURCE_WATERMARK()} on the store
+ * timestamps, are generated per message queue inside the source, and quiet queues are marked idle
+ * after {@code splitIdleTimeoutMs}.
+ */
+public class RocketMQScanTableSource
+        implements ScanTableSource,
+                LookupTableSource,
+                SupportsReadingMetadata,
+                SupportsWatermarkPushDown,
+                SupportsSourceWatermark {
 
     private final DescriptorProperties properties;
     private final TableSchema schema;
@@ -59,8 +84,19 @@ public class RocketMQScanTableSource implements ScanTableSource, SupportsReading
     private final long partitionDiscoveryIntervalMs;
     private final long startMessageOffset;
     private final long startTime;
+    private final int pullBatchSize;
+    private final int pullPrefetchDepth;
+    private final long lookupCacheMaxBytes;
+    private final String lookupSpillDirectory;
+    private final long lookupLoadTimeoutMs;
+    private final long watermarkMaxOutOfOrdernessMs;
+    private final long splitIdleTimeoutMs;
+    /** The format of the message bodies, null for the delimited text of the connector. */
+    private final DecodingFormat<DeserializationSchema<RowData>> decodingFormat;
 
     private List<String> metadataKeys;
+    /** Null if no watermark is generated by the source. */
+    private WatermarkStrategy<RowData> watermarkStrategy;
 
     public RocketMQScanTableSource(
             DescriptorProperties properties,
@@ -72,7 +108,15 @@ public class RocketMQScanTableSource implements ScanTableSource, SupportsReading
             long stopInMs,
             long startMessageOffset,
             long startTime,
-            long partitionDiscoveryIntervalMs) {
+            long partitionDiscoveryIntervalMs,
+            int pullBatchSize,
+            int pullPrefetchDepth,
+            long lookupCacheMaxBytes,
+            String lookupSpillDirectory,
+            long lookupLoadTimeoutMs,
+            long watermarkMaxOutOfOrdernessMs,
+            long splitIdleTimeoutMs,
+            DecodingFormat<DeserializationSchema<RowData>> decodingFormat) {
         this.properties = properties;
         this.schema = schema;
         this.topic = topic;
@@ -83,6 +127,14 @@ public class RocketMQScanTableSource implements ScanTableSource, SupportsReading
         this.startMessageOffset = startMessageOffset;
         this.startTime = startTime;
         this.partitionDiscoveryIntervalMs = partitionDiscoveryIntervalMs;
+        this.pullBatchSize = pullBatchSize;
+        this.pullPrefetchDepth = pullPrefetchDepth;
+        this.lookupCacheMaxBytes = lookupCacheMaxBytes;
+        this.lookupSpillDirectory = lookupSpillDirectory;
+        this.lookupLoadTimeoutMs = lookupLoadTimeoutMs;
+        this.watermarkMaxOutOfOrdernessMs = watermarkMaxOutOfOrdernessMs;
+        this.splitIdleTimeoutMs = splitIdleTimeoutMs;
+        this.decodingFormat = decodingFormat;
         this.metadataKeys = Collections.emptyList();
     }
 
@@ -93,7 +145,7 @@ public class RocketMQScanTableSource implements ScanTableSource, SupportsReading
 
     @Override
     public ScanRuntimeProvider getScanRuntimeProvider(ScanContext scanContext) {
-        return SourceProvider.of(
+        RocketMQSource<RowData> source =
                 new RocketMQSource<>(
                         topic,
                         consumerGroup,
@@ -103,8 +155,63 @@ public class RocketMQScanTableSource implements ScanTableSource, SupportsReading
                         startTime,
                         startMessageOffset < 0 ? 0 : startMessageOffset,
                         partitionDiscoveryIntervalMs,
+                        pullBatchSize,
+                        pullPrefetchDepth,
                         isBounded() ? BOUNDED : CONTINUOUS_UNBOUNDED,
-                        createDeserializationSchema()));
+                        createDeserializationSchema(scanContext));
+        if (watermarkStrategy == null) {
+            return SourceProvider.of(source);
+        }
+        // the strategy has to be handed to the source itself for per queue watermarks
+        WatermarkStrategy<RowData> sourceWatermarkStrategy = watermarkStrategy;
+        return new DataStreamScanProvider() {
+            @Override
+            public DataStream<RowData> produceDataStream(StreamExecutionEnvironment execEnv) {
+                return execEnv.fromSource(
+                        source, sourceWatermarkStrategy, "RocketMQSource-" + topic);
+            }
+
+            @Override
+            public boolean isBounded() {
+                return RocketMQScanTableSource.this.isBounded();
+            }
+        };
+    }
+
+    @Override
+    public void applyWatermark(WatermarkStrategy<RowData> watermarkStrategy) {
+        this.watermarkStrategy =
+                RocketMQSource.withSplitIdleness(watermarkStrategy, splitIdleTimeoutMs);
+    }
+
+    @Override
+    public void applySourceWatermark() {
+        this.watermarkStrategy =
+                RocketMQSource.storeTimestampWatermarks(
+                        watermarkMaxOutOfOrdernessMs, splitIdleTimeoutMs);
+    }
+
+    @Override
+    public LookupRuntimeProvider getLookupRuntimeProvider(LookupContext context) {
+        int[][] keys = context.getKeys();
+        int[] keyIndices = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            Preconditions.checkArgument(
+                    keys[i].length == 1, "RocketMQ only supports non-nested lookup keys.");
+            keyIndices[i] = keys[i][0];
+        }
+        return TableFunctionProvider.of(
+                new RocketMQRowDataLookupFunction(
+                        topic,
+                        consumerGroup,
+                        nameServerAddress,
+                        tag,
+                        keyIndices,
+                        pullBatchSize,
+                        lookupCacheMaxBytes,
+                        lookupSpillDirectory,
+                        lookupLoadTimeoutMs,
+                        createLookupDeserializationSchema(context)));
     }
 
     @Override
@@ -133,8 +240,17 @@ public class RocketMQScanTableSource implements ScanTableSource, SupportsReading
                         stopInMs,
                         startMessageOffset,
                         startTime,
-                        partitionDiscoveryIntervalMs);
+                        partitionDiscoveryIntervalMs,
+                        pullBatchSize,
+                        pullPrefetchDepth,
+                        lookupCacheMaxBytes,
+                        lookupSpillDirectory,
+                        lookupLoadTimeoutMs,
+                        watermarkMaxOutOfOrdernessMs,
+                        splitIdleTimeoutMs,
+                        decodingFormat);
         tableSource.metadataKeys = metadataKeys;
+        tableSource.watermarkStrategy = watermarkStrategy;
         return tableSource;
     }
 
@@ -143,7 +259,8 @@ public class RocketMQScanTableSource implements ScanTableSource, SupportsReading
         return "RocketMQScanTableSource";
     }
 
-    private RocketMQDeserializationSchema<RowData> createDeserializationSchema() {
+    private RocketMQDeserializationSchema<RowData> createDeserializationSchema(
+            DynamicTableSource.Context context) {
         final MetadataConverter[] metadataConverters =
                 metadataKeys.stream()
                         .map(
@@ -154,10 +271,31 @@ public class RocketMQScanTableSource implements ScanTableSource, SupportsReading
                                                 .orElseThrow(IllegalStateException::new))
                         .map(m -> m.converter)
                         .toArray(MetadataConverter[]::new);
+        if (decodingFormat != null) {
+            return new RocketMQFormatDeserializationSchema(
+                    decodingFormat.createRuntimeDecoder(context, schema.toPhysicalRowDataType()),
+                    metadataKeys.size() > 0,
+                    metadataConverters);
+        }
         return new RocketMQRowDeserializationSchema(
                 schema, properties.asMap(), metadataKeys.size() > 0, metadataConverters);
     }
 
+    /**
+     * The rows are copied into the lookup cache as soon as they are read, so they can be reused.
+     */
+    private RocketMQDeserializationSchema<RowData> createLookupDeserializationSchema(
+            DynamicTableSource.Context context) {
+        if (decodingFormat != null) {
+            return new RocketMQFormatDeserializationSchema(
+                    decodingFormat.createRuntimeDecoder(context, schema.toPhysicalRowDataType()),
+                    false,
+                    new MetadataConverter[0]);
+        }
+        return new RocketMQRowDeserializationSchema(
+                schema, properties.asMap(), false, new MetadataConverter[0], true);
+    }
+
     private boolean isBounded() {
         return stopInMs != Long.MAX_VALUE;
     }
@@ -178,6 +316,21 @@ public class RocketMQScanTableSource implements ScanTableSource, SupportsReading
                         return StringData.fromString(
                                 String.valueOf(message.getProperty("__topic__")));
                     }
+                }),
+
+        STORE_TIMESTAMP(
+                "store_timestamp",
+                DataTypes.TIMESTAMP_WITH_LOCAL_TIME_ZONE(3).notNull(),
+                new MetadataConverter() {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    public Object read(BytesMessage message) {
+                        return TimestampData.fromEpochMillis(
+                                Long.parseLong(
+                                        String.valueOf(
+                                                message.getProperty("__store_timestamp__"))));
+                    }
                 });
 
         final String key;
@@ -0,0 +1,272 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.flink.source.table;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A key value cache whose values are bounded in memory and spill to a local file.
+ *
+ * <p>The most recently used values are kept on heap up to {@code maxMemoryBytes}, the least
+ * recently used ones are appended to the spill file when that limit is exceeded. Keys always stay
+ * on heap. Overwritten spilled values leave garbage in the file, which is rewritten once the
+ * garbage outweighs the live values. The live values are copied into a new file without holding the
+ * lock of the cache, so lookups go on reading the old file meanwhile; the cache only switches to
+ * the new file, together with the positions of its values, once it is complete.
+ */
+public class SpillableLookupCache<K> implements Closeable {
+
+    private static final long MIN_COMPACTION_BYTES = 4 * 1024 * 1024L;
+
+    private final long maxMemoryBytes;
+    private final File spillFile;
+
+    private final LinkedHashMap<K, byte[]> memoryValues = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<K, SpilledValue> spilledValues = new HashMap<>();
+    private long memoryBytes;
+    private long spilledBytes;
+    private RandomAccessFile spill;
+    private File currentSpillFile;
+    private int compactions;
+    private boolean compacting;
+
+    public SpillableLookupCache(long maxMemoryBytes, File spillFile) {
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.spillFile = spillFile;
+        this.currentSpillFile = spillFile;
+    }
+
+    public void put(K key, byte[] value) throws IOException {
+        Compaction compaction;
+        synchronized (this) {
+            removeSpilled(key);
+            byte[] previous = memoryValues.put(key, value);
+            if (previous != null) {
+                memoryBytes -= previous.length;
+            }
+            memoryBytes += value.length;
+            Iterator<Map.Entry<K, byte[]>> iterator = memoryValues.entrySet().iterator();
+            while (memoryBytes > maxMemoryBytes && iterator.hasNext()) {
+                Map.Entry<K, byte[]> eldest = iterator.next();
+                iterator.remove();
+                memoryBytes -= eldest.getValue().length;
+                spilledValues.put(eldest.getKey(), append(eldest.getValue()));
+                spilledBytes += eldest.getValue().length;
+            }
+            compaction = startCompactionIfNecessary();
+        }
+        if (compaction != null) {
+            compact(compaction);
+        }
+    }
+
+    public synchronized byte[] get(K key) throws IOException {
+        byte[] value = memoryValues.get(key);
+        if (value != null) {
+            return value;
+        }
+        SpilledValue spilledValue = spilledValues.get(key);
+        if (spilledValue == null) {
+            return null;
+        }
+        value = new byte[spilledValue.length];
+        spill.seek(spilledValue.position);
+        spill.readFully(value);
+        return value;
+    }
+
+    public synchronized void remove(K key) {
+        byte[] previous = memoryValues.remove(key);
+        if (previous != null) {
+            memoryBytes -= previous.length;
+        }
+        removeSpilled(key);
+    }
+
+    public synchronized int size() {
+        return memoryValues.size() + spilledValues.size();
+    }
+
+    synchronized int spilledSize() {
+        return spilledValues.size();
+    }
+
+    synchronized long spillFileLength() throws IOException {
+        return spill == null ? 0 : spill.length();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        memoryValues.clear();
+        spilledValues.clear();
+        if (spill != null) {
+            spill.close();
+            spill = null;
+        }
+        File file = currentSpillFile;
+        currentSpillFile = spillFile;
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Failed to delete the spill file " + file);
+        }
+        if (spillFile.exists() && !spillFile.delete()) {
+            throw new IOException("Failed to delete the spill file " + spillFile);
+        }
+    }
+
+    private void removeSpilled(K key) {
+        SpilledValue spilledValue = spilledValues.remove(key);
+        if (spilledValue != null) {
+            spilledBytes -= spilledValue.length;
+        }
+    }
+
+    private SpilledValue append(byte[] value) throws IOException {
+        if (spill == null) {
+            spill = new RandomAccessFile(currentSpillFile, "rw");
+            spill.setLength(0);
+        }
+        long position = spill.length();
+        spill.seek(position);
+        spill.write(value);
+        return new SpilledValue(position, value.length);
+    }
+
+    private Compaction startCompactionIfNecessary() throws IOException {
+        if (spill == null || compacting) {
+            return null;
+        }
+        long length = spill.length();
+        if (length < MIN_COMPACTION_BYTES || length < 2 * spilledBytes) {
+            return null;
+        }
+        compacting = true;
+        File compactedFile = new File(spillFile.getPath() + "." + ++compactions);
+        return new Compaction(currentSpillFile, compactedFile, new HashMap<>(spilledValues));
+    }
+
+    /** Copies the values spilled when the compaction started, without holding the lock. */
+    private void compact(Compaction compaction) throws IOException {
+        boolean switched = false;
+        try {
+            Map<K, SpilledValue> compactedValues = new HashMap<>();
+            try (RandomAccessFile source = new RandomAccessFile(compaction.source, "r");
+                    RandomAccessFile compacted = new RandomAccessFile(compaction.target, "rw")) {
+                compacted.setLength(0);
+                byte[] buffer = new byte[0];
+                for (Map.Entry<K, SpilledValue> entry : compaction.values.entrySet()) {
+                    SpilledValue spilledValue = entry.getValue();
+                    if (buffer.length < spilledValue.length) {
+                        buffer = new byte[spilledValue.length];
+                    }
+                    source.seek(spilledValue.position);
+                    source.readFully(buffer, 0, spilledValue.length);
+                    long position = compacted.getFilePointer();
+                    compacted.write(buffer, 0, spilledValue.length);
+                    compactedValues.put(
+                            entry.getKey(), new SpilledValue(position, spilledValue.length));
+                }
+            }
+            switched = switchToCompacted(compaction, compactedValues);
+        } finally {
+            synchronized (this) {
+                compacting = false;
+            }
+            if (!switched && compaction.target.exists() && !compaction.target.delete()) {
+                compaction.target.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Switches to the compacted file, after appending the values spilled while it was written.
+     *
+     * @return false if the cache was closed meanwhile
+     */
+    private synchronized boolean switchToCompacted(
+            Compaction compaction, Map<K, SpilledValue> compactedValues) throws IOException {
+        if (spill == null) {
+            return false;
+        }
+        Map<K, SpilledValue> positions = new HashMap<>(spilledValues.size());
+        RandomAccessFile compacted = new RandomAccessFile(compaction.target, "rw");
+        try {
+            compacted.seek(compacted.length());
+            byte[] buffer = new byte[0];
+            for (Map.Entry<K, SpilledValue> entry : spilledValues.entrySet()) {
+                SpilledValue spilledValue = entry.getValue();
+                // the values spilled again since the compaction started are still in the old file
+                if (compaction.values.get(entry.getKey()) == spilledValue) {
+                    positions.put(entry.getKey(), compactedValues.get(entry.getKey()));
+                    continue;
+                }
+                if (buffer.length < spilledValue.length) {
+                    buffer = new byte[spilledValue.length];
+                }
+                spill.seek(spilledValue.position);
+                spill.readFully(buffer, 0, spilledValue.length);
+                long position = compacted.getFilePointer();
+                compacted.write(buffer, 0, spilledValue.length);
+                positions.put(entry.getKey(), new SpilledValue(position, spilledValue.length));
+            }
+        } catch (IOException e) {
+            compacted.close();
+            throw e;
+        }
+        spill.close();
+        spill = compacted;
+        currentSpillFile = compaction.target;
+        spilledValues.putAll(positions);
+        if (!compaction.source.delete()) {
+            compaction.source.deleteOnExit();
+        }
+        return true;
+    }
+
+    // ---------------- private helper class ------------------------
+
+    private class Compaction {
+        private final File source;
+        private final File target;
+        // the spilled values when the compaction started
+        private final Map<K, SpilledValue> values;
+
+        private Compaction(File source, File target, Map<K, SpilledValue> values) {
+            this.source = source;
+            this.target = target;
+            this.values = values;
+        }
+    }
+
+    private static class SpilledValue {
+        private final long position;
+        private final int length;
+
+        private SpilledValue(long position, int length) {
+            this.position = position;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.flink.source.util;
+
+import org.apache.flink.configuration.ConfigOption;
+import org.apache.flink.table.factories.DynamicTableFactory;
+import org.apache.flink.table.factories.Factory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/** Utility class for operations related to the options of the RocketMQ tables. */
+public class TableOptionUtils {
+
+    /**
+     * Renames the options of the catalog table whose keys only differ in case from the keys of the
+     * options of the factory, so that the factory finds them.
+     *
+     * @param factory the factory of the table
+     * @param context the context of the table, whose options are replaced
+     */
+    public static void normalizeOptionKeys(Factory factory, DynamicTableFactory.Context context) {
+        Map<String, String> catalogOptions = context.getCatalogTable().getOptions();
+        Map<String, String> convertedOptions =
+                normalizeOptionCaseAsFactory(factory, catalogOptions);
+        catalogOptions.clear();
+        for (Map.Entry<String, String> entry : convertedOptions.entrySet()) {
+            catalogOptions.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static Map<String, String> normalizeOptionCaseAsFactory(
+            Factory factory, Map<String, String> options) {
+        Map<String, String> normalizedOptions = new HashMap<>();
+        Map<String, String> requiredOptionKeysLowerCaseToOriginal =
+                factory.requiredOptions().stream()
+                        .collect(
+                                Collectors.toMap(
+                                        option -> option.key().toLowerCase(), ConfigOption::key));
+        Map<String, String> optionalOptionKeysLowerCaseToOriginal =
+                factory.optionalOptions().stream()
+                        .collect(
+                                Collectors.toMap(
+                                        option -> option.key().toLowerCase(), ConfigOption::key));
+        for (Map.Entry<String, String> entry : options.entrySet()) {
+            final String catalogOptionKey = entry.getKey();
+            final String catalogOptionValue = entry.getValue();
+            normalizedOptions.put(
+                    requiredOptionKeysLowerCaseToOriginal.containsKey(
+                                    catalogOptionKey.toLowerCase())
+                            ? requiredOptionKeysLowerCaseToOriginal.get(
+                                    catalogOptionKey.toLowerCase())
+                            : optionalOptionKeysLowerCaseToOriginal.getOrDefault(
+                                    catalogOptionKey.toLowerCase(), catalogOptionKey),
+                    catalogOptionValue);
+        }
+        return normalizedOptions;
+    }
+}
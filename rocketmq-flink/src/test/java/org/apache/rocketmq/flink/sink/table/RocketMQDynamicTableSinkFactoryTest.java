@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.flink.sink.table;
+
+import org.apache.rocketmq.flink.source.table.RocketMQDynamicTableSourceFactory;
+import org.apache.rocketmq.flink.source.table.RocketMQScanTableSource;
+
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.table.api.DataTypes;
+import org.apache.flink.table.api.Schema;
+import org.apache.flink.table.catalog.CatalogTable;
+import org.apache.flink.table.catalog.Column;
+import org.apache.flink.table.catalog.ObjectIdentifier;
+import org.apache.flink.table.catalog.ResolvedCatalogTable;
+import org.apache.flink.table.catalog.ResolvedSchema;
+import org.apache.flink.table.connector.sink.DynamicTableSink;
+import org.apache.flink.table.connector.source.DynamicTableSource;
+import org.apache.flink.table.factories.DynamicTableSinkFactory;
+import org.apache.flink.table.factories.DynamicTableSourceFactory;
+import org.apache.flink.table.factories.FactoryUtil;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertTrue;
+
+/** Test for {@link RocketMQDynamicTableSinkFactory}. */
+public class RocketMQDynamicTableSinkFactoryTest {
+
+    @Test
+    public void testDiscoverFactories() {
+        ClassLoader classLoader = getClass().getClassLoader();
+        // the source and the sink factories are both listed in META-INF/services
+        assertTrue(
+                FactoryUtil.discoverFactory(
+                                classLoader, DynamicTableSourceFactory.class, "rocketmq")
+                        instanceof RocketMQDynamicTableSourceFactory);
+        assertTrue(
+                FactoryUtil.discoverFactory(classLoader, DynamicTableSinkFactory.class, "rocketmq")
+                        instanceof RocketMQDynamicTableSinkFactory);
+    }
+
+    @Test
+    public void testCreateSourceAndSinkOfSameTable() {
+        ObjectIdentifier identifier = ObjectIdentifier.of("default", "default", "t");
+        ClassLoader classLoader = getClass().getClassLoader();
+        // the option keys are matched whatever their case
+        DynamicTableSource source =
+                FactoryUtil.createTableSource(
+                        null, identifier, createTable(), new Configuration(), classLoader, false);
+        assertTrue(source instanceof RocketMQScanTableSource);
+        DynamicTableSink sink =
+                FactoryUtil.createTableSink(
+                        null, identifier, createTable(), new Configuration(), classLoader, false);
+        assertTrue(sink instanceof RocketMQDynamicTableSink);
+    }
+
+    private static ResolvedCatalogTable createTable() {
+        Map<String, String> options = new HashMap<>();
+        options.put("connector", "rocketmq");
+        options.put("topic", "test-topic");
+        options.put("consumergroup", "test-consumer-group");
+        options.put("producergroup", "test-producer-group");
+        options.put("nameserveraddress", "localhost:9876");
+        ResolvedSchema schema = ResolvedSchema.of(Column.physical("name", DataTypes.STRING()));
+        CatalogTable table =
+                CatalogTable.of(
+                        Schema.newBuilder().fromResolvedSchema(schema).build(),
+                        null,
+                        Collections.emptyList(),
+                        options);
+        return new ResolvedCatalogTable(table, schema);
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.flink.sink.writer;
+
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.apache.rocketmq.client.producer.SendCallback;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageBatch;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.flink.sink.writer.serializer.RocketMQSerializationSchema;
+
+import org.apache.flink.api.connector.sink.Sink;
+import org.apache.flink.metrics.MetricGroup;
+import org.apache.flink.metrics.groups.UnregisteredMetricsGroup;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/** Test for {@link RocketMQSinkWriter}. */
+public class RocketMQSinkWriterTest {
+
+    private static final String TOPIC = "test-sink-writer";
+
+    private DefaultMQProducer producer;
+    private TestingInitContext initContext;
+    private List<Message> sentMessages;
+    private List<MessageQueue> sentQueues;
+    private List<SendCallback> callbacks;
+    private volatile boolean autoAcknowledge;
+
+    @Before
+    public void setUp() throws Exception {
+        producer = mock(DefaultMQProducer.class);
+        initContext = new TestingInitContext();
+        sentMessages = new ArrayList<>();
+        sentQueues = new ArrayList<>();
+        callbacks = new ArrayList<>();
+        when(producer.fetchPublishMessageQueues(anyString()))
+                .thenReturn(
+                        Arrays.asList(
+                                new MessageQueue(TOPIC, "broker-a", 0),
+                                new MessageQueue(TOPIC, "broker-a", 1)));
+        doAnswer(
+                        invocation -> {
+                            sentMessages.add((Message) invocation.getArguments()[0]);
+                            sentQueues.add((MessageQueue) invocation.getArguments()[1]);
+                            SendCallback callback = (SendCallback) invocation.getArguments()[2];
+                            if (autoAcknowledge) {
+                                callback.onSuccess(null);
+                            } else {
+                                callbacks.add(callback);
+                            }
+                            return null;
+                        })
+                .when(producer)
+                .send(any(Message.class), any(MessageQueue.class), any(SendCallback.class));
+    }
+
+    @Test
+    public void testBatchBySize() throws Exception {
+        RocketMQSinkWriter<String> writer = createWriter(2, 1024 * 1024, 1000L);
+        for (int i = 0; i < 5; i++) {
+            writer.write("message-" + i, null);
+        }
+        assertEquals(2, sentMessages.size());
+        assertTrue(sentMessages.get(0) instanceof MessageBatch);
+        // unkeyed messages stick to a queue until its batch is sent
+        assertEquals(0, sentQueues.get(0).getQueueId());
+        assertEquals(1, sentQueues.get(1).getQueueId());
+
+        acknowledgeAll();
+        autoAcknowledge = true;
+        writer.prepareCommit(false);
+        assertEquals(3, sentMessages.size());
+        assertEquals("message-4", new String(sentMessages.get(2).getBody()));
+    }
+
+    @Test
+    public void testBatchByLingerTime() throws Exception {
+        RocketMQSinkWriter<String> writer = createWriter(100, 1024 * 1024, 10L);
+        writer.write("message-0", null);
+        writer.write("message-1", null);
+        assertEquals(0, sentMessages.size());
+
+        initContext.advanceTime(10L);
+        assertEquals(1, sentMessages.size());
+        assertTrue(sentMessages.get(0) instanceof MessageBatch);
+    }
+
+    @Test
+    public void testBatchByBytes() throws Exception {
+        RocketMQSinkWriter<String> writer = createWriter(100, 80, 1000L);
+        writer.write("message-0", null);
+        writer.write("message-1", null);
+        writer.write("message-2", null);
+        assertEquals(1, sentMessages.size());
+    }
+
+    @Test
+    public void testAsyncErrorFailsCheckpoint() throws Exception {
+        RocketMQSinkWriter<String> writer = createWriter(1, 1024 * 1024, 0L);
+        writer.write("message-0", null);
+        callbacks.get(0).onException(new RuntimeException("broker down"));
+        try {
+            writer.prepareCommit(false);
+            fail("The failed send should fail the checkpoint.");
+        } catch (IOException e) {
+            assertEquals("broker down", e.getCause().getMessage());
+        }
+    }
+
+    private RocketMQSinkWriter<String> createWriter(
+            int batchSize, int batchMaxBytes, long lingerMs) {
+        return new RocketMQSinkWriter<>(
+                producer,
+                batchSize,
+                batchMaxBytes,
+                lingerMs,
+                4,
+                (RocketMQSerializationSchema<String>)
+                        element -> new Message(TOPIC, element.getBytes()),
+                initContext);
+    }
+
+    private void acknowledgeAll() {
+        for (SendCallback callback : callbacks) {
+            callback.onSuccess(null);
+        }
+        callbacks.clear();
+    }
+
+    private static class TestingInitContext
+            implements Sink.InitContext, Sink.ProcessingTimeService {
+        private final TreeMap<Long, ProcessingTimeCallback> timers = new TreeMap<>();
+        private long currentTime;
+
+        private void advanceTime(long duration) throws IOException {
+            currentTime += duration;
+            while (!timers.isEmpty() && timers.firstKey() <= currentTime) {
+                timers.pollFirstEntry().getValue().onProcessingTime(currentTime);
+            }
+        }
+
+        @Override
+        public Sink.ProcessingTimeService getProcessingTimeService() {
+            return this;
+        }
+
+        @Override
+        public int getSubtaskId() {
+            return 0;
+        }
+
+        @Override
+        public MetricGroup metricGroup() {
+            return new UnregisteredMetricsGroup();
+        }
+
+        @Override
+        public long getCurrentProcessingTime() {
+            return currentTime;
+        }
+
+        @Override
+        public void registerProcessingTimer(long time, ProcessingTimeCallback callback) {
+            timers.put(time, callback);
+        }
+    }
+}
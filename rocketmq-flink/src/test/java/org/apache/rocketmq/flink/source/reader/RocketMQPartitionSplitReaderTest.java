@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.flink.source.reader;
+
+import org.apache.rocketmq.client.consumer.DefaultMQPullConsumer;
+import org.apache.rocketmq.client.consumer.PullCallback;
+import org.apache.rocketmq.client.consumer.PullResult;
+import org.apache.rocketmq.client.consumer.PullStatus;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.flink.source.reader.deserializer.RocketMQDeserializationSchema;
+import org.apache.rocketmq.flink.source.split.RocketMQPartitionSplit;
+
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.java.tuple.Tuple3;
+import org.apache.flink.connector.base.source.reader.RecordsWithSplitIds;
+import org.apache.flink.connector.base.source.reader.splitreader.SplitsAddition;
+import org.apache.flink.util.Collector;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.apache.rocketmq.flink.legacy.common.util.TestUtils.setFieldValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/** Test for {@link RocketMQPartitionSplitReader}. */
+public class RocketMQPartitionSplitReaderTest {
+
+    private static final String TOPIC = "test-split-reader";
+    private static final String BROKER = "broker-a";
+
+    private RocketMQPartitionSplitReader<String> splitReader;
+    private DefaultMQPullConsumer consumer;
+
+    @Before
+    public void setUp() throws Exception {
+        splitReader =
+                new RocketMQPartitionSplitReader<>(
+                        TOPIC,
+                        "test-split-reader-group",
+                        "localhost:9876",
+                        "*",
+                        Long.MAX_VALUE,
+                        -1L,
+                        0L,
+                        4,
+                        2,
+                        new BodyDeserializationSchema());
+        Field consumerField = RocketMQPartitionSplitReader.class.getDeclaredField("consumer");
+        consumerField.setAccessible(true);
+        ((DefaultMQPullConsumer) consumerField.get(splitReader)).shutdown();
+        consumer = mock(DefaultMQPullConsumer.class);
+        setFieldValue(splitReader, "consumer", consumer);
+        // every queue holds 10 messages stored at the timestamp of their offset
+        doAnswer(
+                        invocation -> {
+                            Object[] args = invocation.getArguments();
+                            MessageQueue messageQueue = (MessageQueue) args[0];
+                            long offset = (long) args[2];
+                            int maxNums = (int) args[3];
+                            PullCallback callback = (PullCallback) args[4];
+                            List<MessageExt> messages = new ArrayList<>();
+                            for (long i = offset; i < Math.min(offset + maxNums, 10); i++) {
+                                MessageExt message = new MessageExt();
+                                message.setQueueId(messageQueue.getQueueId());
+                                message.setQueueOffset(i);
+                                message.setStoreTimestamp(i);
+                                message.setBody((messageQueue.getQueueId() + "-" + i).getBytes());
+                                messages.add(message);
+                            }
+                            callback.onSuccess(
+                                    new PullResult(
+                                            messages.isEmpty()
+                                                    ? PullStatus.NO_NEW_MSG
+                                                    : PullStatus.FOUND,
+                                            offset + messages.size(),
+                                            0,
+                                            10,
+                                            messages.isEmpty() ? null : messages));
+                            return null;
+                        })
+                .when(consumer)
+                .pullBlockIfNotFound(
+                        any(MessageQueue.class),
+                        anyString(),
+                        anyLong(),
+                        anyInt(),
+                        any(PullCallback.class));
+    }
+
+    @After
+    public void tearDown() {
+        splitReader.close();
+    }
+
+    @Test
+    public void testFetchAllQueuesWithPrefetch() throws Exception {
+        splitReader.handleSplitsChanges(
+                new SplitsAddition<>(
+                        Arrays.asList(
+                                new RocketMQPartitionSplit(TOPIC, BROKER, 0, 1, Long.MAX_VALUE),
+                                new RocketMQPartitionSplit(TOPIC, BROKER, 1, 1, Long.MAX_VALUE))));
+
+        Map<String, List<Tuple3<String, Long, Long>>> records = new HashMap<>();
+        drain(splitReader.fetch(), records);
+
+        // two batches of 4 messages are prefetched for every queue
+        assertEquals(2, records.size());
+        List<Tuple3<String, Long, Long>> queue0 = records.get(TOPIC + "-" + BROKER + "-0");
+        assertEquals(8, queue0.size());
+        for (int i = 0; i < queue0.size(); i++) {
+            assertEquals("0-" + (i + 1), queue0.get(i).f0);
+            assertEquals(i + 1, (long) queue0.get(i).f1);
+        }
+
+        drain(splitReader.fetch(), records);
+        assertEquals(9, records.get(TOPIC + "-" + BROKER + "-1").size());
+    }
+
+    @Test
+    public void testFinishSplitAtStoppingTimestamp() throws Exception {
+        splitReader.handleSplitsChanges(
+                new SplitsAddition<>(
+                        Arrays.asList(
+                                new RocketMQPartitionSplit(TOPIC, BROKER, 0, 1, 3),
+                                new RocketMQPartitionSplit(TOPIC, BROKER, 1, 1, Long.MAX_VALUE))));
+
+        Map<String, List<Tuple3<String, Long, Long>>> records = new HashMap<>();
+        RecordsWithSplitIds<Tuple3<String, Long, Long>> recordsBySplits = splitReader.fetch();
+        assertTrue(recordsBySplits.finishedSplits().contains(TOPIC + "-" + BROKER + "-0"));
+        drain(recordsBySplits, records);
+        assertEquals(3, records.get(TOPIC + "-" + BROKER + "-0").size());
+
+        drain(splitReader.fetch(), records);
+        assertEquals(3, records.get(TOPIC + "-" + BROKER + "-0").size());
+        assertEquals(9, records.get(TOPIC + "-" + BROKER + "-1").size());
+    }
+
+    private static void drain(
+            RecordsWithSplitIds<Tuple3<String, Long, Long>> recordsBySplits,
+            Map<String, List<Tuple3<String, Long, Long>>> records) {
+        String splitId;
+        while ((splitId = recordsBySplits.nextSplit()) != null) {
+            List<Tuple3<String, Long, Long>> recordsOfSplit =
+                    records.computeIfAbsent(splitId, id -> new ArrayList<>());
+            Tuple3<String, Long, Long> record;
+            while ((record = recordsBySplits.nextRecordFromSplit()) != null) {
+                recordsOfSplit.add(record);
+            }
+        }
+    }
+
+    private static class BodyDeserializationSchema
+            implements RocketMQDeserializationSchema<String> {
+
+        @Override
+        public void deserialize(List<MessageExt> record, Collector<String> out) {
+            for (MessageExt messageExt : record) {
+                out.collect(new String(messageExt.getBody()));
+            }
+        }
+
+        @Override
+        public TypeInformation<String> getProducedType() {
+            return TypeInformation.of(String.class);
+        }
+    }
+}
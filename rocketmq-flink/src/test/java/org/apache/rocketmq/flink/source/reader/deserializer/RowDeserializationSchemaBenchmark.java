@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.flink.source.reader.deserializer;
+
+import org.apache.flink.table.api.DataTypes;
+import org.apache.flink.table.api.TableSchema;
+import org.apache.flink.table.data.RowData;
+import org.apache.flink.table.descriptors.DescriptorProperties;
+import org.apache.flink.util.Collector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the byte and the string parsing of {@link RowDeserializationSchema} on batches of
+ * delimited messages. Only compiled with the {@code benchmark} maven profile.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RowDeserializationSchemaBenchmark {
+
+    private static final int MESSAGES = 64;
+
+    @Param({"true", "false"})
+    private boolean byteParsing;
+
+    @Param({"true", "false"})
+    private boolean reuseRow;
+
+    private RowDeserializationSchema schema;
+    private List<BytesMessage> messages;
+    private BlackholeCollector collector;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        TableSchema tableSchema =
+                new TableSchema.Builder()
+                        .field("id", DataTypes.BIGINT())
+                        .field("user_name", DataTypes.STRING())
+                        .field("item_id", DataTypes.INT())
+                        .field("category", DataTypes.STRING())
+                        .field("price", DataTypes.DOUBLE())
+                        .field("quantity", DataTypes.INT())
+                        .field("paid", DataTypes.BOOLEAN())
+                        .field("comment", DataTypes.STRING())
+                        .build();
+        DescriptorProperties properties = new DescriptorProperties();
+        properties.putTableSchema("schema", tableSchema);
+        schema =
+                new RowDeserializationSchema.Builder()
+                        .setProperties(properties.asMap())
+                        .setTableSchema(tableSchema)
+                        .setReuseRow(reuseRow)
+                        .setByteParsing(byteParsing)
+                        .build();
+        schema.open(null);
+        messages = new ArrayList<>(MESSAGES);
+        for (int i = 0; i < MESSAGES; i++) {
+            BytesMessage message = new BytesMessage();
+            message.setData(
+                    String.join(
+                                    "\u0001",
+                                    String.valueOf(1_000_000_000L + i),
+                                    "user-" + i,
+                                    String.valueOf(i * 7),
+                                    "category-" + (i % 8),
+                                    "19.99",
+                                    String.valueOf(i % 5),
+                                    i % 2 == 0 ? "true" : "false",
+                                    "a comment of message " + i + " with a few more words")
+                            .getBytes(StandardCharsets.UTF_8));
+            messages.add(message);
+        }
+        collector = new BlackholeCollector(blackhole);
+    }
+
+    @Benchmark
+    public void deserialize() {
+        schema.deserialize(messages, collector);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(
+                        new OptionsBuilder()
+                                .include(RowDeserializationSchemaBenchmark.class.getSimpleName())
+                                .build())
+                .run();
+    }
+
+    private static class BlackholeCollector implements Collector<RowData> {
+        private final Blackhole blackhole;
+
+        private BlackholeCollector(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void collect(RowData record) {
+            blackhole.consume(record);
+        }
+
+        @Override
+        public void close() {}
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.flink.source.reader.deserializer;
+
+import org.apache.flink.table.api.DataTypes;
+import org.apache.flink.table.api.TableSchema;
+import org.apache.flink.table.data.RowData;
+import org.apache.flink.table.descriptors.DescriptorProperties;
+import org.apache.flink.util.Collector;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/** Test for {@link RowDeserializationSchema}. */
+public class RowDeserializationSchemaTest {
+
+    private static final TableSchema TABLE_SCHEMA =
+            new TableSchema.Builder()
+                    .field("id", DataTypes.INT())
+                    .field("name", DataTypes.VARCHAR(100))
+                    .field("amount", DataTypes.BIGINT())
+                    .field("price", DataTypes.DOUBLE())
+                    .field("flag", DataTypes.BOOLEAN())
+                    .build();
+
+    @Test
+    public void testByteParsingMatchesStringParsing() {
+        String body =
+                "1\u0001张三\u0001-42\u00011.5\u0001true\n"
+                        + "\n"
+                        + "2\u0001\u00011234567890123456789\u00010\u00010\n"
+                        + "+3\u0001李四\u0001-9223372036854775808\u0001-2.25\u0001false\n"
+                        + "abc\u0001bad\u00011\u00011\u00011\n"
+                        + "4\u0001short\n"
+                        + "5\u0001long\u00017\u00012.5\u0001true\u0001extra";
+        for (DirtyDataStrategy strategy :
+                new DirtyDataStrategy[] {DirtyDataStrategy.SKIP, DirtyDataStrategy.PAD}) {
+            List<RowData> byteRows = deserialize(body, true, strategy, false);
+            List<RowData> stringRows = deserialize(body, false, strategy, false);
+            assertEquals(stringRows, byteRows);
+        }
+
+        List<RowData> rows = deserialize(body, true, DirtyDataStrategy.PAD, false);
+        assertEquals(5, rows.size());
+        assertEquals("张三", rows.get(0).getString(1).toString());
+        assertEquals(-42L, rows.get(0).getLong(2));
+        assertEquals("", rows.get(1).getString(1).toString());
+        assertEquals(1234567890123456789L, rows.get(1).getLong(2));
+        assertEquals(3, rows.get(2).getInt(0));
+        assertEquals(Long.MIN_VALUE, rows.get(2).getLong(2));
+        assertTrue(rows.get(3).isNullAt(2));
+        assertEquals(7L, rows.get(4).getLong(2));
+    }
+
+    @Test
+    public void testReuseRow() {
+        List<RowData> rows = new ArrayList<>();
+        RowDeserializationSchema schema = createSchema(true, DirtyDataStrategy.SKIP, true);
+        schema.deserialize(
+                Collections.singletonList(
+                        message(
+                                "1\u0001a\u00011\u00011\u0001true\n"
+                                        + "2\u0001b\u00012\u00012\u0001false")),
+                collector(rows));
+        assertEquals(2, rows.size());
+        assertSame(rows.get(0), rows.get(1));
+        assertEquals(2, rows.get(1).getInt(0));
+    }
+
+    @Test
+    public void testNonAsciiDelimiterFallsBackToStringParsing() {
+        List<RowData> rows = new ArrayList<>();
+        RowDeserializationSchema schema =
+                new RowDeserializationSchema.Builder()
+                        .setProperties(properties())
+                        .setTableSchema(TABLE_SCHEMA)
+                        .setFieldDelimiter("\u00a7")
+                        .build();
+        schema.open(null);
+        schema.deserialize(
+                Collections.singletonList(message("1\u00a7a\u00a71\u00a71\u00a7true")),
+                collector(rows));
+        assertEquals(1, rows.size());
+        assertEquals("a", rows.get(0).getString(1).toString());
+        assertTrue(rows.get(0).getBoolean(4));
+    }
+
+    private static List<RowData> deserialize(
+            String body, boolean byteParsing, DirtyDataStrategy strategy, boolean reuseRow) {
+        List<RowData> rows = new ArrayList<>();
+        createSchema(byteParsing, strategy, reuseRow)
+                .deserialize(Collections.singletonList(message(body)), collector(rows));
+        return rows;
+    }
+
+    private static RowDeserializationSchema createSchema(
+            boolean byteParsing, DirtyDataStrategy strategy, boolean reuseRow) {
+        RowDeserializationSchema schema =
+                new RowDeserializationSchema.Builder()
+                        .setProperties(properties())
+                        .setTableSchema(TABLE_SCHEMA)
+                        .setFieldMissingStrategy(strategy)
+                        .setFieldIncrementStrategy(DirtyDataStrategy.CUT)
+                        .setReuseRow(reuseRow)
+                        .setByteParsing(byteParsing)
+                        .build();
+        schema.open(null);
+        return schema;
+    }
+
+    private static Map<String, String> properties() {
+        DescriptorProperties descriptorProperties = new DescriptorProperties();
+        descriptorProperties.putTableSchema("schema", TABLE_SCHEMA);
+        return descriptorProperties.asMap();
+    }
+
+    private static BytesMessage message(String body) {
+        BytesMessage message = new BytesMessage();
+        message.setData(body.getBytes(StandardCharsets.UTF_8));
+        return message;
+    }
+
+    private static Collector<RowData> collector(List<RowData> rows) {
+        return new Collector<RowData>() {
+            @Override
+            public void collect(RowData record) {
+                rows.add(record);
+            }
+
+            @Override
+            public void close() {}
+        };
+    }
+}
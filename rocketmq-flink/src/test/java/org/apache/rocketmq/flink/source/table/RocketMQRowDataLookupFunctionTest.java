@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.flink.source.table;
+
+import org.apache.rocketmq.client.consumer.DefaultMQPullConsumer;
+import org.apache.rocketmq.client.consumer.PullResult;
+import org.apache.rocketmq.client.consumer.PullStatus;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.flink.source.reader.deserializer.RocketMQDeserializationSchema;
+
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.table.data.GenericRowData;
+import org.apache.flink.table.data.RowData;
+import org.apache.flink.table.data.StringData;
+import org.apache.flink.table.functions.FunctionContext;
+import org.apache.flink.table.runtime.typeutils.InternalTypeInfo;
+import org.apache.flink.table.types.logical.BigIntType;
+import org.apache.flink.table.types.logical.RowType;
+import org.apache.flink.table.types.logical.VarCharType;
+import org.apache.flink.util.Collector;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.apache.rocketmq.flink.legacy.common.util.TestUtils.setFieldValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/** Test for {@link RocketMQRowDataLookupFunction}. */
+public class RocketMQRowDataLookupFunctionTest {
+
+    private static final String TOPIC = "test-lookup";
+
+    private final List<String> bodies = Collections.synchronizedList(new ArrayList<>());
+    private final List<RowData> results = new ArrayList<>();
+    private RocketMQRowDataLookupFunction lookupFunction;
+
+    @Before
+    public void setUp() throws Exception {
+        bodies.add("1,apple");
+        bodies.add("2,banana");
+        bodies.add("1,cherry");
+        MessageQueue messageQueue = new MessageQueue(TOPIC, "broker-a", 0);
+        DefaultMQPullConsumer consumer = mock(DefaultMQPullConsumer.class);
+        when(consumer.fetchSubscribeMessageQueues(TOPIC))
+                .thenReturn(Collections.singleton(messageQueue));
+        when(consumer.minOffset(messageQueue)).thenReturn(0L);
+        when(consumer.maxOffset(messageQueue)).thenReturn(3L);
+        doAnswer(
+                        invocation -> {
+                            long offset = (long) invocation.getArguments()[2];
+                            int maxNums = (int) invocation.getArguments()[3];
+                            List<MessageExt> messages = new ArrayList<>();
+                            for (long i = offset;
+                                    i < Math.min(offset + maxNums, bodies.size());
+                                    i++) {
+                                String body = bodies.get((int) i);
+                                MessageExt message = new MessageExt();
+                                message.setQueueOffset(i);
+                                // the first field is also the message key, a key alone is a
+                                // tombstone
+                                message.setKeys(body.substring(0, body.indexOf(',')));
+                                message.setBody(body.endsWith(",") ? new byte[0] : body.getBytes());
+                                messages.add(message);
+                            }
+                            return new PullResult(
+                                    messages.isEmpty() ? PullStatus.NO_NEW_MSG : PullStatus.FOUND,
+                                    offset + messages.size(),
+                                    0,
+                                    bodies.size(),
+                                    messages.isEmpty() ? null : messages);
+                        })
+                .when(consumer)
+                .pull(any(MessageQueue.class), anyString(), anyLong(), anyInt());
+
+        lookupFunction =
+                new RocketMQRowDataLookupFunction(
+                        TOPIC,
+                        "test-lookup-group",
+                        "localhost:9876",
+                        "*",
+                        new int[] {0},
+                        2,
+                        1024,
+                        null,
+                        10000L,
+                        new CsvDeserializationSchema());
+        setFieldValue(lookupFunction, "consumer", consumer);
+        lookupFunction.setCollector(
+                new Collector<RowData>() {
+                    @Override
+                    public void collect(RowData record) {
+                        results.add(record);
+                    }
+
+                    @Override
+                    public void close() {}
+                });
+        lookupFunction.open(new FunctionContext(null));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        lookupFunction.close();
+    }
+
+    @Test
+    public void testLookupLatestRow() throws Exception {
+        assertTrue(lookupFunction.isLoaded());
+        lookupFunction.eval(1L);
+        lookupFunction.eval(2L);
+        lookupFunction.eval(3L);
+        assertEquals(2, results.size());
+        assertEquals("cherry", results.get(0).getString(1).toString());
+        assertEquals("banana", results.get(1).getString(1).toString());
+    }
+
+    @Test
+    public void testFollowTopicUpdates() throws Exception {
+        bodies.add("2,durian");
+        long deadline = System.currentTimeMillis() + 10000L;
+        while (System.currentTimeMillis() < deadline) {
+            results.clear();
+            lookupFunction.eval(2L);
+            if ("durian".equals(results.get(0).getString(1).toString())) {
+                return;
+            }
+            Thread.sleep(10L);
+        }
+        throw new AssertionError("The update of key 2 was not applied.");
+    }
+
+    @Test
+    public void testDeleteByTombstone() throws Exception {
+        bodies.add("2,");
+        long deadline = System.currentTimeMillis() + 10000L;
+        while (System.currentTimeMillis() < deadline) {
+            results.clear();
+            lookupFunction.eval(2L);
+            if (results.isEmpty()) {
+                lookupFunction.eval(1L);
+                assertEquals("cherry", results.get(0).getString(1).toString());
+                return;
+            }
+            Thread.sleep(10L);
+        }
+        throw new AssertionError("The tombstone of key 2 was not applied.");
+    }
+
+    private static class CsvDeserializationSchema
+            implements RocketMQDeserializationSchema<RowData> {
+
+        @Override
+        public void deserialize(List<MessageExt> record, Collector<RowData> out) {
+            for (MessageExt messageExt : record) {
+                String[] fields = new String(messageExt.getBody()).split(",");
+                out.collect(
+                        GenericRowData.of(
+                                Long.parseLong(fields[0]), StringData.fromString(fields[1])));
+            }
+        }
+
+        @Override
+        public TypeInformation<RowData> getProducedType() {
+            return InternalTypeInfo.of(RowType.of(new BigIntType(), new VarCharType()));
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.flink.source.table;
+
+import org.apache.rocketmq.flink.source.reader.deserializer.BytesMessage;
+
+import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
+import org.apache.flink.streaming.api.transformations.SourceTransformation;
+import org.apache.flink.table.api.DataTypes;
+import org.apache.flink.table.api.TableSchema;
+import org.apache.flink.table.connector.source.DataStreamScanProvider;
+import org.apache.flink.table.connector.source.ScanTableSource.ScanRuntimeProvider;
+import org.apache.flink.table.connector.source.SourceProvider;
+import org.apache.flink.table.data.RowData;
+import org.apache.flink.table.data.TimestampData;
+import org.apache.flink.table.descriptors.DescriptorProperties;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/** Test for {@link RocketMQScanTableSource}. */
+public class RocketMQScanTableSourceTest {
+
+    private static final TableSchema TABLE_SCHEMA =
+            new TableSchema.Builder().field("name", DataTypes.STRING()).build();
+
+    @Test
+    public void testWithoutWatermark() {
+        assertTrue(createTableSource().getScanRuntimeProvider(null) instanceof SourceProvider);
+    }
+
+    @Test
+    public void testSourceWatermarkPerSplit() {
+        RocketMQScanTableSource tableSource = createTableSource();
+        tableSource.applySourceWatermark();
+        assertSourceWatermark((RocketMQScanTableSource) tableSource.copy());
+        assertSourceWatermark(tableSource);
+    }
+
+    @Test
+    public void testReadStoreTimestamp() {
+        BytesMessage message = new BytesMessage();
+        message.setProperty("__store_timestamp__", "1620000000000");
+        assertEquals(
+                TimestampData.fromEpochMillis(1620000000000L),
+                RocketMQScanTableSource.ReadableMetadata.STORE_TIMESTAMP.converter.read(message));
+        assertTrue(createTableSource().listReadableMetadata().containsKey("store_timestamp"));
+    }
+
+    private static void assertSourceWatermark(RocketMQScanTableSource tableSource) {
+        ScanRuntimeProvider provider = tableSource.getScanRuntimeProvider(null);
+        assertTrue(provider instanceof DataStreamScanProvider);
+        assertFalse(provider.isBounded());
+        DataStream<RowData> dataStream =
+                ((DataStreamScanProvider) provider)
+                        .produceDataStream(StreamExecutionEnvironment.getExecutionEnvironment());
+        SourceTransformation<?, ?, ?> transformation =
+                (SourceTransformation<?, ?, ?>) dataStream.getTransformation();
+        assertNotNull(transformation.getWatermarkStrategy());
+    }
+
+    private static RocketMQScanTableSource createTableSource() {
+        DescriptorProperties properties = new DescriptorProperties();
+        properties.putTableSchema("schema", TABLE_SCHEMA);
+        return new RocketMQScanTableSource(
+                properties,
+                TABLE_SCHEMA,
+                "test-scan-table-source",
+                "test-group",
+                "localhost:9876",
+                "*",
+                Long.MAX_VALUE,
+                -1L,
+                -1L,
+                30000L,
+                32,
+                2,
+                1024L,
+                null,
+                1000L,
+                5000L,
+                60000L,
+                null);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.flink.source.table;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/** Test for {@link SpillableLookupCache}. */
+public class SpillableLookupCacheTest {
+
+    private File spillFile;
+    private SpillableLookupCache<String> cache;
+
+    @Before
+    public void setUp() throws Exception {
+        spillFile = Files.createTempFile("lookup-cache", ".spill").toFile();
+        cache = new SpillableLookupCache<>(16, spillFile);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        cache.close();
+        assertFalse(spillFile.exists());
+    }
+
+    @Test
+    public void testSpillLeastRecentlyUsed() throws Exception {
+        cache.put("a", new byte[] {1, 1, 1, 1, 1, 1, 1, 1});
+        cache.put("b", new byte[] {2, 2, 2, 2, 2, 2, 2, 2});
+        assertEquals(0, cache.spilledSize());
+
+        // touch "a" so that "b" is the one to spill
+        cache.get("a");
+        cache.put("c", new byte[] {3, 3, 3, 3});
+        assertEquals(1, cache.spilledSize());
+        assertEquals(3, cache.size());
+        assertArrayEquals(new byte[] {2, 2, 2, 2, 2, 2, 2, 2}, cache.get("b"));
+        assertArrayEquals(new byte[] {1, 1, 1, 1, 1, 1, 1, 1}, cache.get("a"));
+        assertNull(cache.get("d"));
+    }
+
+    @Test
+    public void testOverwriteSpilledValue() throws Exception {
+        cache.put("a", new byte[] {1, 1, 1, 1, 1, 1, 1, 1});
+        cache.put("b", new byte[] {2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2});
+        assertEquals(1, cache.spilledSize());
+
+        cache.put("a", new byte[] {4});
+        assertEquals(0, cache.spilledSize());
+        assertArrayEquals(new byte[] {4}, cache.get("a"));
+
+        cache.remove("b");
+        assertNull(cache.get("b"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testCompactSpillFile() throws Exception {
+        byte[] value = new byte[1024 * 1024];
+        for (int i = 0; i < 16; i++) {
+            value[0] = (byte) i;
+            // every value is larger than the memory limit and overwrites the previous one
+            cache.put("a", value.clone());
+        }
+        assertEquals(1, cache.spilledSize());
+        assertTrue(cache.spillFileLength() < 4 * value.length);
+        assertEquals(15, cache.get("a")[0]);
+    }
+
+    @Test
+    public void testFailedCompactionKeepsValues() throws Exception {
+        // the file of the first compaction cannot be created
+        File compactedFile = new File(spillFile.getPath() + ".1");
+        assertTrue(compactedFile.mkdir());
+        try {
+            byte[] value = new byte[1024 * 1024];
+            IOException failure = null;
+            for (int i = 0; i < 16; i++) {
+                value[0] = (byte) i;
+                try {
+                    cache.put("a", value.clone());
+                } catch (IOException e) {
+                    failure = e;
+                    assertEquals(i, cache.get("a")[0]);
+                }
+            }
+            assertNotNull(failure);
+            // the next compactions went through
+            assertTrue(cache.spillFileLength() < 4 * value.length);
+            assertEquals(15, cache.get("a")[0]);
+        } finally {
+            compactedFile.delete();
+        }
+    }
+}
@@ -18,19 +18,38 @@
 package org.apache.rocketmq.iot;
 
 import io.netty.bootstrap.ServerBootstrap;
-import io.netty.channel.ChannelFuture;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.mqtt.MqttDecoder;
 import io.netty.handler.codec.mqtt.MqttEncoder;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutorGroup;
+import java.util.ArrayList;
+import java.util.List;
 import org.apache.rocketmq.iot.common.configuration.MQTTBridgeConfiguration;
+import org.apache.rocketmq.iot.common.configuration.RocketMQConfiguration;
 import org.apache.rocketmq.iot.common.data.Message;
 import org.apache.rocketmq.iot.connection.client.ClientManager;
+import org.apache.rocketmq.iot.protocol.mqtt.data.MqttClient;
+import org.apache.rocketmq.iot.protocol.mqtt.data.Subscription;
 import org.apache.rocketmq.iot.protocol.mqtt.handler.MessageDispatcher;
+import org.apache.rocketmq.iot.protocol.mqtt.handler.MessageHandler;
 import org.apache.rocketmq.iot.connection.client.impl.ClientManagerImpl;
 import org.apache.rocketmq.iot.protocol.mqtt.handler.MqttConnectionHandler;
 import org.apache.rocketmq.iot.protocol.mqtt.handler.MqttIdleHandler;
@@ -38,8 +57,19 @@ import org.apache.rocketmq.iot.protocol.mqtt.handler.downstream.impl.MqttConnect
 import org.apache.rocketmq.iot.protocol.mqtt.handler.downstream.impl.MqttDisconnectMessageHandler;
 import org.apache.rocketmq.iot.protocol.mqtt.handler.downstream.impl.MqttMessageForwarder;
 import org.apache.rocketmq.iot.protocol.mqtt.handler.downstream.impl.MqttPingreqMessageHandler;
+import org.apache.rocketmq.iot.protocol.mqtt.handler.downstream.impl.MqttPubackMessageHandler;
+import org.apache.rocketmq.iot.protocol.mqtt.handler.downstream.impl.MqttPubcompMessageHandler;
+import org.apache.rocketmq.iot.protocol.mqtt.handler.downstream.impl.MqttPublishMessageHandler;
+import org.apache.rocketmq.iot.protocol.mqtt.handler.downstream.impl.MqttPubrecMessageHandler;
+import org.apache.rocketmq.iot.protocol.mqtt.handler.downstream.impl.MqttPubrelMessageHandler;
 import org.apache.rocketmq.iot.protocol.mqtt.handler.downstream.impl.MqttSubscribeMessageHandler;
 import org.apache.rocketmq.iot.protocol.mqtt.handler.downstream.impl.MqttUnsubscribeMessagHandler;
+import org.apache.rocketmq.iot.storage.message.MessageStore;
+import org.apache.rocketmq.iot.storage.message.impl.RocketMQMessageStore;
+import org.apache.rocketmq.iot.storage.retain.RetainedMessageStore;
+import org.apache.rocketmq.iot.storage.retain.impl.InMemoryRetainedMessageStore;
+import org.apache.rocketmq.iot.storage.session.SessionStore;
+import org.apache.rocketmq.iot.storage.session.impl.MappedSessionStore;
 import org.apache.rocketmq.iot.storage.subscription.SubscriptionStore;
 import org.apache.rocketmq.iot.storage.subscription.impl.InMemorySubscriptionStore;
 import org.slf4j.Logger;
@@ -48,10 +78,16 @@ import org.slf4j.LoggerFactory;
 public class MQTTBridge {
 
     private ServerBootstrap serverBootstrap;
-    private NioEventLoopGroup bossGroup;
-    private NioEventLoopGroup workerGroup;
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+    private EventExecutorGroup handlerGroup;
+    private boolean epoll;
+    private List<Channel> serverChannels = new ArrayList<>();
     private MessageDispatcher messageDispatcher;
     private SubscriptionStore subscriptionStore;
+    private MessageStore messageStore;
+    private RetainedMessageStore retainedMessageStore;
+    private SessionStore sessionStore;
     private ClientManager clientManager;
     private MqttConnectionHandler connectionHandler;
     private Logger logger = LoggerFactory.getLogger(MQTTBridge.class);
@@ -61,48 +97,95 @@ public class MQTTBridge {
     }
 
     private void  init() {
-        bossGroup = new NioEventLoopGroup(MQTTBridgeConfiguration.threadNumOfBossGroup());
-        workerGroup = new NioEventLoopGroup(MQTTBridgeConfiguration.threadNumOfWorkerGroup());
+        epoll = useEpoll();
+        if (epoll) {
+            bossGroup = new EpollEventLoopGroup(MQTTBridgeConfiguration.threadNumOfBossGroup(),
+                new DefaultThreadFactory("mqtt-boss"));
+            workerGroup = new EpollEventLoopGroup(MQTTBridgeConfiguration.threadNumOfWorkerGroup(),
+                new DefaultThreadFactory("mqtt-worker"));
+        } else {
+            bossGroup = new NioEventLoopGroup(MQTTBridgeConfiguration.threadNumOfBossGroup(),
+                new DefaultThreadFactory("mqtt-boss"));
+            workerGroup = new NioEventLoopGroup(MQTTBridgeConfiguration.threadNumOfWorkerGroup(),
+                new DefaultThreadFactory("mqtt-worker"));
+        }
+        if (MQTTBridgeConfiguration.threadNumOfHandlerGroup() > 0) {
+            handlerGroup = new DefaultEventExecutorGroup(MQTTBridgeConfiguration.threadNumOfHandlerGroup(),
+                new DefaultThreadFactory("mqtt-handler"));
+        }
+        ByteBufAllocator allocator = "unpooled".equalsIgnoreCase(MQTTBridgeConfiguration.allocator())
+            ? UnpooledByteBufAllocator.DEFAULT : PooledByteBufAllocator.DEFAULT;
         serverBootstrap = new ServerBootstrap();
         serverBootstrap.group(bossGroup, workerGroup)
             .localAddress(MQTTBridgeConfiguration.port())
-            .channel(NioServerSocketChannel.class)
+            .channel(epoll ? EpollServerSocketChannel.class : NioServerSocketChannel.class)
             .option(ChannelOption.SO_BACKLOG, MQTTBridgeConfiguration.socketBacklog())
+            .option(ChannelOption.ALLOCATOR, allocator)
+            .childOption(ChannelOption.ALLOCATOR, allocator)
+            .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(
+                MQTTBridgeConfiguration.writeBufferLowWaterMark(), MQTTBridgeConfiguration.writeBufferHighWaterMark()))
             .childHandler(new ChannelInitializer<SocketChannel>() {
                 @Override protected void initChannel(SocketChannel ch) throws Exception {
                     ChannelPipeline pipeline = ch.pipeline();
+                    pipeline.addLast("flush-consolidation", new FlushConsolidationHandler(
+                        MQTTBridgeConfiguration.explicitFlushAfterFlushes(), true));
                     pipeline.addLast("mqtt-decoder", new MqttDecoder());
                     pipeline.addLast("mqtt-encoder", MqttEncoder.INSTANCE);
                     pipeline.addLast("channel-idle-handler", new MqttIdleHandler());
-                    pipeline.addLast("message-dispatcher", messageDispatcher);
+                    /* the handlers may block on the message store, keep them off the I/O threads if asked to */
+                    pipeline.addLast(handlerGroup, "message-dispatcher", messageDispatcher);
                     pipeline.addLast("connection-manager", connectionHandler);
                 }
             });
+        if (epoll) {
+            serverBootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+        }
         subscriptionStore = new InMemorySubscriptionStore();
+        retainedMessageStore = new InMemoryRetainedMessageStore();
         clientManager = new ClientManagerImpl();
         messageDispatcher = new MessageDispatcher(clientManager);
         connectionHandler = new MqttConnectionHandler(clientManager, subscriptionStore);
+        if (RocketMQConfiguration.enabled()) {
+            messageStore = new RocketMQMessageStore(messageDispatcher);
+        }
+        if (MQTTBridgeConfiguration.sessionStoreEnabled()) {
+            sessionStore = new MappedSessionStore();
+        }
         registerMessageHandlers();
     }
 
     private void registerMessageHandlers() {
-        messageDispatcher.registerHandler(Message.Type.MQTT_CONNECT, new MqttConnectMessageHandler(clientManager));
+        messageDispatcher.registerHandler(Message.Type.MQTT_CONNECT, new MqttConnectMessageHandler(clientManager, sessionStore, subscriptionStore));
         messageDispatcher.registerHandler(Message.Type.MQTT_DISCONNECT, new MqttDisconnectMessageHandler(clientManager));
-        messageDispatcher.registerHandler(Message.Type.MQTT_PUBLISH, new MqttMessageForwarder(subscriptionStore));
-        // TODO qos 1/2 PUBLISH
-        // TODO qos 1: PUBACK
-        // TODO qos 2: PUBREC
-        // TODO qos 2: PUBREL
-        // TODO qos 2: PUBCOMP
+        MessageHandler forwarder = new MqttMessageForwarder(subscriptionStore, sessionStore);
+        if (messageStore == null) {
+            messageDispatcher.registerHandler(Message.Type.MQTT_PUBLISH, new MqttPublishMessageHandler(forwarder, retainedMessageStore));
+        } else {
+            /* the messages go through RocketMQ and are pushed to the clients once consumed */
+            messageDispatcher.registerHandler(Message.Type.MQTT_PUBLISH, new MqttPublishMessageHandler(messageStore, retainedMessageStore));
+            messageDispatcher.registerHandler(Message.Type.MQTT_SEND, forwarder);
+        }
+        messageDispatcher.registerHandler(Message.Type.MQTT_PUBACK, new MqttPubackMessageHandler());
+        messageDispatcher.registerHandler(Message.Type.MQTT_PUBREC, new MqttPubrecMessageHandler());
+        messageDispatcher.registerHandler(Message.Type.MQTT_PUBREL, new MqttPubrelMessageHandler());
+        messageDispatcher.registerHandler(Message.Type.MQTT_PUBCOMP, new MqttPubcompMessageHandler());
         messageDispatcher.registerHandler(Message.Type.MQTT_PINGREQ, new MqttPingreqMessageHandler());
-        messageDispatcher.registerHandler(Message.Type.MQTT_SUBSCRIBE, new MqttSubscribeMessageHandler(subscriptionStore));
-        messageDispatcher.registerHandler(Message.Type.MQTT_UNSUBSCRIBE, new MqttUnsubscribeMessagHandler(subscriptionStore));
+        messageDispatcher.registerHandler(Message.Type.MQTT_SUBSCRIBE, new MqttSubscribeMessageHandler(subscriptionStore, retainedMessageStore, sessionStore));
+        messageDispatcher.registerHandler(Message.Type.MQTT_UNSUBSCRIBE, new MqttUnsubscribeMessagHandler(subscriptionStore, sessionStore));
     }
 
     public void start() {
         try {
-            ChannelFuture channelFuture = serverBootstrap.bind().sync();
-            channelFuture.channel().closeFuture().sync();
+            if (messageStore != null) {
+                messageStore.start();
+            }
+            if (sessionStore != null) {
+                startSessionStore();
+            }
+            bind();
+            for (Channel serverChannel : serverChannels) {
+                serverChannel.closeFuture().sync();
+            }
         } catch (Exception e) {
             logger.error("fail to start the MQTTServer." + e);
         } finally {
@@ -112,9 +195,64 @@ public class MQTTBridge {
 
     }
 
+    /**
+     * Load the persistent sessions and subscribe on behalf of their clients, so that their messages are queued
+     * until they connect again
+     */
+    private void startSessionStore() {
+        sessionStore.start();
+        for (String clientId : sessionStore.getClientIds()) {
+            MqttClient client = new MqttClient();
+            client.setId(clientId);
+            client.setCleanSession(false);
+            sessionStore.getSubscriptions(clientId).forEach((topicFilter, qos) -> subscriptionStore.append(
+                topicFilter,
+                Subscription.Builder.newBuilder()
+                    .client(client)
+                    .qos(qos)
+                    .build()
+            ));
+        }
+    }
+
+    /**
+     * Bind the port, once per acceptor thread with epoll so that the kernel spreads the connections among them
+     */
+    public void bind() throws InterruptedException {
+        int acceptors = epoll ? MQTTBridgeConfiguration.threadNumOfBossGroup() : 1;
+        for (int i = 0; i < acceptors; i++) {
+            serverChannels.add(serverBootstrap.bind().sync().channel());
+        }
+        logger.info("MQTTServer listens on port {} with {} transport and {} acceptor(s)",
+            MQTTBridgeConfiguration.port(), epoll ? "epoll" : "nio", acceptors);
+    }
+
     public void shutdown() {
         bossGroup.shutdownGracefully();
         workerGroup.shutdownGracefully();
+        if (handlerGroup != null) {
+            handlerGroup.shutdownGracefully();
+        }
+        if (messageStore != null) {
+            messageStore.shutdown();
+        }
+        if (sessionStore != null) {
+            sessionStore.shutdown();
+        }
+    }
+
+    private static boolean useEpoll() {
+        String transport = MQTTBridgeConfiguration.transport();
+        if ("nio".equalsIgnoreCase(transport)) {
+            return false;
+        }
+        if (Epoll.isAvailable()) {
+            return true;
+        }
+        if ("epoll".equalsIgnoreCase(transport)) {
+            throw new IllegalStateException("epoll transport is not available", Epoll.unavailabilityCause());
+        }
+        return false;
     }
 
     public static void main(String [] args) {
@@ -29,8 +29,42 @@ public class MQTTBridgeConfiguration {
     public static final String DEFAULT_MQTT_HOST = "127.0.0.1";
     public static final String MQTT_SOCKET_BACKLOG = "iot.mqtt.socket.backlog";
     public static final String DEFAULT_SOCKET_BACKLOG = "1024";
-    public static final Integer DEFAULT_THREAD_NUM_OF_BOSS_GROUP = 1;
-    public static final Integer DEFAULT_THREAD_NUM_OF_WORKER_GROUP = 32;
+    public static final String MQTT_EXPLICIT_FLUSH_AFTER_FLUSHES = "iot.mqtt.explicit.flush.after.flushes";
+    public static final String DEFAULT_EXPLICIT_FLUSH_AFTER_FLUSHES = "256";
+    public static final String MQTT_RECEIVE_MAXIMUM = "iot.mqtt.receive.maximum";
+    public static final String DEFAULT_RECEIVE_MAXIMUM = "64";
+    public static final String MQTT_MAX_PENDING_MESSAGES = "iot.mqtt.max.pending.messages";
+    public static final String DEFAULT_MAX_PENDING_MESSAGES = "1024";
+    public static final String MQTT_RETRY_INTERVAL_MS = "iot.mqtt.retry.interval.ms";
+    public static final String DEFAULT_RETRY_INTERVAL_MS = "10000";
+    public static final String MQTT_RETAINED_MAX_MESSAGES = "iot.mqtt.retained.max.messages";
+    public static final String DEFAULT_RETAINED_MAX_MESSAGES = "1000000";
+    public static final String MQTT_RETAINED_MAX_BYTES = "iot.mqtt.retained.max.bytes";
+    public static final String DEFAULT_RETAINED_MAX_BYTES = "268435456";
+    public static final String MQTT_TRANSPORT = "iot.mqtt.transport";
+    public static final String DEFAULT_TRANSPORT = "auto";
+    public static final String MQTT_THREAD_NUM_OF_BOSS_GROUP = "iot.mqtt.thread.num.boss";
+    public static final String DEFAULT_THREAD_NUM_OF_BOSS_GROUP = "1";
+    public static final String MQTT_THREAD_NUM_OF_WORKER_GROUP = "iot.mqtt.thread.num.worker";
+    public static final String DEFAULT_THREAD_NUM_OF_WORKER_GROUP = "0";
+    public static final String MQTT_THREAD_NUM_OF_HANDLER_GROUP = "iot.mqtt.thread.num.handler";
+    public static final String DEFAULT_THREAD_NUM_OF_HANDLER_GROUP = "0";
+    public static final String MQTT_WRITE_BUFFER_LOW_WATER_MARK = "iot.mqtt.write.buffer.low.water.mark";
+    public static final String DEFAULT_WRITE_BUFFER_LOW_WATER_MARK = "32768";
+    public static final String MQTT_WRITE_BUFFER_HIGH_WATER_MARK = "iot.mqtt.write.buffer.high.water.mark";
+    public static final String DEFAULT_WRITE_BUFFER_HIGH_WATER_MARK = "65536";
+    public static final String MQTT_ALLOCATOR = "iot.mqtt.allocator";
+    public static final String DEFAULT_ALLOCATOR = "pooled";
+    public static final String MQTT_SESSION_STORE_ENABLED = "iot.mqtt.session.store.enabled";
+    public static final String DEFAULT_SESSION_STORE_ENABLED = "false";
+    public static final String MQTT_SESSION_STORE_PATH = "iot.mqtt.session.store.path";
+    public static final String DEFAULT_SESSION_STORE_PATH = System.getProperty("user.home") + "/iot-bridge/session";
+    public static final String MQTT_SESSION_SEGMENT_SIZE = "iot.mqtt.session.segment.size";
+    public static final String DEFAULT_SESSION_SEGMENT_SIZE = "67108864";
+    public static final String MQTT_SESSION_MAX_QUEUED_MESSAGES = "iot.mqtt.session.max.queued.messages";
+    public static final String DEFAULT_SESSION_MAX_QUEUED_MESSAGES = "1000";
+    public static final String MQTT_SESSION_COMPACTION_INTERVAL_MS = "iot.mqtt.session.compaction.interval.ms";
+    public static final String DEFAULT_SESSION_COMPACTION_INTERVAL_MS = "10000";
 
     public static Integer port() {
         return Integer.valueOf(System.getProperty(MQTT_PORT_PROPERTY, DEFAULT_MQTT_PORT));
@@ -44,11 +78,133 @@ public class MQTTBridgeConfiguration {
         return Integer.valueOf(System.getProperty(MQTT_SOCKET_BACKLOG, DEFAULT_SOCKET_BACKLOG));
     }
 
+    /**
+     * @return the number of consolidated flushes after which a channel is flushed without waiting for the
+     * end of the event loop tick
+     */
+    public static Integer explicitFlushAfterFlushes() {
+        return Integer.valueOf(System.getProperty(MQTT_EXPLICIT_FLUSH_AFTER_FLUSHES, DEFAULT_EXPLICIT_FLUSH_AFTER_FLUSHES));
+    }
+
+    /**
+     * @return the number of QoS 1 and 2 messages in flight in each direction of a connection
+     */
+    public static Integer receiveMaximum() {
+        return Integer.valueOf(System.getProperty(MQTT_RECEIVE_MAXIMUM, DEFAULT_RECEIVE_MAXIMUM));
+    }
+
+    /**
+     * @return the number of QoS 1 and 2 messages queued for a client whose in-flight window is full, the
+     * following ones are dropped
+     */
+    public static Integer maxPendingMessages() {
+        return Integer.valueOf(System.getProperty(MQTT_MAX_PENDING_MESSAGES, DEFAULT_MAX_PENDING_MESSAGES));
+    }
+
+    /**
+     * @return how long a PUBLISH or PUBREL waits for the answer of the client before it is sent again
+     */
+    public static Long retryIntervalMs() {
+        return Long.valueOf(System.getProperty(MQTT_RETRY_INTERVAL_MS, DEFAULT_RETRY_INTERVAL_MS));
+    }
+
+    /**
+     * @return the number of retained messages kept, the messages updated the longest time ago are evicted beyond
+     */
+    public static Integer retainedMaxMessages() {
+        return Integer.valueOf(System.getProperty(MQTT_RETAINED_MAX_MESSAGES, DEFAULT_RETAINED_MAX_MESSAGES));
+    }
+
+    /**
+     * @return the size of the topics and payloads of the retained messages kept
+     */
+    public static Long retainedMaxBytes() {
+        return Long.valueOf(System.getProperty(MQTT_RETAINED_MAX_BYTES, DEFAULT_RETAINED_MAX_BYTES));
+    }
+
+    /**
+     * @return {@code epoll}, {@code nio}, or {@code auto} to use epoll wherever it is available
+     */
+    public static String transport() {
+        return System.getProperty(MQTT_TRANSPORT, DEFAULT_TRANSPORT);
+    }
+
+    /**
+     * @return the number of acceptor threads, more than one only takes effect with epoll where the port is
+     * bound once per thread with SO_REUSEPORT
+     */
     public static Integer threadNumOfBossGroup() {
-        return DEFAULT_THREAD_NUM_OF_BOSS_GROUP;
+        return Integer.valueOf(System.getProperty(MQTT_THREAD_NUM_OF_BOSS_GROUP, DEFAULT_THREAD_NUM_OF_BOSS_GROUP));
     }
 
+    /**
+     * @return the number of I/O threads, 0 for twice the number of cores
+     */
     public static Integer threadNumOfWorkerGroup() {
-        return DEFAULT_THREAD_NUM_OF_WORKER_GROUP;
+        return Integer.valueOf(System.getProperty(MQTT_THREAD_NUM_OF_WORKER_GROUP, DEFAULT_THREAD_NUM_OF_WORKER_GROUP));
+    }
+
+    /**
+     * @return the number of threads running the message handlers, which may block on the message store, 0 to
+     * run them on the I/O threads
+     */
+    public static Integer threadNumOfHandlerGroup() {
+        return Integer.valueOf(System.getProperty(MQTT_THREAD_NUM_OF_HANDLER_GROUP, DEFAULT_THREAD_NUM_OF_HANDLER_GROUP));
+    }
+
+    /**
+     * @return the number of bytes queued for a client under which its channel is writable again
+     */
+    public static Integer writeBufferLowWaterMark() {
+        return Integer.valueOf(System.getProperty(MQTT_WRITE_BUFFER_LOW_WATER_MARK, DEFAULT_WRITE_BUFFER_LOW_WATER_MARK));
+    }
+
+    /**
+     * @return the number of bytes queued for a client over which its channel is not writable
+     */
+    public static Integer writeBufferHighWaterMark() {
+        return Integer.valueOf(System.getProperty(MQTT_WRITE_BUFFER_HIGH_WATER_MARK, DEFAULT_WRITE_BUFFER_HIGH_WATER_MARK));
+    }
+
+    /**
+     * @return {@code pooled} or {@code unpooled}, the buffer allocator of the connections
+     */
+    public static String allocator() {
+        return System.getProperty(MQTT_ALLOCATOR, DEFAULT_ALLOCATOR);
+    }
+
+    /**
+     * @return whether the sessions of the clients connected with CleanSession set to false are kept on disk
+     */
+    public static Boolean sessionStoreEnabled() {
+        return Boolean.valueOf(System.getProperty(MQTT_SESSION_STORE_ENABLED, DEFAULT_SESSION_STORE_ENABLED));
+    }
+
+    /**
+     * @return the directory of the session segment files
+     */
+    public static String sessionStorePath() {
+        return System.getProperty(MQTT_SESSION_STORE_PATH, DEFAULT_SESSION_STORE_PATH);
+    }
+
+    /**
+     * @return the size of a session segment file, which bounds the size of a queued message
+     */
+    public static Integer sessionSegmentSize() {
+        return Integer.valueOf(System.getProperty(MQTT_SESSION_SEGMENT_SIZE, DEFAULT_SESSION_SEGMENT_SIZE));
+    }
+
+    /**
+     * @return the number of messages queued for a disconnected client, the following ones are dropped
+     */
+    public static Integer sessionMaxQueuedMessages() {
+        return Integer.valueOf(System.getProperty(MQTT_SESSION_MAX_QUEUED_MESSAGES, DEFAULT_SESSION_MAX_QUEUED_MESSAGES));
+    }
+
+    /**
+     * @return how often the session segments are forced to disk and compacted
+     */
+    public static Long sessionCompactionIntervalMs() {
+        return Long.valueOf(System.getProperty(MQTT_SESSION_COMPACTION_INTERVAL_MS, DEFAULT_SESSION_COMPACTION_INTERVAL_MS));
     }
 }
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.iot.common.configuration;
+
+public class RocketMQConfiguration {
+
+    public static final String ROCKETMQ_ENABLED = "iot.rocketmq.enabled";
+    public static final String DEFAULT_ROCKETMQ_ENABLED = "false";
+    public static final String ROCKETMQ_NAMESRV_ADDR = "iot.rocketmq.namesrv.addr";
+    public static final String DEFAULT_ROCKETMQ_NAMESRV_ADDR = "127.0.0.1:9876";
+    public static final String ROCKETMQ_PRODUCER_GROUP = "iot.rocketmq.producer.group";
+    public static final String DEFAULT_ROCKETMQ_PRODUCER_GROUP = "mqtt_bridge_producer";
+    public static final String ROCKETMQ_CONSUMER_GROUP = "iot.rocketmq.consumer.group";
+    public static final String DEFAULT_ROCKETMQ_CONSUMER_GROUP = "mqtt_bridge_consumer";
+    public static final String ROCKETMQ_DEFAULT_TOPIC = "iot.rocketmq.default.topic";
+    public static final String DEFAULT_ROCKETMQ_DEFAULT_TOPIC = "mqtt_bridge";
+    public static final String ROCKETMQ_DOWNSTREAM_TOPICS = "iot.rocketmq.downstream.topics";
+    public static final String DEFAULT_ROCKETMQ_DOWNSTREAM_TOPICS = DEFAULT_ROCKETMQ_DEFAULT_TOPIC;
+    public static final String ROCKETMQ_SEND_BATCH_SIZE = "iot.rocketmq.send.batch.size";
+    public static final String DEFAULT_ROCKETMQ_SEND_BATCH_SIZE = "128";
+    public static final String ROCKETMQ_SEND_BATCH_BYTES = "iot.rocketmq.send.batch.bytes";
+    public static final String DEFAULT_ROCKETMQ_SEND_BATCH_BYTES = "1048576";
+    public static final String ROCKETMQ_SEND_LINGER_MS = "iot.rocketmq.send.linger.ms";
+    public static final String DEFAULT_ROCKETMQ_SEND_LINGER_MS = "5";
+    public static final String ROCKETMQ_SEND_MAX_IN_FLIGHT = "iot.rocketmq.send.max.in.flight";
+    public static final String DEFAULT_ROCKETMQ_SEND_MAX_IN_FLIGHT = "16";
+    public static final String ROCKETMQ_SEND_QUEUE_CAPACITY = "iot.rocketmq.send.queue.capacity";
+    public static final String DEFAULT_ROCKETMQ_SEND_QUEUE_CAPACITY = "65536";
+    public static final String ROCKETMQ_SEND_TIMEOUT_MS = "iot.rocketmq.send.timeout.ms";
+    public static final String DEFAULT_ROCKETMQ_SEND_TIMEOUT_MS = "3000";
+    public static final String ROCKETMQ_PULL_BATCH_SIZE = "iot.rocketmq.pull.batch.size";
+    public static final String DEFAULT_ROCKETMQ_PULL_BATCH_SIZE = "32";
+    public static final String ROCKETMQ_PULL_MAX_IN_FLIGHT = "iot.rocketmq.pull.max.in.flight";
+    public static final String DEFAULT_ROCKETMQ_PULL_MAX_IN_FLIGHT = "10000";
+
+    public static boolean enabled() {
+        return Boolean.valueOf(System.getProperty(ROCKETMQ_ENABLED, DEFAULT_ROCKETMQ_ENABLED));
+    }
+
+    public static String namesrvAddr() {
+        return System.getProperty(ROCKETMQ_NAMESRV_ADDR, DEFAULT_ROCKETMQ_NAMESRV_ADDR);
+    }
+
+    public static String producerGroup() {
+        return System.getProperty(ROCKETMQ_PRODUCER_GROUP, DEFAULT_ROCKETMQ_PRODUCER_GROUP);
+    }
+
+    public static String consumerGroup() {
+        return System.getProperty(ROCKETMQ_CONSUMER_GROUP, DEFAULT_ROCKETMQ_CONSUMER_GROUP);
+    }
+
+    /**
+     * @return the RocketMQ topic of the MQTT topics whose first level is not a valid RocketMQ topic
+     */
+    public static String defaultTopic() {
+        return System.getProperty(ROCKETMQ_DEFAULT_TOPIC, DEFAULT_ROCKETMQ_DEFAULT_TOPIC);
+    }
+
+    /**
+     * @return the RocketMQ topics consumed and pushed to the subscribed clients, comma separated
+     */
+    public static String[] downstreamTopics() {
+        return System.getProperty(ROCKETMQ_DOWNSTREAM_TOPICS, DEFAULT_ROCKETMQ_DOWNSTREAM_TOPICS).split(",");
+    }
+
+    public static Integer sendBatchSize() {
+        return Integer.valueOf(System.getProperty(ROCKETMQ_SEND_BATCH_SIZE, DEFAULT_ROCKETMQ_SEND_BATCH_SIZE));
+    }
+
+    public static Integer sendBatchBytes() {
+        return Integer.valueOf(System.getProperty(ROCKETMQ_SEND_BATCH_BYTES, DEFAULT_ROCKETMQ_SEND_BATCH_BYTES));
+    }
+
+    /**
+     * @return how long a batch waits for more messages before it is sent
+     */
+    public static Long sendLingerMs() {
+        return Long.valueOf(System.getProperty(ROCKETMQ_SEND_LINGER_MS, DEFAULT_ROCKETMQ_SEND_LINGER_MS));
+    }
+
+    /**
+     * @return the number of batches sent to the brokers without a response yet
+     */
+    public static Integer sendMaxInFlight() {
+        return Integer.valueOf(System.getProperty(ROCKETMQ_SEND_MAX_IN_FLIGHT, DEFAULT_ROCKETMQ_SEND_MAX_IN_FLIGHT));
+    }
+
+    /**
+     * @return the number of messages waiting to be batched, the publishing clients stop being read once it is
+     * three quarters full
+     */
+    public static Integer sendQueueCapacity() {
+        return Integer.valueOf(System.getProperty(ROCKETMQ_SEND_QUEUE_CAPACITY, DEFAULT_ROCKETMQ_SEND_QUEUE_CAPACITY));
+    }
+
+    public static Integer sendTimeoutMs() {
+        return Integer.valueOf(System.getProperty(ROCKETMQ_SEND_TIMEOUT_MS, DEFAULT_ROCKETMQ_SEND_TIMEOUT_MS));
+    }
+
+    public static Integer pullBatchSize() {
+        return Integer.valueOf(System.getProperty(ROCKETMQ_PULL_BATCH_SIZE, DEFAULT_ROCKETMQ_PULL_BATCH_SIZE));
+    }
+
+    /**
+     * @return the number of messages pulled from the brokers but not pushed to the clients yet
+     */
+    public static Integer pullMaxInFlight() {
+        return Integer.valueOf(System.getProperty(ROCKETMQ_PULL_MAX_IN_FLIGHT, DEFAULT_ROCKETMQ_PULL_MAX_IN_FLIGHT));
+    }
+}
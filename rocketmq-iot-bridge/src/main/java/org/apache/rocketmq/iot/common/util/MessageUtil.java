@@ -99,10 +99,10 @@ public class MessageUtil {
     public static MqttPubAckMessage getMqttPubackMessage(MqttPublishMessage message) {
         MqttFixedHeader fixedHeader = new MqttFixedHeader(
             MqttMessageType.PUBACK,
-            message.fixedHeader().isDup(),
-            message.fixedHeader().qosLevel(),
-            message.fixedHeader().isRetain(),
-            message.fixedHeader().remainingLength()
+            false,
+            MqttQoS.AT_MOST_ONCE,
+            false,
+            2
         );
 
         return new MqttPubAckMessage(fixedHeader, MqttMessageIdVariableHeader.from(message.variableHeader().packetId()));
@@ -112,36 +112,54 @@ public class MessageUtil {
     public static MqttMessage getMqttPubrecMessage(MqttPublishMessage message) {
         MqttFixedHeader fixedHeader = new MqttFixedHeader(
             MqttMessageType.PUBREC,
-            message.fixedHeader().isDup(),
-            message.fixedHeader().qosLevel(),
-            message.fixedHeader().isRetain(),
-            message.fixedHeader().remainingLength()
+            false,
+            MqttQoS.AT_MOST_ONCE,
+            false,
+            2
         );
-        return new MqttMessage(fixedHeader);
+        return new MqttMessage(fixedHeader, MqttMessageIdVariableHeader.from(message.variableHeader().packetId()));
     }
 
     public static MqttMessage getMqttPubrelMessage(MqttMessage message) {
         assert message.fixedHeader().messageType() == MqttMessageType.PUBREC;
+        return getMqttPubrelMessage(getMessageId(message));
+    }
+
+    /**
+     * @return a PUBREL message, whose fixed header always has QoS 1 as the MQTT specification requires
+     */
+    public static MqttMessage getMqttPubrelMessage(int messageId) {
         MqttFixedHeader fixedHeader = new MqttFixedHeader(
             MqttMessageType.PUBREL,
-            message.fixedHeader().isDup(),
-            message.fixedHeader().qosLevel(),
-            message.fixedHeader().isRetain(),
-            message.fixedHeader().remainingLength()
+            false,
+            MqttQoS.AT_LEAST_ONCE,
+            false,
+            2
         );
-        return new MqttMessage(fixedHeader);
+        return new MqttMessage(fixedHeader, MqttMessageIdVariableHeader.from(messageId));
     }
 
     public static MqttMessage getMqttPubcompMessage(MqttMessage message) {
         assert message.fixedHeader().messageType() == MqttMessageType.PUBREL;
+        return getMqttPubcompMessage(getMessageId(message));
+    }
+
+    public static MqttMessage getMqttPubcompMessage(int messageId) {
         MqttFixedHeader fixedHeader = new MqttFixedHeader(
             MqttMessageType.PUBCOMP,
-            message.fixedHeader().isDup(),
-            message.fixedHeader().qosLevel(),
-            message.fixedHeader().isRetain(),
-            message.fixedHeader().remainingLength()
+            false,
+            MqttQoS.AT_MOST_ONCE,
+            false,
+            2
         );
-        return new MqttMessage(fixedHeader);
+        return new MqttMessage(fixedHeader, MqttMessageIdVariableHeader.from(messageId));
+    }
+
+    /**
+     * @return the packet identifier of a PUBACK, PUBREC, PUBREL or PUBCOMP message
+     */
+    public static int getMessageId(MqttMessage message) {
+        return ((MqttMessageIdVariableHeader) message.variableHeader()).messageId();
     }
 
     public static MqttMessage getMqttPingrespMessage(MqttMessage message) {
@@ -197,6 +215,7 @@ public class MessageUtil {
                 break;
             case PUBCOMP:
                 message.setType(Message.Type.MQTT_PUBCOMP);
+                break;
             case SUBSCRIBE:
                 message.setType(Message.Type.MQTT_SUBSCRIBE);
                 break;
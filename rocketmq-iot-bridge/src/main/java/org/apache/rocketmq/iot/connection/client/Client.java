@@ -25,7 +25,7 @@ public class Client {
 
     private ChannelHandlerContext ctx;
 
-    private boolean connected;
+    private volatile boolean connected;
 
     public String getId() {
         return id;
@@ -18,7 +18,7 @@
 package org.apache.rocketmq.iot.protocol.mqtt.constant;
 
 public class MqttConstant {
-    public static final int MAX_SUPPORTED_QOS = 0;
+    public static final int MAX_SUPPORTED_QOS = 2;
     public static final String SUBSCRIPTION_FLAG_PLUS = "+";
     public static final String SUBSCRIPTION_FLAG_SHARP = "#";
     public static final String SUBSCRIPTION_SEPARATOR = "/";
@@ -18,11 +18,14 @@
 package org.apache.rocketmq.iot.protocol.mqtt.data;
 
 import org.apache.rocketmq.iot.connection.client.Client;
+import org.apache.rocketmq.iot.protocol.mqtt.session.InflightWindow;
 
 public class MqttClient extends Client {
 
     private boolean isCleanSession = true;
 
+    private InflightWindow inflightWindow;
+
     public boolean isCleanSession() {
         return isCleanSession;
     }
@@ -30,4 +33,23 @@ public class MqttClient extends Client {
     public void setCleanSession(boolean cleanSession) {
         isCleanSession = cleanSession;
     }
+
+    /**
+     * @return the QoS 1 and 2 messages in flight on the connection of the client, created on first use
+     */
+    public synchronized InflightWindow getInflightWindow() {
+        if (inflightWindow == null) {
+            inflightWindow = new InflightWindow(getCtx());
+        }
+        return inflightWindow;
+    }
+
+    /**
+     * Release the messages in flight once the connection of the client is closed
+     */
+    public synchronized void closeInflightWindow() {
+        if (inflightWindow != null) {
+            inflightWindow.close();
+        }
+    }
 }
@@ -44,7 +44,12 @@ public class MessageDispatcher extends SimpleChannelInboundHandler {
         type2handler.put(type, handler);
     }
 
-    private void dispatch(Message message) {
+    /**
+     * Hand the message to the handler registered for its type, the messages without handler are ignored
+     *
+     * @param message the message read from a client or consumed from the message store
+     */
+    public void dispatch(Message message) {
         Message.Type type = message.getType();
         if (!type2handler.containsKey(type)) {
             return;
@@ -58,9 +63,14 @@ public class MessageDispatcher extends SimpleChannelInboundHandler {
         }
         Client client = clientManager.get(ctx.channel());
         if (client == null) {
-            client = new MqttClient();
-            client.setCtx(ctx);
-            clientManager.put(ctx.channel(), client);
+            MqttClient mqttClient = new MqttClient();
+            mqttClient.setCtx(ctx);
+            ctx.channel().closeFuture().addListener(future -> {
+                mqttClient.setConnected(false);
+                mqttClient.closeInflightWindow();
+            });
+            clientManager.put(ctx.channel(), mqttClient);
+            client = mqttClient;
         }
         MqttMessage mqttMessage = (MqttMessage) msg;
         Message message = MessageUtil.getMessage(mqttMessage);
@@ -23,6 +23,7 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.handler.timeout.IdleState;
 import io.netty.handler.timeout.IdleStateEvent;
+import java.util.ArrayList;
 import org.apache.rocketmq.iot.connection.client.Client;
 import org.apache.rocketmq.iot.connection.client.ClientManager;
 import org.apache.rocketmq.iot.protocol.mqtt.data.MqttClient;
@@ -77,10 +78,8 @@ public class MqttConnectionHandler extends ChannelInboundHandlerAdapter {
         MqttClient client = (MqttClient) clientManager.get(channel);
         if (client != null) {
             if (client.isCleanSession()) {
-                subscriptionStore.getTopicFilters(client.getId()).forEach(filter -> {
-                    subscriptionStore.getTopics(filter).forEach(topic -> {
-                        subscriptionStore.remove(topic, client);
-                    });
+                new ArrayList<>(subscriptionStore.getTopicFilters(client.getId())).forEach(filter -> {
+                    subscriptionStore.remove(filter, client);
                 });
                 clientManager.remove(channel);
             } else {
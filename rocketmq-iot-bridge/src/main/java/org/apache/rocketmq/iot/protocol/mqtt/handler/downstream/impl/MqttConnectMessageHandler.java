@@ -21,13 +21,17 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.mqtt.MqttConnAckMessage;
 import io.netty.handler.codec.mqtt.MqttConnectMessage;
 import io.netty.handler.codec.mqtt.MqttConnectReturnCode;
+import java.util.Map;
 import org.apache.rocketmq.iot.common.configuration.ChannelConfiguration;
 import org.apache.rocketmq.iot.common.data.Message;
 import org.apache.rocketmq.iot.connection.client.ClientManager;
 import org.apache.rocketmq.iot.protocol.mqtt.data.MqttClient;
+import org.apache.rocketmq.iot.protocol.mqtt.data.Subscription;
 import org.apache.rocketmq.iot.protocol.mqtt.event.DisconnectChannelEvent;
 import org.apache.rocketmq.iot.protocol.mqtt.handler.MessageHandler;
 import org.apache.rocketmq.iot.common.util.MessageUtil;
+import org.apache.rocketmq.iot.storage.session.SessionStore;
+import org.apache.rocketmq.iot.storage.subscription.SubscriptionStore;
 
 public class MqttConnectMessageHandler implements MessageHandler {
 
@@ -36,8 +40,24 @@ public class MqttConnectMessageHandler implements MessageHandler {
 
     private ClientManager clientManager;
 
+    private SessionStore sessionStore;
+
+    private SubscriptionStore subscriptionStore;
+
     public MqttConnectMessageHandler(ClientManager clientManager) {
+        this(clientManager, null, null);
+    }
+
+    /**
+     * @param clientManager
+     * @param sessionStore restores the persistent sessions, null if there is none
+     * @param subscriptionStore to which the subscriptions of a restored session are bound to the new connection
+     */
+    public MqttConnectMessageHandler(ClientManager clientManager, SessionStore sessionStore,
+        SubscriptionStore subscriptionStore) {
         this.clientManager = clientManager;
+        this.sessionStore = sessionStore;
+        this.subscriptionStore = subscriptionStore;
     }
 
     @Override public void handleMessage(Message message) {
@@ -71,6 +91,35 @@ public class MqttConnectMessageHandler implements MessageHandler {
 
         ackMessage = MessageUtil.getMqttConnackMessage(connectMessage, returnCode);
         ctx.writeAndFlush(ackMessage);
+        if (sessionStore != null && returnCode == MqttConnectReturnCode.CONNECTION_ACCEPTED) {
+            restoreSession(client);
+        }
+    }
+
+    /**
+     * Discard the session of a client connecting with CleanSession set, otherwise bind its subscriptions to the
+     * new connection and send the messages queued while it was away
+     */
+    private void restoreSession(MqttClient client) {
+        Map<String, Integer> topicFilter2Qos = sessionStore.getSubscriptions(client.getId());
+        if (client.isCleanSession()) {
+            topicFilter2Qos.keySet().forEach(topicFilter -> subscriptionStore.remove(topicFilter, client));
+            sessionStore.remove(client.getId());
+            return;
+        }
+        if (topicFilter2Qos.isEmpty()) {
+            sessionStore.addSubscriptions(client.getId(), topicFilter2Qos);
+        }
+        topicFilter2Qos.forEach((topicFilter, qos) -> subscriptionStore.append(
+            topicFilter,
+            Subscription.Builder.newBuilder()
+                .client(client)
+                .qos(qos)
+                .build()
+        ));
+        sessionStore.replay(client.getId(),
+            (topic, payload, qos) -> client.getInflightWindow().publish(topic, payload, qos, false));
+        client.getCtx().flush();
     }
 
     private boolean isServiceAviable(MqttConnectMessage connectMessage) {
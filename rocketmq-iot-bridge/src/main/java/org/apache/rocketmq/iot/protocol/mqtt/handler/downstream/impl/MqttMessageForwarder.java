@@ -14,19 +14,20 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-
 package org.apache.rocketmq.iot.protocol.mqtt.handler.downstream.impl;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.mqtt.MqttFixedHeader;
 import io.netty.handler.codec.mqtt.MqttMessageType;
 import io.netty.handler.codec.mqtt.MqttPublishMessage;
 import io.netty.handler.codec.mqtt.MqttPublishVariableHeader;
 import io.netty.handler.codec.mqtt.MqttQoS;
+import java.util.List;
 import org.apache.rocketmq.iot.common.data.Message;
+import org.apache.rocketmq.iot.protocol.mqtt.data.MqttClient;
 import org.apache.rocketmq.iot.protocol.mqtt.data.Subscription;
 import org.apache.rocketmq.iot.protocol.mqtt.handler.MessageHandler;
+import org.apache.rocketmq.iot.storage.session.SessionStore;
 import org.apache.rocketmq.iot.storage.subscription.SubscriptionStore;
 import org.apache.rocketmq.iot.common.util.MessageUtil;
 
@@ -34,13 +35,33 @@ public class MqttMessageForwarder implements MessageHandler {
 
     private SubscriptionStore subscriptionStore;
 
+    private SessionStore sessionStore;
+
     public MqttMessageForwarder(SubscriptionStore subscriptionStore) {
+        this(subscriptionStore, null);
+    }
+
+    /**
+     * @param subscriptionStore
+     * @param sessionStore queues the messages of the disconnected clients with a persistent session, null if
+     * there is none
+     */
+    public MqttMessageForwarder(SubscriptionStore subscriptionStore, SessionStore sessionStore) {
         this.subscriptionStore = subscriptionStore;
+        this.sessionStore = sessionStore;
     }
 
     /**
      * handle PUBLISH message from client
      *
+     * The headers are built once and every subscriber gets a retained duplicate of the inbound payload,
+     * so fanning out does not copy it. All the messages are written before any channel is flushed, and the
+     * flushes of consecutive publishes are merged by the {@code FlushConsolidationHandler} of the pipeline.
+     * The message is sent with the lower QoS of the publication and the subscription, the QoS 1 and 2 ones
+     * through the {@link org.apache.rocketmq.iot.protocol.mqtt.session.InflightWindow} of the client. The RETAIN
+     * flag is cleared, the subscribers are already established. The QoS 1 and 2 messages of the disconnected
+     * clients with a persistent session are queued in the {@link SessionStore} until they connect again.
+     *
      * @param message
      * @return whether the message is handled successfully
      */
@@ -50,26 +71,49 @@ public class MqttMessageForwarder implements MessageHandler {
         if (!subscriptionStore.hasTopic(topic)) {
             subscriptionStore.addTopic(topic);
         }
-        for (Subscription subscription: subscriptionStore.get(publishMessage.variableHeader().topicName())) {
-            ByteBuf buf = Unpooled.buffer();
-            byte [] bytes = new byte[publishMessage.payload().readableBytes()];
-            publishMessage.payload().getBytes(0, bytes);
-            buf.writeBytes(bytes);
-            MqttPublishMessage msg = new MqttPublishMessage(
-                new MqttFixedHeader(
-                    MqttMessageType.PUBLISH,
-                    publishMessage.fixedHeader().isDup(),
-                    MqttQoS.valueOf(MessageUtil.actualQos(publishMessage.fixedHeader().qosLevel().value())),
-                    publishMessage.fixedHeader().isRetain(),
-                    publishMessage.fixedHeader().remainingLength()
-                ),
-                new MqttPublishVariableHeader(
-                    publishMessage.variableHeader().topicName(),
-                    publishMessage.variableHeader().packetId()
-                ),
-                buf
-            );
-            subscription.getClient().getCtx().writeAndFlush(msg);
+        List<Subscription> subscriptions = subscriptionStore.get(topic);
+        if (subscriptions.isEmpty()) {
+            return;
         }
+        int qos = MessageUtil.actualQos(publishMessage.fixedHeader().qosLevel().value());
+        MqttFixedHeader fixedHeader = new MqttFixedHeader(
+            MqttMessageType.PUBLISH,
+            false,
+            MqttQoS.AT_MOST_ONCE,
+            false,
+            0
+        );
+        MqttPublishVariableHeader variableHeader = new MqttPublishVariableHeader(
+            topic,
+            publishMessage.variableHeader().packetId()
+        );
+        ByteBuf payload = publishMessage.payload();
+        for (Subscription subscription : subscriptions) {
+            int subscriptionQos = Math.min(qos, subscription.getQos());
+            MqttClient client = subscription.getClient();
+            if (isOffline(client)) {
+                if (subscriptionQos > MqttQoS.AT_MOST_ONCE.value()) {
+                    sessionStore.enqueue(client.getId(), topic, payload, subscriptionQos);
+                }
+            } else if (subscriptionQos == MqttQoS.AT_MOST_ONCE.value()) {
+                subscription.getClient().getCtx().write(
+                    new MqttPublishMessage(fixedHeader, variableHeader, payload.retainedDuplicate())
+                );
+            } else {
+                subscription.getClient().getInflightWindow().publish(topic, payload, subscriptionQos, false);
+            }
+        }
+        for (Subscription subscription : subscriptions) {
+            if (!isOffline(subscription.getClient())) {
+                subscription.getClient().getCtx().flush();
+            }
+        }
+    }
+
+    /**
+     * @return whether the messages of the client are queued, it may not even have a connection since a restart
+     */
+    private boolean isOffline(MqttClient client) {
+        return sessionStore != null && !client.isCleanSession() && !client.isConnected();
     }
 }
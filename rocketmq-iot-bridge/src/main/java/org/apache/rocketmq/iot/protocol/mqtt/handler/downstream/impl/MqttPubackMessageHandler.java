@@ -17,33 +17,24 @@
 
 package org.apache.rocketmq.iot.protocol.mqtt.handler.downstream.impl;
 
-import io.netty.handler.codec.mqtt.MqttPubAckMessage;
-import java.util.List;
+import io.netty.handler.codec.mqtt.MqttMessage;
 import org.apache.rocketmq.iot.common.data.Message;
+import org.apache.rocketmq.iot.common.util.MessageUtil;
 import org.apache.rocketmq.iot.protocol.mqtt.data.MqttClient;
 import org.apache.rocketmq.iot.protocol.mqtt.handler.MessageHandler;
-import org.apache.rocketmq.iot.storage.message.MessageStore;
 
 public class MqttPubackMessageHandler implements MessageHandler {
 
-    private MessageStore messageStore;
-
-    public MqttPubackMessageHandler(MessageStore messageStore) {
-        this.messageStore = messageStore;
-    }
-
     /**
      * handle the PUBACK message from the client
      * <ol>
      *     <li>remove the message from the published in-flight messages</li>
-     *     <li>ack the message in the MessageStore</li>
+     *     <li>send the next pending message of the client</li>
      * </ol>
-     * @param
-     * @return
+     * @param message
      */
     @Override public void handleMessage(Message message) {
-        MqttPubAckMessage pubAckMessage = (MqttPubAckMessage) message.getPayload();
-        // TODO: remove the message from the published in-flight message
-        messageStore.ack(message, (List<MqttClient>) message.getClient());
+        MqttClient client = (MqttClient) message.getClient();
+        client.getInflightWindow().onPuback(MessageUtil.getMessageId((MqttMessage) message.getPayload()));
     }
 }
@@ -17,16 +17,24 @@
 
 package org.apache.rocketmq.iot.protocol.mqtt.handler.downstream.impl;
 
+import io.netty.handler.codec.mqtt.MqttMessage;
 import org.apache.rocketmq.iot.common.data.Message;
+import org.apache.rocketmq.iot.common.util.MessageUtil;
+import org.apache.rocketmq.iot.protocol.mqtt.data.MqttClient;
 import org.apache.rocketmq.iot.protocol.mqtt.handler.MessageHandler;
 
 public class MqttPubcompMessageHandler implements MessageHandler {
 
     /**
      * handle the PUBCOMP message from the client
+     * <ol>
+     *     <li>remove the message from the published in-flight messages</li>
+     *     <li>send the next pending message of the client</li>
+     * </ol>
      * @param message
-     * @return
      */
     @Override public void handleMessage(Message message) {
+        MqttClient client = (MqttClient) message.getClient();
+        client.getInflightWindow().onPubcomp(MessageUtil.getMessageId((MqttMessage) message.getPayload()));
     }
 }
@@ -17,35 +17,134 @@
 
 package org.apache.rocketmq.iot.protocol.mqtt.handler.downstream.impl;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.handler.codec.mqtt.MqttMessage;
-import io.netty.handler.codec.mqtt.MqttPubAckMessage;
 import io.netty.handler.codec.mqtt.MqttPublishMessage;
 import io.netty.handler.codec.mqtt.MqttQoS;
 import org.apache.rocketmq.iot.common.data.Message;
-import org.apache.rocketmq.iot.connection.client.Client;
+import org.apache.rocketmq.iot.common.util.MessageUtil;
+import org.apache.rocketmq.iot.protocol.mqtt.data.MqttClient;
+import org.apache.rocketmq.iot.protocol.mqtt.data.RetainedMessage;
 import org.apache.rocketmq.iot.protocol.mqtt.handler.MessageHandler;
 import org.apache.rocketmq.iot.storage.message.MessageStore;
-import org.apache.rocketmq.iot.common.util.MessageUtil;
+import org.apache.rocketmq.iot.storage.message.PutCallback;
+import org.apache.rocketmq.iot.storage.retain.RetainedMessageStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class MqttPublishMessageHandler implements MessageHandler {
 
+    private static final Logger log = LoggerFactory.getLogger(MqttPublishMessageHandler.class);
+
     private MessageStore messageStore;
 
+    private MessageHandler deliverer;
+
+    private RetainedMessageStore retainedMessageStore;
+
     public MqttPublishMessageHandler(MessageStore messageStore) {
+        this(messageStore, null);
+    }
+
+    /**
+     * @param messageStore stores the PUBLISH messages, which are acknowledged once stored
+     * @param retainedMessageStore keeps the messages published with the RETAIN flag, null to ignore the flag
+     */
+    public MqttPublishMessageHandler(MessageStore messageStore, RetainedMessageStore retainedMessageStore) {
         this.messageStore = messageStore;
+        this.retainedMessageStore = retainedMessageStore;
     }
 
+    public MqttPublishMessageHandler(MessageHandler deliverer) {
+        this(deliverer, null);
+    }
+
+    /**
+     * @param deliverer delivers the PUBLISH messages before they are acknowledged, e.g. the
+     * {@link MqttMessageForwarder}
+     * @param retainedMessageStore keeps the messages published with the RETAIN flag, null to ignore the flag
+     */
+    public MqttPublishMessageHandler(MessageHandler deliverer, RetainedMessageStore retainedMessageStore) {
+        this.deliverer = deliverer;
+        this.retainedMessageStore = retainedMessageStore;
+    }
+
+    /**
+     * handle the PUBLISH message from the client
+     * <ol>
+     *     <li>QoS 0: deliver the message</li>
+     *     <li>QoS 1: deliver the message and answer with a PUBACK</li>
+     *     <li>QoS 2: deliver the message unless its packet identifier is waiting for a PUBREL, and answer
+     *     with a PUBREC</li>
+     * </ol>
+     * With a message store, the PUBACK or PUBREC is only sent once the message is stored, and the client is
+     * disconnected if it cannot be, so that it publishes the message again. A message published with the RETAIN
+     * flag is also retained when delivered.
+     * @param message
+     */
     @Override public void handleMessage(Message message) {
-        Client client = message.getClient();
+        MqttClient client = (MqttClient) message.getClient();
         MqttPublishMessage publishMessage = (MqttPublishMessage) message.getPayload();
-        messageStore.put(message);
         int qos = MessageUtil.actualQos(publishMessage.fixedHeader().qosLevel().value());
-        if (qos == MqttQoS.AT_LEAST_ONCE.value()) {
-            MqttPubAckMessage pubAckMessage = MessageUtil.getMqttPubackMessage(publishMessage);
-            client.getCtx().writeAndFlush(pubAckMessage);
-        } else if (qos == MqttQoS.EXACTLY_ONCE.value()) {
-            MqttMessage pubrecMessage = MessageUtil.getMqttPubrecMessage(publishMessage);
-            client.getCtx().writeAndFlush(pubrecMessage);
+        MqttMessage ack = null;
+        if (qos == MqttQoS.EXACTLY_ONCE.value()) {
+            ack = MessageUtil.getMqttPubrecMessage(publishMessage);
+            if (!client.getInflightWindow().onQos2Publish(publishMessage.variableHeader().packetId())) {
+                client.getCtx().writeAndFlush(ack);
+                return;
+            }
+        } else if (qos == MqttQoS.AT_LEAST_ONCE.value()) {
+            ack = MessageUtil.getMqttPubackMessage(publishMessage);
+        }
+        retain(publishMessage, qos);
+        if (messageStore == null) {
+            deliverer.handleMessage(message);
+            if (ack != null) {
+                client.getCtx().writeAndFlush(ack);
+            }
+            return;
+        }
+        messageStore.put(message, new AckCallback(client, ack));
+    }
+
+    private void retain(MqttPublishMessage publishMessage, int qos) {
+        if (retainedMessageStore == null || !publishMessage.fixedHeader().isRetain()) {
+            return;
+        }
+        ByteBuf payload = publishMessage.payload();
+        byte[] bytes = new byte[payload.readableBytes()];
+        payload.getBytes(payload.readerIndex(), bytes);
+        retainedMessageStore.put(new RetainedMessage(publishMessage.variableHeader().topicName(), bytes, qos));
+    }
+
+    /**
+     * Acknowledges the message once stored, or disconnects the client if it cannot be
+     */
+    private static class AckCallback implements PutCallback {
+
+        private final MqttClient client;
+
+        /**
+         * null for QoS 0
+         */
+        private final MqttMessage ack;
+
+        AckCallback(MqttClient client, MqttMessage ack) {
+            this.client = client;
+            this.ack = ack;
+        }
+
+        @Override public void onSuccess(String messageId) {
+            if (ack != null) {
+                client.getCtx().writeAndFlush(ack);
+            }
+        }
+
+        @Override public void onException(Throwable e) {
+            if (ack != null) {
+                log.warn("fail to store the message of client {}, disconnect it", client.getId(), e);
+                client.getCtx().channel().close();
+            }
         }
     }
 
@@ -17,16 +17,24 @@
 
 package org.apache.rocketmq.iot.protocol.mqtt.handler.downstream.impl;
 
+import io.netty.handler.codec.mqtt.MqttMessage;
 import org.apache.rocketmq.iot.common.data.Message;
+import org.apache.rocketmq.iot.common.util.MessageUtil;
+import org.apache.rocketmq.iot.protocol.mqtt.data.MqttClient;
 import org.apache.rocketmq.iot.protocol.mqtt.handler.MessageHandler;
 
 public class MqttPubrecMessageHandler implements MessageHandler {
 
     /**
-     * handle the PUBREC message from the clinet
+     * handle the PUBREC message from the client
+     * <ol>
+     *     <li>release the payload of the message, it will not be sent again</li>
+     *     <li>answer with a PUBREL</li>
+     * </ol>
      * @param message
-     * @return
      */
     @Override public void handleMessage(Message message) {
+        MqttClient client = (MqttClient) message.getClient();
+        client.getInflightWindow().onPubrec(MessageUtil.getMessageId((MqttMessage) message.getPayload()));
     }
 }
@@ -17,16 +17,24 @@
 
 package org.apache.rocketmq.iot.protocol.mqtt.handler.downstream.impl;
 
+import io.netty.handler.codec.mqtt.MqttMessage;
 import org.apache.rocketmq.iot.common.data.Message;
+import org.apache.rocketmq.iot.common.util.MessageUtil;
+import org.apache.rocketmq.iot.protocol.mqtt.data.MqttClient;
 import org.apache.rocketmq.iot.protocol.mqtt.handler.MessageHandler;
 
 public class MqttPubrelMessageHandler implements MessageHandler {
 
     /**
      * handle the PUBREL message from the client
+     * <ol>
+     *     <li>release the packet identifier of the received QoS 2 message</li>
+     *     <li>answer with a PUBCOMP</li>
+     * </ol>
      * @param message
-     * @return
      */
     @Override public void handleMessage(Message message) {
+        MqttClient client = (MqttClient) message.getClient();
+        client.getInflightWindow().onPubrel(MessageUtil.getMessageId((MqttMessage) message.getPayload()));
     }
 }
@@ -17,17 +17,29 @@
 
 package org.apache.rocketmq.iot.protocol.mqtt.handler.downstream.impl;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.mqtt.MqttFixedHeader;
+import io.netty.handler.codec.mqtt.MqttMessageType;
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import io.netty.handler.codec.mqtt.MqttPublishVariableHeader;
+import io.netty.handler.codec.mqtt.MqttQoS;
 import io.netty.handler.codec.mqtt.MqttSubAckMessage;
 import io.netty.handler.codec.mqtt.MqttSubAckPayload;
 import io.netty.handler.codec.mqtt.MqttSubscribeMessage;
 import io.netty.handler.codec.mqtt.MqttTopicSubscription;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import org.apache.rocketmq.iot.common.data.Message;
 import org.apache.rocketmq.iot.connection.client.Client;
 import org.apache.rocketmq.iot.protocol.mqtt.data.MqttClient;
+import org.apache.rocketmq.iot.protocol.mqtt.data.RetainedMessage;
 import org.apache.rocketmq.iot.protocol.mqtt.data.Subscription;
 import org.apache.rocketmq.iot.protocol.mqtt.handler.MessageHandler;
+import org.apache.rocketmq.iot.storage.retain.RetainedMessageStore;
+import org.apache.rocketmq.iot.storage.session.SessionStore;
 import org.apache.rocketmq.iot.storage.subscription.SubscriptionStore;
 import org.apache.rocketmq.iot.common.util.MessageUtil;
 
@@ -35,8 +47,32 @@ public class MqttSubscribeMessageHandler implements MessageHandler {
 
     private SubscriptionStore subscriptionStore;
 
+    private RetainedMessageStore retainedMessageStore;
+
+    private SessionStore sessionStore;
+
     public MqttSubscribeMessageHandler(SubscriptionStore subscriptionStore) {
+        this(subscriptionStore, null);
+    }
+
+    /**
+     * @param subscriptionStore
+     * @param retainedMessageStore the retained messages sent to the new subscriptions, null if there is none
+     */
+    public MqttSubscribeMessageHandler(SubscriptionStore subscriptionStore, RetainedMessageStore retainedMessageStore) {
+        this(subscriptionStore, retainedMessageStore, null);
+    }
+
+    /**
+     * @param subscriptionStore
+     * @param retainedMessageStore the retained messages sent to the new subscriptions, null if there is none
+     * @param sessionStore keeps the subscriptions of the clients with a persistent session, null if there is none
+     */
+    public MqttSubscribeMessageHandler(SubscriptionStore subscriptionStore, RetainedMessageStore retainedMessageStore,
+        SessionStore sessionStore) {
         this.subscriptionStore = subscriptionStore;
+        this.retainedMessageStore = retainedMessageStore;
+        this.sessionStore = sessionStore;
     }
 
     /**
@@ -46,8 +82,10 @@ public class MqttSubscribeMessageHandler implements MessageHandler {
      * <li>set actual qos of each filter</li>
      * <li>get the topics matching given filters</li>
      * <li>check the client authorization of each topic</li>
+     * <li>save the subscriptions of a persistent session in the SessionStore</li>
      * <li>generate SUBACK message which includes the subscription result for each TopicFilter</li>
      * <li>send SUBACK message to the client</li>
+     * <li>send the retained messages matching the filters to the client</li>
      * </ol>
      *
      * @param message the message wrapping MqttSubscriptionMessage
@@ -70,7 +108,37 @@ public class MqttSubscribeMessageHandler implements MessageHandler {
                     .build()
             );
         });
+        if (sessionStore != null && !((MqttClient) client).isCleanSession()) {
+            Map<String, Integer> topicFilter2Qos = new LinkedHashMap<>();
+            for (int i = 0; i < topicSubscriptions.size(); i++) {
+                topicFilter2Qos.put(topicSubscriptions.get(i).topicName(), grantQoss.get(i));
+            }
+            sessionStore.addSubscriptions(client.getId(), topicFilter2Qos);
+        }
         MqttSubAckMessage subackMessage = MessageUtil.getMqttSubackMessage(subscribeMessage, new MqttSubAckPayload(grantQoss));
         client.getCtx().writeAndFlush(subackMessage);
+        if (retainedMessageStore == null) {
+            return;
+        }
+        for (int i = 0; i < topicSubscriptions.size(); i++) {
+            for (RetainedMessage retainedMessage : retainedMessageStore.match(topicSubscriptions.get(i).topicName())) {
+                sendRetainedMessage((MqttClient) client, retainedMessage, Math.min(retainedMessage.getQos(), grantQoss.get(i)));
+            }
+        }
+        client.getCtx().flush();
+    }
+
+    private void sendRetainedMessage(MqttClient client, RetainedMessage retainedMessage, int qos) {
+        if (qos == MqttQoS.AT_MOST_ONCE.value()) {
+            client.getCtx().write(new MqttPublishMessage(
+                new MqttFixedHeader(MqttMessageType.PUBLISH, false, MqttQoS.AT_MOST_ONCE, true, 0),
+                new MqttPublishVariableHeader(retainedMessage.getTopic(), 0),
+                Unpooled.wrappedBuffer(retainedMessage.getPayload())
+            ));
+            return;
+        }
+        ByteBuf payload = Unpooled.wrappedBuffer(retainedMessage.getPayload());
+        client.getInflightWindow().publish(retainedMessage.getTopic(), payload, qos, true);
+        payload.release();
     }
 }
@@ -23,24 +23,32 @@ import java.util.Set;
 import org.apache.rocketmq.iot.common.data.Message;
 import org.apache.rocketmq.iot.common.util.MessageUtil;
 import org.apache.rocketmq.iot.connection.client.Client;
+import org.apache.rocketmq.iot.protocol.mqtt.data.MqttClient;
 import org.apache.rocketmq.iot.protocol.mqtt.handler.MessageHandler;
+import org.apache.rocketmq.iot.storage.session.SessionStore;
 import org.apache.rocketmq.iot.storage.subscription.SubscriptionStore;
 
 /**
  * handle the UNSUBSCRIBE message from the client
  * <ol>
  *     <li>extract topic filters to be un-subscribed</li>
- *     <li>get the topics matching with the topic filters</li>
  *     <li>verify the authorization of the client to the </li>
- *     <li>remove subscription from the SubscriptionStore</li>
+ *     <li>remove subscription from the SubscriptionStore, and from the SessionStore of a persistent session</li>
  * </ol>
  */
 public class MqttUnsubscribeMessagHandler implements MessageHandler {
 
     private SubscriptionStore subscriptionStore;
 
+    private SessionStore sessionStore;
+
     public MqttUnsubscribeMessagHandler(SubscriptionStore subscriptionStore) {
+        this(subscriptionStore, null);
+    }
+
+    public MqttUnsubscribeMessagHandler(SubscriptionStore subscriptionStore, SessionStore sessionStore) {
         this.subscriptionStore = subscriptionStore;
+        this.sessionStore = sessionStore;
     }
 
     @Override
@@ -51,11 +59,12 @@ public class MqttUnsubscribeMessagHandler implements MessageHandler {
         Set<String> subscribedTopicFilters = subscriptionStore.getTopicFilters(client.getId());
         for (String filter: unsubscribeTopicFilters) {
             if (subscribedTopicFilters.contains(filter)) {
-                subscriptionStore.getTopics(filter).forEach(topic -> {
-                    subscriptionStore.remove(topic, client);
-                });
+                subscriptionStore.remove(filter, client);
             }
         }
+        if (sessionStore != null && !((MqttClient) client).isCleanSession()) {
+            sessionStore.removeSubscriptions(client.getId(), unsubscribeTopicFilters);
+        }
         client.getCtx().writeAndFlush(MessageUtil.getMqttUnsubackMessage(unsubscribeMessage));
     }
 }
@@ -0,0 +1,340 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.iot.protocol.mqtt.session;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.mqtt.MqttFixedHeader;
+import io.netty.handler.codec.mqtt.MqttMessageType;
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import io.netty.handler.codec.mqtt.MqttPublishVariableHeader;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.iot.common.configuration.MQTTBridgeConfiguration;
+import org.apache.rocketmq.iot.common.util.MessageUtil;
+
+/**
+ * The QoS 1 and 2 messages in flight between the bridge and one client.
+ * <p>
+ * Outbound, at most {@code receiveMaximum} PUBLISH messages wait for the answer of the client, the following
+ * ones are queued up to {@code maxPendingMessages} and dropped beyond, so a slow client holds a bounded number
+ * of messages. The unanswered PUBLISH (with DUP set) and PUBREL messages are sent again after
+ * {@code retryIntervalMs} by one timeout of a shared {@link HashedWheelTimer} per window, not one per message.
+ * <p>
+ * Inbound, the packet identifiers of the QoS 2 messages received are kept until their PUBREL, so that a
+ * duplicated PUBLISH is delivered once. As with the Receive Maximum of MQTT 5, a client sending a QoS 2 PUBLISH
+ * while {@code receiveMaximum} of them are waiting for their PUBREL is disconnected. The channel keeps reading
+ * meanwhile, the PUBREL messages releasing the packet identifiers are read like any other packet.
+ */
+public class InflightWindow {
+
+    private static final int MAX_PACKET_ID = 0xFFFF;
+
+    private static final Timer RETRY_TIMER = new HashedWheelTimer(
+        new DefaultThreadFactory("mqtt-inflight-retry", true), 100, TimeUnit.MILLISECONDS);
+
+    private final ChannelHandlerContext ctx;
+
+    private final int receiveMaximum;
+
+    private final int maxPendingMessages;
+
+    private final long retryIntervalMs;
+
+    private final Timer timer;
+
+    private final IntObjectMap<InflightMessage> outbound;
+
+    private final IntObjectMap<Boolean> inbound;
+
+    private final ArrayDeque<PendingMessage> pending = new ArrayDeque<>();
+
+    private int nextPacketId = 1;
+
+    private long droppedMessages;
+
+    private Timeout retryTimeout;
+
+    private boolean closed;
+
+    public InflightWindow(ChannelHandlerContext ctx) {
+        this(ctx, MQTTBridgeConfiguration.receiveMaximum(), MQTTBridgeConfiguration.maxPendingMessages(),
+            MQTTBridgeConfiguration.retryIntervalMs(), RETRY_TIMER);
+    }
+
+    public InflightWindow(ChannelHandlerContext ctx, int receiveMaximum, int maxPendingMessages,
+        long retryIntervalMs, Timer timer) {
+        if (receiveMaximum < 1 || receiveMaximum > MAX_PACKET_ID) {
+            throw new IllegalArgumentException("receiveMaximum must be in [1, " + MAX_PACKET_ID + "]");
+        }
+        this.ctx = ctx;
+        this.receiveMaximum = receiveMaximum;
+        this.maxPendingMessages = maxPendingMessages;
+        this.retryIntervalMs = retryIntervalMs;
+        this.timer = timer;
+        this.outbound = new IntObjectHashMap<>(receiveMaximum);
+        this.inbound = new IntObjectHashMap<>(receiveMaximum);
+    }
+
+    /**
+     * Write a QoS 1 or 2 PUBLISH to the client, or queue it while the window is full. The caller flushes.
+     *
+     * @param topic the topic of the message
+     * @param payload the payload, which is retained while the message is in flight
+     * @param qos the QoS level of the message, 1 or 2
+     * @param retain the RETAIN flag of the message
+     * @return false if the message is dropped because too many messages are pending
+     */
+    public synchronized boolean publish(String topic, ByteBuf payload, int qos, boolean retain) {
+        if (closed) {
+            return false;
+        }
+        if (outbound.size() < receiveMaximum && pending.isEmpty()) {
+            send(topic, payload.retainedDuplicate(), qos, retain);
+            return true;
+        }
+        if (pending.size() < maxPendingMessages) {
+            pending.add(new PendingMessage(topic, payload.retainedDuplicate(), qos, retain));
+            return true;
+        }
+        droppedMessages++;
+        return false;
+    }
+
+    /**
+     * Complete the QoS 1 message acknowledged by a PUBACK
+     */
+    public synchronized void onPuback(int packetId) {
+        InflightMessage inflightMessage = outbound.get(packetId);
+        if (inflightMessage == null || inflightMessage.qos != MqttQoS.AT_LEAST_ONCE.value()) {
+            return;
+        }
+        outbound.remove(packetId);
+        inflightMessage.release();
+        sendPending();
+    }
+
+    /**
+     * Answer the PUBREC of a QoS 2 message with a PUBREL, the message itself is not needed anymore
+     */
+    public synchronized void onPubrec(int packetId) {
+        InflightMessage inflightMessage = outbound.get(packetId);
+        if (inflightMessage != null && inflightMessage.qos == MqttQoS.EXACTLY_ONCE.value()) {
+            inflightMessage.release();
+            inflightMessage.sentAt = System.currentTimeMillis();
+        }
+        ctx.writeAndFlush(MessageUtil.getMqttPubrelMessage(packetId));
+    }
+
+    /**
+     * Complete the QoS 2 message whose PUBREL is answered by a PUBCOMP
+     */
+    public synchronized void onPubcomp(int packetId) {
+        InflightMessage inflightMessage = outbound.get(packetId);
+        if (inflightMessage == null || inflightMessage.qos != MqttQoS.EXACTLY_ONCE.value()) {
+            return;
+        }
+        outbound.remove(packetId);
+        inflightMessage.release();
+        sendPending();
+    }
+
+    /**
+     * Record a QoS 2 PUBLISH from the client, the client is disconnected if {@code receiveMaximum} of them are
+     * already waiting for their PUBREL
+     *
+     * @return false if the message was already received or the client is disconnected, and the message must not
+     * be delivered
+     */
+    public synchronized boolean onQos2Publish(int packetId) {
+        if (inbound.containsKey(packetId)) {
+            return false;
+        }
+        if (inbound.size() >= receiveMaximum) {
+            ctx.channel().close();
+            return false;
+        }
+        inbound.put(packetId, Boolean.TRUE);
+        return true;
+    }
+
+    /**
+     * Release the packet identifier of a QoS 2 message from the client and answer with a PUBCOMP
+     */
+    public synchronized void onPubrel(int packetId) {
+        inbound.remove(packetId);
+        ctx.writeAndFlush(MessageUtil.getMqttPubcompMessage(packetId));
+    }
+
+    /**
+     * Release the messages in flight and the pending ones, once the connection is closed
+     */
+    public synchronized void close() {
+        closed = true;
+        if (retryTimeout != null) {
+            retryTimeout.cancel();
+            retryTimeout = null;
+        }
+        for (InflightMessage inflightMessage : outbound.values()) {
+            inflightMessage.release();
+        }
+        outbound.clear();
+        for (PendingMessage pendingMessage : pending) {
+            pendingMessage.payload.release();
+        }
+        pending.clear();
+        inbound.clear();
+    }
+
+    public synchronized int inflightMessages() {
+        return outbound.size();
+    }
+
+    public synchronized int pendingMessages() {
+        return pending.size();
+    }
+
+    public synchronized long droppedMessages() {
+        return droppedMessages;
+    }
+
+    private void send(String topic, ByteBuf payload, int qos, boolean retain) {
+        int packetId = nextPacketId();
+        MqttPublishMessage message = new MqttPublishMessage(
+            new MqttFixedHeader(MqttMessageType.PUBLISH, false, MqttQoS.valueOf(qos), retain, 0),
+            new MqttPublishVariableHeader(topic, packetId),
+            payload
+        );
+        outbound.put(packetId, new InflightMessage(message, qos, System.currentTimeMillis()));
+        ctx.write(message.retainedDuplicate());
+        scheduleRetry(retryIntervalMs);
+    }
+
+    private void sendPending() {
+        boolean sent = false;
+        while (outbound.size() < receiveMaximum && !pending.isEmpty()) {
+            PendingMessage pendingMessage = pending.poll();
+            send(pendingMessage.topic, pendingMessage.payload, pendingMessage.qos, pendingMessage.retain);
+            sent = true;
+        }
+        if (sent) {
+            ctx.flush();
+        }
+    }
+
+    private int nextPacketId() {
+        do {
+            int packetId = nextPacketId;
+            nextPacketId = packetId == MAX_PACKET_ID ? 1 : packetId + 1;
+            if (!outbound.containsKey(packetId)) {
+                return packetId;
+            }
+        } while (true);
+    }
+
+    private void scheduleRetry(long delayMs) {
+        if (retryTimeout == null && !closed) {
+            retryTimeout = timer.newTimeout(new TimerTask() {
+                @Override public void run(Timeout timeout) {
+                    retry();
+                }
+            }, delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void retry() {
+        retryTimeout = null;
+        if (closed || outbound.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long nextRetry = now + retryIntervalMs;
+        for (IntObjectMap.PrimitiveEntry<InflightMessage> entry : outbound.entries()) {
+            InflightMessage inflightMessage = entry.value();
+            if (now - inflightMessage.sentAt < retryIntervalMs) {
+                nextRetry = Math.min(nextRetry, inflightMessage.sentAt + retryIntervalMs);
+                continue;
+            }
+            inflightMessage.sentAt = now;
+            if (inflightMessage.message == null) {
+                ctx.write(MessageUtil.getMqttPubrelMessage(entry.key()));
+            } else {
+                MqttPublishMessage message = inflightMessage.message;
+                ctx.write(new MqttPublishMessage(
+                    new MqttFixedHeader(MqttMessageType.PUBLISH, true, message.fixedHeader().qosLevel(),
+                        message.fixedHeader().isRetain(), 0),
+                    message.variableHeader(),
+                    message.payload().retainedDuplicate()
+                ));
+            }
+        }
+        ctx.flush();
+        scheduleRetry(nextRetry - now);
+    }
+
+    private static class InflightMessage {
+
+        /**
+         * null once the PUBREC of a QoS 2 message is received
+         */
+        private MqttPublishMessage message;
+
+        private final int qos;
+
+        private long sentAt;
+
+        InflightMessage(MqttPublishMessage message, int qos, long sentAt) {
+            this.message = message;
+            this.qos = qos;
+            this.sentAt = sentAt;
+        }
+
+        void release() {
+            if (message != null) {
+                message.release();
+                message = null;
+            }
+        }
+    }
+
+    private static class PendingMessage {
+
+        private final String topic;
+
+        private final ByteBuf payload;
+
+        private final int qos;
+
+        private final boolean retain;
+
+        PendingMessage(String topic, ByteBuf payload, int qos, boolean retain) {
+            this.topic = topic;
+            this.payload = payload;
+            this.qos = qos;
+            this.retain = retain;
+        }
+    }
+}
@@ -38,6 +38,15 @@ public interface MessageStore {
      */
     String put(Message message);
 
+    /**
+     * Put message to MessageStore, the callback is notified once the message is stored or failed to be
+     * @param message the message to put to the Message Store
+     * @param callback notified of the outcome, possibly from another thread
+     */
+    default void put(Message message, PutCallback callback) {
+        callback.onSuccess(put(message));
+    }
+
     /**
      * Prepare to push message to the clients by marking the receiving id list of the clients
      * @param messageId the identifier of the message to be prepared
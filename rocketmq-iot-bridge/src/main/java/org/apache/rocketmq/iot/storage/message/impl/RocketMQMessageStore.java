@@ -0,0 +1,547 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.iot.storage.message.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.mqtt.MqttFixedHeader;
+import io.netty.handler.codec.mqtt.MqttMessageType;
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import io.netty.handler.codec.mqtt.MqttPublishVariableHeader;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import org.apache.rocketmq.client.Validators;
+import org.apache.rocketmq.client.consumer.DefaultLitePullConsumer;
+import org.apache.rocketmq.client.exception.MQClientException;
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.apache.rocketmq.client.producer.MessageQueueSelector;
+import org.apache.rocketmq.client.producer.SendCallback;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.common.message.MessageBatch;
+import org.apache.rocketmq.common.message.MessageClientIDSetter;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.common.protocol.heartbeat.MessageModel;
+import org.apache.rocketmq.iot.common.configuration.RocketMQConfiguration;
+import org.apache.rocketmq.iot.common.data.Message;
+import org.apache.rocketmq.iot.common.util.MessageUtil;
+import org.apache.rocketmq.iot.connection.client.Client;
+import org.apache.rocketmq.iot.protocol.mqtt.constant.MqttConstant;
+import org.apache.rocketmq.iot.protocol.mqtt.data.MqttClient;
+import org.apache.rocketmq.iot.protocol.mqtt.handler.MessageDispatcher;
+import org.apache.rocketmq.iot.storage.message.MessageStore;
+import org.apache.rocketmq.iot.storage.message.PutCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores the PUBLISH messages of the clients in RocketMQ and pushes the messages of the downstream topics
+ * back to the subscribed clients.
+ * <p>
+ * The MQTT topic {@code a/b/c} is sent to the RocketMQ topic {@code a} with tag {@code b}, the full MQTT topic
+ * being kept in the {@link MessageUtil#MQTT_TOPIC_NAME} property. An MQTT topic whose first level is not a valid
+ * RocketMQ topic goes to {@link RocketMQConfiguration#defaultTopic()}.
+ * <p>
+ * Upstream, {@link #put(Message, PutCallback)} only queues the message: a sender thread groups the queued
+ * messages per RocketMQ topic into batches, and sends them asynchronously with at most
+ * {@link RocketMQConfiguration#sendMaxInFlight()} batches waiting for the brokers, the callback of a message being
+ * notified with the outcome of its batch. Queueing never blocks, since it runs on the I/O threads: once the queue is
+ * three quarters full the channels of the publishing clients stop reading until it is half empty, and a message
+ * is rejected if the queue is full nevertheless. Downstream, every bridge
+ * consumes the downstream topics in broadcasting mode with a lite pull consumer and dispatches the messages as
+ * {@link Message.Type#MQTT_SEND}.
+ */
+public class RocketMQMessageStore implements MessageStore {
+
+    private static final Logger log = LoggerFactory.getLogger(RocketMQMessageStore.class);
+
+    private static final Pattern TOPIC_PATTERN = Pattern.compile("^[%|a-zA-Z0-9_-]+$");
+
+    private static final int MAX_TOPIC_LENGTH = 127;
+
+    /**
+     * The bytes of a message in a batch besides its body: the lengths, flags and properties.
+     */
+    private static final int MESSAGE_OVERHEAD = 128;
+
+    private static final long POLL_TIMEOUT_MS = 100;
+
+    private final DefaultMQProducer producer;
+
+    private final DefaultLitePullConsumer consumer;
+
+    private final MessageDispatcher dispatcher;
+
+    private final String[] downstreamTopics;
+
+    private final String defaultTopic;
+
+    private final int sendBatchSize;
+
+    private final int sendBatchBytes;
+
+    private final long sendLingerMs;
+
+    private final int sendTimeoutMs;
+
+    private final int sendMaxInFlight;
+
+    private final BlockingQueue<PendingMessage> sendQueue;
+
+    private final int pauseQueueSize;
+
+    private final int resumeQueueSize;
+
+    private final Set<Channel> pausedChannels = ConcurrentHashMap.newKeySet();
+
+    private final Semaphore inFlightBatches;
+
+    private final AtomicInteger nextQueue = new AtomicInteger();
+
+    private final MessageQueueSelector queueSelector = new MessageQueueSelector() {
+        @Override public MessageQueue select(List<MessageQueue> mqs, org.apache.rocketmq.common.message.Message msg,
+            Object arg) {
+            return mqs.get((nextQueue.getAndIncrement() & Integer.MAX_VALUE) % mqs.size());
+        }
+    };
+
+    private volatile boolean running;
+
+    private Thread sender;
+
+    private Thread puller;
+
+    public RocketMQMessageStore(MessageDispatcher dispatcher) {
+        this(createProducer(), createConsumer(), dispatcher);
+    }
+
+    public RocketMQMessageStore(DefaultMQProducer producer, DefaultLitePullConsumer consumer,
+        MessageDispatcher dispatcher) {
+        this.producer = producer;
+        this.consumer = consumer;
+        this.dispatcher = dispatcher;
+        this.downstreamTopics = RocketMQConfiguration.downstreamTopics();
+        this.defaultTopic = RocketMQConfiguration.defaultTopic();
+        this.sendBatchSize = RocketMQConfiguration.sendBatchSize();
+        this.sendBatchBytes = RocketMQConfiguration.sendBatchBytes();
+        this.sendLingerMs = RocketMQConfiguration.sendLingerMs();
+        this.sendTimeoutMs = RocketMQConfiguration.sendTimeoutMs();
+        this.sendMaxInFlight = RocketMQConfiguration.sendMaxInFlight();
+        int sendQueueCapacity = RocketMQConfiguration.sendQueueCapacity();
+        this.sendQueue = new ArrayBlockingQueue<>(sendQueueCapacity);
+        this.pauseQueueSize = sendQueueCapacity - sendQueueCapacity / 4;
+        this.resumeQueueSize = sendQueueCapacity / 2;
+        this.inFlightBatches = new Semaphore(sendMaxInFlight);
+    }
+
+    private static DefaultMQProducer createProducer() {
+        DefaultMQProducer producer = new DefaultMQProducer(RocketMQConfiguration.producerGroup());
+        producer.setNamesrvAddr(RocketMQConfiguration.namesrvAddr());
+        producer.setSendMsgTimeout(RocketMQConfiguration.sendTimeoutMs());
+        return producer;
+    }
+
+    private static DefaultLitePullConsumer createConsumer() {
+        DefaultLitePullConsumer consumer = new DefaultLitePullConsumer(RocketMQConfiguration.consumerGroup());
+        consumer.setNamesrvAddr(RocketMQConfiguration.namesrvAddr());
+        consumer.setMessageModel(MessageModel.BROADCASTING);
+        consumer.setPullBatchSize(RocketMQConfiguration.pullBatchSize());
+        consumer.setPullThresholdForAll(RocketMQConfiguration.pullMaxInFlight());
+        return consumer;
+    }
+
+    /**
+     * The messages are not kept by id, use the RocketMQ tools to look them up
+     *
+     * @return null
+     */
+    @Override public Message get(String id) {
+        return null;
+    }
+
+    /**
+     * Queue the PUBLISH message to be sent to RocketMQ
+     *
+     * @param message the message to put to the Message Store
+     * @return the unique id of the RocketMQ message, or null if the queue is full
+     */
+    @Override public String put(Message message) {
+        return enqueue(message, null);
+    }
+
+    /**
+     * Queue the PUBLISH message to be sent to RocketMQ, the callback is notified from the RocketMQ send callback,
+     * or at once if the queue is full
+     */
+    @Override public void put(Message message, PutCallback callback) {
+        enqueue(message, callback);
+    }
+
+    private String enqueue(Message message, PutCallback callback) {
+        MqttPublishMessage publishMessage = (MqttPublishMessage) message.getPayload();
+        String mqttTopic = publishMessage.variableHeader().topicName();
+        ByteBuf payload = publishMessage.payload();
+        byte[] body = new byte[payload.readableBytes()];
+        payload.getBytes(payload.readerIndex(), body);
+
+        org.apache.rocketmq.common.message.Message msg = new org.apache.rocketmq.common.message.Message(
+            toRocketMQTopic(mqttTopic, defaultTopic), toRocketMQTag(mqttTopic), body);
+        msg.putUserProperty(MessageUtil.MQTT_TOPIC_NAME, mqttTopic);
+        msg.putUserProperty(MessageUtil.MQTT_QOS_LEVEL, String.valueOf(publishMessage.fixedHeader().qosLevel().value()));
+        MessageClientIDSetter.setUniqID(msg);
+        if (!sendQueue.offer(new PendingMessage(msg, callback))) {
+            log.warn("the send queue is full, reject the message of topic {}", mqttTopic);
+            if (callback != null) {
+                callback.onException(new IllegalStateException("the RocketMQ send queue is full"));
+            }
+            return null;
+        }
+        if (sendQueue.size() >= pauseQueueSize) {
+            pause(message.getClient());
+        }
+        return MessageClientIDSetter.getUniqID(msg);
+    }
+
+    /**
+     * Stop reading from the channel of the client until the send queue is half empty
+     */
+    private void pause(Client client) {
+        if (client == null || client.getCtx() == null) {
+            return;
+        }
+        Channel channel = client.getCtx().channel();
+        channel.config().setAutoRead(false);
+        pausedChannels.add(channel);
+        // the sender may have drained the queue meanwhile
+        if (sendQueue.size() <= resumeQueueSize) {
+            resumePausedChannels();
+        }
+    }
+
+    private void resumePausedChannels() {
+        for (Channel channel : pausedChannels) {
+            if (pausedChannels.remove(channel)) {
+                channel.config().setAutoRead(true);
+            }
+        }
+    }
+
+    /**
+     * Only QoS 0 is pushed to the clients, nothing is prepared
+     */
+    @Override public void prepare(String messageId, List<String> clientIds, int qos) {
+    }
+
+    /**
+     * Only QoS 0 is pushed to the clients, there is nothing to acknowledge
+     */
+    @Override public void ack(Message message, MqttClient client) {
+    }
+
+    /**
+     * Only QoS 0 is pushed to the clients, there is nothing to acknowledge
+     */
+    @Override public void ack(Message message, List<MqttClient> clients) {
+    }
+
+    /**
+     * The messages expire with the retention of the brokers
+     */
+    @Override public void expire(String id) {
+    }
+
+    @Override public void start() {
+        try {
+            producer.start();
+            for (String topic : downstreamTopics) {
+                consumer.subscribe(topic.trim(), "*");
+            }
+            consumer.start();
+        } catch (MQClientException e) {
+            throw new IllegalStateException("fail to start the RocketMQ message store", e);
+        }
+        running = true;
+        sender = new Thread(new Runnable() {
+            @Override public void run() {
+                sendLoop();
+            }
+        }, "rocketmq-message-store-sender");
+        sender.setDaemon(true);
+        sender.start();
+        puller = new Thread(new Runnable() {
+            @Override public void run() {
+                pullLoop();
+            }
+        }, "rocketmq-message-store-puller");
+        puller.setDaemon(true);
+        puller.start();
+    }
+
+    /**
+     * Offline messages are not kept, the clients only receive the messages consumed while they are connected
+     */
+    @Override public List<Message> getOfflineMessages(MqttClient client) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Send the queued messages, wait for the batches in flight and shutdown the RocketMQ clients
+     */
+    @Override public void shutdown() {
+        running = false;
+        try {
+            if (sender != null) {
+                sender.join();
+            }
+            if (!inFlightBatches.tryAcquire(sendMaxInFlight, sendTimeoutMs * 2, TimeUnit.MILLISECONDS)) {
+                log.warn("shutdown the RocketMQ message store with batches in flight");
+            }
+            if (puller != null) {
+                puller.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        producer.shutdown();
+        consumer.shutdown();
+    }
+
+    private void sendLoop() {
+        List<PendingMessage> batch = new ArrayList<>(sendBatchSize);
+        while (running || !sendQueue.isEmpty()) {
+            try {
+                if (!pausedChannels.isEmpty() && sendQueue.size() <= resumeQueueSize) {
+                    resumePausedChannels();
+                }
+                PendingMessage first = sendQueue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.currentTimeMillis() + sendLingerMs;
+                while (batch.size() < sendBatchSize) {
+                    sendQueue.drainTo(batch, sendBatchSize - batch.size());
+                    long wait = deadline - System.currentTimeMillis();
+                    if (batch.size() >= sendBatchSize || wait <= 0) {
+                        break;
+                    }
+                    PendingMessage next = sendQueue.poll(wait, TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                send(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Throwable t) {
+                log.error("fail to send {} messages to RocketMQ", batch.size(), t);
+            }
+            batch.clear();
+        }
+    }
+
+    private void send(List<PendingMessage> messages) throws InterruptedException {
+        Map<String, List<PendingMessage>> topic2messages = new LinkedHashMap<>();
+        for (PendingMessage pendingMessage : messages) {
+            String topic = pendingMessage.msg.getTopic();
+            List<PendingMessage> topicMessages = topic2messages.get(topic);
+            if (topicMessages == null) {
+                topicMessages = new ArrayList<>();
+                topic2messages.put(topic, topicMessages);
+            }
+            topicMessages.add(pendingMessage);
+        }
+        for (List<PendingMessage> topicMessages : topic2messages.values()) {
+            int from = 0;
+            int bytes = 0;
+            for (int i = 0; i < topicMessages.size(); i++) {
+                int size = estimateSize(topicMessages.get(i).msg);
+                if (i > from && bytes + size > sendBatchBytes) {
+                    sendAsync(topicMessages.subList(from, i));
+                    from = i;
+                    bytes = 0;
+                }
+                bytes += size;
+            }
+            sendAsync(topicMessages.subList(from, topicMessages.size()));
+        }
+    }
+
+    private void sendAsync(List<PendingMessage> pendingMessages) throws InterruptedException {
+        final List<PendingMessage> messages = new ArrayList<>(pendingMessages);
+        final org.apache.rocketmq.common.message.Message msg;
+        try {
+            msg = messages.size() == 1 ? messages.get(0).msg : toBatchMessage(messages);
+        } catch (MQClientException e) {
+            log.error("drop {} invalid messages of topic {}", messages.size(), messages.get(0).msg.getTopic(), e);
+            complete(messages, e);
+            return;
+        }
+        inFlightBatches.acquire();
+        try {
+            producer.send(msg, queueSelector, null, new SendCallback() {
+                @Override public void onSuccess(SendResult sendResult) {
+                    inFlightBatches.release();
+                    complete(messages, null);
+                }
+
+                @Override public void onException(Throwable e) {
+                    inFlightBatches.release();
+                    log.error("fail to send {} messages to topic {}", messages.size(), msg.getTopic(), e);
+                    complete(messages, e);
+                }
+            }, sendTimeoutMs);
+        } catch (Exception e) {
+            inFlightBatches.release();
+            log.error("fail to send {} messages to topic {}", messages.size(), msg.getTopic(), e);
+            complete(messages, e);
+        }
+    }
+
+    /**
+     * Notify the callbacks of the messages of a batch
+     *
+     * @param cause null if the batch is stored
+     */
+    private static void complete(List<PendingMessage> messages, Throwable cause) {
+        for (PendingMessage pendingMessage : messages) {
+            if (pendingMessage.callback == null) {
+                continue;
+            }
+            try {
+                if (cause == null) {
+                    pendingMessage.callback.onSuccess(MessageClientIDSetter.getUniqID(pendingMessage.msg));
+                } else {
+                    pendingMessage.callback.onException(cause);
+                }
+            } catch (Throwable t) {
+                log.error("fail to notify the put callback of a message of topic {}", pendingMessage.msg.getTopic(),
+                    t);
+            }
+        }
+    }
+
+    /**
+     * The same as {@code DefaultMQProducer.batch}, which is not public
+     */
+    private MessageBatch toBatchMessage(List<PendingMessage> pendingMessages) throws MQClientException {
+        List<org.apache.rocketmq.common.message.Message> messages = new ArrayList<>(pendingMessages.size());
+        for (PendingMessage pendingMessage : pendingMessages) {
+            messages.add(pendingMessage.msg);
+        }
+        MessageBatch batch = MessageBatch.generateFromList(messages);
+        for (org.apache.rocketmq.common.message.Message message : batch) {
+            Validators.checkMessage(message, producer);
+            MessageClientIDSetter.setUniqID(message);
+        }
+        batch.setBody(batch.encode());
+        return batch;
+    }
+
+    private void pullLoop() {
+        while (running) {
+            try {
+                for (MessageExt messageExt : consumer.poll(POLL_TIMEOUT_MS)) {
+                    MqttPublishMessage publishMessage = toPublishMessage(messageExt);
+                    Message message = new Message();
+                    message.setId(messageExt.getMsgId());
+                    message.setType(Message.Type.MQTT_SEND);
+                    message.setTopic(publishMessage.variableHeader().topicName());
+                    message.setPayload(publishMessage);
+                    try {
+                        dispatcher.dispatch(message);
+                    } finally {
+                        publishMessage.release();
+                    }
+                }
+            } catch (Throwable t) {
+                log.error("fail to push the messages consumed from RocketMQ", t);
+            }
+        }
+    }
+
+    private static MqttPublishMessage toPublishMessage(MessageExt messageExt) {
+        String mqttTopic = messageExt.getUserProperty(MessageUtil.MQTT_TOPIC_NAME);
+        if (mqttTopic == null) {
+            String tags = messageExt.getTags();
+            mqttTopic = tags == null ? messageExt.getTopic()
+                : messageExt.getTopic() + MqttConstant.SUBSCRIPTION_SEPARATOR + tags;
+        }
+        String qos = messageExt.getUserProperty(MessageUtil.MQTT_QOS_LEVEL);
+        return new MqttPublishMessage(
+            new MqttFixedHeader(
+                MqttMessageType.PUBLISH,
+                false,
+                qos == null ? MqttQoS.AT_MOST_ONCE : MqttQoS.valueOf(Integer.parseInt(qos)),
+                false,
+                0
+            ),
+            new MqttPublishVariableHeader(mqttTopic, 0),
+            Unpooled.wrappedBuffer(messageExt.getBody())
+        );
+    }
+
+    private static String toRocketMQTopic(String mqttTopic, String defaultTopic) {
+        int end = mqttTopic.indexOf(MqttConstant.SUBSCRIPTION_SEPARATOR);
+        String topic = end < 0 ? mqttTopic : mqttTopic.substring(0, end);
+        if (topic.length() > MAX_TOPIC_LENGTH || !TOPIC_PATTERN.matcher(topic).matches()) {
+            return defaultTopic;
+        }
+        return topic;
+    }
+
+    private static String toRocketMQTag(String mqttTopic) {
+        String[] levels = mqttTopic.split(MqttConstant.SUBSCRIPTION_SEPARATOR, 3);
+        if (levels.length < 2 || levels[1].isEmpty()) {
+            return null;
+        }
+        return levels[1];
+    }
+
+    private static int estimateSize(org.apache.rocketmq.common.message.Message message) {
+        String tags = message.getTags();
+        return message.getBody().length + (tags == null ? 0 : tags.length()) + MESSAGE_OVERHEAD;
+    }
+
+    private static class PendingMessage {
+
+        private final org.apache.rocketmq.common.message.Message msg;
+
+        private final PutCallback callback;
+
+        PendingMessage(org.apache.rocketmq.common.message.Message msg, PutCallback callback) {
+            this.msg = msg;
+            this.callback = callback;
+        }
+    }
+}
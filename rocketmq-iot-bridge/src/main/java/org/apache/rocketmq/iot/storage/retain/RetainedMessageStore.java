@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.iot.storage.retain;
+
+import java.util.List;
+import org.apache.rocketmq.iot.protocol.mqtt.data.RetainedMessage;
+
+public interface RetainedMessageStore {
+
+    /**
+     * Retain the message of its topic, replacing the former one. A message with an empty payload removes the
+     * retained message of the topic instead
+     * @param message the message published with the RETAIN flag
+     */
+    void put(RetainedMessage message);
+
+    /**
+     * Get the retained message of a topic
+     * @param topic the topic name
+     * @return the retained message, or null if there is none
+     */
+    RetainedMessage get(String topic);
+
+    /**
+     * Get the retained messages whose topic matches the filter
+     * @param filter the topic filter, which may contain wildcards ('+' and '#')
+     * @return the matching retained messages
+     */
+    List<RetainedMessage> match(String filter);
+
+    /**
+     * @return the number of retained messages
+     */
+    int size();
+
+    /**
+     * Start the RetainedMessageStore
+     */
+    void start();
+
+    /**
+     * Shutdown the RetainedMessageStore
+     */
+    void shutdown();
+}
@@ -0,0 +1,223 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.iot.storage.retain.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.rocketmq.iot.common.configuration.MQTTBridgeConfiguration;
+import org.apache.rocketmq.iot.protocol.mqtt.constant.MqttConstant;
+import org.apache.rocketmq.iot.protocol.mqtt.data.RetainedMessage;
+import org.apache.rocketmq.iot.storage.retain.RetainedMessageStore;
+
+/**
+ * Keeps the retained messages in a trie with one node per topic level, like the
+ * {@link org.apache.rocketmq.iot.storage.subscription.impl.InMemorySubscriptionStore}.
+ * <p>
+ * The nodes without any retained message below them are dropped, so a '#' walks the matching messages and
+ * their ancestors only, and a '+' the children holding retained messages. Reads do not lock, writes are
+ * serialized. Once {@code maxMessages} messages or {@code maxBytes} bytes of topics and payloads are retained,
+ * the messages updated the longest time ago are evicted.
+ */
+public class InMemoryRetainedMessageStore implements RetainedMessageStore {
+
+    private final Node root = new Node(null, null);
+    /* the retained topics from the least to the most recently updated, guarded by the write lock */
+    private final LinkedHashMap<String, Node> topic2Node = new LinkedHashMap<>();
+    private final Object writeLock = new Object();
+    private final int maxMessages;
+    private final long maxBytes;
+    private volatile int size;
+    private long bytes;
+    private long evictedMessages;
+
+    public InMemoryRetainedMessageStore() {
+        this(MQTTBridgeConfiguration.retainedMaxMessages(), MQTTBridgeConfiguration.retainedMaxBytes());
+    }
+
+    public InMemoryRetainedMessageStore(int maxMessages, long maxBytes) {
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+    }
+
+    @Override public void put(RetainedMessage message) {
+        String topic = message.getTopic();
+        synchronized (writeLock) {
+            if (message.getPayload().length == 0) {
+                Node node = topic2Node.remove(topic);
+                if (node != null) {
+                    remove(node);
+                }
+                return;
+            }
+            Node node = topic2Node.remove(topic);
+            if (node == null) {
+                node = getOrCreate(topic);
+            } else {
+                bytes -= sizeOf(node.message);
+            }
+            node.message = message;
+            bytes += sizeOf(message);
+            topic2Node.put(topic, node);
+            size = topic2Node.size();
+            evict();
+        }
+    }
+
+    @Override public RetainedMessage get(String topic) {
+        Node node = root;
+        for (String level : split(topic)) {
+            node = node.children.get(level);
+            if (node == null) {
+                return null;
+            }
+        }
+        return node.message;
+    }
+
+    @Override public List<RetainedMessage> match(String filter) {
+        List<RetainedMessage> messages = new ArrayList<>();
+        collect(root, split(filter), 0, messages);
+        return messages.isEmpty() ? Collections.emptyList() : messages;
+    }
+
+    @Override public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of messages evicted to bound the memory
+     */
+    public long evictedMessages() {
+        synchronized (writeLock) {
+            return evictedMessages;
+        }
+    }
+
+    private void collect(Node node, String[] levels, int level, List<RetainedMessage> messages) {
+        if (level == levels.length) {
+            RetainedMessage message = node.message;
+            if (message != null) {
+                messages.add(message);
+            }
+            return;
+        }
+        String filterLevel = levels[level];
+        if (MqttConstant.SUBSCRIPTION_FLAG_SHARP.equals(filterLevel)) {
+            collectAll(node, level == 0, messages);
+        } else if (MqttConstant.SUBSCRIPTION_FLAG_PLUS.equals(filterLevel)) {
+            for (Map.Entry<String, Node> child : node.children.entrySet()) {
+                // wildcards at the first level do not match the topics starting with '$'
+                if (level > 0 || !child.getKey().startsWith("$")) {
+                    collect(child.getValue(), levels, level + 1, messages);
+                }
+            }
+        } else {
+            Node child = node.children.get(filterLevel);
+            if (child != null) {
+                collect(child, levels, level + 1, messages);
+            }
+        }
+    }
+
+    private void collectAll(Node node, boolean root, List<RetainedMessage> messages) {
+        RetainedMessage message = node.message;
+        if (message != null) {
+            messages.add(message);
+        }
+        for (Map.Entry<String, Node> child : node.children.entrySet()) {
+            if (!root || !child.getKey().startsWith("$")) {
+                collectAll(child.getValue(), false, messages);
+            }
+        }
+    }
+
+    /**
+     * must be called with the write lock held
+     */
+    private void evict() {
+        Iterator<Node> iterator = topic2Node.values().iterator();
+        while ((topic2Node.size() > maxMessages || bytes > maxBytes) && iterator.hasNext()) {
+            Node node = iterator.next();
+            iterator.remove();
+            remove(node);
+            evictedMessages++;
+        }
+        size = topic2Node.size();
+    }
+
+    /**
+     * must be called with the write lock held, drops the message of the node and the nodes left empty
+     */
+    private void remove(Node node) {
+        bytes -= sizeOf(node.message);
+        node.message = null;
+        size = topic2Node.size();
+        while (node.parent != null && node.message == null && node.children.isEmpty()) {
+            node.parent.children.remove(node.level, node);
+            node = node.parent;
+        }
+    }
+
+    /**
+     * must be called with the write lock held
+     */
+    private Node getOrCreate(String topic) {
+        Node node = root;
+        for (String level : split(topic)) {
+            Node parent = node;
+            node = parent.children.computeIfAbsent(level, l -> new Node(parent, l));
+        }
+        return node;
+    }
+
+    private static long sizeOf(RetainedMessage message) {
+        return message.getTopic().length() + message.getPayload().length;
+    }
+
+    private static String[] split(String topic) {
+        return topic.split(MqttConstant.SUBSCRIPTION_SEPARATOR, -1);
+    }
+
+    @Override public void start() {
+
+    }
+
+    @Override public void shutdown() {
+
+    }
+
+    /**
+     * a level of the topic trie, which may hold the retained message of the topic ending there
+     */
+    private static class Node {
+        private final Node parent;
+        private final String level;
+        private final ConcurrentHashMap<String, Node> children = new ConcurrentHashMap<>(4);
+        private volatile RetainedMessage message;
+
+        private Node(Node parent, String level) {
+            this.parent = parent;
+            this.level = level;
+        }
+    }
+}
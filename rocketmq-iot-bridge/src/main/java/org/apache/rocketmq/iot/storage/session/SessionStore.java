@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.iot.storage.session;
+
+import io.netty.buffer.ByteBuf;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the sessions of the clients connected with CleanSession set to false: their subscriptions, and the
+ * QoS 1 and 2 messages published while they are disconnected
+ */
+public interface SessionStore {
+
+    /**
+     * Add or replace subscriptions of the session of a client, the session is created if needed
+     * @param clientId the identifier of the client
+     * @param topicFilter2Qos the granted QoS of the topic filters subscribed to
+     */
+    void addSubscriptions(String clientId, Map<String, Integer> topicFilter2Qos);
+
+    /**
+     * Remove subscriptions of the session of a client
+     * @param clientId the identifier of the client
+     * @param topicFilters the topic filters unsubscribed from
+     */
+    void removeSubscriptions(String clientId, Collection<String> topicFilters);
+
+    /**
+     * Get the subscriptions of the session of a client
+     * @param clientId the identifier of the client
+     * @return the granted QoS of the topic filters, empty if there is no session
+     */
+    Map<String, Integer> getSubscriptions(String clientId);
+
+    /**
+     * @return the identifiers of the clients having a session
+     */
+    Set<String> getClientIds();
+
+    /**
+     * Queue a message for a disconnected client
+     * @param clientId the identifier of the client
+     * @param topic the topic of the message
+     * @param payload the payload of the message, which is copied
+     * @param qos the QoS level of the message
+     * @return false if the client has no session or too many messages queued already
+     */
+    boolean enqueue(String clientId, String topic, ByteBuf payload, int qos);
+
+    /**
+     * Hand the messages queued for a client over in order, the handed over ones are removed from the queue
+     * @param clientId the identifier of the client
+     * @param handler sends the messages, stops the replay by refusing one
+     * @return the number of messages handed over
+     */
+    int replay(String clientId, QueuedMessageHandler handler);
+
+    /**
+     * Discard the session of a client
+     * @param clientId the identifier of the client
+     */
+    void remove(String clientId);
+
+    /**
+     * Start the SessionStore
+     */
+    void start();
+
+    /**
+     * Shutdown the SessionStore
+     */
+    void shutdown();
+
+    interface QueuedMessageHandler {
+
+        /**
+         * @param topic the topic of the message
+         * @param payload the payload, only valid during the call unless retained
+         * @param qos the QoS level of the message
+         * @return false if the message cannot be sent, it stays queued with the following ones
+         */
+        boolean handle(String topic, ByteBuf payload, int qos);
+    }
+}
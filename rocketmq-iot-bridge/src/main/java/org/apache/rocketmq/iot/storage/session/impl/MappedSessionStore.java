@@ -0,0 +1,673 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.iot.storage.session.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import org.apache.rocketmq.iot.common.configuration.MQTTBridgeConfiguration;
+import org.apache.rocketmq.iot.storage.session.SessionStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the sessions in an append-only log of memory-mapped segment files, and only the location of the
+ * records in the heap.
+ * <p>
+ * Record layout: {@code length, crc, type, clientId} followed by the body of the type: the subscriptions of a
+ * session {@code count, (topicFilter, qos) * count}, a queued message {@code seq, qos, topic, payload}, the
+ * messages replayed {@code seq} up to which they are removed, or the removal of a session. The records are
+ * replayed in order on start, a torn tail record fails its CRC and ends the log.
+ * <p>
+ * A background task forces the segments to disk and compacts the oldest segment once less than half of it is
+ * still live: the live records are appended again to the last segment and the file is deleted. Segments are
+ * only dropped oldest first, so a removal never reaches the disk before the records it cancels. The queued
+ * payloads are replayed from the mapped files without copying.
+ */
+public class MappedSessionStore implements SessionStore {
+
+    private static final Logger log = LoggerFactory.getLogger(MappedSessionStore.class);
+
+    private static final String SEGMENT_FILE_SUFFIX = ".seg";
+
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private static final byte SUBSCRIPTIONS_RECORD = 1;
+
+    private static final byte MESSAGE_RECORD = 2;
+
+    private static final byte REPLAYED_RECORD = 3;
+
+    private static final byte REMOVED_RECORD = 4;
+
+    private static final double COMPACTION_LIVE_RATIO = 0.5;
+
+    private final File dataDir;
+
+    private final int segmentSize;
+
+    private final int maxQueuedMessages;
+
+    private final long compactionIntervalMs;
+
+    private final Map<String, Session> sessions = new HashMap<>();
+
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+
+    private final IntObjectMap<Segment> id2Segment = new IntObjectHashMap<>();
+
+    private final CRC32 crc = new CRC32();
+
+    private final Object compactionLock = new Object();
+
+    private Segment tail;
+
+    private int recordStart;
+
+    private long droppedMessages;
+
+    private ScheduledExecutorService compactionExecutor;
+
+    public MappedSessionStore() {
+        this(MQTTBridgeConfiguration.sessionStorePath(), MQTTBridgeConfiguration.sessionSegmentSize(),
+            MQTTBridgeConfiguration.sessionMaxQueuedMessages(), MQTTBridgeConfiguration.sessionCompactionIntervalMs());
+    }
+
+    public MappedSessionStore(String dataDir, int segmentSize, int maxQueuedMessages, long compactionIntervalMs) {
+        this.dataDir = new File(dataDir);
+        this.segmentSize = segmentSize;
+        this.maxQueuedMessages = maxQueuedMessages;
+        this.compactionIntervalMs = compactionIntervalMs;
+    }
+
+    @Override public synchronized void start() {
+        try {
+            recover();
+        } catch (IOException e) {
+            throw new IllegalStateException("fail to load the sessions from " + dataDir, e);
+        }
+        compactionExecutor = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("mqtt-session-compaction", true));
+        compactionExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                compact();
+            } catch (Throwable t) {
+                log.warn("fail to compact the sessions", t);
+            }
+        }, compactionIntervalMs, compactionIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override public void shutdown() {
+        if (compactionExecutor != null) {
+            compactionExecutor.shutdown();
+        }
+        synchronized (this) {
+            for (Segment segment : segments) {
+                segment.buffer.force();
+            }
+        }
+    }
+
+    @Override public synchronized void addSubscriptions(String clientId, Map<String, Integer> topicFilter2Qos) {
+        Session session = sessions.computeIfAbsent(clientId, Session::new);
+        session.subscriptions.putAll(topicFilter2Qos);
+        writeSubscriptions(session);
+    }
+
+    @Override public synchronized void removeSubscriptions(String clientId, Collection<String> topicFilters) {
+        Session session = sessions.get(clientId);
+        if (session != null && session.subscriptions.keySet().removeAll(topicFilters)) {
+            writeSubscriptions(session);
+        }
+    }
+
+    @Override public synchronized Map<String, Integer> getSubscriptions(String clientId) {
+        Session session = sessions.get(clientId);
+        return session == null ? new HashMap<>() : new LinkedHashMap<>(session.subscriptions);
+    }
+
+    @Override public synchronized Set<String> getClientIds() {
+        return new HashSet<>(sessions.keySet());
+    }
+
+    @Override public synchronized boolean enqueue(String clientId, String topic, ByteBuf payload, int qos) {
+        Session session = sessions.get(clientId);
+        if (session == null) {
+            return false;
+        }
+        byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+        int payloadSize = payload.readableBytes();
+        int bodySize = 8 + 1 + 2 + topicBytes.length + payloadSize;
+        if (session.size >= maxQueuedMessages || recordSize(session, bodySize) > segmentSize) {
+            droppedMessages++;
+            return false;
+        }
+        long seq = session.nextSeq++;
+        ByteBuffer buffer = begin(MESSAGE_RECORD, session, bodySize);
+        buffer.putLong(seq);
+        buffer.put((byte) qos);
+        putBytes(buffer, topicBytes);
+        int limit = buffer.limit();
+        buffer.limit(buffer.position() + payloadSize);
+        payload.getBytes(payload.readerIndex(), buffer);
+        buffer.limit(limit);
+        session.add(end(true), seq);
+        return true;
+    }
+
+    @Override public synchronized int replay(String clientId, QueuedMessageHandler handler) {
+        Session session = sessions.get(clientId);
+        if (session == null || session.size == 0) {
+            return 0;
+        }
+        int replayed = 0;
+        long replayedSeq = 0;
+        while (session.size > 0) {
+            long location = session.locations[session.head];
+            ByteBuffer record = record(location);
+            skipString(record);
+            long seq = record.getLong();
+            int qos = record.get();
+            String topic = getString(record);
+            ByteBuf payload = Unpooled.wrappedBuffer(record.slice());
+            boolean sent;
+            try {
+                sent = handler.handle(topic, payload, qos);
+            } finally {
+                payload.release();
+            }
+            if (!sent) {
+                break;
+            }
+            session.poll();
+            markDead(location);
+            replayedSeq = seq;
+            replayed++;
+        }
+        if (replayed > 0) {
+            ByteBuffer buffer = begin(REPLAYED_RECORD, session, 8);
+            buffer.putLong(replayedSeq);
+            end(false);
+        }
+        return replayed;
+    }
+
+    @Override public synchronized void remove(String clientId) {
+        Session session = sessions.remove(clientId);
+        if (session == null) {
+            return;
+        }
+        if (session.subscriptionsLocation >= 0) {
+            markDead(session.subscriptionsLocation);
+        }
+        while (session.size > 0) {
+            markDead(session.poll());
+        }
+        begin(REMOVED_RECORD, session, 0);
+        end(false);
+    }
+
+    /**
+     * @return the number of messages queued for the client
+     */
+    public synchronized int queuedMessages(String clientId) {
+        Session session = sessions.get(clientId);
+        return session == null ? 0 : session.size;
+    }
+
+    /**
+     * @return the number of messages not queued because of the limit of their client
+     */
+    public synchronized long droppedMessages() {
+        return droppedMessages;
+    }
+
+    /**
+     * @return the number of segment files
+     */
+    public synchronized int segments() {
+        return segments.size();
+    }
+
+    /**
+     * Force the segments to disk and drop the oldest ones while they are mostly dead. Forcing a mapped segment is
+     * slow, so it is done without holding the lock of the store, taken by the I/O threads: only the relocation and the
+     * drop of a segment hold it
+     */
+    public void compact() {
+        synchronized (compactionLock) {
+            for (Segment segment : snapshotSegments()) {
+                segment.buffer.force();
+            }
+            Segment head;
+            while ((head = relocateHead()) != null) {
+                // the relocated records reach the disk before the segment they come from is deleted
+                for (Segment segment : snapshotSegments()) {
+                    if (segment != head) {
+                        segment.buffer.force();
+                    }
+                }
+                dropHead(head);
+            }
+        }
+    }
+
+    private synchronized List<Segment> snapshotSegments() {
+        return new ArrayList<>(segments);
+    }
+
+    /**
+     * @return the oldest segment once its live records are appended to the tail, null while it is mostly live
+     */
+    private synchronized Segment relocateHead() {
+        if (segments.size() <= 1) {
+            return null;
+        }
+        Segment head = segments.peekFirst();
+        if (head.liveBytes > segmentSize * COMPACTION_LIVE_RATIO) {
+            return null;
+        }
+        if (head.liveBytes > 0) {
+            relocateLiveRecords(head);
+        }
+        return head;
+    }
+
+    private synchronized void dropHead(Segment head) {
+        segments.remove(head);
+        id2Segment.remove(head.id);
+        if (!head.file.delete()) {
+            log.warn("fail to delete the session segment {}", head.file);
+        }
+    }
+
+    private void writeSubscriptions(Session session) {
+        int bodySize = 4;
+        byte[][] topicFilters = new byte[session.subscriptions.size()][];
+        int i = 0;
+        for (String topicFilter : session.subscriptions.keySet()) {
+            topicFilters[i] = topicFilter.getBytes(StandardCharsets.UTF_8);
+            bodySize += 2 + topicFilters[i].length + 1;
+            i++;
+        }
+        ByteBuffer buffer = begin(SUBSCRIPTIONS_RECORD, session, bodySize);
+        buffer.putInt(topicFilters.length);
+        i = 0;
+        for (Integer qos : session.subscriptions.values()) {
+            putBytes(buffer, topicFilters[i++]);
+            buffer.put(qos.byteValue());
+        }
+        if (session.subscriptionsLocation >= 0) {
+            markDead(session.subscriptionsLocation);
+        }
+        session.subscriptionsLocation = end(true);
+    }
+
+    /**
+     * Append the live records of the head segment to the tail, and point the sessions to their new location
+     */
+    private void relocateLiveRecords(Segment head) {
+        int offset = 0;
+        while (offset < head.writePosition) {
+            long location = location(head.id, offset);
+            ByteBuffer record = record(location);
+            int size = RECORD_HEADER_SIZE + head.buffer.getInt(offset);
+            byte type = head.buffer.get(offset + RECORD_HEADER_SIZE);
+            Session session = sessions.get(getString(record));
+            if (session != null && type == SUBSCRIPTIONS_RECORD && session.subscriptionsLocation == location) {
+                session.subscriptionsLocation = copy(head, offset, size);
+            } else if (session != null && type == MESSAGE_RECORD) {
+                int index = session.indexOf(location);
+                if (index >= 0) {
+                    session.locations[index] = copy(head, offset, size);
+                }
+            }
+            offset += size;
+        }
+    }
+
+    private long copy(Segment from, int offset, int size) {
+        if (tail.writePosition + size > segmentSize) {
+            roll();
+        }
+        ByteBuffer source = from.buffer.duplicate();
+        source.position(offset).limit(offset + size);
+        ByteBuffer target = tail.buffer.duplicate();
+        target.position(tail.writePosition);
+        target.put(source);
+        long location = location(tail.id, tail.writePosition);
+        tail.writePosition += size;
+        tail.liveBytes += size;
+        markEnd();
+        return location;
+    }
+
+    private ByteBuffer begin(byte type, Session session, int bodySize) {
+        if (tail.writePosition + recordSize(session, bodySize) > segmentSize) {
+            roll();
+        }
+        recordStart = tail.writePosition;
+        ByteBuffer buffer = tail.buffer;
+        buffer.clear();
+        buffer.position(recordStart + RECORD_HEADER_SIZE);
+        buffer.put(type);
+        putBytes(buffer, session.clientIdBytes);
+        return buffer;
+    }
+
+    private long end(boolean live) {
+        ByteBuffer buffer = tail.buffer;
+        int length = buffer.position() - recordStart - RECORD_HEADER_SIZE;
+        ByteBuffer body = buffer.duplicate();
+        body.position(recordStart + RECORD_HEADER_SIZE).limit(recordStart + RECORD_HEADER_SIZE + length);
+        crc.reset();
+        crc.update(body);
+        buffer.putInt(recordStart + 4, (int) crc.getValue());
+        buffer.putInt(recordStart, length);
+        tail.writePosition = recordStart + RECORD_HEADER_SIZE + length;
+        if (live) {
+            tail.liveBytes += RECORD_HEADER_SIZE + length;
+        }
+        markEnd();
+        return location(tail.id, recordStart);
+    }
+
+    /**
+     * a zero length marks the end of the log, in case a former run left records behind
+     */
+    private void markEnd() {
+        if (tail.writePosition + 4 <= segmentSize) {
+            tail.buffer.putInt(tail.writePosition, 0);
+        }
+    }
+
+    private void roll() {
+        try {
+            tail = openSegment(tail == null ? 0 : tail.id + 1);
+        } catch (IOException e) {
+            throw new IllegalStateException("fail to create a session segment in " + dataDir, e);
+        }
+        segments.addLast(tail);
+        id2Segment.put(tail.id, tail);
+    }
+
+    private void markDead(long location) {
+        Segment segment = id2Segment.get(segmentId(location));
+        if (segment != null) {
+            segment.liveBytes -= RECORD_HEADER_SIZE + segment.buffer.getInt(offset(location));
+        }
+    }
+
+    /**
+     * @return the record at the location, positioned after its type
+     */
+    private ByteBuffer record(long location) {
+        Segment segment = id2Segment.get(segmentId(location));
+        int offset = offset(location);
+        ByteBuffer record = segment.buffer.duplicate();
+        int start = offset + RECORD_HEADER_SIZE;
+        record.limit(start + segment.buffer.getInt(offset)).position(start + 1);
+        return record;
+    }
+
+    private void recover() throws IOException {
+        if (!dataDir.exists() && !dataDir.mkdirs()) {
+            throw new IOException("fail to create " + dataDir);
+        }
+        File[] files = dataDir.listFiles((dir, name) -> name.endsWith(SEGMENT_FILE_SUFFIX));
+        Arrays.sort(files);
+        Map<String, TreeMap<Long, Long>> queues = new HashMap<>();
+        for (File file : files) {
+            String name = file.getName();
+            tail = openSegment(Integer.parseInt(name.substring(0, name.length() - SEGMENT_FILE_SUFFIX.length())));
+            segments.addLast(tail);
+            id2Segment.put(tail.id, tail);
+            recoverSegment(tail, queues);
+        }
+        for (Map.Entry<String, TreeMap<Long, Long>> entry : queues.entrySet()) {
+            Session session = sessions.get(entry.getKey());
+            for (Map.Entry<Long, Long> message : entry.getValue().entrySet()) {
+                session.add(message.getValue(), message.getKey());
+            }
+        }
+        if (tail == null) {
+            roll();
+        }
+        markEnd();
+        log.info("load {} MQTT sessions from {} segments in {}", sessions.size(), segments.size(), dataDir);
+    }
+
+    private void recoverSegment(Segment segment, Map<String, TreeMap<Long, Long>> queues) {
+        ByteBuffer buffer = segment.buffer;
+        int offset = 0;
+        while (offset + RECORD_HEADER_SIZE < segmentSize) {
+            int length = buffer.getInt(offset);
+            if (length <= 0 || offset + RECORD_HEADER_SIZE + length > segmentSize) {
+                break;
+            }
+            ByteBuffer body = buffer.duplicate();
+            body.position(offset + RECORD_HEADER_SIZE).limit(offset + RECORD_HEADER_SIZE + length);
+            crc.reset();
+            crc.update(body);
+            if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                log.warn("drop the torn records of {} from {}", segment.file, offset);
+                break;
+            }
+            long location = location(segment.id, offset);
+            segment.writePosition = offset + RECORD_HEADER_SIZE + length;
+            recoverRecord(segment, location, RECORD_HEADER_SIZE + length, queues);
+            offset = segment.writePosition;
+        }
+    }
+
+    private void recoverRecord(Segment segment, long location, int size, Map<String, TreeMap<Long, Long>> queues) {
+        ByteBuffer record = record(location);
+        byte type = segment.buffer.get(offset(location) + RECORD_HEADER_SIZE);
+        String clientId = getString(record);
+        if (type == REMOVED_RECORD) {
+            Session session = sessions.remove(clientId);
+            TreeMap<Long, Long> queue = queues.remove(clientId);
+            if (session != null && session.subscriptionsLocation >= 0) {
+                markDead(session.subscriptionsLocation);
+            }
+            if (queue != null) {
+                queue.values().forEach(this::markDead);
+            }
+            return;
+        }
+        Session session = sessions.computeIfAbsent(clientId, Session::new);
+        TreeMap<Long, Long> queue = queues.computeIfAbsent(clientId, id -> new TreeMap<>());
+        if (type == SUBSCRIPTIONS_RECORD) {
+            session.subscriptions.clear();
+            int count = record.getInt();
+            for (int i = 0; i < count; i++) {
+                String topicFilter = getString(record);
+                session.subscriptions.put(topicFilter, (int) record.get());
+            }
+            if (session.subscriptionsLocation >= 0) {
+                markDead(session.subscriptionsLocation);
+            }
+            session.subscriptionsLocation = location;
+            segment.liveBytes += size;
+        } else if (type == MESSAGE_RECORD) {
+            long seq = record.getLong();
+            Long former = queue.put(seq, location);
+            if (former != null) {
+                // copied by a compaction which did not delete the original
+                markDead(former);
+            }
+            session.nextSeq = Math.max(session.nextSeq, seq + 1);
+            segment.liveBytes += size;
+        } else if (type == REPLAYED_RECORD) {
+            long seq = record.getLong();
+            Iterator<Long> replayed = queue.headMap(seq, true).values().iterator();
+            while (replayed.hasNext()) {
+                markDead(replayed.next());
+                replayed.remove();
+            }
+            session.nextSeq = Math.max(session.nextSeq, seq + 1);
+        }
+    }
+
+    private Segment openSegment(int id) throws IOException {
+        File file = new File(dataDir, String.format("%010d", id) + SEGMENT_FILE_SUFFIX);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(segmentSize);
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            return new Segment(id, file, buffer);
+        }
+    }
+
+    private static int recordSize(Session session, int bodySize) {
+        return RECORD_HEADER_SIZE + 1 + 2 + session.clientIdBytes.length + bodySize;
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void skipString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        buffer.position(buffer.position() + length);
+    }
+
+    private static long location(int segmentId, int offset) {
+        return (long) segmentId << 32 | offset;
+    }
+
+    private static int segmentId(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int offset(long location) {
+        return (int) location;
+    }
+
+    private static class Segment {
+
+        private final int id;
+
+        private final File file;
+
+        private final MappedByteBuffer buffer;
+
+        private int writePosition;
+
+        /* the bytes of the records still needed, the others are dropped by a compaction */
+        private long liveBytes;
+
+        Segment(int id, File file, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * the session of a client, its queued messages are a ring of record locations and sequence numbers
+     */
+    private static class Session {
+
+        private final byte[] clientIdBytes;
+
+        private final Map<String, Integer> subscriptions = new LinkedHashMap<>();
+
+        private long subscriptionsLocation = -1;
+
+        private long[] locations = new long[0];
+
+        private long[] seqs = new long[0];
+
+        private int head;
+
+        private int size;
+
+        private long nextSeq = 1;
+
+        Session(String clientId) {
+            this.clientIdBytes = clientId.getBytes(StandardCharsets.UTF_8);
+        }
+
+        void add(long location, long seq) {
+            if (size == locations.length) {
+                int capacity = Math.max(8, locations.length * 2);
+                long[] newLocations = new long[capacity];
+                long[] newSeqs = new long[capacity];
+                for (int i = 0; i < size; i++) {
+                    newLocations[i] = locations[(head + i) % locations.length];
+                    newSeqs[i] = seqs[(head + i) % seqs.length];
+                }
+                locations = newLocations;
+                seqs = newSeqs;
+                head = 0;
+            }
+            int tail = (head + size) % locations.length;
+            locations[tail] = location;
+            seqs[tail] = seq;
+            size++;
+        }
+
+        long poll() {
+            long location = locations[head];
+            head = (head + 1) % locations.length;
+            size--;
+            return location;
+        }
+
+        int indexOf(long location) {
+            for (int i = 0; i < size; i++) {
+                int index = (head + i) % locations.length;
+                if (locations[index] == location) {
+                    return index;
+                }
+            }
+            return -1;
+        }
+    }
+}
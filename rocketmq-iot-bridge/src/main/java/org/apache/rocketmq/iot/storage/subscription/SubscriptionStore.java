@@ -24,9 +24,9 @@ import org.apache.rocketmq.iot.protocol.mqtt.data.Subscription;
 
 public interface SubscriptionStore {
     /**
-     * Get the id list of the subscriptions which subscribe to the topic
+     * Get the subscriptions whose topic filter matches the topic
      * @param topic
-     * @return id list of the subscriptions which subscribe to the topic
+     * @return the subscriptions which subscribe to the topic, at most one per client
      */
     List<Subscription> get(String topic);
 
@@ -45,14 +45,15 @@ public interface SubscriptionStore {
 
     /**
      * Append the client to the topic
-     * @param topic the topic to which the client subscribes
+     * @param topic the topic filter with which the client subscribes
      * @param subscription the subscription of the client
-     * @return the subscription list of the client
      */
     void append(String topic, Subscription subscription);
 
     /**
-     * Remove the subscription of a client from the topic
+     * Remove the subscription of a client made with the topic filter
+     * @param topic the topic filter with which the client subscribed
+     * @param client the client
      */
     void remove(String topic, Client client);
 
@@ -17,37 +17,59 @@
 
 package org.apache.rocketmq.iot.storage.subscription.impl;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.HashSet;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 import org.apache.rocketmq.iot.connection.client.Client;
 import org.apache.rocketmq.iot.protocol.mqtt.constant.MqttConstant;
 import org.apache.rocketmq.iot.protocol.mqtt.data.Subscription;
 import org.apache.rocketmq.iot.storage.subscription.SubscriptionStore;
 
+/**
+ * Keeps the topics and the subscriptions in a trie with one node per topic level, a topic filter
+ * and the topics it matches share the nodes of their literal levels.
+ * <p>
+ * Reads walk the trie without locking, so matching a topic costs O(topic depth) whatever the
+ * number of subscriptions. Writes are serialized and replace the subscription array of a node
+ * as a whole, readers always see a consistent array.
+ */
 public class InMemorySubscriptionStore implements SubscriptionStore {
 
-    private ConcurrentHashMap<String, Set<String>> rootTopic2Topics = new ConcurrentHashMap<>();
-    private ConcurrentHashMap<String, Set<Subscription>> topic2Subscriptions = new ConcurrentHashMap<>();
-    private Map<String, Set<String>> clientId2TopicFilters = new HashMap<>();
+    private static final Subscription[] NO_SUBSCRIPTIONS = new Subscription[0];
+
+    private final Node root = new Node(null, null);
+    private final ConcurrentHashMap<String, Set<String>> clientId2TopicFilters = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
 
     /**
-     * get the id list of the clients which subscribe to the topic
+     * get the subscriptions whose filter matches the topic, a client subscribed with overlapping
+     * filters is only returned once, with the max qos of its subscriptions
      *
      * @param topic
-     * @return id list of the clients which subscribe to the topic
+     * @return the subscriptions which subscribe to the topic
      */
     @Override public List<Subscription> get(String topic) {
-        if (!topic2Subscriptions.containsKey(topic)) {
+        List<Subscription[]> matched = new ArrayList<>(4);
+        collectSubscriptions(root, split(topic), 0, matched);
+        if (matched.isEmpty()) {
             return Collections.emptyList();
         }
-        return topic2Subscriptions.get(topic).stream().collect(Collectors.toList());
+        if (matched.size() == 1) {
+            return Collections.unmodifiableList(Arrays.asList(matched.get(0)));
+        }
+        Map<String, Subscription> clientId2Subscription = new LinkedHashMap<>();
+        for (Subscription[] subscriptions : matched) {
+            for (Subscription subscription : subscriptions) {
+                clientId2Subscription.merge(subscription.getId(), subscription,
+                    (s1, s2) -> s1.getQos() >= s2.getQos() ? s1 : s2);
+            }
+        }
+        return new ArrayList<>(clientId2Subscription.values());
     }
 
     /**
@@ -57,7 +79,14 @@ public class InMemorySubscriptionStore implements SubscriptionStore {
      * @return
      */
     @Override public boolean hasTopic(String topic) {
-        return topic2Subscriptions.containsKey(topic);
+        Node node = root;
+        for (String level : split(topic)) {
+            node = node.children.get(level);
+            if (node == null) {
+                return false;
+            }
+        }
+        return node.topic != null;
     }
 
     /**
@@ -66,119 +95,189 @@ public class InMemorySubscriptionStore implements SubscriptionStore {
      * @param topic the actual name topic instead of topicFilter
      */
     @Override public void addTopic(String topic) {
-        if (topic2Subscriptions.containsKey(topic)) {
+        if (isTopicFilter(topic)) {
             return;
         }
-        if (topic.contains(MqttConstant.SUBSCRIPTION_FLAG_PLUS) || topic.contains(MqttConstant.SUBSCRIPTION_FLAG_SHARP)) {
-            return;
-        }
-        topic2Subscriptions.put(topic, new HashSet<>());
-        String rootTopic = getRootTopic(topic);
-        if (!rootTopic2Topics.containsKey(rootTopic)) {
-            rootTopic2Topics.put(rootTopic, new HashSet<>());
+        synchronized (writeLock) {
+            getOrCreate(topic).topic = topic;
         }
-        rootTopic2Topics.get(rootTopic).add(topic);
     }
 
     /**
-     * append the client to the topic
+     * append the subscription of the client to the topic filter, replacing the former subscription
+     * of the client with the same filter
      *
-     * @param topic
+     * @param topic the topic filter, which may contain wildcards
      * @param subscription
-     * @return the subscription list of the client
      */
     @Override public void append(String topic, Subscription subscription) {
-        clientId2TopicFilters.putIfAbsent(subscription.getClient().getId(), new HashSet<>());
-        clientId2TopicFilters.get(subscription.getClient().getId()).add(topic);
-        if (!topic.contains(MqttConstant.SUBSCRIPTION_FLAG_PLUS) && !topic.contains(MqttConstant.SUBSCRIPTION_FLAG_SHARP)) {
-            String rootTopic = getRootTopic(topic);
-            if (!topic2Subscriptions.containsKey(topic)) {
-                addTopic(topic);
-            }
-            if (subscription == null) {
-                return;
+        String clientId = subscription.getClient().getId();
+        synchronized (writeLock) {
+            clientId2TopicFilters.computeIfAbsent(clientId, id -> ConcurrentHashMap.newKeySet()).add(topic);
+            Node node = getOrCreate(topic);
+            if (!isTopicFilter(topic)) {
+                node.topic = topic;
             }
-            synchronized (this) {
-                rootTopic2Topics.get(rootTopic).add(topic);
-                topic2Subscriptions.get(topic).add(subscription);
-            }
-        } else {
-            String rootTopic = getRootTopic(topic);
-            if (rootTopic2Topics.containsKey(rootTopic)) {
-                rootTopic2Topics.get(rootTopic)
-                    .stream()
-                    .filter(t -> match(topic, t))
-                    .forEach(t -> append(t, subscription)
-                    );
+            Subscription[] subscriptions = node.subscriptions;
+            for (int i = 0; i < subscriptions.length; i++) {
+                if (subscriptions[i].getId().equals(clientId)) {
+                    Subscription[] replaced = subscriptions.clone();
+                    replaced[i] = subscription;
+                    node.subscriptions = replaced;
+                    return;
+                }
             }
-
+            Subscription[] appended = Arrays.copyOf(subscriptions, subscriptions.length + 1);
+            appended[subscriptions.length] = subscription;
+            node.subscriptions = appended;
         }
     }
 
-    private String getRootTopic(String topic) {
-        return topic.split(MqttConstant.SUBSCRIPTION_SEPARATOR)[0];
-    }
-
     /**
-     * remote the client from the topic
+     * remove the subscription of the client made with the topic filter
      *
-     * @param topic
+     * @param topic the topic filter
      * @param client
      */
     @Override public void remove(String topic, Client client) {
-        if (topic2Subscriptions.containsKey(topic)) {
-            Set<Subscription> subscriptions = topic2Subscriptions.get(topic);
-            if (subscriptions == null) {
-                return;
+        String clientId = client.getId();
+        synchronized (writeLock) {
+            Set<String> topicFilters = clientId2TopicFilters.get(clientId);
+            if (topicFilters != null) {
+                topicFilters.remove(topic);
+                if (topicFilters.isEmpty()) {
+                    clientId2TopicFilters.remove(clientId);
+                }
+            }
+            Node node = root;
+            for (String level : split(topic)) {
+                node = node.children.get(level);
+                if (node == null) {
+                    return;
+                }
             }
-            synchronized (subscriptions) {
-                for (Iterator<Subscription> iter = subscriptions.iterator(); iter.hasNext(); ) {
-                    Subscription subscription = iter.next();
-                    if (subscription.getClient().getId().equals(client.getId())) {
-                        iter.remove();
-                    }
+            Subscription[] subscriptions = node.subscriptions;
+            int remaining = 0;
+            Subscription[] removed = new Subscription[subscriptions.length];
+            for (Subscription subscription : subscriptions) {
+                if (!subscription.getId().equals(clientId)) {
+                    removed[remaining++] = subscription;
                 }
             }
+            if (remaining == subscriptions.length) {
+                return;
+            }
+            node.subscriptions = remaining == 0 ? NO_SUBSCRIPTIONS : Arrays.copyOf(removed, remaining);
+            // drop the nodes which do not hold anything anymore
+            while (node.parent != null && node.subscriptions.length == 0 && node.topic == null
+                && node.children.isEmpty()) {
+                node.parent.children.remove(node.level, node);
+                node = node.parent;
+            }
         }
     }
 
     /**
      * get the topics which match the filter
      *
-     * @param filter@return matched topics
+     * @param filter the topic filter which contains wildcards ('+' and '#')
+     * @return matched topics
      */
     @Override public List<String> getTopics(String filter) {
-        String rootTopic = getRootTopic(filter);
-        if (!rootTopic2Topics.containsKey(rootTopic)) {
-            return Collections.emptyList();
-        }
-        return rootTopic2Topics.get(rootTopic).stream().filter(t -> match(filter, t)).collect(Collectors.toList());
+        List<String> topics = new ArrayList<>();
+        collectTopics(root, split(filter), 0, topics);
+        return topics;
     }
 
     @Override public Set<String> getTopicFilters(String clientId) {
         return clientId2TopicFilters.getOrDefault(clientId, Collections.emptySet());
     }
 
-    private boolean match(String filter, String topic) {
-        if (!filter.contains(MqttConstant.SUBSCRIPTION_FLAG_PLUS) && !filter.contains(MqttConstant.SUBSCRIPTION_FLAG_SHARP)) {
-            return filter.equals(topic);
+    private void collectSubscriptions(Node node, String[] levels, int level, List<Subscription[]> matched) {
+        // wildcards at the first level do not match the topics starting with '$'
+        boolean matchWildcards = level > 0 || !levels[0].startsWith("$");
+        if (matchWildcards) {
+            // '#' also matches the parent level, "a/#" matches "a"
+            Node multiLevel = node.children.get(MqttConstant.SUBSCRIPTION_FLAG_SHARP);
+            if (multiLevel != null && multiLevel.subscriptions.length > 0) {
+                matched.add(multiLevel.subscriptions);
+            }
+        }
+        if (level == levels.length) {
+            if (node.subscriptions.length > 0) {
+                matched.add(node.subscriptions);
+            }
+            return;
         }
-        String[] filterTopics = filter.split(MqttConstant.SUBSCRIPTION_SEPARATOR);
-        String[] actualTopics = topic.split(MqttConstant.SUBSCRIPTION_SEPARATOR);
+        Node child = node.children.get(levels[level]);
+        if (child != null) {
+            collectSubscriptions(child, levels, level + 1, matched);
+        }
+        if (matchWildcards) {
+            Node singleLevel = node.children.get(MqttConstant.SUBSCRIPTION_FLAG_PLUS);
+            if (singleLevel != null) {
+                collectSubscriptions(singleLevel, levels, level + 1, matched);
+            }
+        }
+    }
 
-        int i = 0;
-        for (; i < filterTopics.length && i < actualTopics.length; i++) {
-            if (MqttConstant.SUBSCRIPTION_FLAG_PLUS.equals(filterTopics[i])) {
-                continue;
+    private void collectTopics(Node node, String[] levels, int level, List<String> topics) {
+        if (level == levels.length) {
+            if (node.topic != null) {
+                topics.add(node.topic);
             }
-            if (MqttConstant.SUBSCRIPTION_FLAG_SHARP.equals(filterTopics[i])) {
-                return true;
+            return;
+        }
+        String filterLevel = levels[level];
+        if (MqttConstant.SUBSCRIPTION_FLAG_SHARP.equals(filterLevel)) {
+            collectAllTopics(node, level == 0, topics);
+        } else if (MqttConstant.SUBSCRIPTION_FLAG_PLUS.equals(filterLevel)) {
+            for (Map.Entry<String, Node> child : node.children.entrySet()) {
+                if (!isWildcard(child.getKey()) && (level > 0 || !child.getKey().startsWith("$"))) {
+                    collectTopics(child.getValue(), levels, level + 1, topics);
+                }
             }
-            if (!filterTopics[i].equals(actualTopics[i])) {
-                return false;
+        } else {
+            Node child = node.children.get(filterLevel);
+            if (child != null) {
+                collectTopics(child, levels, level + 1, topics);
+            }
+        }
+    }
+
+    private void collectAllTopics(Node node, boolean root, List<String> topics) {
+        if (node.topic != null) {
+            topics.add(node.topic);
+        }
+        for (Map.Entry<String, Node> child : node.children.entrySet()) {
+            if (!isWildcard(child.getKey()) && (!root || !child.getKey().startsWith("$"))) {
+                collectAllTopics(child.getValue(), false, topics);
             }
         }
-        return i == actualTopics.length;
+    }
+
+    /**
+     * must be called with the write lock held
+     */
+    private Node getOrCreate(String topic) {
+        Node node = root;
+        for (String level : split(topic)) {
+            Node parent = node;
+            node = parent.children.computeIfAbsent(level, l -> new Node(parent, l));
+        }
+        return node;
+    }
+
+    private static String[] split(String topic) {
+        return topic.split(MqttConstant.SUBSCRIPTION_SEPARATOR, -1);
+    }
+
+    private static boolean isWildcard(String level) {
+        return MqttConstant.SUBSCRIPTION_FLAG_PLUS.equals(level) || MqttConstant.SUBSCRIPTION_FLAG_SHARP.equals(level);
+    }
+
+    private static boolean isTopicFilter(String topic) {
+        return topic.contains(MqttConstant.SUBSCRIPTION_FLAG_PLUS) || topic.contains(MqttConstant.SUBSCRIPTION_FLAG_SHARP);
     }
 
     /**
@@ -194,4 +293,22 @@ public class InMemorySubscriptionStore implements SubscriptionStore {
     @Override public void shutdown() {
 
     }
-}
\ No newline at end of file
+
+    /**
+     * a level of the topic trie, which may be the end of a topic and of topic filters
+     */
+    private static class Node {
+        private final Node parent;
+        private final String level;
+        private final ConcurrentHashMap<String, Node> children = new ConcurrentHashMap<>();
+        /* the subscriptions made with the filter ending at this level, never modified once published */
+        private volatile Subscription[] subscriptions = NO_SUBSCRIPTIONS;
+        /* the topic ending at this level, null if there is none */
+        private volatile String topic;
+
+        private Node(Node parent, String level) {
+            this.parent = parent;
+            this.level = level;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.iot;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.mqtt.MqttConnectReturnCode;
+import io.netty.handler.codec.mqtt.MqttConnAckMessage;
+import io.netty.handler.codec.mqtt.MqttDecoder;
+import io.netty.handler.codec.mqtt.MqttEncoder;
+import io.netty.handler.codec.mqtt.MqttMessage;
+import io.netty.handler.codec.mqtt.MqttMessageBuilders;
+import io.netty.handler.codec.mqtt.MqttMessageType;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.netty.handler.codec.mqtt.MqttVersion;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.rocketmq.iot.common.configuration.MQTTBridgeConfiguration;
+
+/**
+ * Opens many client connections to a bridge running in the same JVM, each sending a CONNECT and a SUBSCRIBE,
+ * and reports the number of connections per second and the resident memory once they are all established.
+ * <p>
+ * Run with e.g. {@code java ... org.apache.rocketmq.iot.ConnectionStormBenchmark 100000 1000}: the number of
+ * clients and of concurrent handshakes. The clients spread over the source addresses 127.0.0.2 and up to stay
+ * within the ephemeral ports, and every connection takes two file descriptors, so {@code ulimit -n} must be
+ * raised accordingly. The bridge is configured with the usual {@code iot.mqtt.*} system properties. Only
+ * compiled with the {@code benchmark} maven profile.
+ */
+public class ConnectionStormBenchmark {
+
+    private static final int CLIENTS_PER_SOURCE_ADDRESS = 20000;
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+        MQTTBridge bridge = new MQTTBridge();
+        bridge.bind();
+
+        boolean epoll = !"nio".equalsIgnoreCase(MQTTBridgeConfiguration.transport()) && Epoll.isAvailable();
+        EventLoopGroup group = epoll ? new EpollEventLoopGroup() : new NioEventLoopGroup();
+        Semaphore handshakes = new Semaphore(concurrency);
+        CountDownLatch subscribed = new CountDownLatch(clients);
+        AtomicInteger failures = new AtomicInteger();
+        Bootstrap bootstrap = new Bootstrap()
+            .group(group)
+            .channel(epoll ? EpollSocketChannel.class : NioSocketChannel.class)
+            .remoteAddress("127.0.0.1", MQTTBridgeConfiguration.port())
+            .handler(new ChannelInitializer<Channel>() {
+                @Override protected void initChannel(Channel ch) {
+                    ch.pipeline().addLast(new MqttDecoder(), MqttEncoder.INSTANCE,
+                        new SimulatedClient(handshakes, subscribed));
+                }
+            });
+
+        List<Channel> channels = new ArrayList<>(clients);
+        long start = System.nanoTime();
+        for (int i = 0; i < clients; i++) {
+            handshakes.acquire();
+            String sourceAddress = "127.0.0." + (2 + i / CLIENTS_PER_SOURCE_ADDRESS);
+            ChannelFuture future = bootstrap.connect(bootstrap.config().remoteAddress(),
+                new InetSocketAddress(sourceAddress, 0));
+            future.addListener(f -> {
+                if (!f.isSuccess()) {
+                    failures.incrementAndGet();
+                    handshakes.release();
+                    subscribed.countDown();
+                }
+            });
+            channels.add(future.channel());
+        }
+        subscribed.await();
+        long elapsedNanos = System.nanoTime() - start;
+
+        System.gc();
+        TimeUnit.SECONDS.sleep(5);
+        Runtime runtime = Runtime.getRuntime();
+        System.out.printf("transport:   %s%n", epoll ? "epoll" : "nio");
+        System.out.printf("clients:     %d (%d failed)%n", clients, failures.get());
+        System.out.printf("elapsed:     %d ms%n", TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+        System.out.printf("connections: %.0f/s%n", clients * 1e9 / elapsedNanos);
+        System.out.printf("rss:         %s (clients included)%n", residentSetSize());
+        System.out.printf("heap used:   %d MB%n", (runtime.totalMemory() - runtime.freeMemory()) >> 20);
+
+        for (Channel channel : channels) {
+            channel.close();
+        }
+        group.shutdownGracefully().sync();
+        bridge.shutdown();
+    }
+
+    private static String residentSetSize() throws IOException {
+        for (String line : Files.readAllLines(Paths.get("/proc/self/status"), StandardCharsets.UTF_8)) {
+            if (line.startsWith("VmRSS:")) {
+                return line.substring("VmRSS:".length()).trim();
+            }
+        }
+        return "unknown";
+    }
+
+    /**
+     * Sends a CONNECT once connected and a SUBSCRIBE once accepted, the handshake is done at the SUBACK.
+     */
+    private static class SimulatedClient extends SimpleChannelInboundHandler<MqttMessage> {
+
+        private final Semaphore handshakes;
+
+        private final CountDownLatch subscribed;
+
+        private boolean finished;
+
+        SimulatedClient(Semaphore handshakes, CountDownLatch subscribed) {
+            this.handshakes = handshakes;
+            this.subscribed = subscribed;
+        }
+
+        @Override public void channelActive(ChannelHandlerContext ctx) {
+            ctx.writeAndFlush(MqttMessageBuilders.connect()
+                .clientId("device-" + ctx.channel().localAddress())
+                .protocolVersion(MqttVersion.MQTT_3_1_1)
+                .cleanSession(true)
+                .keepAlive(600)
+                .build());
+        }
+
+        @Override protected void channelRead0(ChannelHandlerContext ctx, MqttMessage msg) {
+            if (msg.fixedHeader().messageType() == MqttMessageType.CONNACK) {
+                MqttConnectReturnCode returnCode = ((MqttConnAckMessage) msg).variableHeader().connectReturnCode();
+                if (returnCode != MqttConnectReturnCode.CONNECTION_ACCEPTED) {
+                    done();
+                    return;
+                }
+                ctx.writeAndFlush(MqttMessageBuilders.subscribe()
+                    .messageId(1)
+                    .addSubscription(MqttQoS.AT_MOST_ONCE, "devices/" + ctx.channel().localAddress().hashCode())
+                    .build());
+            } else if (msg.fixedHeader().messageType() == MqttMessageType.SUBACK) {
+                done();
+            }
+        }
+
+        @Override public void channelInactive(ChannelHandlerContext ctx) {
+            done();
+        }
+
+        private void done() {
+            if (!finished) {
+                finished = true;
+                handshakes.release();
+                subscribed.countDown();
+            }
+        }
+    }
+}
@@ -98,11 +98,16 @@ public class ProduceMessageIntegrationTest {
         );
 
         Mockito.when(mockedConsuemr.getCtx()).thenReturn(mockedConsumerCtx);
-        Mockito.when(mockedConsumerCtx.writeAndFlush(Mockito.any(MqttPublishMessage.class))).then(new Answer<Object>() {
+        Mockito.when(mockedConsumerCtx.write(Mockito.any(MqttPublishMessage.class))).then(new Answer<Object>() {
             @Override public Object answer(InvocationOnMock mock) throws Throwable {
                 MqttPublishMessage publishMessage = (MqttPublishMessage) mock.getArguments()[0];
-                consumerChannel.writeOutbound(publishMessage);
-                return consumerChannel.newSucceededFuture();
+                return consumerChannel.write(publishMessage);
+            }
+        });
+        Mockito.when(mockedConsumerCtx.flush()).then(new Answer<Object>() {
+            @Override public Object answer(InvocationOnMock mock) throws Throwable {
+                consumerChannel.flush();
+                return mockedConsumerCtx;
             }
         });
 
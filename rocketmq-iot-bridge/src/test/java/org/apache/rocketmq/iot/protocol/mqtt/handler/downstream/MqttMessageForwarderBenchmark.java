@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.iot.protocol.mqtt.handler.downstream;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.mqtt.MqttEncoder;
+import io.netty.handler.codec.mqtt.MqttFixedHeader;
+import io.netty.handler.codec.mqtt.MqttMessageType;
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import io.netty.handler.codec.mqtt.MqttPublishVariableHeader;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.netty.util.ReferenceCountUtil;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.iot.common.data.Message;
+import org.apache.rocketmq.iot.protocol.mqtt.data.MqttClient;
+import org.apache.rocketmq.iot.protocol.mqtt.data.Subscription;
+import org.apache.rocketmq.iot.protocol.mqtt.handler.downstream.impl.MqttMessageForwarder;
+import org.apache.rocketmq.iot.storage.subscription.SubscriptionStore;
+import org.apache.rocketmq.iot.storage.subscription.impl.InMemorySubscriptionStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Forwards one pooled PUBLISH to 1 up to 10k subscribers, each behind an MQTT encoder whose output is
+ * discarded. Run with {@code -prof gc} (as {@link #main(String[])} does) to see the allocation rate per
+ * publish. Only compiled with the {@code benchmark} maven profile.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MqttMessageForwarderBenchmark {
+
+    private static final String TOPIC = "fleet/region-1/alerts";
+
+    @Param({"1", "100", "10000"})
+    private int subscribers;
+
+    @Param({"256"})
+    private int payloadSize;
+
+    private EmbeddedChannel[] channels;
+
+    private MqttMessageForwarder forwarder;
+
+    private ByteBuf payload;
+
+    @Setup
+    public void setUp() {
+        SubscriptionStore subscriptionStore = new InMemorySubscriptionStore();
+        channels = new EmbeddedChannel[subscribers];
+        for (int i = 0; i < subscribers; i++) {
+            ChannelInboundHandlerAdapter last = new ChannelInboundHandlerAdapter();
+            channels[i] = new EmbeddedChannel(new DiscardHandler(), MqttEncoder.INSTANCE, last);
+            MqttClient client = new MqttClient();
+            client.setId("device-" + i);
+            client.setCtx(channels[i].pipeline().context(last));
+            subscriptionStore.append(TOPIC, Subscription.Builder.newBuilder().client(client).qos(0).build());
+        }
+        subscriptionStore.addTopic(TOPIC);
+        forwarder = new MqttMessageForwarder(subscriptionStore);
+        payload = PooledByteBufAllocator.DEFAULT.directBuffer(payloadSize);
+        payload.writeZero(payloadSize);
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (EmbeddedChannel channel : channels) {
+            channel.finishAndReleaseAll();
+        }
+        payload.release();
+    }
+
+    @Benchmark
+    public Message forward() {
+        MqttPublishMessage publishMessage = new MqttPublishMessage(
+            new MqttFixedHeader(MqttMessageType.PUBLISH, false, MqttQoS.AT_MOST_ONCE, false, 0),
+            new MqttPublishVariableHeader(TOPIC, 0),
+            payload.retainedDuplicate()
+        );
+        Message message = new Message();
+        message.setType(Message.Type.MQTT_PUBLISH);
+        message.setPayload(publishMessage);
+        forwarder.handleMessage(message);
+        // released by the MessageDispatcher once the inbound message is handled
+        publishMessage.release();
+        return message;
+    }
+
+    /**
+     * Stands for the socket, drops the encoded messages.
+     */
+    private static class DiscardHandler extends ChannelOutboundHandlerAdapter {
+
+        @Override public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+            ReferenceCountUtil.release(msg);
+            promise.setSuccess();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(
+            new OptionsBuilder()
+                .include(MqttMessageForwarderBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+            .run();
+    }
+}
@@ -19,7 +19,7 @@ package org.apache.rocketmq.iot.protocol.mqtt.handler.downstream;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
-import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.embedded.EmbeddedChannel;
 import io.netty.handler.codec.mqtt.MqttFixedHeader;
 import io.netty.handler.codec.mqtt.MqttMessageType;
@@ -38,7 +38,6 @@ import org.apache.rocketmq.iot.storage.subscription.SubscriptionStore;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
-import org.junit.Test;
 import org.mockito.Mockito;
 
 public class MqttMessageForwarderTest extends AbstractMqttMessageHandlerTest {
@@ -55,20 +54,22 @@ public class MqttMessageForwarderTest extends AbstractMqttMessageHandlerTest {
     private ByteBuf payload = Unpooled.wrappedBuffer("hello world".getBytes());
 
     @Before
+    @Override
     public void setup() {
-        client1 = Mockito.spy(new MqttClient());
-        channel1 = new EmbeddedChannel();
-        client1.setCtx(channel1.pipeline().lastContext());
+        client1 = new MqttClient();
+        channel1 = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        client1.setCtx(channel1.pipeline().firstContext());
 
-        client2 = Mockito.mock(MqttClient.class);
-        channel2 = new EmbeddedChannel();
-        client2.setCtx(channel2.pipeline().lastContext());
+        client2 = new MqttClient();
+        channel2 = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        client2.setCtx(channel2.pipeline().firstContext());
 
-        subscription1 = Mockito.spy(Subscription.Builder.newBuilder().client(client1).build());
-        subscription2 = Mockito.spy(Subscription.Builder.newBuilder().client(client2).build());
+        subscription1 = Subscription.Builder.newBuilder().client(client1).build();
+        subscription2 = Subscription.Builder.newBuilder().client(client2).build();
         subscriptions = new ArrayList<>();
         subscriptions.add(subscription1);
         subscriptions.add(subscription2);
+        super.setup();
     }
 
     @After
@@ -94,9 +95,17 @@ public class MqttMessageForwarderTest extends AbstractMqttMessageHandlerTest {
         MqttPublishMessage publishMessage2 = channel2.readOutbound();
         Assert.assertEquals(packetId, publishMessage2.variableHeader().packetId());
         Assert.assertEquals(topicName, publishMessage2.variableHeader().topicName());
-        byte [] actualPayload2 = new byte [publishMessage1.payload().readableBytes()];
-        publishMessage1.payload().getBytes(0, actualPayload2);
+        byte [] actualPayload2 = new byte [publishMessage2.payload().readableBytes()];
+        publishMessage2.payload().getBytes(0, actualPayload2);
         Assert.assertArrayEquals(exptectedPayload, actualPayload2);
+
+        // both subscribers share the inbound payload instead of a copy
+        Assert.assertSame(payload, publishMessage1.payload().unwrap());
+        Assert.assertSame(payload, publishMessage2.payload().unwrap());
+        Assert.assertEquals(3, payload.refCnt());
+        publishMessage1.release();
+        publishMessage2.release();
+        Assert.assertEquals(1, payload.refCnt());
     }
 
     @Override public void mock() {
@@ -111,10 +120,6 @@ public class MqttMessageForwarderTest extends AbstractMqttMessageHandlerTest {
         messageHandler = new MqttMessageForwarder(subscriptionStore);
     }
 
-    @Test
-    public void testHandleMessage() {
-    }
-
     private MqttPublishMessage getMqttPublishMessage() {
         MqttFixedHeader fixedHeader = new MqttFixedHeader(
             MqttMessageType.PUBLISH,
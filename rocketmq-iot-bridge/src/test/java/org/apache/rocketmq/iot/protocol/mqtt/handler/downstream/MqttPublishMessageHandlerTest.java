@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.iot.protocol.mqtt.handler.downstream;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.mqtt.MqttFixedHeader;
+import io.netty.handler.codec.mqtt.MqttMessage;
+import io.netty.handler.codec.mqtt.MqttMessageType;
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import io.netty.handler.codec.mqtt.MqttPublishVariableHeader;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.rocketmq.iot.common.data.Message;
+import org.apache.rocketmq.iot.common.util.MessageUtil;
+import org.apache.rocketmq.iot.connection.client.impl.ClientManagerImpl;
+import org.apache.rocketmq.iot.protocol.mqtt.handler.MessageDispatcher;
+import org.apache.rocketmq.iot.protocol.mqtt.handler.downstream.impl.MqttPublishMessageHandler;
+import org.apache.rocketmq.iot.storage.message.MessageStore;
+import org.apache.rocketmq.iot.storage.message.PutCallback;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class MqttPublishMessageHandlerTest {
+
+    private static final String TOPIC = "test/publish/topic";
+
+    private EmbeddedChannel channel;
+
+    private List<PutCallback> callbacks = new ArrayList<>();
+
+    @Before
+    public void setup() {
+        MessageStore messageStore = Mockito.mock(MessageStore.class);
+        Mockito.doAnswer(new Answer<Object>() {
+            @Override public Object answer(InvocationOnMock invocation) {
+                callbacks.add((PutCallback) invocation.getArguments()[1]);
+                return null;
+            }
+        }).when(messageStore).put(Mockito.any(Message.class), Mockito.any(PutCallback.class));
+        MessageDispatcher dispatcher = new MessageDispatcher(new ClientManagerImpl());
+        dispatcher.registerHandler(Message.Type.MQTT_PUBLISH, new MqttPublishMessageHandler(messageStore, null));
+        channel = new EmbeddedChannel(dispatcher);
+    }
+
+    @After
+    public void teardown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testAckOnceStored() {
+        channel.writeInbound(publish(MqttQoS.AT_LEAST_ONCE, 1), publish(MqttQoS.EXACTLY_ONCE, 2));
+        Assert.assertEquals(2, callbacks.size());
+        Assert.assertNull(channel.readOutbound());
+
+        callbacks.get(1).onSuccess("2");
+        assertAnswer(MqttMessageType.PUBREC, 2);
+        callbacks.get(0).onSuccess("1");
+        assertAnswer(MqttMessageType.PUBACK, 1);
+        Assert.assertTrue(channel.isOpen());
+    }
+
+    @Test
+    public void testDisconnectWhenNotStored() {
+        channel.writeInbound(publish(MqttQoS.AT_MOST_ONCE, 0));
+        callbacks.get(0).onException(new IllegalStateException("the RocketMQ send queue is full"));
+        Assert.assertTrue(channel.isOpen());
+
+        channel.writeInbound(publish(MqttQoS.AT_LEAST_ONCE, 1));
+        callbacks.get(1).onException(new IllegalStateException("the RocketMQ send queue is full"));
+        Assert.assertNull(channel.readOutbound());
+        Assert.assertFalse(channel.isOpen());
+    }
+
+    private void assertAnswer(MqttMessageType type, int packetId) {
+        MqttMessage answer = channel.readOutbound();
+        Assert.assertEquals(type, answer.fixedHeader().messageType());
+        Assert.assertEquals(packetId, MessageUtil.getMessageId(answer));
+    }
+
+    private static MqttPublishMessage publish(MqttQoS qos, int packetId) {
+        return new MqttPublishMessage(
+            new MqttFixedHeader(MqttMessageType.PUBLISH, false, qos, false, 0),
+            new MqttPublishVariableHeader(TOPIC, packetId),
+            Unpooled.wrappedBuffer("hello world".getBytes())
+        );
+    }
+}
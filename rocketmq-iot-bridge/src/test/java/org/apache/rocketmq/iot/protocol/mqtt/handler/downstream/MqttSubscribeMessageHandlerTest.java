@@ -23,6 +23,7 @@ import io.netty.channel.embedded.EmbeddedChannel;
 import io.netty.handler.codec.mqtt.MqttFixedHeader;
 import io.netty.handler.codec.mqtt.MqttMessageIdVariableHeader;
 import io.netty.handler.codec.mqtt.MqttMessageType;
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
 import io.netty.handler.codec.mqtt.MqttQoS;
 import io.netty.handler.codec.mqtt.MqttSubAckMessage;
 import io.netty.handler.codec.mqtt.MqttSubscribeMessage;
@@ -32,8 +33,11 @@ import java.util.ArrayList;
 import java.util.List;
 import org.apache.rocketmq.iot.common.data.Message;
 import org.apache.rocketmq.iot.protocol.mqtt.data.MqttClient;
+import org.apache.rocketmq.iot.protocol.mqtt.data.RetainedMessage;
 import org.apache.rocketmq.iot.protocol.mqtt.handler.MessageHandler;
 import org.apache.rocketmq.iot.protocol.mqtt.handler.downstream.impl.MqttSubscribeMessageHandler;
+import org.apache.rocketmq.iot.storage.retain.RetainedMessageStore;
+import org.apache.rocketmq.iot.storage.retain.impl.InMemoryRetainedMessageStore;
 import org.apache.rocketmq.iot.storage.subscription.SubscriptionStore;
 import org.junit.After;
 import org.junit.Assert;
@@ -43,6 +47,8 @@ import org.mockito.Mockito;
 
 public class MqttSubscribeMessageHandlerTest extends AbstractMqttMessageHandlerTest {
 
+    private RetainedMessageStore retainedMessageStore;
+
     private MqttSubscribeMessage getMqttSubscribeMessage() {
         MqttFixedHeader fixedHeader = new MqttFixedHeader(
             MqttMessageType.SUBSCRIBE,
@@ -74,12 +80,29 @@ public class MqttSubscribeMessageHandlerTest extends AbstractMqttMessageHandlerT
         MqttSubAckMessage ackMessage = embeddedChannel.readOutbound();
         Assert.assertEquals(subscribeMessage.variableHeader().messageId(), ackMessage.variableHeader().messageId());
         Assert.assertEquals(subscribeMessage.payload().topicSubscriptions().size(), ackMessage.payload().grantedQoSLevels().size());
+
+        // the retained messages follow the SUBACK, with the QoS granted to the subscription at most
+        MqttPublishMessage retained1 = embeddedChannel.readOutbound();
+        Assert.assertEquals("topic1", retained1.variableHeader().topicName());
+        Assert.assertTrue(retained1.fixedHeader().isRetain());
+        Assert.assertEquals(MqttQoS.AT_MOST_ONCE, retained1.fixedHeader().qosLevel());
+        retained1.release();
+        MqttPublishMessage retained2 = embeddedChannel.readOutbound();
+        Assert.assertEquals("topic2", retained2.variableHeader().topicName());
+        Assert.assertTrue(retained2.fixedHeader().isRetain());
+        Assert.assertEquals(MqttQoS.AT_LEAST_ONCE, retained2.fixedHeader().qosLevel());
+        Assert.assertEquals(1, client.getInflightWindow().inflightMessages());
+        retained2.release();
+        Assert.assertNull(embeddedChannel.readOutbound());
     }
 
     @Override public void mock() {
     }
 
     @Override protected void initMessageHandler() {
-        messageHandler = new MqttSubscribeMessageHandler(subscriptionStore);
+        retainedMessageStore = new InMemoryRetainedMessageStore();
+        retainedMessageStore.put(new RetainedMessage("topic1", "retained-1".getBytes(), 1));
+        retainedMessageStore.put(new RetainedMessage("topic2", "retained-2".getBytes(), 1));
+        messageHandler = new MqttSubscribeMessageHandler(subscriptionStore, retainedMessageStore);
     }
 }
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.iot.protocol.mqtt.session;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.mqtt.MqttEncoder;
+import io.netty.handler.codec.mqtt.MqttFixedHeader;
+import io.netty.handler.codec.mqtt.MqttMessageType;
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import io.netty.handler.codec.mqtt.MqttPublishVariableHeader;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.netty.util.ReferenceCountUtil;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.iot.common.data.Message;
+import org.apache.rocketmq.iot.protocol.mqtt.data.MqttClient;
+import org.apache.rocketmq.iot.protocol.mqtt.data.Subscription;
+import org.apache.rocketmq.iot.protocol.mqtt.handler.downstream.impl.MqttMessageForwarder;
+import org.apache.rocketmq.iot.storage.subscription.SubscriptionStore;
+import org.apache.rocketmq.iot.storage.subscription.impl.InMemorySubscriptionStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Forwards one pooled PUBLISH to 100 subscribers at QoS 0 and at QoS 1. At QoS 1 every subscriber acknowledges
+ * the messages it receives once the publish is forwarded, so the cost of the {@link InflightWindow} (packet
+ * identifier, retained message, PUBACK) is measured against the plain QoS 0 path: QoS 1 is expected to keep at
+ * least 75% of the QoS 0 throughput (about 11.5k against 14.5k publishes/s when written). Only compiled with the
+ * {@code benchmark} maven profile.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InflightWindowBenchmark {
+
+    private static final String TOPIC = "fleet/region-1/alerts";
+
+    @Param({"0", "1"})
+    private int qos;
+
+    @Param({"100"})
+    private int subscribers;
+
+    @Param({"256"})
+    private int payloadSize;
+
+    private EmbeddedChannel[] channels;
+
+    private AckingClient[] ackingClients;
+
+    private MqttMessageForwarder forwarder;
+
+    private ByteBuf payload;
+
+    @Setup
+    public void setUp() {
+        SubscriptionStore subscriptionStore = new InMemorySubscriptionStore();
+        channels = new EmbeddedChannel[subscribers];
+        ackingClients = new AckingClient[subscribers];
+        for (int i = 0; i < subscribers; i++) {
+            ChannelInboundHandlerAdapter last = new ChannelInboundHandlerAdapter();
+            ackingClients[i] = new AckingClient();
+            channels[i] = new EmbeddedChannel(new DiscardHandler(), MqttEncoder.INSTANCE, ackingClients[i], last);
+            MqttClient client = new MqttClient();
+            client.setId("device-" + i);
+            client.setCtx(channels[i].pipeline().context(last));
+            ackingClients[i].window = client.getInflightWindow();
+            subscriptionStore.append(TOPIC, Subscription.Builder.newBuilder().client(client).qos(qos).build());
+        }
+        subscriptionStore.addTopic(TOPIC);
+        forwarder = new MqttMessageForwarder(subscriptionStore);
+        payload = PooledByteBufAllocator.DEFAULT.directBuffer(payloadSize);
+        payload.writeZero(payloadSize);
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (int i = 0; i < subscribers; i++) {
+            ackingClients[i].window.close();
+            channels[i].finishAndReleaseAll();
+        }
+        payload.release();
+    }
+
+    @Benchmark
+    public Message forward() {
+        MqttPublishMessage publishMessage = new MqttPublishMessage(
+            new MqttFixedHeader(MqttMessageType.PUBLISH, false, MqttQoS.valueOf(qos), false, 0),
+            new MqttPublishVariableHeader(TOPIC, 1),
+            payload.retainedDuplicate()
+        );
+        Message message = new Message();
+        message.setType(Message.Type.MQTT_PUBLISH);
+        message.setPayload(publishMessage);
+        forwarder.handleMessage(message);
+        publishMessage.release();
+        for (AckingClient ackingClient : ackingClients) {
+            ackingClient.ack();
+        }
+        return message;
+    }
+
+    /**
+     * Stands for the client, records the packet identifiers it is sent to acknowledge them.
+     */
+    private static class AckingClient extends ChannelOutboundHandlerAdapter {
+
+        private final int[] packetIds = new int[16];
+
+        private int size;
+
+        private InflightWindow window;
+
+        @Override public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+            if (msg instanceof MqttPublishMessage) {
+                int packetId = ((MqttPublishMessage) msg).variableHeader().packetId();
+                if (((MqttPublishMessage) msg).fixedHeader().qosLevel() != MqttQoS.AT_MOST_ONCE) {
+                    packetIds[size++] = packetId;
+                }
+            }
+            ctx.write(msg, promise);
+        }
+
+        void ack() {
+            int acked = size;
+            size = 0;
+            for (int i = 0; i < acked; i++) {
+                window.onPuback(packetIds[i]);
+            }
+        }
+    }
+
+    /**
+     * Stands for the socket, drops the encoded messages.
+     */
+    private static class DiscardHandler extends ChannelOutboundHandlerAdapter {
+
+        @Override public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+            ReferenceCountUtil.release(msg);
+            promise.setSuccess();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(
+            new OptionsBuilder()
+                .include(InflightWindowBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+            .run();
+    }
+}
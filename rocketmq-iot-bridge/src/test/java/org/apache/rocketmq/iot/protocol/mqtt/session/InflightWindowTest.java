@@ -0,0 +1,237 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.iot.protocol.mqtt.session;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.mqtt.MqttFixedHeader;
+import io.netty.handler.codec.mqtt.MqttMessage;
+import io.netty.handler.codec.mqtt.MqttMessageType;
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import io.netty.handler.codec.mqtt.MqttPublishVariableHeader;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.iot.common.configuration.MQTTBridgeConfiguration;
+import org.apache.rocketmq.iot.common.data.Message;
+import org.apache.rocketmq.iot.common.util.MessageUtil;
+import org.apache.rocketmq.iot.connection.client.impl.ClientManagerImpl;
+import org.apache.rocketmq.iot.protocol.mqtt.handler.MessageDispatcher;
+import org.apache.rocketmq.iot.protocol.mqtt.handler.downstream.impl.MqttPublishMessageHandler;
+import org.apache.rocketmq.iot.protocol.mqtt.handler.downstream.impl.MqttPubrelMessageHandler;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+public class InflightWindowTest {
+
+    private static final String TOPIC = "test/inflight/topic";
+
+    private EmbeddedChannel channel;
+    private Timer timer;
+    private ByteBuf payload;
+
+    @Before
+    public void setup() {
+        channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        timer = Mockito.mock(Timer.class);
+        Mockito.when(
+            timer.newTimeout(Mockito.any(TimerTask.class), Mockito.anyLong(), Mockito.any(TimeUnit.class))
+        ).thenReturn(
+            Mockito.mock(Timeout.class)
+        );
+        payload = Unpooled.wrappedBuffer("hello world".getBytes());
+    }
+
+    @After
+    public void teardown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testWindowIsBounded() {
+        InflightWindow window = newWindow(2, 3, 10000);
+        for (int i = 0; i < 6; i++) {
+            Assert.assertEquals(i < 5, window.publish(TOPIC, payload, 1, false));
+        }
+        Assert.assertEquals(2, window.inflightMessages());
+        Assert.assertEquals(3, window.pendingMessages());
+        Assert.assertEquals(1, window.droppedMessages());
+
+        MqttPublishMessage first = readPublish();
+        MqttPublishMessage second = readPublish();
+        Assert.assertNull(channel.readOutbound());
+        Assert.assertEquals(1, first.variableHeader().packetId());
+        Assert.assertEquals(2, second.variableHeader().packetId());
+        first.release();
+        second.release();
+        // 2 in flight and 3 pending hold the payload, no matter how many messages are published
+        Assert.assertEquals(6, payload.refCnt());
+
+        window.onPuback(1);
+        MqttPublishMessage third = readPublish();
+        Assert.assertEquals(3, third.variableHeader().packetId());
+        third.release();
+        Assert.assertEquals(2, window.inflightMessages());
+        Assert.assertEquals(2, window.pendingMessages());
+
+        // an unknown or repeated PUBACK is ignored
+        window.onPuback(1);
+        window.onPuback(42);
+        Assert.assertEquals(2, window.inflightMessages());
+    }
+
+    @Test
+    public void testRetry() {
+        InflightWindow window = newWindow(2, 0, 0);
+        window.publish(TOPIC, payload, 1, false);
+        window.publish(TOPIC, payload, 2, true);
+        readPublish().release();
+        readPublish().release();
+        window.onPubrec(2);
+        MqttMessage pubrel = channel.readOutbound();
+        Assert.assertEquals(MqttMessageType.PUBREL, pubrel.fixedHeader().messageType());
+        Assert.assertEquals(2, MessageUtil.getMessageId(pubrel));
+
+        // a single timeout is scheduled for the whole window
+        ArgumentCaptor<TimerTask> task = ArgumentCaptor.forClass(TimerTask.class);
+        Mockito.verify(timer).newTimeout(task.capture(), Mockito.anyLong(), Mockito.any(TimeUnit.class));
+        runTask(task.getValue());
+
+        MqttPublishMessage duplicate = readPublish();
+        Assert.assertTrue(duplicate.fixedHeader().isDup());
+        Assert.assertEquals(1, duplicate.variableHeader().packetId());
+        duplicate.release();
+        MqttMessage duplicatePubrel = channel.readOutbound();
+        Assert.assertEquals(MqttMessageType.PUBREL, duplicatePubrel.fixedHeader().messageType());
+        Assert.assertEquals(2, MessageUtil.getMessageId(duplicatePubrel));
+        Mockito.verify(timer, Mockito.times(2)).newTimeout(
+            Mockito.any(TimerTask.class), Mockito.anyLong(), Mockito.any(TimeUnit.class)
+        );
+
+        window.onPuback(1);
+        window.onPubcomp(2);
+        Assert.assertEquals(0, window.inflightMessages());
+        Assert.assertEquals(1, payload.refCnt());
+    }
+
+    @Test
+    public void testQos2FromClient() {
+        InflightWindow window = newWindow(2, 0, 10000);
+        Assert.assertTrue(window.onQos2Publish(1));
+        Assert.assertFalse(window.onQos2Publish(1));
+        Assert.assertTrue(window.onQos2Publish(2));
+
+        window.onPubrel(1);
+        MqttMessage pubcomp = channel.readOutbound();
+        Assert.assertEquals(MqttMessageType.PUBCOMP, pubcomp.fixedHeader().messageType());
+        Assert.assertEquals(1, MessageUtil.getMessageId(pubcomp));
+        Assert.assertTrue(window.onQos2Publish(1));
+
+        // a third QoS 2 message waiting for its PUBREL exceeds the receive maximum
+        Assert.assertFalse(window.onQos2Publish(3));
+        Assert.assertFalse(channel.isOpen());
+    }
+
+    @Test
+    public void testQos2FromClientThroughChannel() {
+        System.setProperty(MQTTBridgeConfiguration.MQTT_RECEIVE_MAXIMUM, "2");
+        try {
+            List<Message> delivered = new ArrayList<>();
+            MessageDispatcher dispatcher = new MessageDispatcher(new ClientManagerImpl());
+            dispatcher.registerHandler(Message.Type.MQTT_PUBLISH, new MqttPublishMessageHandler(delivered::add));
+            dispatcher.registerHandler(Message.Type.MQTT_PUBREL, new MqttPubrelMessageHandler());
+            EmbeddedChannel client = new EmbeddedChannel(dispatcher);
+
+            client.writeInbound(newQos2Publish(1), newQos2Publish(2));
+            assertAnswer(client, MqttMessageType.PUBREC, 1);
+            assertAnswer(client, MqttMessageType.PUBREC, 2);
+            // the PUBREL is read while the window is full, and frees a packet identifier
+            client.writeInbound(MessageUtil.getMqttPubrelMessage(1));
+            assertAnswer(client, MqttMessageType.PUBCOMP, 1);
+            client.writeInbound(newQos2Publish(3));
+            assertAnswer(client, MqttMessageType.PUBREC, 3);
+            Assert.assertEquals(3, delivered.size());
+            Assert.assertTrue(client.isOpen());
+
+            client.writeInbound(newQos2Publish(4));
+            Assert.assertEquals(3, delivered.size());
+            Assert.assertFalse(client.isOpen());
+            client.finishAndReleaseAll();
+        } finally {
+            System.clearProperty(MQTTBridgeConfiguration.MQTT_RECEIVE_MAXIMUM);
+        }
+    }
+
+    @Test
+    public void testClose() {
+        InflightWindow window = newWindow(1, 1, 10000);
+        window.publish(TOPIC, payload, 1, false);
+        window.publish(TOPIC, payload, 1, false);
+        readPublish().release();
+        Assert.assertEquals(3, payload.refCnt());
+
+        window.close();
+        Assert.assertEquals(1, payload.refCnt());
+        Assert.assertEquals(0, window.inflightMessages());
+        Assert.assertEquals(0, window.pendingMessages());
+        Assert.assertFalse(window.publish(TOPIC, payload, 1, false));
+        Assert.assertEquals(1, payload.refCnt());
+    }
+
+    private InflightWindow newWindow(int receiveMaximum, int maxPendingMessages, long retryIntervalMs) {
+        return new InflightWindow(channel.pipeline().firstContext(), receiveMaximum, maxPendingMessages,
+            retryIntervalMs, timer);
+    }
+
+    private static MqttPublishMessage newQos2Publish(int packetId) {
+        return new MqttPublishMessage(
+            new MqttFixedHeader(MqttMessageType.PUBLISH, false, MqttQoS.EXACTLY_ONCE, false, 0),
+            new MqttPublishVariableHeader(TOPIC, packetId),
+            Unpooled.wrappedBuffer("hello world".getBytes())
+        );
+    }
+
+    private static void assertAnswer(EmbeddedChannel client, MqttMessageType type, int packetId) {
+        MqttMessage answer = client.readOutbound();
+        Assert.assertEquals(type, answer.fixedHeader().messageType());
+        Assert.assertEquals(packetId, MessageUtil.getMessageId(answer));
+    }
+
+    private MqttPublishMessage readPublish() {
+        channel.flushOutbound();
+        return channel.readOutbound();
+    }
+
+    private static void runTask(TimerTask task) {
+        try {
+            task.run(Mockito.mock(Timeout.class));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,430 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.iot.storage.message;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.mqtt.MqttFixedHeader;
+import io.netty.handler.codec.mqtt.MqttMessageType;
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import io.netty.handler.codec.mqtt.MqttPublishVariableHeader;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.rocketmq.client.consumer.DefaultLitePullConsumer;
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.apache.rocketmq.client.producer.MessageQueueSelector;
+import org.apache.rocketmq.client.producer.SendCallback;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.common.message.MessageAccessor;
+import org.apache.rocketmq.common.message.MessageBatch;
+import org.apache.rocketmq.common.message.MessageClientIDSetter;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.iot.common.configuration.RocketMQConfiguration;
+import org.apache.rocketmq.iot.common.data.Message;
+import org.apache.rocketmq.iot.common.util.MessageUtil;
+import org.apache.rocketmq.iot.connection.client.ClientManager;
+import org.apache.rocketmq.iot.protocol.mqtt.data.MqttClient;
+import org.apache.rocketmq.iot.protocol.mqtt.handler.MessageDispatcher;
+import org.apache.rocketmq.iot.protocol.mqtt.handler.MessageHandler;
+import org.apache.rocketmq.iot.storage.message.impl.RocketMQMessageStore;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class RocketMQMessageStoreTest {
+
+    private static final Logger log = LoggerFactory.getLogger(RocketMQMessageStoreTest.class);
+
+    private static final int SEND_MAX_IN_FLIGHT = 4;
+
+    private static final int SEND_BATCH_SIZE = 64;
+
+    private static final int PULL_BATCH_SIZE = 32;
+
+    private MockBroker broker;
+
+    private RocketMQMessageStore messageStore;
+
+    private BlockingQueue<Message> pushedMessages = new LinkedBlockingQueue<>();
+
+    private MessageHandler pushHandler = new MessageHandler() {
+        @Override public void handleMessage(Message message) {
+            pushedMessages.add(message);
+        }
+    };
+
+    @Before
+    public void setup() throws Exception {
+        System.setProperty(RocketMQConfiguration.ROCKETMQ_SEND_MAX_IN_FLIGHT, String.valueOf(SEND_MAX_IN_FLIGHT));
+        System.setProperty(RocketMQConfiguration.ROCKETMQ_SEND_BATCH_SIZE, String.valueOf(SEND_BATCH_SIZE));
+        broker = new MockBroker(1);
+        MessageDispatcher dispatcher = new MessageDispatcher(Mockito.mock(ClientManager.class));
+        dispatcher.registerHandler(Message.Type.MQTT_SEND, new MessageHandler() {
+            @Override public void handleMessage(Message message) {
+                pushHandler.handleMessage(message);
+            }
+        });
+        messageStore = new RocketMQMessageStore(broker.producer(), broker.consumer(PULL_BATCH_SIZE), dispatcher);
+        messageStore.start();
+    }
+
+    @After
+    public void teardown() {
+        messageStore.shutdown();
+        broker.shutdown();
+        System.clearProperty(RocketMQConfiguration.ROCKETMQ_SEND_MAX_IN_FLIGHT);
+        System.clearProperty(RocketMQConfiguration.ROCKETMQ_SEND_BATCH_SIZE);
+    }
+
+    @Test
+    public void testTopicMapping() throws Exception {
+        List<String> mqttTopics = Arrays.asList("fleet/region-1/alerts", "sensor", "$SYS/broker/load");
+        for (String mqttTopic : mqttTopics) {
+            Assert.assertNotNull(messageStore.put(publish(mqttTopic, mqttTopic.getBytes())));
+        }
+
+        Map<String, MessageExt> stored = new HashMap<>();
+        for (MessageExt messageExt : broker.awaitStored(mqttTopics.size())) {
+            stored.put(messageExt.getUserProperty(MessageUtil.MQTT_TOPIC_NAME), messageExt);
+        }
+        Assert.assertEquals("fleet", stored.get("fleet/region-1/alerts").getTopic());
+        Assert.assertEquals("region-1", stored.get("fleet/region-1/alerts").getTags());
+        Assert.assertEquals("sensor", stored.get("sensor").getTopic());
+        Assert.assertNull(stored.get("sensor").getTags());
+        Assert.assertEquals(RocketMQConfiguration.DEFAULT_ROCKETMQ_DEFAULT_TOPIC,
+            stored.get("$SYS/broker/load").getTopic());
+
+        List<String> pushedTopics = new ArrayList<>();
+        for (int i = 0; i < mqttTopics.size(); i++) {
+            Message message = pushedMessages.poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull(message);
+            Assert.assertEquals(Message.Type.MQTT_SEND, message.getType());
+            MqttPublishMessage publishMessage = (MqttPublishMessage) message.getPayload();
+            Assert.assertEquals(message.getTopic(), publishMessage.variableHeader().topicName());
+            pushedTopics.add(message.getTopic());
+        }
+        Collections.sort(pushedTopics);
+        List<String> expectedTopics = new ArrayList<>(mqttTopics);
+        Collections.sort(expectedTopics);
+        Assert.assertEquals(expectedTopics, pushedTopics);
+    }
+
+    @Test
+    public void testPutCallback() throws Exception {
+        RecordingCallback callback = new RecordingCallback();
+        messageStore.put(publish("fleet/region-1/alerts", new byte[] {1}), callback);
+        Assert.assertEquals(broker.awaitStored(1).get(0).getMsgId(), callback.results.poll(5, TimeUnit.SECONDS));
+
+        broker.failure = new IllegalStateException("broker unavailable");
+        messageStore.put(publish("fleet/region-1/alerts", new byte[] {2}), callback);
+        Assert.assertSame(broker.failure, callback.results.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testBackPressure() throws Exception {
+        System.setProperty(RocketMQConfiguration.ROCKETMQ_SEND_QUEUE_CAPACITY, "8");
+        MockBroker slowBroker = new MockBroker(1);
+        RocketMQMessageStore store = new RocketMQMessageStore(slowBroker.producer(), slowBroker.consumer(1),
+            new MessageDispatcher(Mockito.mock(ClientManager.class)));
+        EmbeddedChannel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        MqttClient client = new MqttClient();
+        client.setCtx(channel.pipeline().firstContext());
+        try {
+            CountDownLatch gate = new CountDownLatch(1);
+            slowBroker.sendGate = gate;
+            store.start();
+            RecordingCallback callback = new RecordingCallback();
+            store.put(publish(client, "fleet/region-1/alerts"), callback);
+            Assert.assertTrue(slowBroker.blockedSends.tryAcquire(5, TimeUnit.SECONDS));
+
+            // the sender is blocked, the queue fills up without blocking the caller
+            for (int i = 0; i < 8; i++) {
+                store.put(publish(client, "fleet/region-1/alerts"), callback);
+                Assert.assertEquals(i < 5, channel.config().isAutoRead());
+            }
+            store.put(publish(client, "fleet/region-1/alerts"), callback);
+            Assert.assertTrue(callback.results.poll(5, TimeUnit.SECONDS) instanceof IllegalStateException);
+
+            slowBroker.sendGate = null;
+            gate.countDown();
+            for (int i = 0; i < 9; i++) {
+                Assert.assertTrue(callback.results.poll(5, TimeUnit.SECONDS) instanceof String);
+            }
+            // the sender resumes the paused channels once it is back to the queue
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!channel.config().isAutoRead() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertTrue(channel.config().isAutoRead());
+        } finally {
+            store.shutdown();
+            slowBroker.shutdown();
+            channel.finishAndReleaseAll();
+            System.clearProperty(RocketMQConfiguration.ROCKETMQ_SEND_QUEUE_CAPACITY);
+        }
+    }
+
+    /**
+     * Publishes through the mock broker with at most {@code window} messages not pushed yet, and reports the
+     * sustained rate and the latency from {@link MessageStore#put(Message)} to the dispatcher.
+     */
+    @Test
+    public void testSustainedThroughput() throws Exception {
+        final int count = 50000;
+        final Semaphore window = new Semaphore(4096);
+        final long[] latencies = new long[count];
+        final AtomicInteger received = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(count);
+        pushHandler = new MessageHandler() {
+            @Override public void handleMessage(Message message) {
+                MqttPublishMessage publishMessage = (MqttPublishMessage) message.getPayload();
+                long sentAt = publishMessage.payload().getLong(0);
+                latencies[received.getAndIncrement()] = System.nanoTime() - sentAt;
+                window.release();
+                done.countDown();
+            }
+        };
+
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            window.acquire();
+            messageStore.put(publish("fleet/region-" + (i % 10) + "/telemetry",
+                ByteBuffer.allocate(64).putLong(System.nanoTime()).array()));
+        }
+        Assert.assertTrue(done.await(60, TimeUnit.SECONDS));
+        long elapsed = System.nanoTime() - start;
+
+        Assert.assertEquals(count, received.get());
+        Assert.assertTrue(broker.maxInFlight() <= SEND_MAX_IN_FLIGHT);
+        Assert.assertTrue(broker.batches() < count / 2);
+
+        Arrays.sort(latencies);
+        log.info("{} messages in {} batches, {} msg/s, latency p50 {} us, p99 {} us, p99.9 {} us, max {} us",
+            count, broker.batches(), count * TimeUnit.SECONDS.toNanos(1) / elapsed,
+            percentile(latencies, 0.5), percentile(latencies, 0.99), percentile(latencies, 0.999),
+            TimeUnit.NANOSECONDS.toMicros(latencies[count - 1]));
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        return TimeUnit.NANOSECONDS.toMicros(sorted[(int) Math.ceil(percentile * sorted.length) - 1]);
+    }
+
+    private static Message publish(MqttClient client, String topic) {
+        Message message = publish(topic, new byte[] {0});
+        message.setClient(client);
+        return message;
+    }
+
+    private static Message publish(String topic, byte[] payload) {
+        Message message = new Message();
+        message.setType(Message.Type.MQTT_PUBLISH);
+        message.setPayload(new MqttPublishMessage(
+            new MqttFixedHeader(MqttMessageType.PUBLISH, false, MqttQoS.AT_MOST_ONCE, false, 0),
+            new MqttPublishVariableHeader(topic, 0),
+            Unpooled.wrappedBuffer(payload)
+        ));
+        return message;
+    }
+
+    /**
+     * Records the message ids of the stored messages and the causes of the failures
+     */
+    static class RecordingCallback implements PutCallback {
+
+        private final BlockingQueue<Object> results = new LinkedBlockingQueue<>();
+
+        @Override public void onSuccess(String messageId) {
+            results.add(messageId);
+        }
+
+        @Override public void onException(Throwable e) {
+            results.add(e);
+        }
+    }
+
+    /**
+     * Stores the messages sent by the producer in memory after a fixed latency, and serves them to the
+     * consumer in the order they were stored.
+     */
+    static class MockBroker {
+
+        private final List<MessageQueue> queues = Arrays.asList(
+            new MessageQueue("mock", "broker-a", 0),
+            new MessageQueue("mock", "broker-a", 1)
+        );
+
+        private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(2);
+
+        private final BlockingQueue<MessageExt> stored = new LinkedBlockingQueue<>();
+
+        private final BlockingQueue<MessageExt> consumed = new LinkedBlockingQueue<>();
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+
+        private final AtomicInteger batches = new AtomicInteger();
+
+        private final long latencyMs;
+
+        /**
+         * Fails the sends while set
+         */
+        private volatile Exception failure;
+
+        /**
+         * Blocks the sends while set, counting them down in {@link #blockedSends}
+         */
+        private volatile CountDownLatch sendGate;
+
+        private final Semaphore blockedSends = new Semaphore(0);
+
+        MockBroker(long latencyMs) {
+            this.latencyMs = latencyMs;
+        }
+
+        DefaultMQProducer producer() throws Exception {
+            DefaultMQProducer producer = Mockito.spy(new DefaultMQProducer("mock-producer"));
+            Mockito.doNothing().when(producer).start();
+            Mockito.doNothing().when(producer).shutdown();
+            Mockito.doAnswer(new Answer<Object>() {
+                @Override public Object answer(InvocationOnMock invocation) throws Throwable {
+                    final org.apache.rocketmq.common.message.Message msg =
+                        (org.apache.rocketmq.common.message.Message) invocation.getArguments()[0];
+                    MessageQueueSelector selector = (MessageQueueSelector) invocation.getArguments()[1];
+                    final MessageQueue queue = selector.select(queues, msg, invocation.getArguments()[2]);
+                    final SendCallback callback = (SendCallback) invocation.getArguments()[3];
+                    CountDownLatch gate = sendGate;
+                    if (gate != null) {
+                        blockedSends.release();
+                        gate.await();
+                    }
+                    final Exception sendFailure = failure;
+                    if (sendFailure != null) {
+                        callback.onException(sendFailure);
+                        return null;
+                    }
+                    int current = inFlight.incrementAndGet();
+                    int max;
+                    while (current > (max = maxInFlight.get()) && !maxInFlight.compareAndSet(max, current)) {
+                        // retry until the maximum is at least the current count
+                    }
+                    batches.incrementAndGet();
+                    executor.schedule(new Runnable() {
+                        @Override public void run() {
+                            store(msg, queue);
+                            inFlight.decrementAndGet();
+                            callback.onSuccess(new SendResult());
+                        }
+                    }, latencyMs, TimeUnit.MILLISECONDS);
+                    return null;
+                }
+            }).when(producer).send(
+                Mockito.any(org.apache.rocketmq.common.message.Message.class),
+                Mockito.any(MessageQueueSelector.class),
+                Mockito.anyObject(),
+                Mockito.any(SendCallback.class),
+                Mockito.anyLong()
+            );
+            return producer;
+        }
+
+        DefaultLitePullConsumer consumer(final int pullBatchSize) throws Exception {
+            DefaultLitePullConsumer consumer = Mockito.spy(new DefaultLitePullConsumer("mock-consumer"));
+            Mockito.doNothing().when(consumer).start();
+            Mockito.doNothing().when(consumer).shutdown();
+            Mockito.doNothing().when(consumer).subscribe(Mockito.anyString(), Mockito.anyString());
+            Mockito.doAnswer(new Answer<List<MessageExt>>() {
+                @Override public List<MessageExt> answer(InvocationOnMock invocation) throws Throwable {
+                    List<MessageExt> messages = new ArrayList<>();
+                    MessageExt first = consumed.poll((Long) invocation.getArguments()[0], TimeUnit.MILLISECONDS);
+                    if (first != null) {
+                        messages.add(first);
+                        consumed.drainTo(messages, pullBatchSize - 1);
+                    }
+                    return messages;
+                }
+            }).when(consumer).poll(Mockito.anyLong());
+            return consumer;
+        }
+
+        private void store(org.apache.rocketmq.common.message.Message msg, MessageQueue queue) {
+            Iterable<org.apache.rocketmq.common.message.Message> messages = msg instanceof MessageBatch
+                ? (MessageBatch) msg : Collections.singletonList(msg);
+            for (org.apache.rocketmq.common.message.Message message : messages) {
+                MessageExt messageExt = new MessageExt();
+                messageExt.setTopic(message.getTopic());
+                messageExt.setQueueId(queue.getQueueId());
+                messageExt.setBody(message.getBody());
+                messageExt.setStoreTimestamp(System.currentTimeMillis());
+                MessageAccessor.setProperties(messageExt, new HashMap<>(message.getProperties()));
+                messageExt.setMsgId(MessageClientIDSetter.getUniqID(message));
+                stored.add(messageExt);
+                consumed.add(messageExt);
+            }
+        }
+
+        List<MessageExt> awaitStored(int count) throws InterruptedException {
+            List<MessageExt> messages = new ArrayList<>();
+            while (messages.size() < count) {
+                MessageExt messageExt = stored.poll(5, TimeUnit.SECONDS);
+                Assert.assertNotNull(messageExt);
+                messages.add(messageExt);
+            }
+            return messages;
+        }
+
+        int maxInFlight() {
+            return maxInFlight.get();
+        }
+
+        int batches() {
+            return batches.get();
+        }
+
+        void shutdown() {
+            CountDownLatch gate = sendGate;
+            if (gate != null) {
+                gate.countDown();
+            }
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.iot.storage.retain;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.iot.protocol.mqtt.data.RetainedMessage;
+import org.apache.rocketmq.iot.storage.retain.impl.InMemoryRetainedMessageStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Looks up the retained messages of a fleet of devices, each retaining the last value of 10 metrics, with
+ * filters matching 1 up to 1000 of them. The latency follows the number of matches, not the number of
+ * retained topics. Only compiled with the {@code benchmark} maven profile.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class InMemoryRetainedMessageStoreBenchmark {
+
+    private static final int SITES = 100;
+
+    private static final int METRICS = 10;
+
+    @Param({"1000000", "2000000"})
+    private int retainedTopics;
+
+    @Param({
+        "site-7/device-42/metric-3",
+        "site-7/device-42/+",
+        "+/device-42/metric-3",
+        "site-7/+/metric-3",
+        "site-7/device-42/#"
+    })
+    private String filter;
+
+    private RetainedMessageStore retainedMessageStore;
+
+    @Setup
+    public void setUp() {
+        retainedMessageStore = new InMemoryRetainedMessageStore(retainedTopics, Long.MAX_VALUE);
+        byte[] payload = new byte[16];
+        int devices = retainedTopics / METRICS;
+        for (int device = 0; device < devices; device++) {
+            String prefix = "site-" + (device % SITES) + "/device-" + (device / SITES) + "/metric-";
+            for (int metric = 0; metric < METRICS; metric++) {
+                retainedMessageStore.put(new RetainedMessage(prefix + metric, payload, 1));
+            }
+        }
+    }
+
+    @Benchmark
+    public List<RetainedMessage> match() {
+        return retainedMessageStore.match(filter);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(
+            new OptionsBuilder()
+                .include(InMemoryRetainedMessageStoreBenchmark.class.getSimpleName())
+                .build())
+            .run();
+    }
+}
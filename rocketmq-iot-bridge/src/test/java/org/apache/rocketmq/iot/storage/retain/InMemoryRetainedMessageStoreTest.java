@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.iot.storage.retain;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.rocketmq.iot.protocol.mqtt.data.RetainedMessage;
+import org.apache.rocketmq.iot.storage.retain.impl.InMemoryRetainedMessageStore;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class InMemoryRetainedMessageStoreTest {
+
+    private InMemoryRetainedMessageStore retainedMessageStore;
+
+    @Before
+    public void setup() {
+        retainedMessageStore = new InMemoryRetainedMessageStore(100, Long.MAX_VALUE);
+        put("home/kitchen/temperature", "21");
+        put("home/kitchen/humidity", "40");
+        put("home/garage/temperature", "12");
+        put("home", "online");
+        put("$SYS/broker/uptime", "42");
+    }
+
+    @Test
+    public void testMatch() {
+        Assert.assertEquals(topics("home/kitchen/temperature"), topics(retainedMessageStore.match("home/kitchen/temperature")));
+        Assert.assertEquals(topics("home/kitchen/temperature", "home/garage/temperature"),
+            topics(retainedMessageStore.match("home/+/temperature")));
+        Assert.assertEquals(topics("home", "home/kitchen/temperature", "home/kitchen/humidity", "home/garage/temperature"),
+            topics(retainedMessageStore.match("home/#")));
+        Assert.assertEquals(topics("home", "home/kitchen/temperature", "home/kitchen/humidity", "home/garage/temperature"),
+            topics(retainedMessageStore.match("#")));
+        Assert.assertEquals(topics("home"), topics(retainedMessageStore.match("+")));
+        Assert.assertEquals(topics("$SYS/broker/uptime"), topics(retainedMessageStore.match("$SYS/#")));
+        Assert.assertTrue(retainedMessageStore.match("home/+").isEmpty());
+        Assert.assertTrue(retainedMessageStore.match("office/#").isEmpty());
+    }
+
+    @Test
+    public void testReplaceAndRemove() {
+        put("home/kitchen/temperature", "22");
+        Assert.assertEquals(5, retainedMessageStore.size());
+        Assert.assertEquals("22", new String(retainedMessageStore.get("home/kitchen/temperature").getPayload()));
+
+        put("home/kitchen/temperature", "");
+        put("home/kitchen/humidity", "");
+        Assert.assertEquals(3, retainedMessageStore.size());
+        Assert.assertNull(retainedMessageStore.get("home/kitchen/temperature"));
+        Assert.assertEquals(topics("home", "home/garage/temperature"), topics(retainedMessageStore.match("home/#")));
+        // the emptied levels are dropped
+        Assert.assertTrue(retainedMessageStore.match("home/+/#").size() == 1);
+    }
+
+    @Test
+    public void testEvictByCount() {
+        retainedMessageStore = new InMemoryRetainedMessageStore(3, Long.MAX_VALUE);
+        put("a", "1");
+        put("b", "2");
+        put("c", "3");
+        // updating a message makes it the most recent one
+        put("a", "4");
+        put("d", "5");
+        Assert.assertEquals(3, retainedMessageStore.size());
+        Assert.assertEquals(1, retainedMessageStore.evictedMessages());
+        Assert.assertNull(retainedMessageStore.get("b"));
+        Assert.assertEquals(topics("a", "c", "d"), topics(retainedMessageStore.match("#")));
+    }
+
+    @Test
+    public void testEvictByBytes() {
+        retainedMessageStore = new InMemoryRetainedMessageStore(100, 20);
+        put("a", "123456789");
+        put("b", "123456789");
+        Assert.assertEquals(2, retainedMessageStore.size());
+        put("c", "1");
+        Assert.assertEquals(2, retainedMessageStore.size());
+        Assert.assertNull(retainedMessageStore.get("a"));
+    }
+
+    private void put(String topic, String payload) {
+        retainedMessageStore.put(new RetainedMessage(topic, payload.getBytes(), 0));
+    }
+
+    private static Set<String> topics(String... topics) {
+        Set<String> set = new HashSet<>();
+        for (String topic : topics) {
+            set.add(topic);
+        }
+        return set;
+    }
+
+    private static Set<String> topics(List<RetainedMessage> messages) {
+        Set<String> set = new HashSet<>();
+        for (RetainedMessage message : messages) {
+            set.add(message.getTopic());
+        }
+        return set;
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.iot.storage.session;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.rocketmq.iot.storage.session.impl.MappedSessionStore;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class MappedSessionStoreTest {
+
+    private static final Logger log = LoggerFactory.getLogger(MappedSessionStoreTest.class);
+
+    private static final String CLIENT_ID = "device-1";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MappedSessionStore sessionStore;
+
+    @Before
+    public void setup() {
+        sessionStore = newStore(1024 * 1024, 10);
+    }
+
+    @After
+    public void teardown() {
+        sessionStore.shutdown();
+    }
+
+    @Test
+    public void testRestart() {
+        Map<String, Integer> topicFilter2Qos = new LinkedHashMap<>();
+        topicFilter2Qos.put("home/+/temperature", 1);
+        topicFilter2Qos.put("home/alarm", 2);
+        sessionStore.addSubscriptions(CLIENT_ID, topicFilter2Qos);
+        sessionStore.removeSubscriptions(CLIENT_ID, Collections.singleton("home/alarm"));
+        Assert.assertFalse(enqueue("device-2", "home/alarm", "on"));
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(enqueue(CLIENT_ID, "home/kitchen/temperature", String.valueOf(i)));
+        }
+        Assert.assertEquals(Arrays.asList("0", "1"), replay(CLIENT_ID, 2));
+
+        restart(1024 * 1024, 10);
+        Assert.assertEquals(Collections.singleton(CLIENT_ID), sessionStore.getClientIds());
+        Assert.assertEquals(Collections.singletonMap("home/+/temperature", 1), sessionStore.getSubscriptions(CLIENT_ID));
+        Assert.assertEquals(3, sessionStore.queuedMessages(CLIENT_ID));
+        Assert.assertTrue(enqueue(CLIENT_ID, "home/kitchen/temperature", "5"));
+        Assert.assertEquals(Arrays.asList("2", "3", "4", "5"), replay(CLIENT_ID, Integer.MAX_VALUE));
+
+        restart(1024 * 1024, 10);
+        Assert.assertEquals(0, sessionStore.queuedMessages(CLIENT_ID));
+        Assert.assertTrue(enqueue(CLIENT_ID, "home/kitchen/temperature", "6"));
+        Assert.assertEquals(Collections.singletonList("6"), replay(CLIENT_ID, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testQueueLimitAndRemove() {
+        sessionStore.addSubscriptions(CLIENT_ID, Collections.singletonMap("home/#", 1));
+        for (int i = 0; i < 12; i++) {
+            Assert.assertEquals(i < 10, enqueue(CLIENT_ID, "home/door", String.valueOf(i)));
+        }
+        Assert.assertEquals(10, sessionStore.queuedMessages(CLIENT_ID));
+        Assert.assertEquals(2, sessionStore.droppedMessages());
+
+        sessionStore.remove(CLIENT_ID);
+        Assert.assertTrue(sessionStore.getClientIds().isEmpty());
+        Assert.assertFalse(enqueue(CLIENT_ID, "home/door", "12"));
+
+        restart(1024 * 1024, 10);
+        Assert.assertTrue(sessionStore.getClientIds().isEmpty());
+        Assert.assertTrue(sessionStore.getSubscriptions(CLIENT_ID).isEmpty());
+    }
+
+    @Test
+    public void testCompaction() {
+        sessionStore = newStore(4096, 1000);
+        sessionStore.addSubscriptions(CLIENT_ID, Collections.singletonMap("home/#", 1));
+        sessionStore.addSubscriptions("device-2", Collections.singletonMap("garage/#", 2));
+        for (int i = 0; i < 200; i++) {
+            enqueue(CLIENT_ID, "home/door", String.valueOf(i));
+            replay(CLIENT_ID, 1);
+        }
+        enqueue("device-2", "garage/door", "open");
+        enqueue(CLIENT_ID, "home/door", "closed");
+        int segments = sessionStore.segments();
+        Assert.assertTrue(segments > 2);
+
+        sessionStore.compact();
+        Assert.assertTrue(sessionStore.segments() < segments);
+        Assert.assertEquals(sessionStore.segments(), new File(folder.getRoot(), "4096").listFiles().length);
+
+        restart(4096, 1000);
+        Assert.assertEquals(Collections.singletonMap("home/#", 1), sessionStore.getSubscriptions(CLIENT_ID));
+        Assert.assertEquals(Collections.singletonMap("garage/#", 2), sessionStore.getSubscriptions("device-2"));
+        Assert.assertEquals(Collections.singletonList("open"), replay("device-2", Integer.MAX_VALUE));
+        Assert.assertEquals(Collections.singletonList("closed"), replay(CLIENT_ID, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Queues 100 messages of 256 bytes for each of 1000 clients, restarts the store and replays all of them as
+     * if the clients reconnected at once
+     */
+    @Test
+    public void testReconnectReplayThroughput() {
+        int clients = 1000;
+        int messages = 100;
+        sessionStore = newStore(16 * 1024 * 1024, messages);
+        ByteBuf payload = Unpooled.wrappedBuffer(new byte[256]);
+        for (int i = 0; i < clients; i++) {
+            sessionStore.addSubscriptions("device-" + i, Collections.singletonMap("fleet/device-" + i + "/#", 1));
+            for (int j = 0; j < messages; j++) {
+                Assert.assertTrue(sessionStore.enqueue("device-" + i, "fleet/device-" + i + "/telemetry", payload, 1));
+            }
+        }
+
+        long start = System.nanoTime();
+        restart(16 * 1024 * 1024, messages);
+        long recovered = System.nanoTime();
+        long[] replayed = new long[2];
+        for (int i = 0; i < clients; i++) {
+            sessionStore.replay("device-" + i, (topic, messagePayload, qos) -> {
+                replayed[0]++;
+                replayed[1] += messagePayload.readableBytes();
+                return true;
+            });
+        }
+        long end = System.nanoTime();
+
+        Assert.assertEquals((long) clients * messages, replayed[0]);
+        Assert.assertEquals((long) clients * messages * 256, replayed[1]);
+        log.info("recovered {} sessions in {} ms, replayed {} messages at {} msg/s", clients,
+            (recovered - start) / 1000000, replayed[0], (long) (replayed[0] * 1e9 / (end - recovered)));
+    }
+
+    private MappedSessionStore newStore(int segmentSize, int maxQueuedMessages) {
+        if (sessionStore != null) {
+            sessionStore.shutdown();
+        }
+        // a directory per segment size, the files of a former store are never resized under its mapping
+        File dataDir = new File(folder.getRoot(), String.valueOf(segmentSize));
+        MappedSessionStore store = new MappedSessionStore(dataDir.getPath(), segmentSize, maxQueuedMessages, 60000);
+        store.start();
+        return store;
+    }
+
+    private void restart(int segmentSize, int maxQueuedMessages) {
+        sessionStore = newStore(segmentSize, maxQueuedMessages);
+    }
+
+    private boolean enqueue(String clientId, String topic, String payload) {
+        return sessionStore.enqueue(clientId, topic, Unpooled.wrappedBuffer(payload.getBytes(StandardCharsets.UTF_8)), 1);
+    }
+
+    private List<String> replay(String clientId, int max) {
+        List<String> payloads = new ArrayList<>();
+        sessionStore.replay(clientId, (topic, payload, qos) -> {
+            if (payloads.size() == max) {
+                return false;
+            }
+            payloads.add(payload.toString(StandardCharsets.UTF_8));
+            return true;
+        });
+        return payloads;
+    }
+}
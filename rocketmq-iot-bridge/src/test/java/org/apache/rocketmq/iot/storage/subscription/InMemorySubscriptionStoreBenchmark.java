@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.iot.storage.subscription;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.iot.protocol.mqtt.data.MqttClient;
+import org.apache.rocketmq.iot.protocol.mqtt.data.Subscription;
+import org.apache.rocketmq.iot.storage.subscription.impl.InMemorySubscriptionStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Matches published topics against a fleet of devices, each subscribing to its own command topics
+ * with wildcards and to the alerts of its region. Only compiled with the {@code benchmark} maven profile.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class InMemorySubscriptionStoreBenchmark {
+
+    private static final int REGIONS = 100;
+
+    private static final int SUBSCRIPTIONS_PER_DEVICE = 4;
+
+    @Param({"1000000"})
+    private int subscriptions;
+
+    private int devices;
+
+    private SubscriptionStore subscriptionStore;
+
+    private String[] commandTopics;
+
+    private String[] alertTopics;
+
+    @Setup
+    public void setUp() {
+        devices = subscriptions / SUBSCRIPTIONS_PER_DEVICE;
+        subscriptionStore = new InMemorySubscriptionStore();
+        commandTopics = new String[devices];
+        alertTopics = new String[devices];
+        for (int i = 0; i < devices; i++) {
+            String device = "fleet/region-" + (i % REGIONS) + "/device-" + i;
+            Subscription subscription = subscription(i, 1);
+            subscriptionStore.append(device + "/command", subscription);
+            subscriptionStore.append(device + "/config/+", subscription);
+            subscriptionStore.append(device + "/ota/#", subscription);
+            subscriptionStore.append("fleet/region-" + (i % REGIONS) + "/+/alerts", subscription(i, 0));
+            commandTopics[i] = device + "/command";
+            alertTopics[i] = device + "/alerts";
+            subscriptionStore.addTopic(commandTopics[i]);
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object matchCommand() {
+        return subscriptionStore.get(commandTopics[ThreadLocalRandom.current().nextInt(devices)]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object matchWildcard() {
+        int device = ThreadLocalRandom.current().nextInt(devices);
+        return subscriptionStore.get("fleet/region-" + (device % REGIONS) + "/device-" + device + "/ota/firmware/v2");
+    }
+
+    @Benchmark
+    public Object matchRegionAlerts() {
+        return subscriptionStore.get(alertTopics[ThreadLocalRandom.current().nextInt(devices)]);
+    }
+
+    @Benchmark
+    public Object subscribeAndRemove() {
+        int device = ThreadLocalRandom.current().nextInt(devices);
+        Subscription subscription = subscription(devices + device, 1);
+        String filter = "fleet/region-" + (device % REGIONS) + "/device-" + device + "/events/+";
+        subscriptionStore.append(filter, subscription);
+        subscriptionStore.remove(filter, subscription.getClient());
+        return subscription;
+    }
+
+    private static Subscription subscription(int device, int qos) {
+        MqttClient client = new MqttClient();
+        client.setId("device-" + device);
+        return Subscription.Builder.newBuilder().client(client).qos(qos).build();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(
+            new OptionsBuilder()
+                .include(InMemorySubscriptionStoreBenchmark.class.getSimpleName())
+                .build())
+            .run();
+    }
+}
@@ -17,7 +17,6 @@
 
 package org.apache.rocketmq.iot.storage.subscription;
 
-import org.apache.commons.lang3.reflect.FieldUtils;
 import org.apache.rocketmq.iot.protocol.mqtt.constant.MqttConstant;
 import org.apache.rocketmq.iot.protocol.mqtt.data.MqttClient;
 import org.apache.rocketmq.iot.protocol.mqtt.data.Subscription;
@@ -27,6 +26,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -95,10 +96,11 @@ public class InMemorySubscriptionTest {
         Assert.assertTrue(inList(subscriptions2, subscription2));
         Assert.assertFalse(inList(subscriptions3, subscription1));
         Assert.assertFalse(inList(subscriptions3, subscription2));
-        subscriptionStore.remove(topic1, client1);
-        subscriptionStore.remove(topic1, client2);
-        subscriptionStore.remove(topic2, client1);
-        subscriptionStore.remove(topic2, client2);
+        /* subscriptions are removed with the filter they were made with */
+        subscriptionStore.remove(topicFilter2, client1);
+        subscriptionStore.remove(topicFilter2, client2);
+        Assert.assertTrue(subscriptionStore.get(topic1).isEmpty());
+        Assert.assertTrue(subscriptionStore.get(topic2).isEmpty());
 
         /* option 2: # wildcard */
         String topicFilter3 = "test/in/#";
@@ -113,12 +115,9 @@ public class InMemorySubscriptionTest {
         Assert.assertTrue(inList(subscriptions2, subscription2));
         Assert.assertTrue(inList(subscriptions3, subscription1));
         Assert.assertTrue(inList(subscriptions3, subscription2));
-        subscriptionStore.remove(topic1, client1);
-        subscriptionStore.remove(topic1, client2);
-        subscriptionStore.remove(topic2, client1);
-        subscriptionStore.remove(topic2, client2);
-        subscriptionStore.remove(topic2, client1);
-        subscriptionStore.remove(topic2, client2);
+        subscriptionStore.remove(topicFilter3, client1);
+        subscriptionStore.remove(topicFilter3, client2);
+        Assert.assertTrue(subscriptionStore.get(topic3).isEmpty());
 
         /* test re-append */
         subscriptionStore.append(topic1, subscription1);
@@ -173,15 +172,59 @@ public class InMemorySubscriptionTest {
     }
 
     @Test
-    public void testAddTopic() throws IllegalAccessException {
+    public void testAddTopic() {
         String topic = "test-topic";
         String topicFilter = "test/filter/+";
         subscriptionStore.addTopic(topic);
         subscriptionStore.addTopic(topicFilter);
-        Map<String, Set<Subscription>> topic2Subscriptions = (Map<String, Set<Subscription>>) FieldUtils.getField(InMemorySubscriptionStore.class, "topic2Subscriptions", true).get(subscriptionStore);
-        Assert.assertTrue(topic2Subscriptions.containsKey(topic));
+        Assert.assertTrue(subscriptionStore.hasTopic(topic));
         /* topicFilter should be ignored */
-        Assert.assertFalse(topic2Subscriptions.containsKey(topicFilter));
+        Assert.assertFalse(subscriptionStore.hasTopic(topicFilter));
+        Assert.assertFalse(subscriptionStore.hasTopic("test/filter"));
+    }
+
+    @Test
+    public void testWildcardMatchesTopicsAddedLater() {
+        subscriptionStore.append("test/+/new/#", subscription1);
+        subscriptionStore.append("#", subscription2);
+        String topic = "test/in/new/topic-d";
+        subscriptionStore.addTopic(topic);
+
+        Assert.assertTrue(inList(subscriptionStore.get(topic), subscription1));
+        Assert.assertTrue(inList(subscriptionStore.get(topic), subscription2));
+        /* '#' also matches the parent level */
+        Assert.assertTrue(inList(subscriptionStore.get("test/in/new"), subscription1));
+        Assert.assertFalse(inList(subscriptionStore.get("test/in"), subscription1));
+        /* wildcards at the first level do not match topics starting with '$' */
+        Assert.assertFalse(inList(subscriptionStore.get("$SYS/broker"), subscription2));
+
+        Assert.assertEquals(Collections.singletonList(topic), subscriptionStore.getTopics("test/+/new/#"));
+        Assert.assertEquals(4, subscriptionStore.getTopics("#").size());
+        Assert.assertEquals(2, subscriptionStore.getTopics("test/in/memory/+").size());
+    }
+
+    @Test
+    public void testOverlappingSubscriptions() {
+        Subscription qos0 = Subscription.Builder.newBuilder().client(client1).qos(0).build();
+        Subscription qos1 = Subscription.Builder.newBuilder().client(client1).qos(1).build();
+        subscriptionStore.append("test/in/memory/+", qos0);
+        subscriptionStore.append("test/in/#", qos1);
+        subscriptionStore.append(topic1, subscription2);
+
+        /* the client is returned once, with the max qos of its matching subscriptions */
+        List<Subscription> subscriptions = subscriptionStore.get(topic1);
+        Assert.assertEquals(2, subscriptions.size());
+        Assert.assertTrue(inList(subscriptions, qos1));
+        Assert.assertTrue(inList(subscriptions, subscription2));
+
+        subscriptionStore.remove("test/in/#", client1);
+        Assert.assertTrue(inList(subscriptionStore.get(topic1), qos0));
+        Assert.assertEquals(new HashSet<>(Collections.singletonList("test/in/memory/+")),
+            subscriptionStore.getTopicFilters(client1.getId()));
+
+        subscriptionStore.remove("test/in/memory/+", client1);
+        Assert.assertTrue(subscriptionStore.getTopicFilters(client1.getId()).isEmpty());
+        Assert.assertEquals(Collections.singletonList(subscription2), subscriptionStore.get(topic1));
     }
 
     private <E> boolean inList(List<E> actualLsit, E expected) {
@@ -0,0 +1,382 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.apache.rocketmq.jms.domain;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import javax.jms.JMSException;
+import org.apache.rocketmq.client.Validators;
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.apache.rocketmq.client.producer.SendCallback;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.client.producer.SendStatus;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageBatch;
+import org.apache.rocketmq.common.message.MessageClientIDSetter;
+import org.apache.rocketmq.jms.domain.message.JmsBaseMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends the messages of a producer group asynchronously, completing their {@link CompletionListener} from the
+ * RocketMQ send callbacks.
+ * <p/>
+ * <P>At most maxInFlightSends messages wait for the broker, sending blocks beyond. With a sendBatchSize greater than
+ * 1, the messages of a topic are packed into RocketMQ batches of at most sendBatchSize messages and sendBatchMaxBytes
+ * bytes of body, a batch waiting up to sendBatchLingerMillis for more messages. The delayed messages cannot be
+ * batched and are sent one by one.
+ * <p/>
+ * <P>The sender is shared by the JMS producers of the group, each tracks its own messages in flight with a
+ * {@link ProducerSends} so that closing it only waits for them. The last producer released shuts the sender down.
+ */
+public class AsyncMessageSender {
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncMessageSender.class);
+
+    private final DefaultMQProducer producer;
+
+    private final Semaphore inFlightSends;
+
+    private final int batchSize;
+
+    private final int batchMaxBytes;
+
+    private final int lingerMillis;
+
+    private final Map<String/* Topic */, Batch> pendingBatches = new HashMap<String, Batch>();
+
+    private ScheduledExecutorService lingerTimer;
+
+    private final ReferenceCount referenceCount = new ReferenceCount();
+
+    public AsyncMessageSender(DefaultMQProducer producer, CommonContext context) {
+        this.producer = producer;
+        this.inFlightSends = new Semaphore(context.getMaxInFlightSends());
+        this.batchSize = context.getSendBatchSize();
+        this.batchMaxBytes = context.getSendBatchMaxBytes();
+        this.lingerMillis = context.getSendBatchLingerMillis();
+        if (batchSize > 1) {
+            this.lingerTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("JmsSendLinger_" + producer.getProducerGroup() + "_%d").setDaemon(true).build());
+        }
+    }
+
+    /**
+     * Take a reference on the sender for a JMS producer.
+     *
+     * @return false if the sender has been shut down by its last producer, it has to be replaced
+     */
+    public boolean retain() {
+        return referenceCount.retain();
+    }
+
+    /**
+     * Give back the reference of a JMS producer, the last one sends the pending batches and shuts the linger timer
+     * down.
+     *
+     * @return true if the sender has been shut down
+     */
+    public boolean release() {
+        if (!referenceCount.release()) {
+            return false;
+        }
+        flush();
+        if (lingerTimer != null) {
+            lingerTimer.shutdown();
+        }
+        return true;
+    }
+
+    /**
+     * Send the message, or add it to the batch of its topic.
+     *
+     * @param rocketmqMsg the converted message
+     * @param jmsMsg the message handed to the listener
+     * @param listener notified once the message is stored or failed
+     * @param owner the messages in flight of the sending producer
+     * @throws javax.jms.JMSException if interrupted while waiting for the in-flight window
+     */
+    public void send(Message rocketmqMsg, JmsBaseMessage jmsMsg, CompletionListener listener,
+        ProducerSends owner) throws JMSException {
+        try {
+            inFlightSends.acquire();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JMSException("Interrupted while waiting for the messages in flight");
+        }
+        owner.increment();
+        Request request = new Request(rocketmqMsg, jmsMsg, listener, owner);
+        if (batchSize <= 1 || rocketmqMsg.getDelayTimeLevel() > 0) {
+            sendOne(request);
+            return;
+        }
+
+        List<Batch> full = new ArrayList<Batch>(2);
+        synchronized (pendingBatches) {
+            Batch batch = pendingBatches.get(rocketmqMsg.getTopic());
+            if (batch != null && batch.bytes + rocketmqMsg.getBody().length > batchMaxBytes) {
+                pendingBatches.remove(batch.topic);
+                full.add(batch);
+                batch = null;
+            }
+            if (batch == null) {
+                batch = new Batch(rocketmqMsg.getTopic());
+                pendingBatches.put(batch.topic, batch);
+                scheduleLinger(batch);
+            }
+            batch.add(request);
+            if (batch.requests.size() >= batchSize || batch.bytes >= batchMaxBytes) {
+                pendingBatches.remove(batch.topic);
+                full.add(batch);
+            }
+        }
+        for (Batch batch : full) {
+            sendBatch(batch);
+        }
+    }
+
+    /**
+     * Send the pending batches without waiting for their linger time.
+     */
+    public void flush() {
+        flush(null);
+    }
+
+    /**
+     * Send the pending batches holding messages of a producer without waiting for their linger time, the messages of
+     * the other producers packed in the same batches go along.
+     *
+     * @param owner the messages in flight of the producer, null for all the batches
+     */
+    public void flush(ProducerSends owner) {
+        List<Batch> batches = new ArrayList<Batch>();
+        synchronized (pendingBatches) {
+            for (Iterator<Batch> it = pendingBatches.values().iterator(); it.hasNext(); ) {
+                Batch batch = it.next();
+                if (owner == null || batch.holds(owner)) {
+                    it.remove();
+                    batches.add(batch);
+                }
+            }
+        }
+        for (Batch batch : batches) {
+            sendBatch(batch);
+        }
+    }
+
+    private void scheduleLinger(final Batch batch) {
+        lingerTimer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (pendingBatches) {
+                    if (pendingBatches.get(batch.topic) != batch) {
+                        return;
+                    }
+                    pendingBatches.remove(batch.topic);
+                }
+                sendBatch(batch);
+            }
+        }, lingerMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void sendOne(final Request request) {
+        try {
+            producer.send(request.rocketmqMsg, new SendCallback() {
+                @Override
+                public void onSuccess(SendResult sendResult) {
+                    if (sendResult.getSendStatus() == SendStatus.SEND_OK) {
+                        complete(request, sendResult.getMsgId());
+                    }
+                    else {
+                        fail(request, new Exception("SendResult is " + sendResult));
+                    }
+                }
+
+                @Override
+                public void onException(Throwable e) {
+                    fail(request, e);
+                }
+            });
+        }
+        catch (Exception e) {
+            fail(request, e);
+        }
+    }
+
+    /**
+     * Send the messages of a batch at once, they get their message id before as the producer does for a synchronous
+     * batch.
+     */
+    private void sendBatch(final Batch batch) {
+        if (batch.requests.size() == 1) {
+            sendOne(batch.requests.get(0));
+            return;
+        }
+        try {
+            List<Message> messages = new ArrayList<Message>(batch.requests.size());
+            for (Request request : batch.requests) {
+                Validators.checkMessage(request.rocketmqMsg, producer);
+                MessageClientIDSetter.setUniqID(request.rocketmqMsg);
+                messages.add(request.rocketmqMsg);
+            }
+            MessageBatch messageBatch = MessageBatch.generateFromList(messages);
+            messageBatch.setBody(messageBatch.encode());
+            producer.send(messageBatch, new SendCallback() {
+                @Override
+                public void onSuccess(SendResult sendResult) {
+                    for (Request request : batch.requests) {
+                        if (sendResult.getSendStatus() == SendStatus.SEND_OK) {
+                            complete(request, MessageClientIDSetter.getUniqID(request.rocketmqMsg));
+                        }
+                        else {
+                            fail(request, new Exception("SendResult is " + sendResult));
+                        }
+                    }
+                }
+
+                @Override
+                public void onException(Throwable e) {
+                    for (Request request : batch.requests) {
+                        fail(request, e);
+                    }
+                }
+            });
+        }
+        catch (Exception e) {
+            for (Request request : batch.requests) {
+                fail(request, e);
+            }
+        }
+    }
+
+    private void complete(Request request, String msgId) {
+        try {
+            request.jmsMsg.setHeader(JmsBaseConstant.JMS_MESSAGE_ID, "ID:" + msgId);
+            request.listener.onCompletion(request.jmsMsg);
+        }
+        catch (Throwable t) {
+            log.warn("CompletionListener failure !", t);
+        }
+        finally {
+            request.owner.decrement();
+            inFlightSends.release();
+        }
+    }
+
+    private void fail(Request request, Throwable cause) {
+        log.error("Send rocketmq message failure !", cause);
+        try {
+            JMSException jmsException = new JMSException("Send rocketmq message failure!");
+            jmsException.initCause(cause);
+            if (cause instanceof Exception) {
+                jmsException.setLinkedException((Exception) cause);
+            }
+            request.listener.onException(request.jmsMsg, jmsException);
+        }
+        catch (Throwable t) {
+            log.warn("CompletionListener failure !", t);
+        }
+        finally {
+            request.owner.decrement();
+            inFlightSends.release();
+        }
+    }
+
+    /**
+     * The messages of one JMS producer sent but not completed yet.
+     */
+    public static class ProducerSends {
+        private int inFlight;
+
+        synchronized void increment() {
+            inFlight++;
+        }
+
+        synchronized void decrement() {
+            if (--inFlight == 0) {
+                notifyAll();
+            }
+        }
+
+        /**
+         * Wait for the messages in flight to complete.
+         *
+         * @param timeoutMillis the maximum time to wait
+         * @return false if some are still in flight after the timeout
+         */
+        public synchronized boolean await(long timeoutMillis) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            while (inFlight > 0) {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    return false;
+                }
+                wait(wait);
+            }
+            return true;
+        }
+    }
+
+    private static class Request {
+        private final Message rocketmqMsg;
+        private final JmsBaseMessage jmsMsg;
+        private final CompletionListener listener;
+        private final ProducerSends owner;
+
+        Request(Message rocketmqMsg, JmsBaseMessage jmsMsg, CompletionListener listener, ProducerSends owner) {
+            this.rocketmqMsg = rocketmqMsg;
+            this.jmsMsg = jmsMsg;
+            this.listener = listener;
+            this.owner = owner;
+        }
+    }
+
+    private static class Batch {
+        private final String topic;
+        private final List<Request> requests = new ArrayList<Request>();
+        private int bytes;
+
+        Batch(String topic) {
+            this.topic = topic;
+        }
+
+        void add(Request request) {
+            requests.add(request);
+            bytes += request.rocketmqMsg.getBody().length;
+        }
+
+        boolean holds(ProducerSends owner) {
+            for (Request request : requests) {
+                if (request.owner == owner) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
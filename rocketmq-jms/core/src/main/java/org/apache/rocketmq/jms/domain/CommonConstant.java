@@ -31,6 +31,28 @@ public interface CommonConstant {
 
     String CONSUME_THREAD_NUMS = "consumeThreadNums";
 
+    String CONSUME_BATCH_SIZE = "consumeBatchSize";
+
     String SEND_TIMEOUT_MILLIS = "sendMsgTimeoutMillis";
 
+    String MAX_IN_FLIGHT_SENDS = "maxInFlightSends";
+
+    String SEND_BATCH_SIZE = "sendBatchSize";
+
+    String SEND_BATCH_MAX_BYTES = "sendBatchMaxBytes";
+
+    String SEND_BATCH_LINGER_MILLIS = "sendBatchLingerMillis";
+
+    String OBJECT_SERIALIZER = "objectSerializer";
+
+    String CONSUME_MODE = "consumeMode";
+
+    String CONSUME_MODE_PULL = "pull";
+
+    String PREFETCH_SIZE = "prefetchSize";
+
+    String PULL_BATCH_SIZE = "pullBatchSize";
+
+    String ACK_BATCH_SIZE = "ackBatchSize";
+
 }
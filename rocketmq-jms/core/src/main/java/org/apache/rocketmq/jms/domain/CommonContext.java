@@ -46,10 +46,50 @@ public class CommonContext {
      * Set consumer threadPool Size
      */
     private int consumeThreadNums;
+    /**
+     * Set the maximum number of messages handed to a consumer thread at once for the message listeners
+     */
+    private int consumeBatchSize = 16;
     /**
      * Set send message timeOut
      */
     private int sendMsgTimeoutMillis = -1;
+    /**
+     * Set the number of messages sent asynchronously and not completed yet, sending blocks beyond
+     */
+    private int maxInFlightSends = 256;
+    /**
+     * Set the number of messages of a destination sent asynchronously in one batch, 1 to send them one by one
+     */
+    private int sendBatchSize = 1;
+    /**
+     * Set the maximum size of the bodies of a batch
+     */
+    private int sendBatchMaxBytes = 1024 * 1024;
+    /**
+     * Set how long a batch waits for more messages
+     */
+    private int sendBatchLingerMillis = 5;
+    /**
+     * Set the id of the serializer of the ObjectMessages sent, java by default
+     */
+    private String objectSerializer;
+    /**
+     * Set to pull to consume by receive() instead of a message listener
+     */
+    private String consumeMode;
+    /**
+     * Set the number of messages prefetched for receive() in pull mode
+     */
+    private int prefetchSize = 1024;
+    /**
+     * Set the maximum number of messages pulled from a queue at once in pull mode
+     */
+    private int pullBatchSize = 32;
+    /**
+     * Set the number of received messages after which their offsets are committed in pull mode
+     */
+    private int ackBatchSize = 32;
 
     /**
      * @return the appId
@@ -135,6 +175,14 @@ public class CommonContext {
         this.consumeThreadNums = consumeThreadNums;
     }
 
+    public int getConsumeBatchSize() {
+        return consumeBatchSize;
+    }
+
+    public void setConsumeBatchSize(int consumeBatchSize) {
+        this.consumeBatchSize = consumeBatchSize;
+    }
+
     public String getConsumerId() {
         return consumerId;
     }
@@ -159,6 +207,78 @@ public class CommonContext {
         this.sendMsgTimeoutMillis = sendMsgTimeoutMillis;
     }
 
+    public int getMaxInFlightSends() {
+        return maxInFlightSends;
+    }
+
+    public void setMaxInFlightSends(int maxInFlightSends) {
+        this.maxInFlightSends = maxInFlightSends;
+    }
+
+    public int getSendBatchSize() {
+        return sendBatchSize;
+    }
+
+    public void setSendBatchSize(int sendBatchSize) {
+        this.sendBatchSize = sendBatchSize;
+    }
+
+    public int getSendBatchMaxBytes() {
+        return sendBatchMaxBytes;
+    }
+
+    public void setSendBatchMaxBytes(int sendBatchMaxBytes) {
+        this.sendBatchMaxBytes = sendBatchMaxBytes;
+    }
+
+    public int getSendBatchLingerMillis() {
+        return sendBatchLingerMillis;
+    }
+
+    public void setSendBatchLingerMillis(int sendBatchLingerMillis) {
+        this.sendBatchLingerMillis = sendBatchLingerMillis;
+    }
+
+    public String getObjectSerializer() {
+        return objectSerializer;
+    }
+
+    public void setObjectSerializer(String objectSerializer) {
+        this.objectSerializer = objectSerializer;
+    }
+
+    public String getConsumeMode() {
+        return consumeMode;
+    }
+
+    public void setConsumeMode(String consumeMode) {
+        this.consumeMode = consumeMode;
+    }
+
+    public int getPrefetchSize() {
+        return prefetchSize;
+    }
+
+    public void setPrefetchSize(int prefetchSize) {
+        this.prefetchSize = prefetchSize;
+    }
+
+    public int getPullBatchSize() {
+        return pullBatchSize;
+    }
+
+    public void setPullBatchSize(int pullBatchSize) {
+        this.pullBatchSize = pullBatchSize;
+    }
+
+    public int getAckBatchSize() {
+        return ackBatchSize;
+    }
+
+    public void setAckBatchSize(int ackBatchSize) {
+        this.ackBatchSize = ackBatchSize;
+    }
+
     public String getMqType() {
         return mqType;
     }
@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.apache.rocketmq.jms.domain;
+
+import javax.jms.Message;
+
+/**
+ * Notified once a message sent asynchronously by {@link JmsBaseMessageProducer} is stored by the broker, or could not
+ * be sent.
+ * <p/>
+ * <P>Same contract as the <CODE>javax.jms.CompletionListener</CODE> of JMS 2.0, which the JMS 1.1 API lacks. It is
+ * called by a RocketMQ client thread, so it should not block.
+ */
+public interface CompletionListener {
+
+    /**
+     * The message is stored, its JMSMessageID is set.
+     *
+     * @param message the message sent
+     */
+    void onCompletion(Message message);
+
+    /**
+     * The message could not be sent.
+     *
+     * @param message the message sent
+     * @param exception the cause of the failure
+     */
+    void onException(Message message, Exception exception);
+}
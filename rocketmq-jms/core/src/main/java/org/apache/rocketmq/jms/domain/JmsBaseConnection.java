@@ -56,6 +56,16 @@ public class JmsBaseConnection implements Connection {
         String consumerThreadNums = connectionParams.get(CommonConstant.CONSUME_THREAD_NUMS);
         String sendMsgTimeoutMillis = connectionParams.get(CommonConstant.SEND_TIMEOUT_MILLIS);
         String instanceName = connectionParams.get(CommonConstant.INSTANCE_NAME);
+        String maxInFlightSends = connectionParams.get(CommonConstant.MAX_IN_FLIGHT_SENDS);
+        String sendBatchSize = connectionParams.get(CommonConstant.SEND_BATCH_SIZE);
+        String sendBatchMaxBytes = connectionParams.get(CommonConstant.SEND_BATCH_MAX_BYTES);
+        String sendBatchLingerMillis = connectionParams.get(CommonConstant.SEND_BATCH_LINGER_MILLIS);
+        String consumeBatchSize = connectionParams.get(CommonConstant.CONSUME_BATCH_SIZE);
+        String objectSerializer = connectionParams.get(CommonConstant.OBJECT_SERIALIZER);
+        String consumeMode = connectionParams.get(CommonConstant.CONSUME_MODE);
+        String prefetchSize = connectionParams.get(CommonConstant.PREFETCH_SIZE);
+        String pullBatchSize = connectionParams.get(CommonConstant.PULL_BATCH_SIZE);
+        String ackBatchSize = connectionParams.get(CommonConstant.ACK_BATCH_SIZE);
 
         if (StringUtils.isNotEmpty(nameServer)) {
             context.setNameServer(nameServer);
@@ -67,16 +77,47 @@ public class JmsBaseConnection implements Connection {
         if (StringUtils.isNotEmpty(consumerThreadNums)) {
             context.setConsumeThreadNums(Integer.parseInt(consumerThreadNums));
         }
+        if (StringUtils.isNotEmpty(consumeBatchSize)) {
+            context.setConsumeBatchSize(Integer.parseInt(consumeBatchSize));
+        }
         if (StringUtils.isNotEmpty(sendMsgTimeoutMillis)) {
             context.setSendMsgTimeoutMillis(Integer.parseInt(sendMsgTimeoutMillis));
         }
+        if (StringUtils.isNotEmpty(maxInFlightSends)) {
+            context.setMaxInFlightSends(Integer.parseInt(maxInFlightSends));
+        }
+        if (StringUtils.isNotEmpty(sendBatchSize)) {
+            context.setSendBatchSize(Integer.parseInt(sendBatchSize));
+        }
+        if (StringUtils.isNotEmpty(sendBatchMaxBytes)) {
+            context.setSendBatchMaxBytes(Integer.parseInt(sendBatchMaxBytes));
+        }
+        if (StringUtils.isNotEmpty(sendBatchLingerMillis)) {
+            context.setSendBatchLingerMillis(Integer.parseInt(sendBatchLingerMillis));
+        }
+        if (StringUtils.isNotEmpty(objectSerializer)) {
+            context.setObjectSerializer(objectSerializer);
+        }
+        if (StringUtils.isNotEmpty(consumeMode)) {
+            context.setConsumeMode(consumeMode);
+        }
+        if (StringUtils.isNotEmpty(prefetchSize)) {
+            context.setPrefetchSize(Integer.parseInt(prefetchSize));
+        }
+        if (StringUtils.isNotEmpty(pullBatchSize)) {
+            context.setPullBatchSize(Integer.parseInt(pullBatchSize));
+        }
+        if (StringUtils.isNotEmpty(ackBatchSize)) {
+            context.setAckBatchSize(Integer.parseInt(ackBatchSize));
+        }
     }
 
     @Override
     public Session createSession(boolean transacted, int acknowledgeMode) throws JMSException {
 
         Preconditions.checkArgument(!transacted, "Not support transaction Session !");
-        Preconditions.checkArgument(Session.AUTO_ACKNOWLEDGE == acknowledgeMode,
+        Preconditions.checkArgument(Session.AUTO_ACKNOWLEDGE == acknowledgeMode
+            || Session.DUPS_OK_ACKNOWLEDGE == acknowledgeMode,
             "Not support this acknowledge mode: " + acknowledgeMode);
 
         if (null != this.session) {
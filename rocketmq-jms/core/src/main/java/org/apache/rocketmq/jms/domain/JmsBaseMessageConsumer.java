@@ -27,26 +27,71 @@ import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageConsumer;
 import javax.jms.MessageListener;
+import javax.jms.Session;
+import org.apache.rocketmq.client.consumer.DefaultMQPullConsumer;
 import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
 import org.apache.rocketmq.client.exception.MQClientException;
+import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.jms.util.ExceptionUtil;
+import org.apache.rocketmq.jms.util.MessageConverter;
 
 public class JmsBaseMessageConsumer implements MessageConsumer {
 
-    private static final Object LOCK_OBJECT = new Object();
     //all shared consumers
     private static ConcurrentMap<String/**consumerId*/, RMQPushConsumerExt> consumerMap = new MapMaker().makeMap();
+    //all shared consumers in pull mode
+    private static ConcurrentMap<String/**consumerId*/, RMQPullConsumerExt> pullConsumerMap = new MapMaker().makeMap();
+    //how often a blocked receive checks whether the consumer has been closed
+    private static final long RECEIVE_CHECK_INTERVAL_MILLIS = 100;
     private final AtomicBoolean closed = new AtomicBoolean(false);
     private CommonContext context;
     private Destination destination;
     private MessageListener messageListener;
+    private int acknowledgeMode;
+    private RMQPushConsumerExt rocketmqConsumerExt;
+    private RMQPullConsumerExt pullConsumerExt;
+    private RMQPullConsumerExt.PrefetchBuffer prefetchBuffer;
 
     public JmsBaseMessageConsumer(Destination destination, CommonContext commonContext,
         JmsBaseConnection connection) throws JMSException {
-        synchronized (LOCK_OBJECT) {
-            checkArgs(destination, commonContext);
+        this(destination, commonContext, connection, Session.AUTO_ACKNOWLEDGE);
+    }
+
+    public JmsBaseMessageConsumer(Destination destination, CommonContext commonContext,
+        JmsBaseConnection connection, int acknowledgeMode) throws JMSException {
+        checkArgs(destination, commonContext);
+        this.acknowledgeMode = acknowledgeMode;
+
+        if (isPullMode()) {
+            createPullConsumer(connection);
+            return;
+        }
+
+        this.rocketmqConsumerExt = retainPushConsumer();
+
+        //If the connection has been started, start the consumer right now.
+        if (connection.isStarted()) {
+            try {
+                this.rocketmqConsumerExt.start();
+            }
+            catch (MQClientException mqe) {
+                this.rocketmqConsumerExt.release();
+                JMSException jmsException = new JMSException("Start consumer failed " + context.getConsumerId());
+                jmsException.initCause(mqe);
+                throw jmsException;
+            }
+        }
+    }
 
-            if (null == consumerMap.get(context.getConsumerId())) {
+    /**
+     * Take a reference on the push consumer shared by the consumer group, creating it if needed. The registry is not
+     * locked: when the shared consumer has just been released by its last JMS consumer, it is replaced by a new one
+     * once shut down. It stays in the registry until then, so that no replacement is created before.
+     */
+    private RMQPushConsumerExt retainPushConsumer() {
+        for (;;) {
+            RMQPushConsumerExt consumerExt = consumerMap.get(context.getConsumerId());
+            if (null == consumerExt) {
                 DefaultMQPushConsumer consumer = new DefaultMQPushConsumer(context.getConsumerId());
                 if (context.getConsumeThreadNums() > 0) {
                     consumer.setConsumeThreadMax(context.getConsumeThreadNums());
@@ -58,29 +103,67 @@ public class JmsBaseMessageConsumer implements MessageConsumer {
                 if (!Strings.isNullOrEmpty(context.getInstanceName())) {
                     consumer.setInstanceName(context.getInstanceName());
                 }
-                consumer.setConsumeMessageBatchMaxSize(1);
-                //add subscribe?
-                RMQPushConsumerExt rocketmqConsumerExt = new RMQPushConsumerExt(consumer);
-                consumerMap.putIfAbsent(context.getConsumerId(), rocketmqConsumerExt);
+                consumer.setConsumeMessageBatchMaxSize(Math.max(1, context.getConsumeBatchSize()));
+                consumerExt = new RMQPushConsumerExt(consumer);
+                RMQPushConsumerExt previous = consumerMap.putIfAbsent(context.getConsumerId(), consumerExt);
+                if (null != previous) {
+                    consumerExt = previous;
+                }
             }
+            if (consumerExt.retain()) {
+                return consumerExt;
+            }
+            consumerExt.awaitClosed();
+            consumerMap.remove(context.getConsumerId(), consumerExt);
+        }
+    }
 
-            consumerMap.get(context.getConsumerId()).incrementAndGet();
-
-            //If the connection has been started, start the consumer right now.
-            //add start status?
-            RMQPushConsumerExt consumerExt = consumerMap.get(context.getConsumerId());
+    /**
+     * In pull mode the messages are received from a prefetch buffer filled by a {@link RMQPullConsumerExt}, shared
+     * by the consumers of the consumer group as the push consumer is.
+     */
+    private void createPullConsumer(JmsBaseConnection connection) throws JMSException {
+        this.pullConsumerExt = retainPullConsumer();
+        try {
+            this.prefetchBuffer = this.pullConsumerExt.subscribe(((JmsBaseTopic) destination).getMessageTopic(),
+                ((JmsBaseTopic) destination).getMessageType());
             if (connection.isStarted()) {
-                try {
-                    consumerExt.start();
+                this.pullConsumerExt.start();
+            }
+        }
+        catch (MQClientException mqe) {
+            this.pullConsumerExt.release();
+            throw ExceptionUtil.convertToJmsException(mqe, "Start consumer failed " + context.getConsumerId());
+        }
+    }
+
+    private RMQPullConsumerExt retainPullConsumer() {
+        for (;;) {
+            RMQPullConsumerExt consumerExt = pullConsumerMap.get(context.getConsumerId());
+            if (null == consumerExt) {
+                DefaultMQPullConsumer consumer = new DefaultMQPullConsumer(context.getConsumerId());
+                if (!Strings.isNullOrEmpty(context.getNameServer())) {
+                    consumer.setNamesrvAddr(context.getNameServer());
                 }
-                catch (MQClientException mqe) {
-                    JMSException jmsException = new JMSException("Start consumer failed " + context.getConsumerId());
-                    jmsException.initCause(mqe);
-                    throw jmsException;
+                if (!Strings.isNullOrEmpty(context.getInstanceName())) {
+                    consumer.setInstanceName(context.getInstanceName());
                 }
+                consumerExt = new RMQPullConsumerExt(consumer, context);
+                RMQPullConsumerExt previous = pullConsumerMap.putIfAbsent(context.getConsumerId(), consumerExt);
+                if (null != previous) {
+                    consumerExt = previous;
+                }
+            }
+            if (consumerExt.retain()) {
+                return consumerExt;
             }
+            consumerExt.awaitClosed();
+            pullConsumerMap.remove(context.getConsumerId(), consumerExt);
         }
+    }
 
+    private boolean isPullMode() {
+        return CommonConstant.CONSUME_MODE_PULL.equalsIgnoreCase(context.getConsumeMode());
     }
 
     private void checkArgs(Destination destination, CommonContext context) throws JMSException {
@@ -102,7 +185,9 @@ public class JmsBaseMessageConsumer implements MessageConsumer {
 
     @Override
     public void setMessageListener(MessageListener listener) throws JMSException {
-        RMQPushConsumerExt rocketmqConsumerExt = consumerMap.get(context.getConsumerId());
+        if (isPullMode()) {
+            throw new javax.jms.IllegalStateException("Message listener is not supported in pull mode, use receive()");
+        }
         if (null != rocketmqConsumerExt) {
             try {
                 this.messageListener = listener;
@@ -121,29 +206,90 @@ public class JmsBaseMessageConsumer implements MessageConsumer {
 
     @Override
     public Message receive() throws JMSException {
-        throw new UnsupportedOperationException("Unsupported!");
+        return receive(0);
     }
 
+    /**
+     * Receive the next message from the prefetch buffer, only supported in pull mode.
+     *
+     * @param timeout the timeout in milliseconds, 0 never to expire
+     * @return the next message, or null if none arrives in time or the consumer is closed
+     */
     @Override
     public Message receive(long timeout) throws JMSException {
-        throw new UnsupportedOperationException("Unsupported!");
+        checkPullMode();
+        long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+        try {
+            while (!closed.get()) {
+                long wait = Math.min(deadline - System.currentTimeMillis(), RECEIVE_CHECK_INTERVAL_MILLIS);
+                if (wait <= 0) {
+                    return null;
+                }
+                RMQPullConsumerExt.PrefetchedMessage prefetched = this.prefetchBuffer.poll(wait);
+                if (null != prefetched) {
+                    return convertAndAcknowledge(prefetched);
+                }
+            }
+            return null;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
     }
 
     @Override
     public Message receiveNoWait() throws JMSException {
-        throw new UnsupportedOperationException("Unsupported!");
+        checkPullMode();
+        try {
+            RMQPullConsumerExt.PrefetchedMessage prefetched = this.prefetchBuffer.poll(0);
+            return null == prefetched ? null : convertAndAcknowledge(prefetched);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private void checkPullMode() throws JMSException {
+        if (!isPullMode()) {
+            throw new UnsupportedOperationException("Unsupported! Set " + CommonConstant.CONSUME_MODE + "="
+                + CommonConstant.CONSUME_MODE_PULL + " on the connection to receive synchronously");
+        }
+        if (closed.get()) {
+            throw new javax.jms.IllegalStateException("Consumer is closed");
+        }
+    }
+
+    /**
+     * Convert a message taken from the prefetch buffer, it is only marked received and acknowledged once converted.
+     */
+    private Message convertAndAcknowledge(RMQPullConsumerExt.PrefetchedMessage prefetched) throws JMSException {
+        MessageExt msgRMQ = prefetched.message;
+        Message message;
+        try {
+            message = MessageConverter.convert2JMSMessage(msgRMQ);
+        }
+        catch (Exception e) {
+            this.prefetchBuffer.failed(prefetched);
+            throw ExceptionUtil.convertToJmsException(e, "Convert message failed " + msgRMQ.getMsgId());
+        }
+        this.prefetchBuffer.received(prefetched);
+        this.prefetchBuffer.acknowledge(this.acknowledgeMode);
+        return message;
     }
 
     @Override
     public void close() throws JMSException {
-        synchronized (LOCK_OBJECT) {
-            if (closed.compareAndSet(false, true)) {
-                RMQPushConsumerExt rocketmqConsumerExt = consumerMap.get(context.getConsumerId());
-                if (null != rocketmqConsumerExt && 0 == rocketmqConsumerExt.decrementAndGet()) {
-                    rocketmqConsumerExt.close();
-                    consumerMap.remove(context.getConsumerId());
+        if (closed.compareAndSet(false, true)) {
+            if (isPullMode()) {
+                if (this.pullConsumerExt.release()) {
+                    pullConsumerMap.remove(context.getConsumerId(), this.pullConsumerExt);
                 }
             }
+            else if (this.rocketmqConsumerExt.release()) {
+                consumerMap.remove(context.getConsumerId(), this.rocketmqConsumerExt);
+            }
         }
     }
 
@@ -151,15 +297,20 @@ public class JmsBaseMessageConsumer implements MessageConsumer {
      * Start the consumer to get message from the Broker.
      */
     public void startConsumer() throws JMSException {
-        RMQPushConsumerExt rocketmqConsumerExt = consumerMap.get(context.getConsumerId());
-        if (null != rocketmqConsumerExt) {
-            try {
-                rocketmqConsumerExt.start();
+        if (closed.get()) {
+            return;
+        }
+        try {
+            if (isPullMode()) {
+                this.pullConsumerExt.start();
             }
-            catch (MQClientException mqe) {
-                throw ExceptionUtil.convertToJmsException(mqe, "Start consumer failed");
+            else {
+                this.rocketmqConsumerExt.start();
             }
         }
+        catch (MQClientException mqe) {
+            throw ExceptionUtil.convertToJmsException(mqe, "Start consumer failed");
+        }
     }
 
     public Destination getDestination() throws JMSException {
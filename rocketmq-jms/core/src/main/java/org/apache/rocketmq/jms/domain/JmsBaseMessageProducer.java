@@ -24,6 +24,7 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.jms.Destination;
 import javax.jms.JMSException;
 import javax.jms.MessageProducer;
@@ -39,6 +40,8 @@ import org.apache.rocketmq.jms.domain.message.JmsTextMessage;
 import org.apache.rocketmq.jms.util.ExceptionUtil;
 import org.apache.rocketmq.jms.util.MessageConverter;
 import org.apache.rocketmq.jms.util.MsgConvertUtil;
+import org.apache.rocketmq.jms.util.ObjectSerializer;
+import org.apache.rocketmq.jms.util.ObjectSerializers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,11 +49,20 @@ public class JmsBaseMessageProducer implements MessageProducer {
 
     private static final Object LOCK_OBJECT = new Object();
     private static ConcurrentMap<String, MQProducer> producerMap = new MapMaker().makeMap();
+    private static ConcurrentMap<String, AsyncMessageSender> senderMap = new MapMaker().makeMap();
     private final Logger logger = LoggerFactory.getLogger(JmsBaseMessageProducer.class);
     private CommonContext context;
 
     private Destination destination;
 
+    private ObjectSerializer objectSerializer;
+
+    private AsyncMessageSender sender;
+
+    private final AsyncMessageSender.ProducerSends sends = new AsyncMessageSender.ProducerSends();
+
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
     public JmsBaseMessageProducer(Destination destination, CommonContext context) throws JMSException {
         synchronized (LOCK_OBJECT) {
             checkArgs(destination, context);
@@ -75,6 +87,15 @@ public class JmsBaseMessageProducer implements MessageProducer {
                 producerMap.putIfAbsent(this.context.getProducerId(), producer);
             }
 
+            //the sender released by the last producer of the group is replaced
+            AsyncMessageSender sender = senderMap.get(this.context.getProducerId());
+            if (null == sender || !sender.retain()) {
+                sender = new AsyncMessageSender((DefaultMQProducer) producerMap.get(this.context.getProducerId()),
+                    context);
+                sender.retain();
+                senderMap.put(this.context.getProducerId(), sender);
+            }
+            this.sender = sender;
         }
     }
 
@@ -83,6 +104,10 @@ public class JmsBaseMessageProducer implements MessageProducer {
         Preconditions.checkNotNull(destination.toString(), "Destination can not be null!");
         this.context = context;
         this.destination = destination;
+        this.objectSerializer = Strings.isNullOrEmpty(context.getObjectSerializer())
+            ? ObjectSerializers.getDefault() : ObjectSerializers.get(context.getObjectSerializer());
+        Preconditions.checkArgument(null != this.objectSerializer,
+            "Unknown object serializer: " + context.getObjectSerializer());
     }
 
     @Override
@@ -140,9 +165,31 @@ public class JmsBaseMessageProducer implements MessageProducer {
         return this.destination;
     }
 
+    /**
+     * Send the pending batches holding messages of this producer and wait for the messages it sent asynchronously to
+     * complete. The last producer of the group shuts the shared sender down.
+     *
+     * @throws javax.jms.JMSException
+     */
     @Override
     public void close() throws JMSException {
-        //Nothing to do
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        sender.flush(sends);
+        try {
+            MQProducer producer = producerMap.get(context.getProducerId());
+            long timeoutMillis = 2L * ((DefaultMQProducer) producer).getSendMsgTimeout();
+            if (!sends.await(timeoutMillis)) {
+                logger.warn("Messages of {} still in flight after {} ms", context.getProducerId(), timeoutMillis);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (sender.release()) {
+            senderMap.remove(context.getProducerId(), sender);
+        }
     }
 
     @Override
@@ -166,7 +213,7 @@ public class JmsBaseMessageProducer implements MessageProducer {
             if (context == null) {
                 throw new IllegalStateException("Context should be inited");
             }
-            org.apache.rocketmq.common.message.Message rocketmqMsg = MessageConverter.convert2RMQMessage(jmsMsg);
+            org.apache.rocketmq.common.message.Message rocketmqMsg = MessageConverter.convert2RMQMessage(jmsMsg, objectSerializer);
 
             MQProducer producer = producerMap.get(context.getProducerId());
 
@@ -189,6 +236,44 @@ public class JmsBaseMessageProducer implements MessageProducer {
         }
     }
 
+    public void send(javax.jms.Message message, CompletionListener completionListener) throws JMSException {
+        this.send(getDestination(), message, completionListener);
+    }
+
+    /**
+     * Send the message to the defined Destination asynchronously, the listener is notified once the message is stored
+     * or failed.
+     * <p/>
+     * <P>Blocks while maxInFlightSends messages of the producer group are not completed. With sendBatchSize greater
+     * than 1, the messages are packed into RocketMQ batches per topic, see {@link AsyncMessageSender}.
+     *
+     * @param destination see <CODE>Destination</CODE>
+     * @param message the message to be sent.
+     * @param completionListener notified once the message is sent, by a RocketMQ client thread
+     * @throws javax.jms.JMSException if the message cannot be converted
+     */
+    public void send(Destination destination, javax.jms.Message message,
+        CompletionListener completionListener) throws JMSException {
+        Preconditions.checkNotNull(completionListener, "CompletionListener can not be null!");
+        JmsBaseMessage jmsMsg = (JmsBaseMessage) message;
+        initJMSHeaders(jmsMsg, destination);
+
+        if (context == null) {
+            throw new IllegalStateException("Context should be inited");
+        }
+        org.apache.rocketmq.common.message.Message rocketmqMsg;
+        try {
+            rocketmqMsg = MessageConverter.convert2RMQMessage(jmsMsg, objectSerializer);
+        }
+        catch (Exception e) {
+            throw ExceptionUtil.convertToJmsException(e, "Convert rocketmq message failure!");
+        }
+        if (closed.get()) {
+            throw new javax.jms.IllegalStateException("Producer is closed");
+        }
+        sender.send(rocketmqMsg, jmsMsg, completionListener, sends);
+    }
+
     @Override
     public void send(javax.jms.Message message, int deliveryMode, int priority,
         long timeToLive) throws JMSException {
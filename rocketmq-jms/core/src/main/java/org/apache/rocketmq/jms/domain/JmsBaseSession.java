@@ -167,7 +167,7 @@ public class JmsBaseSession implements Session {
     @Override
     public MessageConsumer createConsumer(Destination destination) throws JMSException {
         JmsBaseMessageConsumer messageConsumer = new
-            JmsBaseMessageConsumer(destination, this.context, this.connection);
+            JmsBaseMessageConsumer(destination, this.context, this.connection, this.acknowledgeMode);
         this.consumerList.addIfAbsent(messageConsumer);
         return messageConsumer;
     }
@@ -0,0 +1,483 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.apache.rocketmq.jms.domain;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.jms.Session;
+import org.apache.rocketmq.client.consumer.DefaultMQPullConsumer;
+import org.apache.rocketmq.client.consumer.MessageQueueListener;
+import org.apache.rocketmq.client.consumer.PullCallback;
+import org.apache.rocketmq.client.consumer.PullResult;
+import org.apache.rocketmq.client.consumer.PullStatus;
+import org.apache.rocketmq.client.exception.MQClientException;
+import org.apache.rocketmq.client.impl.MQClientManager;
+import org.apache.rocketmq.client.impl.factory.MQClientInstance;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pull-mode counterpart of {@link RMQPushConsumerExt}, serving the synchronous receive of the consumers of a
+ * consumer group.
+ * <p/>
+ * <P>For every subscribed topic, the message queues assigned to this client by the rebalance are long-polled in the
+ * background into a {@link PrefetchBuffer} holding at most prefetchSize messages, pulling from a queue stops while
+ * the buffer is full. The offsets of the received messages are committed to the offset store every ackBatchSize
+ * messages, and whenever the buffer runs empty in AUTO_ACKNOWLEDGE mode.
+ */
+public class RMQPullConsumerExt {
+
+    private static final Logger log = LoggerFactory.getLogger(RMQPullConsumerExt.class);
+
+    private static final long PULL_DELAY_WHEN_FLOW_CONTROL = 10;
+
+    private static final long PULL_DELAY_WHEN_EXCEPTION = 1000;
+
+    private final DefaultMQPullConsumer consumer;
+    private final ConcurrentHashMap<String/* Topic */, PrefetchBuffer> subscribeTable = new ConcurrentHashMap<String, PrefetchBuffer>();
+
+    private final int prefetchSize;
+    private final int pullBatchSize;
+    private final int ackBatchSize;
+
+    private final ScheduledExecutorService pullExecutor;
+
+    private final ReferenceCount referenceCount = new ReferenceCount();
+    private AtomicBoolean started = new AtomicBoolean(false);
+    private final CountDownLatch closed = new CountDownLatch(1);
+
+    public RMQPullConsumerExt(DefaultMQPullConsumer consumer, CommonContext context) {
+        this.consumer = consumer;
+        this.prefetchSize = Math.max(1, context.getPrefetchSize());
+        this.pullBatchSize = Math.max(1, Math.min(context.getPullBatchSize(), prefetchSize));
+        this.ackBatchSize = Math.max(1, context.getAckBatchSize());
+        this.pullExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("JmsPrefetchThread_" + consumer.getConsumerGroup())
+            .setDaemon(true)
+            .build());
+        this.consumer.setMessageQueueListener(new MessageQueueListenerImpl());
+    }
+
+    public DefaultMQPullConsumer getConsumer() {
+        return consumer;
+    }
+
+    /**
+     * Take a reference on the consumer for a JMS consumer.
+     *
+     * @return false if the consumer has been closed by its last JMS consumer, it has to be replaced
+     */
+    public boolean retain() {
+        return referenceCount.retain();
+    }
+
+    /**
+     * Give back the reference of a JMS consumer, the last one closes the consumer.
+     *
+     * @return true if the consumer has been closed
+     */
+    public boolean release() {
+        if (referenceCount.release()) {
+            close();
+            return true;
+        }
+        return false;
+    }
+
+    public int getReferenceCount() {
+        return referenceCount.get();
+    }
+
+    /**
+     * Start the consumer, a concurrent call returns once it is started. A closed consumer is not started again.
+     */
+    public synchronized void start() throws MQClientException {
+        if (!this.started.get() && this.closed.getCount() > 0) {
+            this.consumer.start();
+            this.started.set(true);
+            rebalanceImmediately();
+        }
+    }
+
+    public synchronized void close() {
+        this.pullExecutor.shutdownNow();
+        if (this.started.compareAndSet(true, false)) {
+            for (PrefetchBuffer buffer : this.subscribeTable.values()) {
+                buffer.commit();
+            }
+            //persist the committed offsets to the broker
+            this.consumer.shutdown();
+        }
+        this.closed.countDown();
+    }
+
+    /**
+     * Wait for the consumer released by its last JMS consumer to be shut down: until then it is still registered in
+     * the client instance, which refuses another consumer of the same group.
+     */
+    public void awaitClosed() {
+        Uninterruptibles.awaitUninterruptibly(this.closed);
+    }
+
+    /**
+     * Subscribe a topic, the consumers of the same topic share its prefetch buffer.
+     *
+     * @param topic the topic
+     * @param subExpression the tags to receive
+     * @return the prefetch buffer of the topic
+     */
+    public PrefetchBuffer subscribe(String topic, String subExpression) throws MQClientException {
+        if (null == topic) {
+            throw new MQClientException(-1, "topic is null");
+        }
+
+        PrefetchBuffer buffer = this.subscribeTable.get(topic);
+        if (null != buffer) {
+            return buffer;
+        }
+        buffer = new PrefetchBuffer(topic, subExpression);
+        PrefetchBuffer previous = this.subscribeTable.putIfAbsent(topic, buffer);
+        if (null != previous) {
+            return previous;
+        }
+        this.consumer.registerMessageQueueListener(topic, null);
+        if (isStarted()) {
+            this.consumer.getDefaultMQPullConsumerImpl().subscriptionAutomatically(topic);
+            rebalanceImmediately();
+        }
+        return buffer;
+    }
+
+    /**
+     * The pull consumer is only rebalanced every 20 seconds, so ask the client instance to do it now as the push
+     * consumer does when it starts.
+     */
+    private void rebalanceImmediately() {
+        MQClientInstance clientInstance = MQClientManager.getInstance().getAndCreateMQClientInstance(this.consumer);
+        for (String topic : this.subscribeTable.keySet()) {
+            clientInstance.updateTopicRouteInfoFromNameServer(topic);
+        }
+        clientInstance.sendHeartbeatToAllBrokerWithLock();
+        clientInstance.rebalanceImmediately();
+    }
+
+    public boolean isStarted() {
+        return started.get();
+    }
+
+    public boolean isClosed() {
+        return !isStarted();
+    }
+
+    class MessageQueueListenerImpl implements MessageQueueListener {
+
+        @Override
+        public void messageQueueChanged(String topic, Set<MessageQueue> mqAll, Set<MessageQueue> mqDivided) {
+            PrefetchBuffer buffer = RMQPullConsumerExt.this.subscribeTable.get(topic);
+            if (null != buffer) {
+                buffer.assign(mqDivided);
+            }
+        }
+    }
+
+    /**
+     * The messages prefetched from the message queues of a topic.
+     */
+    public class PrefetchBuffer {
+
+        private final String topic;
+
+        private final String subExpression;
+
+        private final LinkedBlockingQueue<PrefetchedMessage> messages = new LinkedBlockingQueue<PrefetchedMessage>();
+
+        /**
+         * The free room of the buffer, taken before pulling and given back once the messages are received.
+         */
+        private final Semaphore room = new Semaphore(prefetchSize);
+
+        private final Map<MessageQueue, PullTask> pullTasks = new ConcurrentHashMap<MessageQueue, PullTask>();
+
+        private final AtomicInteger uncommitted = new AtomicInteger();
+
+        PrefetchBuffer(String topic, String subExpression) {
+            this.topic = topic;
+            this.subExpression = subExpression;
+        }
+
+        /**
+         * Take the next message, waiting for it at most timeoutMillis, 0 not to wait. The message is then either
+         * {@link #received} once converted or {@link #failed}.
+         *
+         * @return the message or null if none arrived in time
+         */
+        PrefetchedMessage poll(long timeoutMillis) throws InterruptedException {
+            return timeoutMillis > 0
+                ? this.messages.poll(timeoutMillis, TimeUnit.MILLISECONDS) : this.messages.poll();
+        }
+
+        /**
+         * Mark a message taken from the buffer as received, its offset is committed by the next acknowledge.
+         */
+        void received(PrefetchedMessage prefetched) {
+            this.room.release();
+            prefetched.pullTask.received(prefetched.message.getQueueOffset());
+        }
+
+        /**
+         * Give up a message taken from the buffer which could not be converted: the offsets of its queue are no
+         * longer committed past it, so that it is received again once the queue is consumed anew.
+         */
+        void failed(PrefetchedMessage prefetched) {
+            this.room.release();
+            prefetched.pullTask.failed(prefetched.message.getQueueOffset());
+        }
+
+        /**
+         * Acknowledge a message taken from the buffer according to the acknowledge mode of the session: in
+         * AUTO_ACKNOWLEDGE mode the offsets are committed every ackBatchSize messages and when the buffer runs empty,
+         * in DUPS_OK_ACKNOWLEDGE mode only every ackBatchSize messages.
+         */
+        public void acknowledge(int acknowledgeMode) {
+            if (this.uncommitted.incrementAndGet() >= ackBatchSize
+                || acknowledgeMode == Session.AUTO_ACKNOWLEDGE && this.messages.isEmpty()) {
+                commit();
+            }
+        }
+
+        /**
+         * Commit the offsets of the received messages to the offset store, which persists them to the broker.
+         */
+        public synchronized void commit() {
+            this.uncommitted.set(0);
+            for (PullTask pullTask : this.pullTasks.values()) {
+                pullTask.commit();
+            }
+        }
+
+        public int size() {
+            return this.messages.size();
+        }
+
+        synchronized void assign(Set<MessageQueue> messageQueues) {
+            for (PullTask pullTask : this.pullTasks.values()) {
+                if (!messageQueues.contains(pullTask.messageQueue)) {
+                    pullTask.dropped = true;
+                    pullTask.commit();
+                    //the rebalance has already persisted and forgotten the offset of the queue
+                    pullTask.persist();
+                    this.pullTasks.remove(pullTask.messageQueue);
+                }
+            }
+            for (MessageQueue messageQueue : messageQueues) {
+                if (!this.pullTasks.containsKey(messageQueue)) {
+                    PullTask pullTask = new PullTask(this, messageQueue);
+                    this.pullTasks.put(messageQueue, pullTask);
+                    pullTask.executeNow();
+                }
+            }
+            log.info("Prefetch from {} queues of {}: {}", messageQueues.size(), this.topic, messageQueues);
+        }
+    }
+
+    /**
+     * The long polling of a message queue into a prefetch buffer.
+     */
+    class PullTask implements Runnable, PullCallback {
+
+        private final PrefetchBuffer buffer;
+
+        private final MessageQueue messageQueue;
+
+        private volatile boolean dropped;
+
+        private long nextOffset = -1;
+
+        private int requested;
+
+        /**
+         * The offset following the last message received
+         */
+        private final AtomicLong receivedOffset = new AtomicLong(-1);
+
+        /**
+         * The offset of the first message which could not be received, the offsets are not committed past it
+         */
+        private final AtomicLong failedOffset = new AtomicLong(Long.MAX_VALUE);
+
+        private long committedOffset = -1;
+
+        PullTask(PrefetchBuffer buffer, MessageQueue messageQueue) {
+            this.buffer = buffer;
+            this.messageQueue = messageQueue;
+        }
+
+        @Override
+        public void run() {
+            if (this.dropped || isClosed()) {
+                return;
+            }
+            try {
+                if (this.nextOffset < 0) {
+                    this.nextOffset = consumer.fetchConsumeOffset(this.messageQueue, true);
+                    if (this.nextOffset < 0) {
+                        //no offset of the consumer group yet, consume from the last offset like the push consumer
+                        this.nextOffset = consumer.maxOffset(this.messageQueue);
+                    }
+                }
+                if (!this.buffer.room.tryAcquire(pullBatchSize)) {
+                    executeLater(PULL_DELAY_WHEN_FLOW_CONTROL);
+                    return;
+                }
+                this.requested = pullBatchSize;
+                try {
+                    consumer.pullBlockIfNotFound(this.messageQueue, this.buffer.subExpression, this.nextOffset,
+                        this.requested, this);
+                }
+                catch (Exception e) {
+                    this.buffer.room.release(this.requested);
+                    throw e;
+                }
+            }
+            catch (Exception e) {
+                log.warn("Pull from {} failed", this.messageQueue, e);
+                executeLater(PULL_DELAY_WHEN_EXCEPTION);
+            }
+        }
+
+        @Override
+        public void onSuccess(PullResult pullResult) {
+            List<MessageExt> found = pullResult.getPullStatus() == PullStatus.FOUND
+                ? pullResult.getMsgFoundList() : Collections.<MessageExt>emptyList();
+            this.nextOffset = pullResult.getNextBeginOffset();
+            this.buffer.room.release(this.requested - found.size());
+            for (MessageExt message : found) {
+                this.buffer.messages.add(new PrefetchedMessage(this, message));
+            }
+            executeNow();
+        }
+
+        @Override
+        public void onException(Throwable e) {
+            this.buffer.room.release(this.requested);
+            if (!isClosed()) {
+                log.warn("Pull from {} failed", this.messageQueue, e);
+            }
+            executeLater(PULL_DELAY_WHEN_EXCEPTION);
+        }
+
+        void received(long queueOffset) {
+            long offset = queueOffset + 1;
+            long current;
+            do {
+                current = this.receivedOffset.get();
+            }
+            while (offset > current && !this.receivedOffset.compareAndSet(current, offset));
+        }
+
+        void failed(long queueOffset) {
+            long current;
+            do {
+                current = this.failedOffset.get();
+            }
+            while (queueOffset < current && !this.failedOffset.compareAndSet(current, queueOffset));
+            log.warn("Message at offset {} of {} not received, its offsets are committed up to {} only", queueOffset,
+                this.messageQueue, this.failedOffset.get());
+        }
+
+        /**
+         * @return the offset to commit, following the last message received but not past a failed one
+         */
+        long committableOffset() {
+            return Math.min(this.receivedOffset.get(), this.failedOffset.get());
+        }
+
+        void commit() {
+            long offset = committableOffset();
+            if (offset > this.committedOffset) {
+                try {
+                    consumer.updateConsumeOffset(this.messageQueue, offset);
+                    this.committedOffset = offset;
+                }
+                catch (MQClientException e) {
+                    log.warn("Commit offset {} of {} failed", offset, this.messageQueue, e);
+                }
+            }
+        }
+
+        void persist() {
+            if (this.committedOffset >= 0) {
+                try {
+                    consumer.getDefaultMQPullConsumerImpl().updateConsumeOffsetToBroker(this.messageQueue,
+                        this.committedOffset, true);
+                }
+                catch (Exception e) {
+                    log.warn("Persist offset {} of {} failed", this.committedOffset, this.messageQueue, e);
+                }
+            }
+        }
+
+        void executeNow() {
+            try {
+                pullExecutor.execute(this);
+            }
+            catch (RejectedExecutionException e) {
+                //closed
+            }
+        }
+
+        void executeLater(long delayMillis) {
+            try {
+                pullExecutor.schedule(this, delayMillis, TimeUnit.MILLISECONDS);
+            }
+            catch (RejectedExecutionException e) {
+                //closed
+            }
+        }
+    }
+
+    static class PrefetchedMessage {
+
+        final PullTask pullTask;
+
+        final MessageExt message;
+
+        PrefetchedMessage(PullTask pullTask, MessageExt message) {
+            this.pullTask = pullTask;
+            this.message = message;
+        }
+    }
+}
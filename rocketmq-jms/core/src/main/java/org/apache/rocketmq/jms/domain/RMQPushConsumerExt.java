@@ -17,24 +17,29 @@
 
 package org.apache.rocketmq.jms.domain;
 
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.rocketmq.client.consumer.MQPushConsumer;
-import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyContext;
 import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus;
 import org.apache.rocketmq.client.consumer.listener.MessageListenerConcurrently;
 import org.apache.rocketmq.client.exception.MQClientException;
 import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.jms.domain.message.JmsBaseMessage;
 import org.apache.rocketmq.jms.util.MessageConverter;
 
 public class RMQPushConsumerExt {
     private final MQPushConsumer consumer;
     private final ConcurrentHashMap<String/* Topic */, javax.jms.MessageListener> subscribeTable = new ConcurrentHashMap<String, javax.jms.MessageListener>();
 
-    private AtomicInteger referenceCount = new AtomicInteger(0);
+    private final ReferenceCount referenceCount = new ReferenceCount();
     private AtomicBoolean started = new AtomicBoolean(false);
+    private final CountDownLatch closed = new CountDownLatch(1);
 
     public RMQPushConsumerExt(MQPushConsumer consumer) {
         this.consumer = consumer;
@@ -44,33 +49,61 @@ public class RMQPushConsumerExt {
         return consumer;
     }
 
-    public int incrementAndGet() {
-        return referenceCount.incrementAndGet();
+    /**
+     * Take a reference on the consumer for a JMS consumer.
+     *
+     * @return false if the consumer has been closed by its last JMS consumer, it has to be replaced
+     */
+    public boolean retain() {
+        return referenceCount.retain();
     }
 
-    public int decrementAndGet() {
-        return referenceCount.decrementAndGet();
+    /**
+     * Give back the reference of a JMS consumer, the last one closes the consumer.
+     *
+     * @return true if the consumer has been closed
+     */
+    public boolean release() {
+        if (referenceCount.release()) {
+            close();
+            return true;
+        }
+        return false;
     }
 
     public int getReferenceCount() {
         return referenceCount.get();
     }
-    public void start() throws MQClientException {
+
+    /**
+     * Start the consumer, a concurrent call returns once it is started. A closed consumer is not started again.
+     */
+    public synchronized void start() throws MQClientException {
         if (consumer == null) {
             throw new MQClientException(-1, "consumer is null");
         }
 
-        if (this.started.compareAndSet(false, true)) {
+        if (!this.started.get() && this.closed.getCount() > 0) {
             this.consumer.registerMessageListener(new MessageListenerImpl());
             this.consumer.start();
+            this.started.set(true);
         }
     }
 
 
-    public void close() {
+    public synchronized void close() {
         if (this.started.compareAndSet(true, false)) {
             this.consumer.shutdown();
         }
+        this.closed.countDown();
+    }
+
+    /**
+     * Wait for the consumer released by its last JMS consumer to be shut down: until then it is still registered in
+     * the client instance, which refuses another consumer of the same group.
+     */
+    public void awaitClosed() {
+        Uninterruptibles.awaitUninterruptibly(this.closed);
     }
 
     public void subscribe(String topic, String subExpression, javax.jms.MessageListener listener) throws MQClientException {
@@ -96,21 +129,35 @@ public class RMQPushConsumerExt {
         }
     }
 
+    /**
+     * Deliver the messages of a batch one after the other, the destinations they carry being parsed once per batch.
+     * When a message fails, the ones before it are acknowledged and the others are consumed again later.
+     */
     class MessageListenerImpl implements MessageListenerConcurrently {
 
         @Override
         public ConsumeConcurrentlyStatus consumeMessage(List<MessageExt> msgsRMQList, ConsumeConcurrentlyContext contextRMQ) {
-            MessageExt msgRMQ = msgsRMQList.get(0);
-            javax.jms.MessageListener listener = RMQPushConsumerExt.this.subscribeTable.get(msgRMQ.getTopic());
-            if (null == listener) {
-                throw new RuntimeException("MessageListener is null");
-            }
-
-            try {
-                listener.onMessage(MessageConverter.convert2JMSMessage(msgRMQ));
-            }
-            catch (Exception e) {
-                return ConsumeConcurrentlyStatus.RECONSUME_LATER;
+            Map<String, JmsBaseTopic> destinations = new HashMap<String, JmsBaseTopic>();
+            String topic = null;
+            javax.jms.MessageListener listener = null;
+            for (int i = 0; i < msgsRMQList.size(); i++) {
+                MessageExt msgRMQ = msgsRMQList.get(i);
+                try {
+                    //the messages consumed again may come from several topics
+                    if (!msgRMQ.getTopic().equals(topic)) {
+                        topic = msgRMQ.getTopic();
+                        listener = RMQPushConsumerExt.this.subscribeTable.get(topic);
+                    }
+                    if (null == listener) {
+                        throw new RuntimeException("MessageListener is null");
+                    }
+                    JmsBaseMessage message = MessageConverter.convert2JMSMessage(msgRMQ, destinations);
+                    listener.onMessage(message);
+                }
+                catch (Exception e) {
+                    contextRMQ.setAckIndex(i - 1);
+                    return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
+                }
             }
             return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
         }
@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.apache.rocketmq.jms.domain;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the JMS consumers sharing a RocketMQ consumer, or the JMS producers sharing a sender, without locking.
+ * <p/>
+ * <P>Once released by its last user the count can not be retained anymore, so that a RocketMQ client being closed is
+ * replaced in the registry rather than reused.
+ */
+class ReferenceCount {
+
+    private static final int RELEASED = -1;
+
+    private final AtomicInteger count = new AtomicInteger(0);
+
+    /**
+     * @return false if the count has been released by its last user
+     */
+    boolean retain() {
+        for (;;) {
+            int current = this.count.get();
+            if (RELEASED == current) {
+                return false;
+            }
+            if (this.count.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return true if this was the last user, which has to close the RocketMQ client
+     */
+    boolean release() {
+        return 0 == this.count.decrementAndGet() && this.count.compareAndSet(0, RELEASED);
+    }
+
+    int get() {
+        return Math.max(0, this.count.get());
+    }
+}
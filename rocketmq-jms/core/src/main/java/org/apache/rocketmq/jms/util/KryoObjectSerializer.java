@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.apache.rocketmq.jms.util;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.pool.KryoFactory;
+import com.esotericsoftware.kryo.pool.KryoPool;
+import java.io.IOException;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+
+/**
+ * A binary serialization with Kryo, much faster and more compact than the Java serialization.
+ * <p/>
+ * <P>The common JDK classes are registered with fixed ids, in addition to the ones Kryo registers itself, and the
+ * classes given to the constructor follow them: producers and consumers must give the same classes in the same
+ * order. Any other class is written with its name. The objects are serialized field by field, so the writeObject and
+ * readObject methods of the classes are not called. The Kryo instances are pooled and every thread reuses its output
+ * buffer.
+ */
+public class KryoObjectSerializer implements ObjectSerializer {
+
+    public static final String ID = "kryo";
+
+    /**
+     * The first id of the registered classes, above the ones of the classes Kryo registers itself
+     */
+    private static final int FIRST_REGISTRATION_ID = 20;
+
+    private static final List<Class<?>> COMMON_CLASSES = Arrays.<Class<?>>asList(
+        ArrayList.class, LinkedList.class, HashMap.class, LinkedHashMap.class, TreeMap.class, HashSet.class,
+        LinkedHashSet.class, TreeSet.class, Date.class, BigDecimal.class, BigInteger.class, UUID.class,
+        Object[].class, String[].class, byte[].class, int[].class, long[].class, double[].class);
+
+    private static final int BUFFER_SIZE = 4096;
+
+    /**
+     * The output buffer of a thread is dropped rather than kept beyond this size
+     */
+    private static final int MAX_POOLED_BUFFER_SIZE = 1024 * 1024;
+
+    private final String id;
+
+    private final KryoPool pool;
+
+    private final ThreadLocal<Output> outputs = new ThreadLocal<Output>() {
+        @Override
+        protected Output initialValue() {
+            return new Output(BUFFER_SIZE, -1);
+        }
+    };
+
+    public KryoObjectSerializer() {
+        this(ID, Collections.<Class<?>>emptyList());
+    }
+
+    /**
+     * @param id the id of the serializer, distinct from {@link #ID} when classes are registered
+     * @param registeredClasses the application classes to register
+     */
+    public KryoObjectSerializer(String id, final List<Class<?>> registeredClasses) {
+        this.id = id;
+        this.pool = new KryoPool.Builder(new KryoFactory() {
+            @Override
+            public Kryo create() {
+                Kryo kryo = new Kryo();
+                kryo.setInstantiatorStrategy(new Kryo.DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+                ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+                if (null != classLoader) {
+                    kryo.setClassLoader(classLoader);
+                }
+                int registrationId = FIRST_REGISTRATION_ID;
+                for (Class<?> type : COMMON_CLASSES) {
+                    kryo.register(type, registrationId++);
+                }
+                for (Class<?> type : registeredClasses) {
+                    kryo.register(type, registrationId++);
+                }
+                return kryo;
+            }
+        }).softReferences().build();
+    }
+
+    @Override
+    public String getId() {
+        return this.id;
+    }
+
+    @Override
+    public byte[] serialize(Serializable object) throws IOException {
+        Output output = this.outputs.get();
+        Kryo kryo = this.pool.borrow();
+        try {
+            output.clear();
+            kryo.writeClassAndObject(output, object);
+            return output.toBytes();
+        }
+        catch (RuntimeException e) {
+            throw new IOException("Serialize " + object.getClass().getName() + " failed", e);
+        }
+        finally {
+            this.pool.release(kryo);
+            if (output.getBuffer().length > MAX_POOLED_BUFFER_SIZE) {
+                this.outputs.remove();
+            }
+        }
+    }
+
+    @Override
+    public Serializable deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        Kryo kryo = this.pool.borrow();
+        try {
+            return (Serializable) kryo.readClassAndObject(new Input(bytes));
+        }
+        catch (RuntimeException e) {
+            throw new IOException("Deserialize failed", e);
+        }
+        finally {
+            this.pool.release(kryo);
+        }
+    }
+}
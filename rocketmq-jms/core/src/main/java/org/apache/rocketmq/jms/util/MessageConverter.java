@@ -42,6 +42,11 @@ import static org.apache.rocketmq.jms.domain.JmsBaseMessageProducer.initRocketMQ
 
 public class MessageConverter {
     public static byte[] getContentFromJms(javax.jms.Message jmsMessage) throws Exception {
+        return getContentFromJms(jmsMessage, ObjectSerializers.getDefault());
+    }
+
+    public static byte[] getContentFromJms(javax.jms.Message jmsMessage,
+        ObjectSerializer objectSerializer) throws Exception {
         byte[] content;
         if (jmsMessage instanceof TextMessage) {
             if (StringUtils.isEmpty(((TextMessage) jmsMessage).getText())) {
@@ -54,7 +59,7 @@ public class MessageConverter {
             if (((ObjectMessage) jmsMessage).getObject() == null) {
                 throw new IllegalArgumentException("Message body length is zero");
             }
-            content = MsgConvertUtil.objectSerialize(((ObjectMessage) jmsMessage).getObject());
+            content = MsgConvertUtil.objectSerialize(((ObjectMessage) jmsMessage).getObject(), objectSerializer);
         }
         else if (jmsMessage instanceof BytesMessage) {
             JmsBytesMessage bytesMessage = (JmsBytesMessage) jmsMessage;
@@ -71,6 +76,17 @@ public class MessageConverter {
     }
 
     public static JmsBaseMessage convert2JMSMessage(MessageExt msg) throws Exception {
+        return convert2JMSMessage(msg, null);
+    }
+
+    /**
+     * Convert a message of a batch, sharing the destinations already parsed for the batch.
+     *
+     * @param msg the RocketMQ message
+     * @param destinations the destinations parsed by destination string, may be null not to share them
+     */
+    public static JmsBaseMessage convert2JMSMessage(MessageExt msg,
+        Map<String, JmsBaseTopic> destinations) throws Exception {
         JmsBaseMessage message;
         if (MsgConvertUtil.MSGMODEL_BYTES.equals(
             msg.getUserProperty(MsgConvertUtil.JMS_MSGMODEL))) {
@@ -78,7 +94,8 @@ public class MessageConverter {
         }
         else if (MsgConvertUtil.MSGMODEL_OBJ.equals(
             msg.getUserProperty(MsgConvertUtil.JMS_MSGMODEL))) {
-            message = new JmsObjectMessage(MsgConvertUtil.objectDeserialize(msg.getBody()));
+            message = new JmsObjectMessage(MsgConvertUtil.objectDeserialize(msg.getBody(),
+                msg.getUserProperty(MsgConvertUtil.JMS_SERIALIZER)));
         }
         else if (MsgConvertUtil.MSGMODEL_TEXT.equals(
             msg.getUserProperty(MsgConvertUtil.JMS_MSGMODEL))) {
@@ -109,9 +126,15 @@ public class MessageConverter {
                 if (JmsBaseConstant.JMS_DESTINATION.equals(properName)) {
                     String destinationStr = properValue;
                     if (null != destinationStr) {
-                        List<String> msgTuple = Arrays.asList(destinationStr.split(":"));
-                        message.setHeader(JmsBaseConstant.JMS_DESTINATION,
-                            new JmsBaseTopic(msgTuple.get(0), msgTuple.get(1)));
+                        JmsBaseTopic destination = null == destinations ? null : destinations.get(destinationStr);
+                        if (null == destination) {
+                            List<String> msgTuple = Arrays.asList(destinationStr.split(":"));
+                            destination = new JmsBaseTopic(msgTuple.get(0), msgTuple.get(1));
+                            if (null != destinations) {
+                                destinations.put(destinationStr, destination);
+                            }
+                        }
+                        message.setHeader(JmsBaseConstant.JMS_DESTINATION, destination);
                     }
                 }
                 else if (JmsBaseConstant.JMS_DELIVERY_MODE.equals(properName) ||
@@ -145,9 +168,16 @@ public class MessageConverter {
     }
 
     public static Message convert2RMQMessage(JmsBaseMessage jmsMsg) throws Exception {
+        return convert2RMQMessage(jmsMsg, ObjectSerializers.getDefault());
+    }
+
+    /**
+     * Convert a message, serializing the body of an ObjectMessage with the given serializer.
+     */
+    public static Message convert2RMQMessage(JmsBaseMessage jmsMsg, ObjectSerializer objectSerializer) throws Exception {
         Message rocketmqMsg = new MessageExt();
         // 1. Transform message body
-        rocketmqMsg.setBody(MessageConverter.getContentFromJms(jmsMsg));
+        rocketmqMsg.setBody(MessageConverter.getContentFromJms(jmsMsg, objectSerializer));
 
         // 2. Transform topic and messageType
         JmsBaseTopic destination = (JmsBaseTopic) jmsMsg.getHeaders().get(JmsBaseConstant.JMS_DESTINATION);
@@ -176,6 +206,10 @@ public class MessageConverter {
                 rocketmqMsg.putUserProperty(name, value);
             }
         }
+        //the messages of the Java serialization stay readable by the consumers without serializers
+        if (jmsMsg instanceof ObjectMessage && !JavaObjectSerializer.ID.equals(objectSerializer.getId())) {
+            rocketmqMsg.putUserProperty(MsgConvertUtil.JMS_SERIALIZER, objectSerializer.getId());
+        }
 
         return rocketmqMsg;
     }
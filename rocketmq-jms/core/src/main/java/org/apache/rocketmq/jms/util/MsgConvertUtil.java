@@ -17,11 +17,7 @@
 
 package org.apache.rocketmq.jms.util;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
 
 public class MsgConvertUtil {
@@ -43,21 +39,34 @@ public class MsgConvertUtil {
     public static final String MSG_TOPIC = "msgTopic";
     public static final String MSG_TYPE = "msgType";
 
+    /**
+     * The id of the {@link ObjectSerializer} of an ObjectMessage, the Java serialization when absent
+     */
+    public static final String JMS_SERIALIZER = "jmsSerializer";
+
     public static byte[] objectSerialize(Object object) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ObjectOutputStream oos = new ObjectOutputStream(baos);
-        oos.writeObject(object);
-        oos.close();
-        baos.close();
-        return baos.toByteArray();
+        return objectSerialize(object, ObjectSerializers.getDefault());
+    }
+
+    public static byte[] objectSerialize(Object object, ObjectSerializer serializer) throws IOException {
+        return serializer.serialize((Serializable) object);
     }
 
     public static Serializable objectDeserialize(byte[] bytes) throws IOException, ClassNotFoundException {
-        ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-        ObjectInputStream ois = new ObjectInputStream(bais);
-        ois.close();
-        bais.close();
-        return (Serializable) ois.readObject();
+        return objectDeserialize(bytes, null);
+    }
+
+    /**
+     * @param serializerId the id of the serializer of the message, null for the Java serialization
+     */
+    public static Serializable objectDeserialize(byte[] bytes,
+        String serializerId) throws IOException, ClassNotFoundException {
+        ObjectSerializer serializer = null == serializerId
+            ? ObjectSerializers.getDefault() : ObjectSerializers.get(serializerId);
+        if (null == serializer) {
+            throw new IOException("Unknown object serializer " + serializerId);
+        }
+        return serializer.deserialize(bytes);
     }
 
     public static final byte[] string2Bytes(String s, String charset) {
@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.apache.rocketmq.jms.util;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Serializes the body of the ObjectMessages.
+ * <p/>
+ * <P>The id of the serializer is sent with the message, so that the consumer decodes it with the same serializer.
+ * Serializers are registered in {@link ObjectSerializers}, directly or as a {@link java.util.ServiceLoader} service
+ * of this interface.
+ */
+public interface ObjectSerializer {
+
+    /**
+     * @return the id sent in the message property {@link MsgConvertUtil#JMS_SERIALIZER}
+     */
+    String getId();
+
+    byte[] serialize(Serializable object) throws IOException;
+
+    Serializable deserialize(byte[] bytes) throws IOException, ClassNotFoundException;
+}
@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.apache.rocketmq.jms.util;
+
+import com.google.common.collect.MapMaker;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The registry of the {@link ObjectSerializer}s by id: the Java and Kryo ones, and the ones found by the
+ * {@link ServiceLoader}.
+ */
+public class ObjectSerializers {
+
+    private static final ConcurrentMap<String/**serializer id*/, ObjectSerializer> SERIALIZERS = new MapMaker().makeMap();
+
+    static {
+        register(new JavaObjectSerializer());
+        register(new KryoObjectSerializer());
+        for (ObjectSerializer serializer : ServiceLoader.load(ObjectSerializer.class)) {
+            register(serializer);
+        }
+    }
+
+    public static void register(ObjectSerializer serializer) {
+        SERIALIZERS.put(serializer.getId(), serializer);
+    }
+
+    /**
+     * @return the serializer or null if none is registered with this id
+     */
+    public static ObjectSerializer get(String id) {
+        return SERIALIZERS.get(id);
+    }
+
+    /**
+     * @return the Java serializer, which decodes the messages sent without serializer id
+     */
+    public static ObjectSerializer getDefault() {
+        return SERIALIZERS.get(JavaObjectSerializer.ID);
+    }
+}
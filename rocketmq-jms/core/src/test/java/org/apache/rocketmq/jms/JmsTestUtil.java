@@ -22,6 +22,7 @@ import java.util.concurrent.ConcurrentMap;
 import org.apache.rocketmq.client.producer.MQProducer;
 import org.apache.rocketmq.jms.domain.JmsBaseMessageConsumer;
 import org.apache.rocketmq.jms.domain.JmsBaseMessageProducer;
+import org.apache.rocketmq.jms.domain.RMQPullConsumerExt;
 import org.apache.rocketmq.jms.domain.RMQPushConsumerExt;
 import org.junit.Assert;
 
@@ -40,6 +41,13 @@ public class JmsTestUtil {
         ConcurrentMap<String, RMQPushConsumerExt> consumerMap = (ConcurrentMap<String, RMQPushConsumerExt>) field.get(null);
         return  consumerMap.get(consumerId);
     }
+    public static RMQPullConsumerExt getRMQPullConsumerExt(String consumerId) throws Exception {
+        Assert.assertNotNull(consumerId);
+        Field field = JmsBaseMessageConsumer.class.getDeclaredField("pullConsumerMap");
+        field.setAccessible(true);
+        ConcurrentMap<String, RMQPullConsumerExt> consumerMap = (ConcurrentMap<String, RMQPullConsumerExt>) field.get(null);
+        return  consumerMap.get(consumerId);
+    }
     public static void checkConsumerState(String consumerId, boolean isNull, boolean isStarted) throws Exception {
         RMQPushConsumerExt rmqPushConsumerExt = getRMQPushConsumerExt(consumerId);
         if (isNull) {
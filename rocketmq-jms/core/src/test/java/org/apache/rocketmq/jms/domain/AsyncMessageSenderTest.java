@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.rocketmq.jms.domain;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.jms.Message;
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.apache.rocketmq.jms.domain.message.JmsTextMessage;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AsyncMessageSenderTest {
+
+    /**
+     * The producers sharing a sender only flush and wait for their own messages. The producer is not started, so the
+     * messages complete as soon as they are sent, with a failure.
+     */
+    @Test
+    public void testProducerWaitsForItsOwnSends() throws Exception {
+        CommonContext context = new CommonContext();
+        context.setSendBatchSize(16);
+        context.setSendBatchLingerMillis(60000);
+        AsyncMessageSender sender = new AsyncMessageSender(new DefaultMQProducer("PID-jms-async-sender"), context);
+        Assert.assertTrue(sender.retain());
+        Assert.assertTrue(sender.retain());
+
+        AsyncMessageSender.ProducerSends sends = new AsyncMessageSender.ProducerSends();
+        AsyncMessageSender.ProducerSends otherSends = new AsyncMessageSender.ProducerSends();
+        CountingListener listener = new CountingListener();
+        sender.send(createMessage("TopicA"), new JmsTextMessage("a"), listener, sends);
+        sender.send(createMessage("TopicB"), new JmsTextMessage("b"), listener, otherSends);
+        Assert.assertFalse(sends.await(100));
+
+        sender.flush(sends);
+        Assert.assertTrue(sends.await(1000));
+        Assert.assertEquals(1, listener.failures.get());
+        //the batch of the other producer still lingers
+        Assert.assertFalse(otherSends.await(100));
+
+        Assert.assertFalse(sender.release());
+        //the last producer sends what is left
+        Assert.assertTrue(sender.release());
+        Assert.assertTrue(otherSends.await(1000));
+        Assert.assertEquals(2, listener.failures.get());
+        Assert.assertFalse(sender.retain());
+    }
+
+    private static org.apache.rocketmq.common.message.Message createMessage(String topic) {
+        return new org.apache.rocketmq.common.message.Message(topic, "TagA", "body".getBytes());
+    }
+
+    private static class CountingListener implements CompletionListener {
+        private final AtomicInteger failures = new AtomicInteger();
+
+        @Override
+        public void onCompletion(Message message) {
+        }
+
+        @Override
+        public void onException(Message message, Exception exception) {
+            failures.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.apache.rocketmq.jms.domain;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.apache.rocketmq.jms.JmsTestUtil.getRMQPushConsumerExt;
+
+public class JmsBaseMessageConsumerTest {
+
+    private static final Logger log = LoggerFactory.getLogger(JmsBaseMessageConsumerTest.class);
+
+    private static final int CYCLES = 2000;
+
+    /**
+     * Sessions of many threads create and close consumers of the same consumer group while each keeps one open: the
+     * shared push consumer must be counted exactly, and released once all are closed.
+     */
+    @Test
+    public void testConcurrentRegistry() throws Exception {
+        for (int sessions : new int[] {1, 4, 16}) {
+            String consumerGroup = "CID-jms-registry-" + sessions;
+            long elapsed = churn(consumerGroup, sessions);
+            log.info("{} sessions: {} consumers created and closed per second", sessions,
+                (long) (sessions * CYCLES * 1e9 / elapsed));
+        }
+    }
+
+    private long churn(final String consumerGroup, int sessions) throws Exception {
+        final CyclicBarrier barrier = new CyclicBarrier(sessions + 1);
+        final CountDownLatch churned = new CountDownLatch(sessions);
+        final CountDownLatch closing = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < sessions; i++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        Connection connection = new JmsBaseConnectionFactory(new URI("rocketmq://xxx?consumerId="
+                            + consumerGroup + "&nameServer=127.0.0.1:9876")).createConnection();
+                        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                        Destination destination = session.createTopic("TopicRegistry:TagA");
+                        MessageConsumer held = session.createConsumer(destination);
+                        barrier.await();
+                        for (int j = 0; j < CYCLES; j++) {
+                            session.createConsumer(destination).close();
+                        }
+                        churned.countDown();
+                        closing.await();
+                        held.close();
+                    }
+                    catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                        churned.countDown();
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        barrier.await(30, TimeUnit.SECONDS);
+        long start = System.nanoTime();
+        Assert.assertTrue(churned.await(60, TimeUnit.SECONDS));
+        long elapsed = System.nanoTime() - start;
+        Assert.assertNull(failure.get());
+
+        RMQPushConsumerExt consumerExt = getRMQPushConsumerExt(consumerGroup);
+        Assert.assertNotNull(consumerExt);
+        Assert.assertEquals(sessions, consumerExt.getReferenceCount());
+
+        closing.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertNull(failure.get());
+        Assert.assertEquals(0, consumerExt.getReferenceCount());
+        Assert.assertNull(getRMQPushConsumerExt(consumerGroup));
+        //a released consumer can not be taken again
+        Assert.assertFalse(consumerExt.retain());
+        return elapsed;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.rocketmq.jms.domain;
+
+import org.apache.rocketmq.client.consumer.DefaultMQPullConsumer;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RMQPullConsumerExtTest {
+
+    /**
+     * A message which could not be received keeps the offsets of its queue from being committed past it, whatever
+     * is received after it.
+     */
+    @Test
+    public void testCommitUpToFailedMessage() throws Exception {
+        RMQPullConsumerExt consumerExt = new RMQPullConsumerExt(new DefaultMQPullConsumer("CID-jms-prefetch"),
+            new CommonContext());
+        try {
+            RMQPullConsumerExt.PrefetchBuffer buffer = consumerExt.subscribe("TopicPrefetch", "*");
+            RMQPullConsumerExt.PullTask pullTask =
+                consumerExt.new PullTask(buffer, new MessageQueue("TopicPrefetch", "broker-a", 0));
+            Assert.assertEquals(-1, pullTask.committableOffset());
+
+            pullTask.received(0);
+            pullTask.received(1);
+            pullTask.received(2);
+            Assert.assertEquals(3, pullTask.committableOffset());
+
+            pullTask.failed(3);
+            pullTask.received(4);
+            pullTask.received(5);
+            Assert.assertEquals(3, pullTask.committableOffset());
+
+            //a later failure does not move the offset forward
+            pullTask.failed(5);
+            Assert.assertEquals(3, pullTask.committableOffset());
+        }
+        finally {
+            consumerExt.close();
+        }
+    }
+}
@@ -18,6 +18,8 @@
 package org.apache.rocketmq.jms.integration;
 
 import java.net.URI;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.jms.Connection;
 import javax.jms.Destination;
 import javax.jms.Message;
@@ -128,4 +130,57 @@ public class JmsConsumerIT extends IntegrationTestBase {
         }
     }
 
+    /**
+     * A consumer of a group created while its last consumer is being closed gets a new RocketMQ consumer, created
+     * once the former one is shut down as the client instance refuses two consumers of the same group.
+     */
+    @Test
+    public void testReplaceClosingConsumer() throws Exception {
+        JmsBaseConnectionFactory connectionFactory = new JmsBaseConnectionFactory(new
+            URI("rocketmq://xxx?consumerId=" + consumerId + "&nameServer=" + nameServer));
+        final Connection connection = connectionFactory.createConnection();
+        connection.start();
+        try {
+            final Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            final Destination destination = session.createTopic(topic + ":" + messageType);
+            MessageConsumer consumer = session.createConsumer(destination);
+            for (int i = 0; i < 10; i++) {
+                final MessageConsumer closing = consumer;
+                final CountDownLatch ready = new CountDownLatch(2);
+                final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+                Thread closer = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            ready.countDown();
+                            ready.await();
+                            closing.close();
+                        }
+                        catch (Exception e) {
+                            failure.compareAndSet(null, e);
+                        }
+                    }
+                });
+                closer.start();
+                ready.countDown();
+                ready.await();
+                try {
+                    consumer = session.createConsumer(destination);
+                }
+                finally {
+                    closer.join();
+                }
+                if (null != failure.get()) {
+                    throw failure.get();
+                }
+                Assert.assertEquals(1, getRMQPushConsumerExt(consumerId).getReferenceCount());
+                Assert.assertTrue(getRMQPushConsumerExt(consumerId).isStarted());
+            }
+            consumer.close();
+            Assert.assertNull(getRMQPushConsumerExt(consumerId));
+        }
+        finally {
+            connection.close();
+        }
+    }
 }
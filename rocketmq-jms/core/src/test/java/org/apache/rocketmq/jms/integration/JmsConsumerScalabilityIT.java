@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.apache.rocketmq.jms.integration;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.jms.Connection;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.jms.Session;
+import org.apache.rocketmq.jms.domain.CommonConstant;
+import org.apache.rocketmq.jms.domain.CompletionListener;
+import org.apache.rocketmq.jms.domain.JmsBaseConnectionFactory;
+import org.apache.rocketmq.jms.domain.JmsBaseMessageProducer;
+import org.apache.rocketmq.jms.domain.RMQPushConsumerExt;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.apache.rocketmq.jms.JmsTestUtil.getRMQPushConsumerExt;
+
+public class JmsConsumerScalabilityIT extends IntegrationTestBase {
+
+    private static final int SESSIONS = 4;
+
+    private static final int MESSAGES_PER_SESSION = 2500;
+
+    private static final String TOPIC_PREFIX = "TopicScalability";
+
+    @BeforeClass
+    public static void createTopics() {
+        for (int i = 0; i < SESSIONS; i++) {
+            createTopic(TOPIC_PREFIX + i, BROKER_CONTROLLERS.get(0).getBrokerAddr());
+        }
+    }
+
+    /**
+     * Sessions of a consumer group consume a backlog of their own topic through message listeners, with the messages
+     * handed to the consumer threads one by one and in batches.
+     */
+    @Test
+    public void testMultiSessionConsume() throws Exception {
+        sendBacklog();
+
+        double oneByOne = measure("CID-jms-scalability-1", 1);
+        double batched = measure("CID-jms-scalability-16", 16);
+        logger.info("{} sessions consume {} messages: one by one {} msg/s, in batches of 16 {} msg/s ({}x)",
+            SESSIONS, SESSIONS * MESSAGES_PER_SESSION, (long) oneByOne, (long) batched,
+            String.format("%.1f", batched / oneByOne));
+    }
+
+    /**
+     * A listener failing on a message of a batch has the messages before it acknowledged, and the failed one is
+     * delivered again.
+     */
+    @Test
+    public void testPartialBatchFailure() throws Exception {
+        String topicName = TOPIC_PREFIX + "Failure";
+        createTopic(topicName, BROKER_CONTROLLERS.get(0).getBrokerAddr());
+        Connection connection = createConnection("CID-jms-scalability-failure", 16);
+        try {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            final AtomicInteger deliveries = new AtomicInteger();
+            final AtomicInteger redelivered = new AtomicInteger();
+            final CountDownLatch consumed = new CountDownLatch(20);
+            session.createConsumer(session.createTopic(topicName + ":" + messageType)).setMessageListener(
+                new MessageListener() {
+                    @Override
+                    public void onMessage(Message message) {
+                        try {
+                            if (message.getJMSRedelivered()) {
+                                redelivered.incrementAndGet();
+                            }
+                            else if (deliveries.incrementAndGet() == 10) {
+                                throw new IllegalStateException("fail the tenth message");
+                            }
+                            consumed.countDown();
+                        }
+                        catch (javax.jms.JMSException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                });
+            connection.start();
+            Thread.sleep(3000);
+
+            JmsBaseMessageProducer messageProducer =
+                (JmsBaseMessageProducer) session.createProducer(session.createTopic(topicName + ":" + messageType));
+            for (int i = 0; i < 20; i++) {
+                messageProducer.send(session.createTextMessage(text + i));
+            }
+            //the retry is delivered after the first delay level of the broker, 1 second
+            Assert.assertTrue(consumed.await(60, TimeUnit.SECONDS));
+            Assert.assertTrue(redelivered.get() >= 1);
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    private void sendBacklog() throws Exception {
+        Connection connection = createConnection(consumerId, 1);
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        try {
+            final CountDownLatch completed = new CountDownLatch(SESSIONS * MESSAGES_PER_SESSION);
+            final AtomicInteger failures = new AtomicInteger();
+            CompletionListener completionListener = new CompletionListener() {
+                @Override
+                public void onCompletion(Message message) {
+                    completed.countDown();
+                }
+
+                @Override
+                public void onException(Message message, Exception exception) {
+                    failures.incrementAndGet();
+                    completed.countDown();
+                }
+            };
+            String payload = new String(new char[256]).replace('\0', 'x');
+            for (int i = 0; i < SESSIONS; i++) {
+                JmsBaseMessageProducer messageProducer = (JmsBaseMessageProducer) session.createProducer(
+                    session.createTopic(TOPIC_PREFIX + i + ":" + messageType));
+                for (int j = 0; j < MESSAGES_PER_SESSION; j++) {
+                    messageProducer.send(session.createTextMessage(payload), completionListener);
+                }
+                messageProducer.close();
+            }
+            Assert.assertTrue(completed.await(60, TimeUnit.SECONDS));
+            Assert.assertEquals(0, failures.get());
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    private double measure(String consumerGroup, int consumeBatchSize) throws Exception {
+        List<Connection> connections = new ArrayList<Connection>();
+        final CountDownLatch consumed = new CountDownLatch(SESSIONS * MESSAGES_PER_SESSION);
+        final AtomicLong firstDelivery = new AtomicLong();
+        MessageListener listener = new MessageListener() {
+            @Override
+            public void onMessage(Message message) {
+                firstDelivery.compareAndSet(0, System.nanoTime());
+                consumed.countDown();
+            }
+        };
+        try {
+            for (int i = 0; i < SESSIONS; i++) {
+                Connection connection = createConnection(consumerGroup, consumeBatchSize);
+                connections.add(connection);
+                Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                session.createConsumer(session.createTopic(TOPIC_PREFIX + i + ":" + messageType))
+                    .setMessageListener(listener);
+            }
+            //the sessions share the push consumer of the group
+            RMQPushConsumerExt consumerExt = getRMQPushConsumerExt(consumerGroup);
+            Assert.assertEquals(SESSIONS, consumerExt.getReferenceCount());
+
+            for (Connection connection : connections) {
+                connection.start();
+            }
+            Assert.assertTrue(consumed.await(60, TimeUnit.SECONDS));
+            //from the first delivery, not to count the rebalance
+            return SESSIONS * MESSAGES_PER_SESSION * 1e9 / (System.nanoTime() - firstDelivery.get());
+        }
+        finally {
+            for (Connection connection : connections) {
+                connection.close();
+            }
+        }
+    }
+
+    private Connection createConnection(String consumerGroup, int consumeBatchSize) throws Exception {
+        JmsBaseConnectionFactory connectionFactory = new JmsBaseConnectionFactory(new
+            URI(String.format("rocketmq://xxx?%s=%s&%s=%s&%s=%s&%s=%s&%s=%s&%s=%s",
+            CommonConstant.PRODUCERID, "PID-jms-scalability",
+            CommonConstant.CONSUMERID, consumerGroup,
+            CommonConstant.NAMESERVER, nameServer,
+            CommonConstant.MAX_IN_FLIGHT_SENDS, 64,
+            CommonConstant.SEND_BATCH_SIZE, 64,
+            CommonConstant.CONSUME_BATCH_SIZE, consumeBatchSize)));
+        return connectionFactory.createConnection();
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.apache.rocketmq.jms.integration;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.Message;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import org.apache.rocketmq.jms.JmsTestListener;
+import org.apache.rocketmq.jms.domain.CommonConstant;
+import org.apache.rocketmq.jms.domain.CompletionListener;
+import org.apache.rocketmq.jms.domain.JmsBaseConnectionFactory;
+import org.apache.rocketmq.jms.domain.JmsBaseMessageProducer;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JmsProducerIT extends IntegrationTestBase {
+
+    private static final int THROUGHPUT_MESSAGES = 10000;
+
+    @Test
+    public void testAsyncSend() throws Exception {
+        checkAsyncSend("PID-jms-async", "CID-jms-async", "TopicAsync", 1);
+    }
+
+    @Test
+    public void testAsyncBatchSend() throws Exception {
+        checkAsyncSend("PID-jms-batch", "CID-jms-batch", "TopicBatch", 16);
+    }
+
+    /**
+     * Compares the throughput of the synchronous send, the asynchronous send and the batched asynchronous send of
+     * 256-byte messages to the embedded broker.
+     */
+    @Test
+    public void testSendThroughput() throws Exception {
+        String payload = new String(new char[256]).replace('\0', 'x');
+        double sync = measure("PID-jms-sync-perf", 1, payload, false);
+        double async = measure("PID-jms-async-perf", 1, payload, true);
+        double batch = measure("PID-jms-batch-perf", 64, payload, true);
+        logger.info("send {} messages: sync {} msg/s, async {} msg/s ({}x), async batch {} msg/s ({}x)",
+            THROUGHPUT_MESSAGES, (long) sync, (long) async, String.format("%.1f", async / sync), (long) batch,
+            String.format("%.1f", batch / sync));
+    }
+
+    private void checkAsyncSend(String producerGroup, String consumerGroup, String topicName,
+        int sendBatchSize) throws Exception {
+        Connection connection = createConnection(producerGroup, consumerGroup, sendBatchSize);
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        Destination destination = session.createTopic(topicName + ":" + messageType);
+        CountDownLatch consumed = new CountDownLatch(1);
+        JmsTestListener listener = new JmsTestListener(50, consumed);
+        try {
+            session.createConsumer(destination).setMessageListener(listener);
+            JmsBaseMessageProducer messageProducer = (JmsBaseMessageProducer) session.createProducer(destination);
+            connection.start();
+
+            final CountDownLatch completed = new CountDownLatch(50);
+            final AtomicInteger failures = new AtomicInteger();
+            List<TextMessage> messages = new ArrayList<TextMessage>();
+            for (int i = 0; i < 50; i++) {
+                TextMessage message = session.createTextMessage(text + i);
+                messages.add(message);
+                messageProducer.send(message, new CompletionListener() {
+                    @Override
+                    public void onCompletion(Message message) {
+                        completed.countDown();
+                    }
+
+                    @Override
+                    public void onException(Message message, Exception exception) {
+                        failures.incrementAndGet();
+                        completed.countDown();
+                    }
+                });
+            }
+            Assert.assertTrue(completed.await(30, TimeUnit.SECONDS));
+            Assert.assertEquals(0, failures.get());
+            for (TextMessage message : messages) {
+                Assert.assertNotNull(message.getJMSMessageID());
+            }
+            messageProducer.close();
+
+            if (consumed.await(30, TimeUnit.SECONDS)) {
+                Thread.sleep(2000);
+            }
+            Assert.assertEquals(50, listener.getConsumedNum());
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    private double measure(String producerGroup, int sendBatchSize, String payload, boolean async) throws Exception {
+        Connection connection = createConnection(producerGroup, consumerId, sendBatchSize);
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        try {
+            JmsBaseMessageProducer messageProducer =
+                (JmsBaseMessageProducer) session.createProducer(session.createTopic(topic + ":" + messageType));
+            final CountDownLatch completed = new CountDownLatch(THROUGHPUT_MESSAGES);
+            final AtomicInteger failures = new AtomicInteger();
+            CompletionListener completionListener = new CompletionListener() {
+                @Override
+                public void onCompletion(Message message) {
+                    completed.countDown();
+                }
+
+                @Override
+                public void onException(Message message, Exception exception) {
+                    failures.incrementAndGet();
+                    completed.countDown();
+                }
+            };
+            // warm up the route and the connection to the broker
+            messageProducer.send(session.createTextMessage(payload));
+
+            long start = System.nanoTime();
+            for (int i = 0; i < THROUGHPUT_MESSAGES; i++) {
+                if (async) {
+                    messageProducer.send(session.createTextMessage(payload), completionListener);
+                }
+                else {
+                    messageProducer.send(session.createTextMessage(payload));
+                    completed.countDown();
+                }
+            }
+            messageProducer.close();
+            Assert.assertTrue(completed.await(60, TimeUnit.SECONDS));
+            long elapsed = System.nanoTime() - start;
+            Assert.assertEquals(0, failures.get());
+            return THROUGHPUT_MESSAGES * 1e9 / elapsed;
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    private Connection createConnection(String producerGroup, String consumerGroup,
+        int sendBatchSize) throws Exception {
+        JmsBaseConnectionFactory connectionFactory = new JmsBaseConnectionFactory(new
+            URI(String.format("rocketmq://xxx?%s=%s&%s=%s&%s=%s&%s=%s&%s=%s&%s=%s",
+            CommonConstant.PRODUCERID, producerGroup,
+            CommonConstant.CONSUMERID, consumerGroup,
+            CommonConstant.NAMESERVER, nameServer,
+            CommonConstant.SEND_TIMEOUT_MILLIS, 10 * 1000,
+            CommonConstant.MAX_IN_FLIGHT_SENDS, 64,
+            CommonConstant.SEND_BATCH_SIZE, sendBatchSize)));
+        return connectionFactory.createConnection();
+    }
+}
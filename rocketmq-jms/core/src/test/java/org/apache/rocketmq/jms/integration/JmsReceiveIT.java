@@ -0,0 +1,291 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.apache.rocketmq.jms.integration;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.IllegalStateException;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import org.apache.rocketmq.jms.JmsTestListener;
+import org.apache.rocketmq.jms.domain.CommonConstant;
+import org.apache.rocketmq.jms.domain.CompletionListener;
+import org.apache.rocketmq.jms.domain.JmsBaseConnectionFactory;
+import org.apache.rocketmq.jms.domain.JmsBaseMessageProducer;
+import org.apache.rocketmq.jms.domain.RMQPullConsumerExt;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.apache.rocketmq.jms.JmsTestUtil.getRMQPullConsumerExt;
+
+public class JmsReceiveIT extends IntegrationTestBase {
+
+    private static final String RECEIVE_TOPIC = "TopicReceive";
+    private static final String THROUGHPUT_TOPIC = "TopicReceiveThroughput";
+    private static final String LATENCY_TOPIC = "TopicReceiveLatency";
+
+    private static final int THROUGHPUT_MESSAGES = 10000;
+    private static final int LATENCY_MESSAGES = 500;
+
+    @BeforeClass
+    public static void createTopics() {
+        String brokerAddr = BROKER_CONTROLLERS.get(0).getBrokerAddr();
+        createTopic(RECEIVE_TOPIC, brokerAddr);
+        createTopic(THROUGHPUT_TOPIC, brokerAddr);
+        createTopic(LATENCY_TOPIC, brokerAddr);
+    }
+
+    @Test
+    public void testReceive() throws Exception {
+        String consumerGroup = "CID-jms-receive";
+        Connection connection = createConnection(consumerGroup, true);
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        Destination destination = session.createTopic(RECEIVE_TOPIC + ":" + messageType);
+        try {
+            MessageConsumer consumer = session.createConsumer(destination);
+            MessageConsumer consumer2 = session.createConsumer(destination);
+            RMQPullConsumerExt pullConsumerExt = getRMQPullConsumerExt(consumerGroup);
+            Assert.assertEquals(2, pullConsumerExt.getReferenceCount());
+            try {
+                consumer.setMessageListener(new JmsTestListener());
+                Assert.fail("listener set in pull mode");
+            }
+            catch (IllegalStateException e) {
+                //expected
+            }
+            Assert.assertNull(consumer.receiveNoWait());
+
+            connection.start();
+            Assert.assertTrue(pullConsumerExt.isStarted());
+            //wait for the queues to be assigned
+            Thread.sleep(3000);
+
+            MessageProducer messageProducer = session.createProducer(destination);
+            for (int i = 0; i < 100; i++) {
+                messageProducer.send(session.createTextMessage(text + i));
+            }
+
+            //the consumers of a destination share the prefetched messages
+            Set<String> received = new HashSet<String>();
+            for (int i = 0; i < 100; i++) {
+                TextMessage message = (TextMessage) (i % 2 == 0 ? consumer : consumer2).receive(10000);
+                Assert.assertNotNull(message);
+                Assert.assertNotNull(message.getJMSMessageID());
+                received.add(message.getText());
+            }
+            Assert.assertEquals(100, received.size());
+            Assert.assertNull(consumer.receive(1000));
+            Assert.assertNull(consumer2.receiveNoWait());
+        }
+        finally {
+            connection.close();
+        }
+        Assert.assertNull(getRMQPullConsumerExt(consumerGroup));
+
+        //the offsets have been committed, nothing is received again
+        connection = createConnection(consumerGroup, true);
+        session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        try {
+            MessageConsumer consumer = session.createConsumer(destination);
+            connection.start();
+            Assert.assertNull(consumer.receive(5000));
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Compares the throughput of receive() in pull mode against the message listener on a backlog of 256-byte
+     * messages, then their latency from the send to the delivery of messages sent one by one.
+     */
+    @Test
+    public void testReceivePerformance() throws Exception {
+        String payload = new String(new char[256]).replace('\0', 'x');
+        sendBacklog(THROUGHPUT_TOPIC, payload);
+
+        double listenerThroughput = measureListenerThroughput("CID-jms-listener-throughput");
+        double receiveThroughput = measureReceiveThroughput("CID-jms-receive-throughput");
+        logger.info("consume {} messages: listener {} msg/s, receive {} msg/s ({}x)", THROUGHPUT_MESSAGES,
+            (long) listenerThroughput, (long) receiveThroughput,
+            String.format("%.1f", receiveThroughput / listenerThroughput));
+
+        final List<Long> listenerLatencies = Collections.synchronizedList(new ArrayList<Long>());
+        final List<Long> receiveLatencies = Collections.synchronizedList(new ArrayList<Long>());
+        Connection listenerConnection = createConnection("CID-jms-listener-latency", false);
+        Connection receiveConnection = createConnection("CID-jms-receive-latency", true);
+        try {
+            Session listenerSession = listenerConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            final Destination destination = listenerSession.createTopic(LATENCY_TOPIC + ":" + messageType);
+            listenerSession.createConsumer(destination).setMessageListener(new MessageListener() {
+                @Override
+                public void onMessage(Message message) {
+                    recordLatency(message, listenerLatencies);
+                }
+            });
+            Session receiveSession = receiveConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            final MessageConsumer consumer = receiveSession.createConsumer(destination);
+            listenerConnection.start();
+            receiveConnection.start();
+            Thread receiver = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        Message message;
+                        while (null != (message = consumer.receive(10000))) {
+                            recordLatency(message, receiveLatencies);
+                        }
+                    }
+                    catch (JMSException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+            receiver.start();
+            Thread.sleep(3000);
+
+            MessageProducer messageProducer = listenerSession.createProducer(destination);
+            for (int i = 0; i < LATENCY_MESSAGES; i++) {
+                Message message = listenerSession.createTextMessage(payload);
+                message.setLongProperty("sendNanos", System.nanoTime());
+                messageProducer.send(message);
+                Thread.sleep(2);
+            }
+            receiver.join();
+            Assert.assertEquals(LATENCY_MESSAGES, receiveLatencies.size());
+            Assert.assertEquals(LATENCY_MESSAGES, listenerLatencies.size());
+            logger.info("latency of {} messages: listener p50 {} us, p99 {} us, receive p50 {} us, p99 {} us",
+                LATENCY_MESSAGES, percentile(listenerLatencies, 50), percentile(listenerLatencies, 99),
+                percentile(receiveLatencies, 50), percentile(receiveLatencies, 99));
+        }
+        finally {
+            receiveConnection.close();
+            listenerConnection.close();
+        }
+    }
+
+    private void sendBacklog(String topicName, String payload) throws Exception {
+        Connection connection = createConnection(consumerId, false);
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        try {
+            JmsBaseMessageProducer messageProducer =
+                (JmsBaseMessageProducer) session.createProducer(session.createTopic(topicName + ":" + messageType));
+            final CountDownLatch completed = new CountDownLatch(THROUGHPUT_MESSAGES);
+            final AtomicInteger failures = new AtomicInteger();
+            CompletionListener completionListener = new CompletionListener() {
+                @Override
+                public void onCompletion(Message message) {
+                    completed.countDown();
+                }
+
+                @Override
+                public void onException(Message message, Exception exception) {
+                    failures.incrementAndGet();
+                    completed.countDown();
+                }
+            };
+            for (int i = 0; i < THROUGHPUT_MESSAGES; i++) {
+                messageProducer.send(session.createTextMessage(payload), completionListener);
+            }
+            messageProducer.close();
+            Assert.assertTrue(completed.await(60, TimeUnit.SECONDS));
+            Assert.assertEquals(0, failures.get());
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    private double measureListenerThroughput(String consumerGroup) throws Exception {
+        Connection connection = createConnection(consumerGroup, false);
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        try {
+            CountDownLatch consumed = new CountDownLatch(1);
+            session.createConsumer(session.createTopic(THROUGHPUT_TOPIC + ":" + messageType))
+                .setMessageListener(new JmsTestListener(THROUGHPUT_MESSAGES, consumed));
+            long start = System.nanoTime();
+            connection.start();
+            Assert.assertTrue(consumed.await(60, TimeUnit.SECONDS));
+            return THROUGHPUT_MESSAGES * 1e9 / (System.nanoTime() - start);
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    private double measureReceiveThroughput(String consumerGroup) throws Exception {
+        Connection connection = createConnection(consumerGroup, true);
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        try {
+            MessageConsumer consumer = session.createConsumer(session.createTopic(THROUGHPUT_TOPIC + ":" + messageType));
+            long start = System.nanoTime();
+            connection.start();
+            for (int i = 0; i < THROUGHPUT_MESSAGES; i++) {
+                Assert.assertNotNull(consumer.receive(60000));
+            }
+            return THROUGHPUT_MESSAGES * 1e9 / (System.nanoTime() - start);
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    private static void recordLatency(Message message, List<Long> latencies) {
+        try {
+            latencies.add(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - message.getLongProperty("sendNanos")));
+        }
+        catch (JMSException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static long percentile(List<Long> latencies, int percentile) {
+        List<Long> sorted = new ArrayList<Long>(latencies);
+        Collections.sort(sorted);
+        return sorted.get(Math.min(sorted.size() - 1, sorted.size() * percentile / 100));
+    }
+
+    private Connection createConnection(String consumerGroup, boolean pullMode) throws Exception {
+        JmsBaseConnectionFactory connectionFactory = new JmsBaseConnectionFactory(new
+            URI(String.format("rocketmq://xxx?%s=%s&%s=%s&%s=%s&%s=%s&%s=%s&%s=%s&%s=%s",
+            CommonConstant.PRODUCERID, "PID-jms-receive",
+            CommonConstant.CONSUMERID, consumerGroup,
+            CommonConstant.NAMESERVER, nameServer,
+            CommonConstant.SEND_TIMEOUT_MILLIS, 10 * 1000,
+            CommonConstant.MAX_IN_FLIGHT_SENDS, 64,
+            CommonConstant.SEND_BATCH_SIZE, 64,
+            CommonConstant.CONSUME_MODE, pullMode ? CommonConstant.CONSUME_MODE_PULL : "push")));
+        return connectionFactory.createConnection();
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.apache.rocketmq.jms.util;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Typical object graphs sent in ObjectMessages, shared by the serializer test and benchmark.
+ */
+public class ObjectPayloads {
+
+    public static final String SMALL_MAP = "smallMap";
+
+    public static final String ORDER = "order";
+
+    public static final String ORDER_LIST = "orderList";
+
+    public static Serializable create(String payload) {
+        if (SMALL_MAP.equals(payload)) {
+            HashMap<String, Serializable> map = new HashMap<String, Serializable>();
+            for (int i = 0; i < 10; i++) {
+                map.put("key-" + i, i % 2 == 0 ? "value-" + i : Long.valueOf(i));
+            }
+            return map;
+        }
+        if (ORDER.equals(payload)) {
+            return newOrder(1, 10);
+        }
+        if (ORDER_LIST.equals(payload)) {
+            ArrayList<Order> orders = new ArrayList<Order>();
+            for (int i = 0; i < 100; i++) {
+                orders.add(newOrder(i, 3));
+            }
+            return orders;
+        }
+        throw new IllegalArgumentException("Unknown payload " + payload);
+    }
+
+    private static Order newOrder(long id, int lines) {
+        Order order = new Order();
+        order.id = id;
+        order.customer = "customer-" + id;
+        order.createdAt = new Date(1500000000000L + id);
+        order.lines = new ArrayList<OrderLine>();
+        for (int i = 0; i < lines; i++) {
+            OrderLine line = new OrderLine();
+            line.sku = "SKU-" + id + "-" + i;
+            line.quantity = i + 1;
+            line.price = new BigDecimal("19.99").add(BigDecimal.valueOf(i));
+            order.lines.add(line);
+        }
+        return order;
+    }
+
+    public static class Order implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private long id;
+
+        private String customer;
+
+        private Date createdAt;
+
+        private List<OrderLine> lines;
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Order)) {
+                return false;
+            }
+            Order other = (Order) o;
+            return id == other.id && customer.equals(other.customer) && createdAt.equals(other.createdAt)
+                && lines.equals(other.lines);
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) id;
+        }
+    }
+
+    public static class OrderLine implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private String sku;
+
+        private int quantity;
+
+        private BigDecimal price;
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof OrderLine)) {
+                return false;
+            }
+            OrderLine other = (OrderLine) o;
+            return sku.equals(other.sku) && quantity == other.quantity && price.equals(other.price);
+        }
+
+        @Override
+        public int hashCode() {
+            return sku.hashCode();
+        }
+    }
+}
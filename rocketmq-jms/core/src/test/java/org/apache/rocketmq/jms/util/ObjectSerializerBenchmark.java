@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.apache.rocketmq.jms.util;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Serializes and deserializes the typical ObjectMessage bodies of {@link ObjectPayloads} with the Java and the Kryo
+ * serializers. The time per operation is reported by JMH, the allocation per operation by the GC profiler
+ * (gc.alloc.rate.norm) and the size of the serialized bodies is printed at the setup. Only compiled with the
+ * {@code benchmark} maven profile.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ObjectSerializerBenchmark {
+
+    @Param({JavaObjectSerializer.ID, KryoObjectSerializer.ID})
+    private String serializer;
+
+    @Param({ObjectPayloads.SMALL_MAP, ObjectPayloads.ORDER, ObjectPayloads.ORDER_LIST})
+    private String payload;
+
+    private ObjectSerializer objectSerializer;
+
+    private Serializable object;
+
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectSerializer = ObjectSerializers.get(serializer);
+        object = ObjectPayloads.create(payload);
+        bytes = objectSerializer.serialize(object);
+        System.out.printf("%n%s %s: %d bytes%n", serializer, payload, bytes.length);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return objectSerializer.serialize(object);
+    }
+
+    @Benchmark
+    public Serializable deserialize() throws IOException, ClassNotFoundException {
+        return objectSerializer.deserialize(bytes);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(
+            new OptionsBuilder()
+                .include(ObjectSerializerBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+            .run();
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.apache.rocketmq.jms.util;
+
+import java.io.IOException;
+import java.io.Serializable;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.jms.domain.JmsBaseConstant;
+import org.apache.rocketmq.jms.domain.JmsBaseTopic;
+import org.apache.rocketmq.jms.domain.message.JmsBaseMessage;
+import org.apache.rocketmq.jms.domain.message.JmsObjectMessage;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ObjectSerializerTest {
+
+    private static final String[] PAYLOADS = {ObjectPayloads.SMALL_MAP, ObjectPayloads.ORDER,
+        ObjectPayloads.ORDER_LIST};
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        ObjectSerializer java = ObjectSerializers.get(JavaObjectSerializer.ID);
+        ObjectSerializer kryo = ObjectSerializers.get(KryoObjectSerializer.ID);
+        for (String payload : PAYLOADS) {
+            Serializable object = ObjectPayloads.create(payload);
+            byte[] javaBytes = java.serialize(object);
+            byte[] kryoBytes = kryo.serialize(object);
+            Assert.assertEquals(object, java.deserialize(javaBytes));
+            Assert.assertEquals(object, kryo.deserialize(kryoBytes));
+            Assert.assertTrue(payload + ": " + kryoBytes.length + " >= " + javaBytes.length,
+                kryoBytes.length < javaBytes.length);
+        }
+    }
+
+    @Test
+    public void testSerializerProperty() throws Exception {
+        Serializable object = ObjectPayloads.create(ObjectPayloads.ORDER);
+
+        Message message = MessageConverter.convert2RMQMessage(newObjectMessage(object),
+            ObjectSerializers.get(KryoObjectSerializer.ID));
+        Assert.assertEquals(KryoObjectSerializer.ID, message.getUserProperty(MsgConvertUtil.JMS_SERIALIZER));
+        Assert.assertEquals(object, ((JmsObjectMessage) MessageConverter.convert2JMSMessage((MessageExt) message))
+            .getObject());
+
+        //the messages of the Java serialization are the ones of the former versions, without the property
+        message = MessageConverter.convert2RMQMessage(newObjectMessage(object));
+        Assert.assertNull(message.getUserProperty(MsgConvertUtil.JMS_SERIALIZER));
+        Assert.assertEquals(object, ((JmsObjectMessage) MessageConverter.convert2JMSMessage((MessageExt) message))
+            .getObject());
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnknownSerializer() throws Exception {
+        byte[] bytes = MsgConvertUtil.objectSerialize(ObjectPayloads.create(ObjectPayloads.SMALL_MAP));
+        MsgConvertUtil.objectDeserialize(bytes, "unknown");
+    }
+
+    private static JmsBaseMessage newObjectMessage(Serializable object) {
+        JmsBaseMessage message = new JmsObjectMessage(object);
+        message.setHeader(JmsBaseConstant.JMS_DESTINATION, new JmsBaseTopic("TestTopic", "TagA"));
+        message.setHeader(JmsBaseConstant.JMS_MESSAGE_ID, "ID:null");
+        message.setHeader(JmsBaseConstant.JMS_REDELIVERED, Boolean.FALSE);
+        return message;
+    }
+}
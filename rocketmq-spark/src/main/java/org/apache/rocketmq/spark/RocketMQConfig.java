@@ -82,6 +82,19 @@ public class RocketMQConfig {
     public static final String CONSUMER_MAX_THREADS = "consumer.max.threads";
     public static final int DEFAULT_CONSUMER_MAX_THREADS = 64;
 
+    /**
+     * Max number of messages handed to the receiver at a time, and the default value is "32"
+     */
+    public static final String CONSUMER_BATCH_SIZE = "consumer.batch.size";
+    public static final int DEFAULT_CONSUMER_BATCH_SIZE = 32;
+
+    /**
+     * Max number of messages the receiver stores as one block, the consumed batches waiting in the queue are
+     * merged up to it. And the default value is "4096"
+     */
+    public static final String RECEIVER_BLOCK_MAX_SIZE = "receiver.block.max.size";
+    public static final int DEFAULT_RECEIVER_BLOCK_MAX_SIZE = 4096;
+
 
     // ------- the following is for reliable Receiver -------
     public static final String QUEUE_SIZE = "spout.queue.size";
@@ -134,6 +147,8 @@ public class RocketMQConfig {
                 CONSUMER_MIN_THREADS, DEFAULT_CONSUMER_MIN_THREADS));
         consumer.setConsumeThreadMax(getInteger(props,
                 CONSUMER_MAX_THREADS, DEFAULT_CONSUMER_MAX_THREADS));
+        consumer.setConsumeMessageBatchMaxSize(getInteger(props,
+                CONSUMER_BATCH_SIZE, DEFAULT_CONSUMER_BATCH_SIZE));
 
         String initOffset = props.getProperty(CONSUMER_OFFSET_RESET_TO, CONSUMER_OFFSET_LATEST);
         switch (initOffset) {
@@ -17,17 +17,33 @@
  */
 package org.apache.rocketmq.spark.streaming;
 
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * An implementation of MessageRetryManager
+ *
+ * The ttl of every marked messageSet is tracked by a timer wheel, and cancelled when it is acked.
+ * A failed messageSet is never waited for room in the queue: {@link #fail(String)} runs on the
+ * thread draining the queue or on the shared timer thread, a full queue gives it up instead, its
+ * messages are then consumed again from RocketMQ.
  */
 public class DefaultMessageRetryManager implements MessageRetryManager{
+    private static final Timer TTL_TIMER = new HashedWheelTimer(
+        new DefaultThreadFactory("MessageRetryManagerTimer", true), 100, TimeUnit.MILLISECONDS);
+
     private Map<String,MessageSet> cache = new ConcurrentHashMap<>(500);
+    private final Map<String,Timeout> timeouts = new ConcurrentHashMap<>(500);
+    private final AtomicLong rejected = new AtomicLong();
     private BlockingQueue<MessageSet> queue;
     private int maxRetry;
     private int ttl;
@@ -36,30 +52,20 @@ public class DefaultMessageRetryManager implements MessageRetryManager{
         this.queue = queue;
         this.maxRetry = maxRetry;
         this.ttl = ttl;
-
-        long period = 5000;
-        new Timer().scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                long now = System.currentTimeMillis();
-                for (Map.Entry<String, MessageSet> entry : cache.entrySet()) {
-                    String id = entry.getKey();
-                    MessageSet messageSet = entry.getValue();
-                    if (now - messageSet.getTimestamp() >= ttl) { // no ack/fail received in ttl
-                        fail(id);
-                    }
-                }
-            }
-        }, period, period);
     }
 
     @Override
     public void ack(String id) {
-        cache.remove(id);
+        cancelTimeout(id);
+        MessageSet messageSet = cache.remove(id);
+        if (messageSet != null) {
+            messageSet.done(true);
+        }
     }
 
     @Override
     public void fail(String id) {
+        cancelTimeout(id);
         MessageSet messageSet = cache.remove(id);
         if (messageSet == null) {
             return;
@@ -68,18 +74,32 @@ public class DefaultMessageRetryManager implements MessageRetryManager{
         if (needRetry(messageSet)) {
             messageSet.setRetries(messageSet.getRetries() + 1);
             messageSet.setTimestamp(0);
-            try {
-                queue.put(messageSet);
-            } catch (InterruptedException e) {
-                // no op
+            if (!queue.offer(messageSet)) {
+                rejected.incrementAndGet();
+                messageSet.done(false);
             }
+        } else {
+            messageSet.done(false);
         }
     }
 
     @Override
     public void mark(MessageSet messageSet) {
+        final String id = messageSet.getId();
         messageSet.setTimestamp(System.currentTimeMillis());
-        cache.put(messageSet.getId(), messageSet);
+        cache.put(id, messageSet);
+        Timeout timeout = TTL_TIMER.newTimeout(new TimerTask() {
+            @Override
+            public void run(Timeout timeout) {
+                if (timeouts.remove(id, timeout)) { // no ack/fail received in ttl
+                    fail(id);
+                }
+            }
+        }, ttl, TimeUnit.MILLISECONDS);
+        Timeout previous = timeouts.put(id, timeout);
+        if (previous != null) {
+            previous.cancel();
+        }
     }
 
     @Override
@@ -87,6 +107,20 @@ public class DefaultMessageRetryManager implements MessageRetryManager{
         return messageSet.getRetries() < maxRetry;
     }
 
+    /**
+     * @return the number of failed messageSets given up because the queue was full
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    private void cancelTimeout(String id) {
+        Timeout timeout = timeouts.remove(id);
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
     // just for testing
     public void setCache(Map<String,MessageSet> cache) {
         this.cache = cache;
@@ -24,6 +24,8 @@ import java.io.Serializable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A message collection.
@@ -34,6 +36,8 @@ public class MessageSet implements Iterator<Message>, Serializable{
     private final Iterator<MessageExt> iterator;
     private long timestamp;
     private int retries;
+    private transient CountDownLatch doneLatch = new CountDownLatch(1);
+    private volatile boolean stored;
 
     public MessageSet(String id, List<MessageExt> data) {
         this.id = id;
@@ -69,6 +73,27 @@ public class MessageSet implements Iterator<Message>, Serializable{
         this.retries = retries;
     }
 
+    /**
+     * Mark the messageSet as stored, or given up after its retries
+     * @param stored
+     */
+    public void done(boolean stored) {
+        this.stored = stored;
+        doneLatch.countDown();
+    }
+
+    /**
+     * Wait until the messageSet is done
+     * @return false if it is not done in the timeout
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return doneLatch.await(timeout, unit);
+    }
+
+    public boolean isStored() {
+        return stored;
+    }
+
     @Override
     public boolean hasNext() {
         return iterator.hasNext();
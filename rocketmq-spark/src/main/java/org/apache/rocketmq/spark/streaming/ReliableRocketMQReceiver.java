@@ -25,14 +25,16 @@ import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The ReliableRocketMQReceiver is fault-tolerance guarantees
+ *
+ * A consumed batch is only acknowledged to RocketMQ once the block holding it is stored,
+ * failed blocks are stored again until the max retries of their batches are reached.
  */
 public class ReliableRocketMQReceiver extends RocketMQReceiver {
-    private BlockingQueue<MessageSet> queue;
     private MessageRetryManager messageRetryManager;
-    private MessageSender sender;
 
     public ReliableRocketMQReceiver(Properties properties, StorageLevel storageLevel) {
         super(properties, storageLevel);
@@ -41,16 +43,12 @@ public class ReliableRocketMQReceiver extends RocketMQReceiver {
     @Override
     public void onStart() {
         int queueSize = RocketMQConfig.getInteger(properties, RocketMQConfig.QUEUE_SIZE, RocketMQConfig.DEFAULT_QUEUE_SIZE);
-        queue = new LinkedBlockingQueue<>(queueSize);
+        BlockingQueue<MessageSet> queue = new LinkedBlockingQueue<>(queueSize);
 
         int maxRetry = RocketMQConfig.getInteger(properties, RocketMQConfig.MESSAGES_MAX_RETRY, RocketMQConfig.DEFAULT_MESSAGES_MAX_RETRY);
         int ttl = RocketMQConfig.getInteger(properties, RocketMQConfig.MESSAGES_TTL, RocketMQConfig.DEFAULT_MESSAGES_TTL);
         this.messageRetryManager = new DefaultMessageRetryManager(queue, maxRetry, ttl);
-
-        this.sender = new MessageSender();
-        this.sender.setName("MessageSender");
-        this.sender.setDaemon(true);
-        this.sender.start();
+        this.queue = queue;
 
         super.onStart();
     }
@@ -60,15 +58,44 @@ public class ReliableRocketMQReceiver extends RocketMQReceiver {
         if (msgs.isEmpty()) {
             return true;
         }
+        BlockingQueue<MessageSet> queue = this.queue;
+        if (queue == null) {
+            return false;
+        }
         MessageSet messageSet = new MessageSet(msgs);
         try {
             queue.put(messageSet);
-            return true;
+            // the offsets of the batch are acknowledged by returning, wait for its block to be stored
+            while (!messageSet.await(100, TimeUnit.MILLISECONDS)) {
+                if (isStopped()) {
+                    return false;
+                }
+            }
+            return messageSet.isStored();
         } catch (InterruptedException e) {
             return false;
         }
     }
 
+    @Override
+    protected void storeBlock(List<MessageSet> block) {
+        for (MessageSet messageSet : block) {
+            messageRetryManager.mark(messageSet);
+        }
+        try {
+            // To implement a reliable receiver, you have to use store(multiple-records) to store data
+            super.storeBlock(block);
+        } catch (Exception e) {
+            for (MessageSet messageSet : block) {
+                fail(messageSet.getId());
+            }
+            return;
+        }
+        for (MessageSet messageSet : block) {
+            ack(messageSet.getId());
+        }
+    }
+
     public void ack(Object msgId) {
         String id = msgId.toString();
         messageRetryManager.ack(id);
@@ -79,35 +106,4 @@ public class ReliableRocketMQReceiver extends RocketMQReceiver {
         messageRetryManager.fail(id);
     }
 
-    @Override
-    public void onStop() {
-        consumer.shutdown();
-    }
-
-    class MessageSender extends Thread {
-        @Override
-        public void run() {
-            while (ReliableRocketMQReceiver.this.isStarted()) {
-                MessageSet messageSet = null;
-                try {
-                    messageSet = queue.take();
-                } catch (InterruptedException e) {
-                    continue;
-                }
-                if (messageSet == null) {
-                    continue;
-                }
-
-                messageRetryManager.mark(messageSet);
-                try {
-                    // To implement a reliable receiver, you have to use store(multiple-records) to store data
-                    ReliableRocketMQReceiver.this.store(messageSet);
-                    ack(messageSet.getId());
-                } catch (Exception e) {
-                    fail(messageSet.getId());
-                }
-            }
-        }
-    }
-
 }
@@ -33,14 +33,21 @@ import org.apache.rocketmq.spark.RocketMQConfig;
 import org.apache.spark.storage.StorageLevel;
 import org.apache.spark.streaming.receiver.Receiver;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * RocketMQReceiver uses MQPushConsumer as the default implementation.
  * PushConsumer is a high level consumer API, wrapping the pulling details
  * Looks like broker push messages to consumer
  *
+ * The consumed batches are queued and merged into blocks by a single thread, so that
+ * a block holds many messages however small the batches are.
+ *
  * NOTE: This is no fault-tolerance guarantees, can lose data on receiver failure.
  * Recommend to use ReliableRocketMQReceiver which is fault-tolerance guarantees.
  */
@@ -48,6 +55,9 @@ public class RocketMQReceiver extends Receiver<Message> {
     protected MQPushConsumer consumer;
     protected boolean ordered;
     protected Properties properties;
+    protected BlockingQueue<MessageSet> queue;
+    private int maxBlockSize;
+    private MessageSender sender;
 
     public RocketMQReceiver(Properties properties, StorageLevel storageLevel) {
         super(storageLevel);
@@ -58,6 +68,17 @@ public class RocketMQReceiver extends Receiver<Message> {
     public void onStart() {
         Validate.notEmpty(properties, "Consumer properties can not be empty");
         ordered = RocketMQConfig.getBoolean(properties, RocketMQConfig.CONSUMER_MESSAGES_ORDERLY, false);
+        maxBlockSize = RocketMQConfig.getInteger(properties, RocketMQConfig.RECEIVER_BLOCK_MAX_SIZE,
+            RocketMQConfig.DEFAULT_RECEIVER_BLOCK_MAX_SIZE);
+        if (queue == null) {
+            int queueSize = RocketMQConfig.getInteger(properties, RocketMQConfig.QUEUE_SIZE, RocketMQConfig.DEFAULT_QUEUE_SIZE);
+            queue = new LinkedBlockingQueue<>(queueSize);
+        }
+
+        this.sender = new MessageSender(queue);
+        this.sender.setName("MessageSender");
+        this.sender.setDaemon(true);
+        this.sender.start();
 
         consumer = new DefaultMQPushConsumer();
         RocketMQConfig.buildConsumerConfigs(properties, (DefaultMQPushConsumer)consumer);
@@ -99,19 +120,72 @@ public class RocketMQReceiver extends Receiver<Message> {
         if (msgs.isEmpty()) {
             return true;
         }
+        BlockingQueue<MessageSet> queue = this.queue;
+        if (queue == null) {
+            return false;
+        }
         try {
-            for (MessageExt msg : msgs) {
-                this.store(msg);
-            }
+            queue.put(new MessageSet(msgs));
             return true;
-        } catch (Exception e) {
+        } catch (InterruptedException e) {
             return false;
         }
     }
 
+    /**
+     * Store the messageSets as a single block, the call returns once the block is stored
+     * @param block
+     */
+    protected void storeBlock(List<MessageSet> block) {
+        List<Message> messages = new ArrayList<>();
+        for (MessageSet messageSet : block) {
+            messages.addAll(messageSet.getData());
+        }
+        this.store(messages.iterator());
+    }
+
     @Override
     public void onStop() {
         consumer.shutdown();
+        // a restarted receiver gets a new queue, the sender of this one exits
+        queue = null;
+    }
+
+    class MessageSender extends Thread {
+        private final BlockingQueue<MessageSet> queue;
+
+        MessageSender(BlockingQueue<MessageSet> queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public void run() {
+            while (!RocketMQReceiver.this.isStopped()) {
+                MessageSet messageSet;
+                try {
+                    messageSet = queue.poll(100, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    continue;
+                }
+                if (messageSet == null) {
+                    continue;
+                }
+
+                // merge the batches consumed meanwhile into the same block
+                List<MessageSet> block = new ArrayList<>();
+                int blockSize = 0;
+                while (messageSet != null) {
+                    block.add(messageSet);
+                    blockSize += messageSet.getData().size();
+                    messageSet = blockSize < maxBlockSize ? queue.poll() : null;
+                }
+                try {
+                    storeBlock(block);
+                } catch (Exception e) {
+                    reportError("Failed to store a block of " + blockSize + " messages", e);
+                }
+            }
+        }
     }
 
 }
@@ -21,21 +21,25 @@
  * There are some modifications:
  * 1. Parameters and API were adapted to RocketMQ
  * 2. Reuse underlying consumer instance for each consumer group
+ * 3. Prefetch the next batch of messages in the background
  */
 
 package org.apache.spark.sql.rocketmq
 
-import java.util.concurrent.TimeoutException
+import java.util.concurrent.{CompletableFuture, TimeUnit, TimeoutException}
 import java.{util => ju}
 
 import org.apache.commons.lang3.mutable.MutableInt
-import org.apache.rocketmq.client.consumer.{MQPullConsumer, PullStatus}
+import org.apache.rocketmq.client.consumer.{MQPullConsumer, PullCallback, PullResult, PullStatus}
 import org.apache.rocketmq.common.message.{MessageExt, MessageQueue}
+import org.apache.rocketmq.remoting.exception.RemotingTimeoutException
 import org.apache.spark.internal.Logging
 import org.apache.spark.sql.rocketmq.RocketMQSource._
-import org.apache.spark.{SparkEnv, SparkException, TaskContext}
+import org.apache.spark.util.LongAccumulator
+import org.apache.spark.{SparkContext, SparkEnv, SparkException, TaskContext}
 
 import scala.collection.mutable
+import scala.util.control.NonFatal
 
 /**
  * Consumer of single group, intended for cached reuse. Underlying consumer is threadsafe, but processing
@@ -53,10 +57,26 @@ private case class CachedRocketMQConsumer(
   // so they are not presented in CacheKey
   private val subExpression = options.getOrDefault(RocketMQConf.CONSUMER_SUB_EXPRESSION, "*")
   private val maxBatchSize = options.getOrDefault(RocketMQConf.PULL_MAX_BATCH_SIZE, "32").toInt
+  private val prefetchEnabled = options.getOrDefault(RocketMQConf.PULL_PREFETCH, "true").toBoolean
+
+  // With a sub expression, the offsets of the messages filtered out are skipped without data loss
+  private val filtering = subExpression != null && subExpression.trim.nonEmpty && subExpression.trim != "*"
 
   /** indicates whether this consumer is in use or not */
   @volatile var inUse = true
 
+  /**
+   * indicates whether this consumer is kept in the cache, so that data past the requested range
+   * is worth prefetching for the next batch
+   */
+  @volatile var cached = false
+
+  /** Metrics of the task using this consumer */
+  @volatile var metrics: Option[ConsumerCacheMetrics] = None
+
+  /** The pull issued in the background for the messages following the fetched data */
+  @volatile private var prefetch: Prefetch = _
+
   /** Iterator to the already fetch data */
   @volatile private var fetchedData = ju.Collections.emptyIterator[MessageExt]
 
@@ -84,12 +104,16 @@ private case class CachedRocketMQConsumer(
    *                       this method will either return record at offset if available, or return
    *                       the next earliest available record less than untilOffset, or null. It
    *                       will not throw any exception.
+   * @param longPoll whether the broker should hold the pull until a message arrives, instead of
+   *                 answering at once that there is no new message
+   * @throws NoNewMessageException if there is no message to fetch yet
    */
   def get(
       offset: Long,
       untilOffset: Long,
       pollTimeoutMs: Long,
-      failOnDataLoss: Boolean):
+      failOnDataLoss: Boolean,
+      longPoll: Boolean = false):
     MessageExt = {
     require(offset < untilOffset,
       s"offset must always be less than untilOffset [offset: $offset, untilOffset: $untilOffset]")
@@ -106,9 +130,13 @@ private case class CachedRocketMQConsumer(
 
     while (toFetchOffset != UNKNOWN_OFFSET && !isFetchComplete) {
       try {
-        consumerRecord = fetchData(toFetchOffset, untilOffset, pollTimeoutMs, failOnDataLoss)
+        consumerRecord = fetchData(toFetchOffset, untilOffset, pollTimeoutMs, failOnDataLoss, longPoll)
         isFetchComplete = true
       } catch {
+        case e: NoMatchedMessageException =>
+          // All the messages from `toFetchOffset` were filtered out, go on after them
+          resetFetchedData()
+          toFetchOffset = if (e.nextOffset < untilOffset) e.nextOffset else UNKNOWN_OFFSET
         case e: OffsetIllegalException =>
           // When there is some error thrown, reset all states
           resetFetchedData()
@@ -187,35 +215,47 @@ private case class CachedRocketMQConsumer(
    * or null.
    *
    * @throws OffsetIllegalException if `offset` is out of range
-   * @throws TimeoutException if cannot fetch the record in `pollTimeoutMs` milliseconds.
+   * @throws NoMatchedMessageException if the messages from `offset` were all filtered out
+   * @throws NoNewMessageException if cannot fetch the record in `pollTimeoutMs` milliseconds.
    */
   private def fetchData(
       offset: Long,
       untilOffset: Long,
       pollTimeoutMs: Long,
-      failOnDataLoss: Boolean): MessageExt = {
+      failOnDataLoss: Boolean,
+      longPoll: Boolean): MessageExt = {
     if (offset != nextOffsetInFetchedData || !fetchedData.hasNext) {
       // This is the first fetch, or the last pre-fetched data has been drained.
-      val p = consumer.pull(queue, subExpression, offset, maxBatchSize, pollTimeoutMs)
+      val p = pull(offset, pollTimeoutMs, longPoll)
       if (p.getPullStatus == PullStatus.OFFSET_ILLEGAL){
         throw new OffsetIllegalException(AvailableOffsetRange(p.getMinOffset, p.getMaxOffset))
+      } else if (p.getPullStatus == PullStatus.NO_MATCHED_MSG && p.getNextBeginOffset > offset) {
+        throw new NoMatchedMessageException(p.getNextBeginOffset)
       } else if (p.getPullStatus == PullStatus.NO_MATCHED_MSG || p.getPullStatus == PullStatus.NO_NEW_MSG) {
-        throw new IllegalStateException(s"Cannot fetch record for offset $offset in $pollTimeoutMs milliseconds. " +
-            s"status = ${p.getPullStatus.toString}")
+        throw new NoNewMessageException(offset, s"Cannot fetch record for offset $offset in $pollTimeoutMs " +
+            s"milliseconds. status = ${p.getPullStatus.toString}")
       }
-      fetchedData = p.getMsgFoundList.iterator
+      val records = p.getMsgFoundList
+      fetchedData = records.iterator
       assert(fetchedData.hasNext)
+      val nextOffset = records.get(records.size - 1).getQueueOffset + 1
+      if (prefetchEnabled && (nextOffset < untilOffset || cached)) {
+        prefetchFrom(nextOffset, pollTimeoutMs)
+      }
     }
 
     val record = fetchedData.next()
-    assert(record.getQueueOffset == offset,
+    assert(record.getQueueOffset == offset || filtering,
       s"Got wrong record for $groupId ${queue.toString} even after seeking to offset $offset")
     nextOffsetInFetchedData = record.getQueueOffset + 1
     // In general, RocketMQ uses the specified offset as the start point, and tries to fetch the next
     // available offset. Hence we need to handle offset mismatch.
     if (record.getQueueOffset > offset) {
-      // This may happen when some records aged out but their offsets already got verified
-      if (failOnDataLoss) {
+      if (filtering) {
+        // The records in between were filtered out by the sub expression
+        if (record.getQueueOffset >= untilOffset) null else record
+      } else if (failOnDataLoss) {
+        // This may happen when some records aged out but their offsets already got verified
         reportDataLoss(true, s"Cannot fetch records in [$offset, ${record.getQueueOffset})")
         // Never happen as "reportDataLoss" will throw an exception
         null
@@ -238,10 +278,60 @@ private case class CachedRocketMQConsumer(
     }
   }
 
+  /**
+   * Pull the messages from `offset`, using the result of the background pull if it started there
+   * and found any message. A long poll is held by the broker for at most the pull timeout the
+   * client was made with, see [[RocketMQUtils.makePullConsumer]].
+   */
+  private def pull(offset: Long, pollTimeoutMs: Long, longPoll: Boolean): PullResult = {
+    val prefetched = prefetch
+    prefetch = null
+    val prefetchedResult = if (prefetched != null && prefetched.offset == offset) {
+      try {
+        prefetched.result.get(pollTimeoutMs, TimeUnit.MILLISECONDS)
+      } catch {
+        case NonFatal(e) =>
+          logDebug(s"Prefetch of $groupId $queue from $offset failed", e)
+          null
+      }
+    } else {
+      null
+    }
+    if (prefetchedResult != null && prefetchedResult.getPullStatus == PullStatus.FOUND) {
+      metrics.foreach(_.prefetchHits.add(1))
+      prefetchedResult
+    } else if (longPoll) {
+      try {
+        consumer.pullBlockIfNotFound(queue, subExpression, offset, maxBatchSize)
+      } catch {
+        case e: RemotingTimeoutException =>
+          throw new NoNewMessageException(offset, s"Long poll of $groupId $queue from $offset timed out: $e")
+      }
+    } else {
+      consumer.pull(queue, subExpression, offset, maxBatchSize, pollTimeoutMs)
+    }
+  }
+
+  /** Start pulling the messages from `offset` in the background. */
+  private def prefetchFrom(offset: Long, pollTimeoutMs: Long): Unit = {
+    val result = new CompletableFuture[PullResult]()
+    try {
+      consumer.pull(queue, subExpression, offset, maxBatchSize, new PullCallback {
+        override def onSuccess(pullResult: PullResult): Unit = result.complete(pullResult)
+
+        override def onException(e: Throwable): Unit = result.completeExceptionally(e)
+      }, pollTimeoutMs)
+      prefetch = Prefetch(offset, result)
+    } catch {
+      case NonFatal(e) => logDebug(s"Cannot prefetch $groupId $queue from $offset", e)
+    }
+  }
+
   /** Reset the internal pre-fetched data. */
   private def resetFetchedData(): Unit = {
     nextOffsetInFetchedData = UNKNOWN_OFFSET
     fetchedData = ju.Collections.emptyIterator[MessageExt]
+    prefetch = null
   }
 
   /**
@@ -270,7 +360,7 @@ private case class CachedRocketMQConsumer(
 
   def close(): Unit = {
     // Shutdown the underlying consumer if nobody is using
-    val consumerToShutdown = synchronized {
+    val consumerToShutdown = CachedRocketMQConsumer.synchronized {
       val useCount = groupIdUseCount(groupId).decrementAndGet()
       if (useCount == 0) {
         groupIdUseCount.remove(groupId)
@@ -285,6 +375,10 @@ private case class CachedRocketMQConsumer(
 
 private case class AvailableOffsetRange(earliest: Long, latest: Long)
 
+/** There is no message to fetch yet, the next fetch should start from `nextOffset`. */
+private[rocketmq] class NoNewMessageException(val nextOffset: Long, message: String)
+  extends TimeoutException(message)
+
 private object CachedRocketMQConsumer extends Logging {
 
   private val UNKNOWN_OFFSET = -2L
@@ -298,6 +392,10 @@ private object CachedRocketMQConsumer extends Logging {
   }
   private class OffsetIllegalException(val availableOffsetRange: AvailableOffsetRange) extends Exception
 
+  private class NoMatchedMessageException(val nextOffset: Long) extends Exception
+
+  private case class Prefetch(offset: Long, result: CompletableFuture[PullResult])
+
   private lazy val cache = {
     val conf = SparkEnv.get.conf
     val capacity = conf.getInt(RocketMQConf.PULL_CONSUMER_CACHE_MAX_CAPACITY, 64)
@@ -363,34 +461,38 @@ private object CachedRocketMQConsumer extends Logging {
   /**
     * Get a cached consumer for groupId, assigned to topic and partition.
     * If matching consumer doesn't already exist, will be created using options.
+    * If it is used by another task, an uncached consumer is returned, which must be closed
+    * instead of released.
     */
   def getOrCreate(
       queue: MessageQueue,
-      options: ju.Map[String, String]): CachedRocketMQConsumer = synchronized {
+      options: ju.Map[String, String],
+      metrics: Option[ConsumerCacheMetrics] = None): CachedRocketMQConsumer = synchronized {
     val key = CacheKey.from(queue, options)
 
-    // The MQPullConsumer client is shared by multiple instances of CachedRocketMQConsumer
-    // because RocketMQ claims there should not be more than one instance for a groupId
-    val groupId = options.get(RocketMQConf.CONSUMER_GROUP)
-    val client = synchronized {
-      groupIdUseCount.getOrElseUpdate(groupId, new MutableInt(0)).increment()
-      groupIdToClient.getOrElseUpdate(groupId, RocketMQUtils.makePullConsumer(groupId, options))
-    }
-
     // If this is reattempt at running the task, then invalidate cache and start with
     // a new consumer
     if (TaskContext.get != null && TaskContext.get.attemptNumber >= 1) {
       removeConsumer(queue, options)
-      val consumer = new CachedRocketMQConsumer(client, queue, options)
-      consumer.inUse = true
-      cache.put(key, consumer)
-      consumer
+    }
+    val existing = cache.get(key)
+    if (existing != null && existing.inUse) {
+      // Another task reads a different range of the same queue, see RocketMQOffsetRangeCalculator
+      metrics.foreach(_.cacheMisses.add(1))
+      createUncached(queue, options, metrics)
     } else {
-      if (!cache.containsKey(key)) {
-        cache.put(key, new CachedRocketMQConsumer(client, queue, options))
+      val consumer = if (existing != null) {
+        metrics.foreach(_.cacheHits.add(1))
+        existing
+      } else {
+        metrics.foreach(_.cacheMisses.add(1))
+        val created = createUncached(queue, options, metrics)
+        created.cached = true
+        cache.put(key, created)
+        created
       }
-      val consumer = cache.get(key)
       consumer.inUse = true
+      consumer.metrics = metrics
       consumer
     }
   }
@@ -398,14 +500,19 @@ private object CachedRocketMQConsumer extends Logging {
   /** Create an [[CachedRocketMQConsumer]] but don't put it into cache. */
   def createUncached(
       queue: MessageQueue,
-      options: ju.Map[String, String]): CachedRocketMQConsumer = {
+      options: ju.Map[String, String],
+      metrics: Option[ConsumerCacheMetrics] = None): CachedRocketMQConsumer = {
+    // The MQPullConsumer client is shared by multiple instances of CachedRocketMQConsumer
+    // because RocketMQ claims there should not be more than one instance for a groupId
     val groupId = options.get(RocketMQConf.CONSUMER_GROUP)
     val client = synchronized {
       groupIdUseCount.getOrElseUpdate(groupId, new MutableInt(0)).increment()
       groupIdToClient.getOrElseUpdate(groupId, RocketMQUtils.makePullConsumer(groupId, options))
     }
 
-    new CachedRocketMQConsumer(client, queue, options)
+    val consumer = new CachedRocketMQConsumer(client, queue, options)
+    consumer.metrics = metrics
+    consumer
   }
 
   private def reportDataLoss0(
@@ -427,3 +534,21 @@ private object CachedRocketMQConsumer extends Logging {
     }
   }
 }
+
+/**
+ * Accumulators counting how often the executors could reuse a cached consumer or a prefetched
+ * batch of messages, shown with the other accumulators of each stage in the Spark UI.
+ */
+private[rocketmq] case class ConsumerCacheMetrics(
+    cacheHits: LongAccumulator,
+    cacheMisses: LongAccumulator,
+    prefetchHits: LongAccumulator)
+
+private[rocketmq] object ConsumerCacheMetrics {
+  def register(sc: SparkContext): ConsumerCacheMetrics = {
+    ConsumerCacheMetrics(
+      sc.longAccumulator("rocketmq.consumer.cacheHits"),
+      sc.longAccumulator("rocketmq.consumer.cacheMisses"),
+      sc.longAccumulator("rocketmq.consumer.prefetchHits"))
+  }
+}
@@ -21,6 +21,7 @@
  * There are some modifications:
  * 1. Parameters and API were adapted to RocketMQ
  * 2. Reuse underlying producer instance for each producer group
+ * 3. Only the producers not in use are expired, idle ones are evicted in background
  */
 
 package org.apache.spark.sql.rocketmq
@@ -33,47 +34,91 @@ import com.google.common.util.concurrent.{ExecutionError, UncheckedExecutionExce
 import org.apache.rocketmq.client.producer.DefaultMQProducer
 import org.apache.spark.SparkEnv
 import org.apache.spark.internal.Logging
+import org.apache.spark.util.ThreadUtils
 
+import scala.collection.JavaConverters._
 import scala.util.control.NonFatal
 
+/**
+ * A RocketMQ producer shared by the tasks writing with the same producer group.
+ */
+private[rocketmq] class CachedRocketMQProducer private(
+    val group: String,
+    val producer: DefaultMQProducer) {
+
+  // Number of tasks which acquired the producer and have not released it yet
+  private var inUseCount = 0
+
+  // Whether the producer was removed from the cache, it is closed once not in use anymore
+  private var evicted = false
+
+  // When the producer was last acquired or released
+  private var lastAccessTime = System.currentTimeMillis()
+}
+
 private[rocketmq] object CachedRocketMQProducer extends Logging {
 
   private type Producer = DefaultMQProducer
 
   private lazy val cacheExpireTimeout: Long =
     SparkEnv.get.conf.getTimeAsMs(RocketMQConf.PRODUCER_CACHE_TIMEOUT, "10m")
-  
-  private val removalListener = new RemovalListener[String, Producer]() {
+
+  private val removalListener = new RemovalListener[String, CachedRocketMQProducer]() {
     override def onRemoval(
-        notification: RemovalNotification[String, Producer]): Unit = {
-      val group: String = notification.getKey
-      val producer: Producer = notification.getValue
-      logDebug(
-        s"Evicting RocketMQ producer $producer for group $group, due to ${notification.getCause}")
-      close(group, producer)
+        notification: RemovalNotification[String, CachedRocketMQProducer]): Unit = {
+      val cached = notification.getValue
+      logDebug(s"Evicting RocketMQ producer ${cached.producer} for group ${cached.group}, " +
+          s"due to ${notification.getCause}")
+      val closeNow = CachedRocketMQProducer.synchronized {
+        cached.evicted = true
+        cached.inUseCount == 0
+      }
+      if (closeNow) {
+        close(cached)
+      }
     }
   }
 
-  private lazy val guavaCache: Cache[String, Producer] =
-    CacheBuilder.newBuilder().expireAfterAccess(cacheExpireTimeout, TimeUnit.MILLISECONDS)
+  // The entries are not expired by Guava: a producer still used by a long running task must stay
+  // cached, otherwise the next task would start a second producer of the same group in this JVM,
+  // which RocketMQ rejects as long as the first one is not shut down
+  private lazy val guavaCache: Cache[String, CachedRocketMQProducer] = {
+    val cache = CacheBuilder.newBuilder()
         .removalListener(removalListener)
-        .build[String, Producer]()
-  
+        .build[String, CachedRocketMQProducer]()
+    val evictorInterval = math.max(1000L, math.min(cacheExpireTimeout, 60000L))
+    evictor.scheduleWithFixedDelay(new Runnable {
+      override def run(): Unit = expireIdle()
+    }, evictorInterval, evictorInterval, TimeUnit.MILLISECONDS)
+    cache
+  }
+
+  private lazy val evictor: ScheduledExecutorService =
+    ThreadUtils.newDaemonSingleThreadScheduledExecutor("rocketmq-producer-cache-evictor")
+
   /**
     * Get a cached RocketMQProducer for a given configuration. If matching RocketMQProducer doesn't
     * exist, a new RocketMQProducer will be created. RocketMQProducer is thread safe, it is best to keep
     * one instance per specified options.
+    *
+    * The producer must be given back by [[release]] once the task is done with it, it is not
+    * closed by the cache expiration before.
     */
-  def getOrCreate(options: ju.Map[String, String]): Producer = {
+  def acquire(options: ju.Map[String, String]): CachedRocketMQProducer = {
     val group = options.get(RocketMQConf.PRODUCER_GROUP)
     try {
-      guavaCache.get(group, new Callable[Producer] {
-        override def call(): Producer = {
-          val producer = RocketMQUtils.makeProducer(group, options)
-          logDebug(s"Created a new instance of RocketMQ producer for group $group.")
-          producer
-        }
-      })
+      CachedRocketMQProducer.synchronized {
+        val cached = guavaCache.get(group, new Callable[CachedRocketMQProducer] {
+          override def call(): CachedRocketMQProducer = {
+            val producer = RocketMQUtils.makeProducer(group, options)
+            logDebug(s"Created a new instance of RocketMQ producer for group $group.")
+            new CachedRocketMQProducer(group, producer)
+          }
+        })
+        cached.inUseCount += 1
+        cached.lastAccessTime = System.currentTimeMillis()
+        cached
+      }
     } catch {
       case e @ (_: ExecutionException | _: UncheckedExecutionException | _: ExecutionError)
         if e.getCause != null =>
@@ -81,6 +126,35 @@ private[rocketmq] object CachedRocketMQProducer extends Logging {
     }
   }
 
+  /** Give back a producer got by [[acquire]], closing it if it was evicted meanwhile. */
+  def release(cached: CachedRocketMQProducer): Unit = {
+    val closeNow = CachedRocketMQProducer.synchronized {
+      cached.inUseCount -= 1
+      cached.lastAccessTime = System.currentTimeMillis()
+      cached.evicted && cached.inUseCount == 0
+    }
+    if (closeNow) {
+      close(cached)
+    }
+  }
+
+  /** Evict the producers neither in use nor acquired for the cache timeout. */
+  private def expireIdle(): Unit = {
+    val expired = CachedRocketMQProducer.synchronized {
+      val now = System.currentTimeMillis()
+      val idle = guavaCache.asMap().asScala.filter { case (_, cached) =>
+        cached.inUseCount == 0 && now - cached.lastAccessTime >= cacheExpireTimeout
+      }
+      // Removed while holding the lock, the removal listener shuts them down before a task can
+      // start a new producer of the same group
+      idle.foreach { case (group, cached) => guavaCache.asMap().remove(group, cached) }
+      idle.size
+    }
+    if (expired > 0) {
+      logDebug(s"Expired $expired idle RocketMQ producers.")
+    }
+  }
+
   /** For explicitly closing RocketMQ producer */
   private def close(options: ju.Map[String, String]): Unit = {
     val group = options.get(RocketMQConf.PRODUCER_GROUP)
@@ -88,10 +162,10 @@ private[rocketmq] object CachedRocketMQProducer extends Logging {
   }
 
   /** Auto close on cache evict */
-  private def close(group: String, producer: Producer): Unit = {
+  private def close(cached: CachedRocketMQProducer): Unit = {
     try {
-      logInfo(s"Closing the RocketMQ producer of group $group")
-      producer.shutdown()
+      logInfo(s"Closing the RocketMQ producer of group ${cached.group}")
+      cached.producer.shutdown()
     } catch {
       case NonFatal(e) => logWarning("Error while closing RocketMQ producer.", e)
     }
@@ -103,5 +177,5 @@ private[rocketmq] object CachedRocketMQProducer extends Logging {
   }
 
   // Intended for testing purpose only.
-  private def getAsMap: ConcurrentMap[String, Producer] = guavaCache.asMap()
+  private def getAsMap: ConcurrentMap[String, CachedRocketMQProducer] = guavaCache.asMap()
 }
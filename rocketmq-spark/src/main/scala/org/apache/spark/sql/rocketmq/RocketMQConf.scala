@@ -49,6 +49,15 @@ object RocketMQConf {
   // Pull timeout for the consumer (default: 3000)
   val PULL_TIMEOUT_MS = "pulltimeoutms"
 
+  // Whether to pull the next batch of messages in background while the current one is processed (default: true)
+  val PULL_PREFETCH = "pullprefetch"
+
+  // Max number of offsets read per trigger, split proportionally among the queues (default: none)
+  val MAX_OFFSETS_PER_TRIGGER = "maxoffsetspertrigger"
+
+  // Min number of partitions read per batch, the queues holding the most data are split to reach it (default: none)
+  val MIN_PARTITIONS = "minpartitions"
+
   //*******************************
   //   Sink (Producer) Options
   //*******************************
@@ -58,6 +67,18 @@ object RocketMQConf {
   // Default topic of produced messages if `topic` is not among the attributes
   val PRODUCER_TOPIC = "topic"
 
+  // Max number of rows sent to a message queue as one batch message (default: 128)
+  val PRODUCER_BATCH_SIZE = "sendbatchsize"
+
+  // Max size in bytes of a batch message, must not exceed the max message size of brokers (default: 1048576)
+  val PRODUCER_BATCH_BYTES = "sendbatchbytes"
+
+  // Max number of batch messages sent by a task and not acknowledged yet (default: 8)
+  val PRODUCER_MAX_IN_FLIGHT = "sendmaxinflight"
+
+  // Send timeout for the producer (default: 3000)
+  val PRODUCER_SEND_TIMEOUT_MS = "sendtimeoutms"
+
   //*******************************
   //     Spark Context Options
   //*******************************
@@ -0,0 +1,240 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * This file was taken from Apache Spark org/apache/spark/sql/kafka010/KafkaContinuousReader.scala
+ *
+ * There are some modifications:
+ * 1. Parameters and API were adapted to RocketMQ
+ */
+
+package org.apache.spark.sql.rocketmq
+
+import java.{util => ju}
+
+import org.apache.rocketmq.common.message.{MessageExt, MessageQueue}
+import org.apache.spark.TaskContext
+import org.apache.spark.internal.Logging
+import org.apache.spark.sql.catalyst.expressions.UnsafeRow
+import org.apache.spark.sql.rocketmq.RocketMQSource._
+import org.apache.spark.sql.sources.v2.DataSourceOptions
+import org.apache.spark.sql.sources.v2.reader.streaming.{ContinuousDataReader, ContinuousReader, Offset, PartitionOffset}
+import org.apache.spark.sql.sources.v2.reader.{DataReaderFactory, SupportsScanUnsafeRow}
+import org.apache.spark.sql.types.StructType
+
+import scala.collection.JavaConverters._
+
+/**
+ * A [[ContinuousReader]] for data from RocketMQ.
+ *
+ * Every message queue is read by a long running task from its start offset on, and each task
+ * reports the offset of its queue at every epoch. A change of the queues of the topic makes the
+ * query reconfigure, starting the added queues from their earliest offsets.
+ *
+ * @param createOffsetReader  a function creating the reader used to find the offsets when the
+ *                            query starts and the queues when it is reconfigured
+ * @param executorRocketMQParams  RocketMQ configuration for creating the consumers on the executors
+ * @param sourceOptions  the options of the source
+ * @param metadataPath  path to the metadata of the query
+ * @param initialOffsets  the offsets to start reading from when the query starts
+ * @param failOnDataLoss  whether to fail the query when data may have been lost
+ */
+private[rocketmq] class RocketMQContinuousReader(
+    createOffsetReader: () => RocketMQOffsetReader,
+    executorRocketMQParams: ju.Map[String, String],
+    sourceOptions: DataSourceOptions,
+    metadataPath: String,
+    initialOffsets: RocketMQOffsetRangeLimit,
+    failOnDataLoss: Boolean)
+  extends ContinuousReader with SupportsScanUnsafeRow with Logging {
+
+  private val pollTimeoutMs = sourceOptions.getLong(RocketMQConf.PULL_TIMEOUT_MS, 512)
+
+  // Initialized when creating read tasks. If this diverges from the queues at the latest
+  // offsets, we need to reconfigure.
+  // Exposed outside this object only for unit tests.
+  @volatile private[sql] var knownPartitions: Set[MessageQueue] = _
+
+  // Created on first use, as Spark 2.3 creates a reader only to resolve the schema and does not
+  // stop it
+  private var offsetReaderCreated = false
+
+  private lazy val offsetReader = {
+    offsetReaderCreated = true
+    createOffsetReader()
+  }
+
+  private var offset: Offset = _
+
+  override def readSchema: StructType = RocketMQSource.schema
+
+  override def setStartOffset(start: ju.Optional[Offset]): Unit = {
+    offset = start.orElse {
+      val offsets = offsetReader.fetchStartingOffsets(initialOffsets, reportDataLoss)
+      logInfo(s"Initial offsets: $offsets")
+      offsets
+    }
+  }
+
+  override def getStartOffset(): Offset = offset
+
+  override def deserializeOffset(json: String): Offset = {
+    RocketMQSourceOffset(JsonUtils.partitionOffsets(json))
+  }
+
+  override def createUnsafeRowReaderFactories(): ju.List[DataReaderFactory[UnsafeRow]] = {
+    val oldStartPartitionOffsets = RocketMQSourceOffset.getPartitionOffsets(offset)
+
+    val currentPartitionSet = offsetReader.fetchEarliestOffsets().keySet
+    val newPartitions = currentPartitionSet.diff(oldStartPartitionOffsets.keySet)
+    val newPartitionOffsets = offsetReader.fetchEarliestOffsets(newPartitions.toSeq)
+
+    val deletedPartitions = oldStartPartitionOffsets.keySet.diff(currentPartitionSet)
+    if (deletedPartitions.nonEmpty) {
+      reportDataLoss(s"Some partitions were deleted: $deletedPartitions")
+    }
+
+    val startOffsets = newPartitionOffsets ++
+      oldStartPartitionOffsets.filterKeys(!deletedPartitions.contains(_))
+    knownPartitions = startOffsets.keySet
+
+    startOffsets.toSeq.map {
+      case (queue, start) =>
+        RocketMQContinuousDataReaderFactory(
+          queue, start, executorRocketMQParams, pollTimeoutMs, failOnDataLoss)
+          .asInstanceOf[DataReaderFactory[UnsafeRow]]
+    }.asJava
+  }
+
+  /** Stop this source and free any resources it has allocated. */
+  def stop(): Unit = synchronized {
+    if (offsetReaderCreated) {
+      offsetReader.close()
+    }
+  }
+
+  override def commit(end: Offset): Unit = {}
+
+  override def mergeOffsets(offsets: Array[PartitionOffset]): Offset = {
+    val mergedMap = offsets.map {
+      case RocketMQSourcePartitionOffset(queue, queueOffset) => Map(queue -> queueOffset)
+    }.reduce(_ ++ _)
+    RocketMQSourceOffset(mergedMap)
+  }
+
+  override def needsReconfiguration(): Boolean = {
+    knownPartitions != null && offsetReader.fetchLatestOffsets().keySet != knownPartitions
+  }
+
+  override def toString(): String = s"RocketMQContinuousReader[$offsetReader]"
+
+  /**
+   * If `failOnDataLoss` is true, this method will throw an `IllegalStateException`.
+   * Otherwise, just log a warning.
+   */
+  private def reportDataLoss(message: String): Unit = {
+    if (failOnDataLoss) {
+      throw new IllegalStateException(message + s". $INSTRUCTION_FOR_FAIL_ON_DATA_LOSS_TRUE")
+    } else {
+      logWarning(message + s". $INSTRUCTION_FOR_FAIL_ON_DATA_LOSS_FALSE")
+    }
+  }
+}
+
+/**
+ * A data reader factory for continuous RocketMQ processing. This will be serialized and
+ * transformed into a full reader on executors.
+ *
+ * @param queue  The message queue to read from.
+ * @param startOffset  The offset to start reading from within the queue.
+ * @param executorRocketMQParams  RocketMQ client configuration params to use.
+ * @param pollTimeoutMs  The timeout for RocketMQ consumer polling.
+ * @param failOnDataLoss  Flag indicating whether data reader should fail if some offsets
+ *                        are skipped.
+ */
+private[rocketmq] case class RocketMQContinuousDataReaderFactory(
+    queue: MessageQueue,
+    startOffset: Long,
+    executorRocketMQParams: ju.Map[String, String],
+    pollTimeoutMs: Long,
+    failOnDataLoss: Boolean) extends DataReaderFactory[UnsafeRow] {
+  override def createDataReader(): RocketMQContinuousDataReader = {
+    new RocketMQContinuousDataReader(
+      queue, startOffset, executorRocketMQParams, pollTimeoutMs, failOnDataLoss)
+  }
+}
+
+/**
+ * A per-task data reader for continuous RocketMQ processing.
+ *
+ * @param queue  The message queue to read from.
+ * @param startOffset  The offset to start reading from within the queue.
+ * @param executorRocketMQParams  RocketMQ client configuration params to use.
+ * @param pollTimeoutMs  The timeout for RocketMQ consumer polling.
+ * @param failOnDataLoss  Flag indicating whether data reader should fail if some offsets
+ *                        are skipped.
+ */
+private[rocketmq] class RocketMQContinuousDataReader(
+    queue: MessageQueue,
+    startOffset: Long,
+    executorRocketMQParams: ju.Map[String, String],
+    pollTimeoutMs: Long,
+    failOnDataLoss: Boolean) extends ContinuousDataReader[UnsafeRow] {
+  private val consumer = CachedRocketMQConsumer.createUncached(queue, executorRocketMQParams)
+  private val converter = new RocketMQRecordToRowConverter
+
+  private var nextOffset = startOffset
+  private var currentRecord: MessageExt = _
+
+  override def next(): Boolean = {
+    var r: MessageExt = null
+    while (r == null) {
+      if (TaskContext.get().isInterrupted() || TaskContext.get().isCompleted()) return false
+      // Our consumer.get is not interruptible, the broker holds the long poll for the pull timeout
+      // at most, leaving interrupt handling up to the framework.
+      try {
+        r = consumer.get(
+          nextOffset,
+          untilOffset = Long.MaxValue,
+          pollTimeoutMs,
+          failOnDataLoss,
+          longPoll = true)
+      } catch {
+        // There is no new message yet. We're supposed to block indefinitely for new data, so
+        // poll again, past the messages filtered out meanwhile.
+        case e: NoNewMessageException =>
+          nextOffset = e.nextOffset
+      }
+    }
+
+    nextOffset = r.getQueueOffset + 1
+    currentRecord = r
+    true
+  }
+
+  override def get(): UnsafeRow = {
+    converter.toUnsafeRow(currentRecord, queue.getBrokerName)
+  }
+
+  override def getOffset(): RocketMQSourcePartitionOffset = {
+    RocketMQSourcePartitionOffset(queue, nextOffset)
+  }
+
+  override def close(): Unit = {
+    consumer.close()
+  }
+}
@@ -0,0 +1,255 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * This file was taken from Apache Spark org/apache/spark/sql/kafka010/KafkaMicroBatchReader.scala
+ *
+ * There are some modifications:
+ * 1. Parameters and API were adapted to RocketMQ
+ * 2. Adapted to the DataSource V2 API of Spark 2.3
+ */
+
+package org.apache.spark.sql.rocketmq
+
+import java.{util => ju}
+
+import org.apache.rocketmq.common.message.MessageQueue
+import org.apache.spark.SparkEnv
+import org.apache.spark.internal.Logging
+import org.apache.spark.sql.SparkSession
+import org.apache.spark.sql.catalyst.expressions.UnsafeRow
+import org.apache.spark.sql.rocketmq.RocketMQSource._
+import org.apache.spark.sql.sources.v2.DataSourceOptions
+import org.apache.spark.sql.sources.v2.reader.streaming.{MicroBatchReader, Offset}
+import org.apache.spark.sql.sources.v2.reader.{DataReader, DataReaderFactory, SupportsScanUnsafeRow}
+import org.apache.spark.sql.types.StructType
+
+import scala.collection.JavaConverters._
+
+/**
+ * A [[MicroBatchReader]] that reads data from RocketMQ, the DataSource V2 counterpart of
+ * [[RocketMQSource]].
+ *
+ * The offsets of every batch are planned as by [[RocketMQSource]]: `maxOffsetsPerTrigger` limits
+ * the offsets read per trigger and the ranges of a queue prefer the same executor, so that its
+ * cached consumer is reused across batches. In addition, the ranges are read by the executors
+ * without building an RDD per batch, and with `minPartitions` the queues holding the most data
+ * are split into several ranges read in parallel.
+ */
+private[rocketmq] class RocketMQMicroBatchReader(
+    createOffsetReader: () => RocketMQOffsetReader,
+    executorRocketMQParams: ju.Map[String, String],
+    options: DataSourceOptions,
+    metadataPath: String,
+    startingOffsets: RocketMQOffsetRangeLimit,
+    failOnDataLoss: Boolean)
+  extends MicroBatchReader with SupportsScanUnsafeRow with Logging {
+
+  private var startPartitionOffsets: Map[MessageQueue, Long] = _
+  private var endPartitionOffsets: Map[MessageQueue, Long] = _
+
+  private val sourceOptions = options.asMap().asScala.toMap
+
+  private val pollTimeoutMs = options.getLong(
+    RocketMQConf.PULL_TIMEOUT_MS,
+    SparkEnv.get.conf.getTimeAsMs("spark.network.timeout", "120s"))
+
+  private val maxOffsetsPerTrigger = Option(
+    options.get(RocketMQConf.MAX_OFFSETS_PER_TRIGGER).orElse(null)).map(_.toLong)
+
+  private val rangeCalculator = RocketMQOffsetRangeCalculator(sourceOptions)
+
+  private lazy val cacheMetrics = ConsumerCacheMetrics.register(SparkSession.getActiveSession.get.sparkContext)
+
+  // Created on first use, as Spark 2.3 creates a reader only to resolve the schema and does not
+  // stop it
+  private var offsetReaderCreated = false
+
+  private lazy val offsetReader = {
+    offsetReaderCreated = true
+    createOffsetReader()
+  }
+
+  /**
+   * Lazily initialize `initialPartitionOffsets` to make sure that `RocketMQConsumer.pull` is only
+   * called in StreamExecutionThread.
+   */
+  private lazy val initialPartitionOffsets = {
+    val metadataLog = new RocketMQSourceInitialOffsetWriter(SparkSession.getActiveSession.get, metadataPath)
+    metadataLog.getOrFetch {
+      offsetReader.fetchStartingOffsets(startingOffsets, reportDataLoss)
+    }.queueToOffsets
+  }
+
+  override def setOffsetRange(start: ju.Optional[Offset], end: ju.Optional[Offset]): Unit = {
+    startPartitionOffsets = Option(start.orElse(null))
+      .map(RocketMQSourceOffset.getPartitionOffsets)
+      .getOrElse(initialPartitionOffsets)
+
+    endPartitionOffsets = Option(end.orElse(null))
+      .map(RocketMQSourceOffset.getPartitionOffsets)
+      .getOrElse {
+        val latest = offsetReader.fetchLatestOffsets()
+        maxOffsetsPerTrigger.map { limit =>
+          val fromNew = offsetReader.fetchEarliestOffsets(
+            latest.keySet.diff(startPartitionOffsets.keySet).toSeq)
+          RocketMQOffsetRangeCalculator.rateLimit(limit, startPartitionOffsets, latest, fromNew)
+        }.getOrElse(latest)
+      }
+  }
+
+  override def getStartOffset: Offset = RocketMQSourceOffset(startPartitionOffsets)
+
+  override def getEndOffset: Offset = RocketMQSourceOffset(endPartitionOffsets)
+
+  override def deserializeOffset(json: String): Offset = {
+    RocketMQSourceOffset(JsonUtils.partitionOffsets(json))
+  }
+
+  override def readSchema(): StructType = RocketMQSource.schema
+
+  override def createUnsafeRowReaderFactories(): ju.List[DataReaderFactory[UnsafeRow]] = {
+    // Find the new partitions, and get their earliest offsets
+    val newPartitions = endPartitionOffsets.keySet.diff(startPartitionOffsets.keySet)
+    val newPartitionOffsets = offsetReader.fetchEarliestOffsets(newPartitions.toSeq)
+    if (newPartitionOffsets.keySet != newPartitions) {
+      // We cannot get from offsets for some partitions. It means they got deleted.
+      val deletedPartitions = newPartitions.diff(newPartitionOffsets.keySet)
+      reportDataLoss(
+        s"Cannot find earliest offsets of $deletedPartitions. Some data may have been missed")
+    }
+    logInfo(s"Partitions added: $newPartitionOffsets")
+    newPartitionOffsets.filter(_._2 != 0).foreach { case (p, o) =>
+      reportDataLoss(
+        s"Added partition $p starts from $o instead of 0. Some data may have been missed")
+    }
+
+    val deletedPartitions = startPartitionOffsets.keySet.diff(endPartitionOffsets.keySet)
+    if (deletedPartitions.nonEmpty) {
+      reportDataLoss(s"$deletedPartitions are gone. Some data may have been missed")
+    }
+
+    val fromPartitionOffsets = newPartitionOffsets ++ startPartitionOffsets
+    endPartitionOffsets.foreach { case (mq, untilOffset) =>
+      fromPartitionOffsets.get(mq).filter(_ > untilOffset).foreach { fromOffset =>
+        reportDataLoss(s"Partition $mq's offset was changed from " +
+          s"$fromOffset to $untilOffset, some data may have been missed")
+      }
+    }
+
+    // Use the until partitions to calculate offset ranges to ignore partitions that have
+    // been deleted
+    val offsetRanges = rangeCalculator.getRanges(
+      fromPartitionOffsets,
+      endPartitionOffsets,
+      getSortedExecutorList(SparkSession.getActiveSession.get.sparkContext))
+
+    logInfo("Generating data reader factories of offset range: " +
+      offsetRanges.sortBy(_.messageQueue.toString).mkString(", "))
+
+    offsetRanges.map { range =>
+      RocketMQMicroBatchDataReaderFactory(
+        range, executorRocketMQParams, pollTimeoutMs, failOnDataLoss, Some(cacheMetrics))
+        : DataReaderFactory[UnsafeRow]
+    }.asJava
+  }
+
+  override def commit(end: Offset): Unit = {}
+
+  override def stop(): Unit = synchronized {
+    if (offsetReaderCreated) {
+      offsetReader.close()
+    }
+  }
+
+  override def toString: String = s"RocketMQMicroBatchReader[$offsetReader]"
+
+  /**
+   * If `failOnDataLoss` is true, this method will throw an `IllegalStateException`.
+   * Otherwise, just log a warning.
+   */
+  private def reportDataLoss(message: String): Unit = {
+    if (failOnDataLoss) {
+      throw new IllegalStateException(message + s". $INSTRUCTION_FOR_FAIL_ON_DATA_LOSS_TRUE")
+    } else {
+      logWarning(message + s". $INSTRUCTION_FOR_FAIL_ON_DATA_LOSS_FALSE")
+    }
+  }
+}
+
+/** A [[DataReaderFactory]] for reading one offset range of a batch */
+private[rocketmq] case class RocketMQMicroBatchDataReaderFactory(
+    offsetRange: RocketMQSourceRDDOffsetRange,
+    executorRocketMQParams: ju.Map[String, String],
+    pollTimeoutMs: Long,
+    failOnDataLoss: Boolean,
+    cacheMetrics: Option[ConsumerCacheMetrics]) extends DataReaderFactory[UnsafeRow] {
+
+  override def preferredLocations(): Array[String] = offsetRange.preferredLoc.toArray
+
+  override def createDataReader(): DataReader[UnsafeRow] = {
+    RocketMQMicroBatchDataReader(
+      offsetRange, executorRocketMQParams, pollTimeoutMs, failOnDataLoss, cacheMetrics)
+  }
+}
+
+/** A [[DataReader]] for reading one offset range of a batch, using the cached consumer of its queue */
+private[rocketmq] case class RocketMQMicroBatchDataReader(
+    offsetRange: RocketMQSourceRDDOffsetRange,
+    executorRocketMQParams: ju.Map[String, String],
+    pollTimeoutMs: Long,
+    failOnDataLoss: Boolean,
+    cacheMetrics: Option[ConsumerCacheMetrics]) extends DataReader[UnsafeRow] with Logging {
+
+  private val consumer = CachedRocketMQConsumer.getOrCreate(
+    offsetRange.messageQueue, executorRocketMQParams, cacheMetrics)
+
+  private val converter = new RocketMQRecordToRowConverter
+
+  private var nextOffset = offsetRange.fromOffset
+  private var nextRow: UnsafeRow = _
+
+  override def next(): Boolean = {
+    if (nextOffset < offsetRange.untilOffset) {
+      val record = consumer.get(nextOffset, offsetRange.untilOffset, pollTimeoutMs, failOnDataLoss)
+      if (record != null) {
+        nextRow = converter.toUnsafeRow(record, offsetRange.messageQueue.getBrokerName)
+        nextOffset = record.getQueueOffset + 1
+        true
+      } else {
+        // Losing some data. Skip the rest offsets in this partition.
+        false
+      }
+    } else {
+      // Processed all offsets in this partition.
+      false
+    }
+  }
+
+  override def get(): UnsafeRow = {
+    assert(nextRow != null)
+    nextRow
+  }
+
+  override def close(): Unit = {
+    if (consumer.cached) {
+      CachedRocketMQConsumer.releaseConsumer(offsetRange.messageQueue, executorRocketMQParams)
+    } else {
+      consumer.close()
+    }
+  }
+}
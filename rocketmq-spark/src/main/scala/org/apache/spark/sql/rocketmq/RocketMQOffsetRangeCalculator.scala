@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.sql.rocketmq
+
+import org.apache.rocketmq.common.message.MessageQueue
+import org.apache.spark.internal.Logging
+
+/**
+ * Plans the offset ranges read by the tasks of a batch.
+ *
+ * @param minPartitions if it is larger than the number of queues to read, the queues holding the
+ *                      most data are split into several ranges, so that roughly this many tasks
+ *                      read the batch
+ */
+private[rocketmq] class RocketMQOffsetRangeCalculator(val minPartitions: Option[Int]) {
+  require(minPartitions.isEmpty || minPartitions.get > 0)
+
+  /**
+   * Calculate the offset ranges to read between `fromOffsets` and `untilOffsets`, dropping the
+   * empty ones. All the ranges of a queue prefer the same executor, so that its cached consumer
+   * can be reused across batches.
+   */
+  def getRanges(
+      fromOffsets: Map[MessageQueue, Long],
+      untilOffsets: Map[MessageQueue, Long],
+      executorLocations: Seq[String] = Seq.empty): Seq[RocketMQSourceRDDOffsetRange] = {
+    val offsetRanges = untilOffsets.keySet.intersect(fromOffsets.keySet).toSeq.map { mq =>
+      RocketMQSourceRDDOffsetRange(mq, fromOffsets(mq), untilOffsets(mq),
+        getLocation(mq, executorLocations))
+    }.filter(_.size > 0)
+
+    if (minPartitions.isDefined && minPartitions.get > offsetRanges.size) {
+      val totalSize = offsetRanges.map(_.size).sum.toDouble
+      offsetRanges.flatMap { range =>
+        // Split the range proportionally to its share of the batch, into at least one part
+        val parts = math.max(math.round(range.size / totalSize * minPartitions.get), 1)
+        (0L until parts).map { part =>
+          range.copy(
+            fromOffset = range.fromOffset + range.size * part / parts,
+            untilOffset = range.fromOffset + range.size * (part + 1) / parts)
+        }
+      }
+    } else {
+      offsetRanges
+    }
+  }
+
+  private def getLocation(mq: MessageQueue, executorLocations: Seq[String]): Option[String] = {
+    val numExecutors = executorLocations.length
+    if (numExecutors > 0) {
+      // This allows cached RocketMQConsumers in the executors to be re-used to read the same
+      // partition in every batch.
+      Some(executorLocations(Math.floorMod(mq.hashCode, numExecutors)))
+    } else None
+  }
+}
+
+private[rocketmq] object RocketMQOffsetRangeCalculator extends Logging {
+
+  def apply(options: Map[String, String]): RocketMQOffsetRangeCalculator = {
+    new RocketMQOffsetRangeCalculator(options.get(RocketMQConf.MIN_PARTITIONS).map(_.toInt))
+  }
+
+  /**
+   * Proportionally distribute limit number of offsets among message queues
+   *
+   * @param fromNew the earliest offsets of the queues missing in `from`
+   */
+  def rateLimit(
+      limit: Long,
+      from: Map[MessageQueue, Long],
+      until: Map[MessageQueue, Long],
+      fromNew: Map[MessageQueue, Long]): Map[MessageQueue, Long] = {
+    val sizes = until.flatMap {
+      case (tp, end) =>
+        // If begin isn't defined, something's wrong, but let alert logic in getBatch handle it
+        from.get(tp).orElse(fromNew.get(tp)).flatMap { begin =>
+          val size = end - begin
+          logDebug(s"rateLimit $tp size is $size")
+          if (size > 0) Some(tp -> size) else None
+        }
+    }
+    val total = sizes.values.sum.toDouble
+    if (total < 1) {
+      until
+    } else {
+      until.map {
+        case (tp, end) =>
+          tp -> sizes.get(tp).map { size =>
+            val begin = from.get(tp).getOrElse(fromNew(tp))
+            val prorate = limit * (size / total)
+            logDebug(s"rateLimit $tp prorated amount is $prorate")
+            // Don't completely starve small topicpartitions
+            val off = begin + (if (prorate < 1) Math.ceil(prorate) else Math.floor(prorate)).toLong
+            logDebug(s"rateLimit $tp new offset is $off")
+            // Paranoia, make sure not to return an offset that's past end
+            Math.min(end, off)
+          }.getOrElse(end)
+      }
+    }
+  }
+}
@@ -128,6 +128,21 @@ private class RocketMQOffsetReader(
     RocketMQSourceOffset(fetched)
   }
 
+  /**
+   * Fetch the offsets a streaming query starts from when it runs for the first time.
+   *
+   * @param reportDataLoss callback to either report or log data loss depending on setting
+   */
+  def fetchStartingOffsets(
+      startingOffsets: RocketMQOffsetRangeLimit,
+      reportDataLoss: String => Unit): RocketMQSourceOffset = {
+    startingOffsets match {
+      case EarliestOffsetRangeLimit => RocketMQSourceOffset(fetchEarliestOffsets())
+      case LatestOffsetRangeLimit => RocketMQSourceOffset(fetchLatestOffsets())
+      case SpecificOffsetRangeLimit(p) => fetchSpecificOffsets(p, reportDataLoss)
+    }
+  }
+
   /**
    * Fetch the earliest offsets for the topic partitions
    */
@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.sql.rocketmq
+
+import org.apache.rocketmq.common.message.MessageExt
+import org.apache.spark.sql.catalyst.InternalRow
+import org.apache.spark.sql.catalyst.expressions.{UnsafeProjection, UnsafeRow}
+import org.apache.spark.sql.catalyst.util.DateTimeUtils
+import org.apache.spark.unsafe.types.UTF8String
+
+/** Converts a RocketMQ message into a row of [[RocketMQSource.schema]]. */
+private[rocketmq] class RocketMQRecordToRowConverter {
+  private val toUnsafeProjection = UnsafeProjection.create(RocketMQSource.schema)
+
+  /** The returned row is reused by the next call. */
+  def toUnsafeRow(record: MessageExt, brokerName: String): UnsafeRow = {
+    toUnsafeProjection(RocketMQRecordToRowConverter.toInternalRow(record, brokerName))
+  }
+}
+
+private[rocketmq] object RocketMQRecordToRowConverter {
+  def toInternalRow(record: MessageExt, brokerName: String): InternalRow = {
+    InternalRow(
+      UTF8String.fromString(record.getTopic), // topic
+      record.getFlag, // flag
+      record.getBody, // body
+      UTF8String.fromString(JsonUtils.messageProperties(record.getProperties)), // properties
+      UTF8String.fromString(brokerName), // brokerName
+      record.getQueueId, // queueId
+      record.getQueueOffset, // queueOffset
+      DateTimeUtils.fromJavaTimestamp(new java.sql.Timestamp(record.getBornTimestamp)), // bornTimestamp
+      DateTimeUtils.fromJavaTimestamp(new java.sql.Timestamp(record.getStoreTimestamp)) // storeTimestamp
+    )
+  }
+}
@@ -30,12 +30,9 @@ import java.util.UUID
 import org.apache.rocketmq.common.message.MessageQueue
 import org.apache.spark.internal.Logging
 import org.apache.spark.rdd.RDD
-import org.apache.spark.sql.catalyst.InternalRow
-import org.apache.spark.sql.catalyst.util.DateTimeUtils
 import org.apache.spark.sql.sources.{BaseRelation, TableScan}
 import org.apache.spark.sql.types.StructType
 import org.apache.spark.sql.{Row, SQLContext}
-import org.apache.spark.unsafe.types.UTF8String
 
 
 private[rocketmq] class RocketMQRelation(
@@ -112,17 +109,7 @@ private[rocketmq] class RocketMQRelation(
       pollTimeoutMs, failOnDataLoss, reuseRocketMQConsumer = false).map { cr =>
       // Remove the `brokerName` property which was added by us. See `RocketMQSourceRDD.compute`
       val brokerName = cr.getProperties.remove(RocketMQSource.PROP_BROKER_NAME)
-      InternalRow(
-        UTF8String.fromString(cr.getTopic), // topic
-        cr.getFlag, // flag
-        cr.getBody, // body
-        UTF8String.fromString(JsonUtils.messageProperties(cr.getProperties)), // properties
-        UTF8String.fromString(brokerName), // brokerName
-        cr.getQueueId, // queueId
-        cr.getQueueOffset, // queueOffset
-        DateTimeUtils.fromJavaTimestamp(new java.sql.Timestamp(cr.getBornTimestamp)), // bornTimestamp
-        DateTimeUtils.fromJavaTimestamp(new java.sql.Timestamp(cr.getStoreTimestamp)) // storeTimestamp
-      )
+      RocketMQRecordToRowConverter.toInternalRow(cr, brokerName)
     }
     sqlContext.internalCreateDataFrame(rdd, schema).rdd
   }
@@ -25,22 +25,16 @@
 
 package org.apache.spark.sql.rocketmq
 
-import java.io._
-import java.nio.charset.StandardCharsets
 import java.{util => ju}
 
-import org.apache.commons.io.IOUtils
 import org.apache.rocketmq.common.message.MessageQueue
 import org.apache.spark.SparkContext
 import org.apache.spark.internal.Logging
 import org.apache.spark.scheduler.ExecutorCacheTaskLocation
 import org.apache.spark.sql._
-import org.apache.spark.sql.catalyst.InternalRow
-import org.apache.spark.sql.catalyst.util.DateTimeUtils
 import org.apache.spark.sql.execution.streaming._
 import org.apache.spark.sql.rocketmq.RocketMQSource._
 import org.apache.spark.sql.types.{StructField, _}
-import org.apache.spark.unsafe.types.UTF8String
 
 /**
  * A [[Source]] that reads data from RocketMQ using the following design.
@@ -92,51 +86,16 @@ private class RocketMQSource(
   private val maxOffsetsPerTrigger =
     sourceOptions.get("maxOffsetsPerTrigger").map(_.toLong)
 
+  private val cacheMetrics = ConsumerCacheMetrics.register(sc)
+
   /**
    * Lazily initialize `initialPartitionOffsets` to make sure that `RocketMQConsumer.pull` is only
    * called in StreamExecutionThread.
    */
   private lazy val initialPartitionOffsets = {
-    val metadataLog =
-      new HDFSMetadataLog[RocketMQSourceOffset](sqlContext.sparkSession, metadataPath) {
-        override def serialize(metadata: RocketMQSourceOffset, out: OutputStream): Unit = {
-          out.write(0) // A zero byte is written to support Spark 2.1.0 (SPARK-19517)
-          val writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))
-          writer.write("v" + VERSION + "\n")
-          writer.write(metadata.json)
-          writer.flush()
-        }
-
-        override def deserialize(in: InputStream): RocketMQSourceOffset = {
-          in.read() // A zero byte is read to support Spark 2.1.0 (SPARK-19517)
-          val content = IOUtils.toString(new InputStreamReader(in, StandardCharsets.UTF_8))
-          // HDFSMetadataLog guarantees that it never creates a partial file.
-          assert(content.length != 0)
-          if (content(0) == 'v') {
-            val indexOfNewLine = content.indexOf("\n")
-            if (indexOfNewLine > 0) {
-              val version = parseVersion(content.substring(0, indexOfNewLine), VERSION)
-              RocketMQSourceOffset(SerializedOffset(content.substring(indexOfNewLine + 1)))
-            } else {
-              throw new IllegalStateException(
-                s"Log file was malformed: failed to detect the log file version line.")
-            }
-          } else {
-            // The log was generated by Spark 2.1.0
-            RocketMQSourceOffset(SerializedOffset(content))
-          }
-        }
-      }
-
-    metadataLog.get(0).getOrElse {
-      val offsets = startingOffsets match {
-        case EarliestOffsetRangeLimit => RocketMQSourceOffset(offsetReader.fetchEarliestOffsets())
-        case LatestOffsetRangeLimit => RocketMQSourceOffset(offsetReader.fetchLatestOffsets())
-        case SpecificOffsetRangeLimit(p) => offsetReader.fetchSpecificOffsets(p, reportDataLoss)
-      }
-      metadataLog.add(0, offsets)
-      logInfo(s"Initial offsets: $offsets")
-      offsets
+    val metadataLog = new RocketMQSourceInitialOffsetWriter(sqlContext.sparkSession, metadataPath)
+    metadataLog.getOrFetch {
+      offsetReader.fetchStartingOffsets(startingOffsets, reportDataLoss)
     }.queueToOffsets
   }
 
@@ -170,33 +129,7 @@ private class RocketMQSource(
       from: Map[MessageQueue, Long],
       until: Map[MessageQueue, Long]): Map[MessageQueue, Long] = {
     val fromNew = offsetReader.fetchEarliestOffsets(until.keySet.diff(from.keySet).toSeq)
-    val sizes = until.flatMap {
-      case (tp, end) =>
-        // If begin isn't defined, something's wrong, but let alert logic in getBatch handle it
-        from.get(tp).orElse(fromNew.get(tp)).flatMap { begin =>
-          val size = end - begin
-          logDebug(s"rateLimit $tp size is $size")
-          if (size > 0) Some(tp -> size) else None
-        }
-    }
-    val total = sizes.values.sum.toDouble
-    if (total < 1) {
-      until
-    } else {
-      until.map {
-        case (tp, end) =>
-          tp -> sizes.get(tp).map { size =>
-            val begin = from.get(tp).getOrElse(fromNew(tp))
-            val prorate = limit * (size / total)
-            logDebug(s"rateLimit $tp prorated amount is $prorate")
-            // Don't completely starve small topicpartitions
-            val off = begin + (if (prorate < 1) Math.ceil(prorate) else Math.floor(prorate)).toLong
-            logDebug(s"rateLimit $tp new offset is $off")
-            // Paranoia, make sure not to return an offset that's past end
-            Math.min(end, off)
-          }.getOrElse(end)
-      }
-    }
+    RocketMQOffsetRangeCalculator.rateLimit(limit, from, until, fromNew)
   }
 
   /**
@@ -286,20 +219,10 @@ private class RocketMQSource(
     // Create an RDD that reads from RocketMQ and get the (key, value) pair as byte arrays.
     val rdd = new RocketMQSourceRDD(
       sc, executorRocketMQParams, offsetRanges, pollTimeoutMs, failOnDataLoss,
-      reuseRocketMQConsumer = true).map { cr =>
+      reuseRocketMQConsumer = true, Some(cacheMetrics)).map { cr =>
       // Remove the `brokerName` property which was added by us. See `RocketMQSourceRDD.compute`
       val brokerName = cr.getProperties.remove(RocketMQSource.PROP_BROKER_NAME)
-      InternalRow(
-        UTF8String.fromString(cr.getTopic), // topic
-        cr.getFlag, // flag
-        cr.getBody, // body
-        UTF8String.fromString(JsonUtils.messageProperties(cr.getProperties)), // properties
-        UTF8String.fromString(brokerName), // brokerName
-        cr.getQueueId, // queueId
-        cr.getQueueOffset, // queueOffset
-        DateTimeUtils.fromJavaTimestamp(new java.sql.Timestamp(cr.getBornTimestamp)), // bornTimestamp
-        DateTimeUtils.fromJavaTimestamp(new java.sql.Timestamp(cr.getStoreTimestamp)) // storeTimestamp
-      )
+      RocketMQRecordToRowConverter.toInternalRow(cr, brokerName)
     }
 
     logInfo("GetBatch generating RDD of offset range: " +
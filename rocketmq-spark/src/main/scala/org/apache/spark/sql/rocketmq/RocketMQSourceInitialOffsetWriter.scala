@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * This file was taken from Apache Spark org/apache/spark/sql/kafka010/KafkaSourceInitialOffsetWriter.scala
+ *
+ * There are some modifications:
+ * 1. Parameters and API were adapted to RocketMQ
+ */
+
+package org.apache.spark.sql.rocketmq
+
+import java.io._
+import java.nio.charset.StandardCharsets
+
+import org.apache.commons.io.IOUtils
+import org.apache.spark.sql.SparkSession
+import org.apache.spark.sql.execution.streaming.{HDFSMetadataLog, SerializedOffset}
+import org.apache.spark.sql.rocketmq.RocketMQSource.VERSION
+
+/**
+ * Log of the initial offsets of a RocketMQ source, so that a restarted query does not start from
+ * the offsets of the time it was restarted.
+ */
+private[rocketmq] class RocketMQSourceInitialOffsetWriter(
+    sparkSession: SparkSession,
+    metadataPath: String)
+  extends HDFSMetadataLog[RocketMQSourceOffset](sparkSession, metadataPath) {
+
+  override def serialize(metadata: RocketMQSourceOffset, out: OutputStream): Unit = {
+    out.write(0) // A zero byte is written to support Spark 2.1.0 (SPARK-19517)
+    val writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))
+    writer.write("v" + VERSION + "\n")
+    writer.write(metadata.json)
+    writer.flush()
+  }
+
+  override def deserialize(in: InputStream): RocketMQSourceOffset = {
+    in.read() // A zero byte is read to support Spark 2.1.0 (SPARK-19517)
+    val content = IOUtils.toString(new InputStreamReader(in, StandardCharsets.UTF_8))
+    // HDFSMetadataLog guarantees that it never creates a partial file.
+    assert(content.length != 0)
+    if (content(0) == 'v') {
+      val indexOfNewLine = content.indexOf("\n")
+      if (indexOfNewLine > 0) {
+        val version = parseVersion(content.substring(0, indexOfNewLine), VERSION)
+        RocketMQSourceOffset(SerializedOffset(content.substring(indexOfNewLine + 1)))
+      } else {
+        throw new IllegalStateException(
+          s"Log file was malformed: failed to detect the log file version line.")
+      }
+    } else {
+      // The log was generated by Spark 2.1.0
+      RocketMQSourceOffset(SerializedOffset(content))
+    }
+  }
+
+  /**
+   * Returns the logged initial offsets, or the ones given by `fetch` after logging them if the
+   * query runs for the first time.
+   */
+  def getOrFetch(fetch: => RocketMQSourceOffset): RocketMQSourceOffset = {
+    get(0).getOrElse {
+      val offsets = fetch
+      add(0, offsets)
+      logInfo(s"Initial offsets: $offsets")
+      offsets
+    }
+  }
+}
@@ -21,7 +21,7 @@
  * There are some modifications:
  * 1. Parameters and API were adapted to RocketMQ
  * 2. Schema of output dataframe adapted to RocketMQ
- * 3. Trait `StreamWriteSupport` and `ContinuousReadSupport` is not supported yet
+ * 3. Trait `StreamWriteSupport` is not supported yet
  */
 
 package org.apache.spark.sql.rocketmq
@@ -33,18 +33,24 @@ import org.apache.spark.internal.Logging
 import org.apache.spark.sql.{AnalysisException, DataFrame, SQLContext, SaveMode}
 import org.apache.spark.sql.execution.streaming.{Sink, Source}
 import org.apache.spark.sql.sources._
+import org.apache.spark.sql.sources.v2.{ContinuousReadSupport, DataSourceOptions, MicroBatchReadSupport}
 import org.apache.spark.sql.streaming.OutputMode
 import org.apache.spark.sql.types.StructType
 
 import scala.collection.JavaConverters._
 
 /**
- * The provider class for the [[RocketMQSource]]. This provider is designed such that it throws
- * IllegalArgumentException when the RocketMQ Dataset is created, so that it can catch
+ * The provider class for all RocketMQ readers and writers. Streaming queries are read by the
+ * [[RocketMQMicroBatchReader]] or the [[RocketMQContinuousReader]], or by the [[RocketMQSource]]
+ * when the DataSource V2 micro-batch reader is disabled by
+ * `spark.sql.streaming.disabledV2MicroBatchReaders`. This provider is designed such that it
+ * throws IllegalArgumentException when the RocketMQ Dataset is created, so that it can catch
  * missing options even before the query is started.
  */
 class RocketMQSourceProvider extends DataSourceRegister
     with StreamSourceProvider
+    with MicroBatchReadSupport
+    with ContinuousReadSupport
     with RelationProvider
     with CreatableRelationProvider
     with StreamSinkProvider
@@ -99,6 +105,67 @@ class RocketMQSourceProvider extends DataSourceRegister
       failOnDataLoss(caseInsensitiveParams))
   }
 
+  /**
+   * Creates a [[RocketMQMicroBatchReader]] to read batches of RocketMQ data in a micro-batch
+   * streaming query.
+   */
+  override def createMicroBatchReader(
+      schema: ju.Optional[StructType],
+      metadataPath: String,
+      options: DataSourceOptions): RocketMQMicroBatchReader = {
+    val parameters = options.asMap().asScala.toMap
+    validateStreamOptions(parameters)
+    require(!schema.isPresent, "RocketMQ source has a fixed schema and cannot be set with a custom one")
+    // Each running query should use its own group id. Otherwise, the query may be only assigned
+    // partial data since RocketMQ will assign partitions to multiple consumers having the same group
+    // id. Hence, we should generate a unique id for each query.
+    val uniqueGroupId = s"spark-rocketmq-source-${UUID.randomUUID}-${metadataPath.hashCode.toHexString}"
+
+    val startingStreamOffsets = RocketMQSourceProvider.getRocketMQOffsetRangeLimit(parameters,
+      RocketMQConf.CONSUMER_OFFSET, LatestOffsetRangeLimit)
+
+    new RocketMQMicroBatchReader(
+      () => new RocketMQOffsetReader(
+        paramsForDriver(parameters),
+        parameters,
+        driverGroupIdPrefix = s"$uniqueGroupId-driver"),
+      paramsForExecutors(parameters, uniqueGroupId),
+      options,
+      metadataPath,
+      startingStreamOffsets,
+      failOnDataLoss(parameters))
+  }
+
+  /**
+   * Creates a [[RocketMQContinuousReader]] to read RocketMQ data in a continuous streaming query.
+   */
+  override def createContinuousReader(
+      schema: ju.Optional[StructType],
+      metadataPath: String,
+      options: DataSourceOptions): RocketMQContinuousReader = {
+    val parameters = options.asMap().asScala.toMap
+    validateStreamOptions(parameters)
+    require(!schema.isPresent, "RocketMQ source has a fixed schema and cannot be set with a custom one")
+    // Each running query should use its own group id. Otherwise, the query may be only assigned
+    // partial data since RocketMQ will assign partitions to multiple consumers having the same group
+    // id. Hence, we should generate a unique id for each query.
+    val uniqueGroupId = s"spark-rocketmq-source-${UUID.randomUUID}-${metadataPath.hashCode.toHexString}"
+
+    val startingStreamOffsets = RocketMQSourceProvider.getRocketMQOffsetRangeLimit(parameters,
+      RocketMQConf.CONSUMER_OFFSET, LatestOffsetRangeLimit)
+
+    new RocketMQContinuousReader(
+      () => new RocketMQOffsetReader(
+        paramsForDriver(parameters),
+        parameters,
+        driverGroupIdPrefix = s"$uniqueGroupId-driver"),
+      paramsForExecutors(parameters, uniqueGroupId),
+      options,
+      metadataPath,
+      startingStreamOffsets,
+      failOnDataLoss(parameters))
+  }
+
   /**
     * Returns a new base relation with the given parameters.
     *
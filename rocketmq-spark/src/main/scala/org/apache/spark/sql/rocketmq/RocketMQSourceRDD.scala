@@ -58,6 +58,7 @@ private[rocketmq] case class RocketMQSourceRDDPartition(index: Int,
  * @param sc the [[SparkContext]]
  * @param executorRocketMQParams RocketMQ configuration for creating RocketMQConsumer on the executors
  * @param offsetRanges Offset ranges that define the RocketMQ data belonging to this RDD
+ * @param cacheMetrics accumulators of the consumer cache and prefetch usage, if any
  */
 private[rocketmq] class RocketMQSourceRDD(
     sc: SparkContext,
@@ -65,7 +66,8 @@ private[rocketmq] class RocketMQSourceRDD(
     offsetRanges: Seq[RocketMQSourceRDDOffsetRange],
     pollTimeoutMs: Long,
     failOnDataLoss: Boolean,
-    reuseRocketMQConsumer: Boolean)
+    reuseRocketMQConsumer: Boolean,
+    cacheMetrics: Option[ConsumerCacheMetrics] = None)
   extends RDD[MessageExt](sc, Nil) {
 
   override def persist(newLevel: StorageLevel): this.type = {
@@ -126,10 +128,12 @@ private[rocketmq] class RocketMQSourceRDD(
       thePart: Partition,
       context: TaskContext): Iterator[MessageExt] = {
     val sourcePartition = thePart.asInstanceOf[RocketMQSourceRDDPartition]
-    val consumer = if (!reuseRocketMQConsumer) {
-      CachedRocketMQConsumer.getOrCreate(sourcePartition.offsetRange.messageQueue, executorRocketMQParams)
+    val consumer = if (reuseRocketMQConsumer) {
+      CachedRocketMQConsumer.getOrCreate(
+        sourcePartition.offsetRange.messageQueue, executorRocketMQParams, cacheMetrics)
     } else {
-      CachedRocketMQConsumer.createUncached(sourcePartition.offsetRange.messageQueue, executorRocketMQParams)
+      CachedRocketMQConsumer.createUncached(
+        sourcePartition.offsetRange.messageQueue, executorRocketMQParams, cacheMetrics)
     }
 
     val range = resolveRange(consumer, sourcePartition.offsetRange)
@@ -166,10 +170,10 @@ private[rocketmq] class RocketMQSourceRDD(
         }
 
         override protected def close(): Unit = {
-          if (!reuseRocketMQConsumer) {
-            consumer.close()
-          } else {
+          if (consumer.cached) {
             CachedRocketMQConsumer.releaseConsumer(sourcePartition.offsetRange.messageQueue, executorRocketMQParams)
+          } else {
+            consumer.close()
           }
         }
       }
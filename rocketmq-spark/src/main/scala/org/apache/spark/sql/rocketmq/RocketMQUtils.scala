@@ -26,11 +26,18 @@ import org.apache.rocketmq.client.producer.DefaultMQProducer
  */
 object RocketMQUtils {
 
+  private val LONG_POLL_TIMEOUT_MARGIN_MS = 10000L
+
   def makePullConsumer(groupId: String, optionParams: ju.Map[String, String]): DefaultMQPullConsumer = {
     val consumer = new DefaultMQPullConsumer(groupId)
     if (optionParams.containsKey(RocketMQConf.NAME_SERVER_ADDR)) {
       consumer.setNamesrvAddr(optionParams.get(RocketMQConf.NAME_SERVER_ADDR))
     }
+    // Long polls are held by the broker for the pull timeout, a broker only checks them every few
+    // seconds though, the client waits longer not to fail on an idle queue
+    val pullTimeoutMs = optionParams.getOrDefault(RocketMQConf.PULL_TIMEOUT_MS, "512").toLong
+    consumer.setBrokerSuspendMaxTimeMillis(pullTimeoutMs)
+    consumer.setConsumerTimeoutMillisWhenSuspend(pullTimeoutMs + LONG_POLL_TIMEOUT_MARGIN_MS)
     consumer.start()
     consumer.setOffsetStore(consumer.getDefaultMQPullConsumerImpl.getOffsetStore)
     consumer
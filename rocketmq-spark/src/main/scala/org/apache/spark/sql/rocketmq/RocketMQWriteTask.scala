@@ -20,17 +20,24 @@
  *
  * There are some modifications:
  * 1. Parameters and API were adapted to RocketMQ
+ * 2. Rows are sent as batch messages, with a bounded number of batches in flight
  */
 
 package org.apache.spark.sql.rocketmq
 
+import java.util.concurrent.{Semaphore, TimeUnit, TimeoutException}
 import java.{util => ju}
 
-import org.apache.rocketmq.client.producer.{DefaultMQProducer, SendCallback, SendResult}
-import org.apache.rocketmq.common.message.Message
+import org.apache.rocketmq.client.Validators
+import org.apache.rocketmq.client.producer.{DefaultMQProducer, MessageQueueSelector, SendCallback, SendResult}
+import org.apache.rocketmq.common.message.{Message, MessageBatch, MessageClientIDSetter, MessageQueue}
 import org.apache.spark.sql.catalyst.InternalRow
 import org.apache.spark.sql.catalyst.expressions.{Attribute, Cast, Literal, UnsafeProjection}
 import org.apache.spark.sql.types.{BinaryType, StringType}
+import org.apache.spark.util.Utils
+
+import scala.collection.JavaConverters._
+import scala.util.Random
 
 /**
  * Writes out data in a single Spark task, without any concerns about how
@@ -40,49 +47,77 @@ import org.apache.spark.sql.types.{BinaryType, StringType}
 private[rocketmq] class RocketMQWriteTask(
     options: ju.Map[String, String],
     inputSchema: Seq[Attribute],
-    topic: Option[String]) extends RocketMQRowWriter(inputSchema, topic) {
-  // used to synchronize with RocketMQ callbacks
-  private var producer: DefaultMQProducer = _
+    topic: Option[String]) extends RocketMQRowWriter(inputSchema, topic, options) {
+  private var producer: CachedRocketMQProducer = _
 
   /**
    * Writes key value data out to topics.
    */
   def execute(iterator: Iterator[InternalRow]): Unit = {
-    producer = CachedRocketMQProducer.getOrCreate(options)
+    producer = CachedRocketMQProducer.acquire(options)
     while (iterator.hasNext && failedWrite == null) {
       val currentRow = iterator.next()
-      sendRow(currentRow, producer)
+      sendRow(currentRow, producer.producer)
+    }
+    if (failedWrite == null) {
+      flush(producer.producer)
     }
   }
 
   def close(): Unit = {
-    checkForErrors()
     if (producer != null) {
-      checkForErrors()
-      producer = null
+      try {
+        awaitInFlight()
+      } finally {
+        CachedRocketMQProducer.release(producer)
+        producer = null
+      }
     }
+    checkForErrors()
   }
 }
 
 private[rocketmq] abstract class RocketMQRowWriter(
-    inputSchema: Seq[Attribute], topic: Option[String]) {
+    inputSchema: Seq[Attribute], topic: Option[String], options: ju.Map[String, String]) {
 
   // used to synchronize with RocketMQ callbacks
   @volatile protected var failedWrite: Throwable = _
   protected val projection = createProjection
 
+  private val batchSize = options.getOrDefault(RocketMQConf.PRODUCER_BATCH_SIZE, "128").toInt
+  private val batchBytes = options.getOrDefault(RocketMQConf.PRODUCER_BATCH_BYTES, "1048576").toInt
+  private val maxInFlight = options.getOrDefault(RocketMQConf.PRODUCER_MAX_IN_FLIGHT, "8").toInt
+  private val sendTimeoutMs = options.getOrDefault(RocketMQConf.PRODUCER_SEND_TIMEOUT_MS, "3000").toLong
+
+  // Rows not sent yet, by topic
+  private val batches = new ju.HashMap[String, PendingBatch]()
+
+  // A slow broker blocks the task on this instead of piling up messages in memory
+  private val inFlight = new Semaphore(maxInFlight)
+
   private val callback = new SendCallback {
-    override def onSuccess(sendResult: SendResult): Unit = {}
+    override def onSuccess(sendResult: SendResult): Unit = inFlight.release()
 
     override def onException(e: Throwable): Unit = {
       if (failedWrite == null) failedWrite = e
+      inFlight.release()
+    }
+  }
+
+  // Every batch goes to the next message queue of its topic
+  private val queueSelector = new MessageQueueSelector {
+    private var nextQueue = Random.nextInt(Int.MaxValue)
+
+    override def select(mqs: ju.List[MessageQueue], msg: Message, arg: Any): MessageQueue = {
+      nextQueue += 1
+      mqs.get(Utils.nonNegativeMod(nextQueue, mqs.size))
     }
   }
 
   /**
-    * Send the specified row to the producer, with a callback that will save any exception
-    * to failedWrite. Note that send is asynchronous; subclasses must flush() their producer before
-    * assuming the row is in RocketMQ.
+    * Add the specified row to the batch of its topic, sending the batch once it is full. Sends
+    * are asynchronous and save any exception to failedWrite; subclasses must flush() and
+    * awaitInFlight() before assuming the rows are in RocketMQ.
     */
   protected def sendRow(
       row: InternalRow, producer: DefaultMQProducer): Unit = {
@@ -95,7 +130,54 @@ private[rocketmq] abstract class RocketMQRowWriter(
           s"${RocketMQConf.PRODUCER_TOPIC} option for setting a default topic.")
     }
     val record = new Message(topic, keys, body)
-    producer.send(record, callback) // send asynchronously
+    var batch = batches.get(topic)
+    if (batch == null) {
+      batch = new PendingBatch
+      batches.put(topic, batch)
+    }
+    val size = RocketMQRowWriter.estimateSize(record)
+    if (!batch.messages.isEmpty && batch.bytes + size > batchBytes) {
+      send(batch, producer)
+    }
+    batch.messages.add(record)
+    batch.bytes += size
+    if (batch.messages.size >= batchSize) {
+      send(batch, producer)
+    }
+  }
+
+  /** Send the rows of all batches which are not full yet. */
+  protected def flush(producer: DefaultMQProducer): Unit = {
+    batches.values.asScala.filter(!_.messages.isEmpty).foreach(send(_, producer))
+  }
+
+  /** Wait until every sent batch was acknowledged or failed. */
+  protected def awaitInFlight(): Unit = {
+    // callbacks are invoked at the latest when the send times out
+    if (!inFlight.tryAcquire(maxInFlight, sendTimeoutMs * 2, TimeUnit.MILLISECONDS)) {
+      throw new TimeoutException(s"Sending to RocketMQ did not complete in ${sendTimeoutMs * 2} ms")
+    }
+    inFlight.release(maxInFlight)
+  }
+
+  private def send(batch: PendingBatch, producer: DefaultMQProducer): Unit = {
+    val message = if (batch.messages.size == 1) {
+      batch.messages.get(0)
+    } else {
+      RocketMQRowWriter.toBatchMessage(batch.messages, producer)
+    }
+    batch.messages = new ju.ArrayList[Message]()
+    batch.bytes = 0
+    if (!inFlight.tryAcquire(sendTimeoutMs * 2, TimeUnit.MILLISECONDS)) {
+      throw new TimeoutException(s"Sending to RocketMQ did not complete in ${sendTimeoutMs * 2} ms")
+    }
+    try {
+      producer.send(message, queueSelector, null, callback, sendTimeoutMs) // send asynchronously
+    } catch {
+      case e: Throwable =>
+        inFlight.release()
+        throw e
+    }
   }
 
   protected def checkForErrors(): Unit = {
@@ -139,3 +221,30 @@ private[rocketmq] abstract class RocketMQRowWriter(
       Seq(topicExpression, tagsExpression, Cast(bodyExpression, BinaryType)), inputSchema)
   }
 }
+
+private class PendingBatch {
+  var messages = new ju.ArrayList[Message]()
+  var bytes = 0L
+}
+
+private object RocketMQRowWriter {
+
+  // Encoded size of a message besides its body and tags, including the properties set by the producer
+  private val MESSAGE_OVERHEAD = 128
+
+  def estimateSize(message: Message): Int = {
+    val tags = message.getTags
+    message.getBody.length + (if (tags == null) 0 else tags.length) + MESSAGE_OVERHEAD
+  }
+
+  /** The same as `DefaultMQProducer.batch`, which is not public */
+  def toBatchMessage(messages: ju.List[Message], producer: DefaultMQProducer): MessageBatch = {
+    val batch = MessageBatch.generateFromList(messages)
+    batch.asScala.foreach { message =>
+      Validators.checkMessage(message, producer)
+      MessageClientIDSetter.setUniqID(message)
+    }
+    batch.setBody(batch.encode())
+    batch
+  }
+}
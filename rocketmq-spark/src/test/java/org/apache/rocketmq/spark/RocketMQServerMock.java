@@ -103,6 +103,10 @@ public class RocketMQServerMock {
     }
 
     public void prepareDataTo(String topic, int times) throws Exception {
+        prepareDataTo(topic, times, "");
+    }
+
+    public void prepareDataTo(String topic, int times, String tags) throws Exception {
         // publish test message
         DefaultMQProducer producer = new DefaultMQProducer(UUID.randomUUID().toString());
         producer.setNamesrvAddr(getNameServerAddr());
@@ -112,7 +116,7 @@ public class RocketMQServerMock {
         try {
             producer.start();
             for (int i = 0; i < times; i++) {
-                producer.send(new Message(topic, sendMsg.getBytes("UTF-8")));
+                producer.send(new Message(topic, tags, sendMsg.getBytes("UTF-8")));
             }
         } catch (Exception e) {
             throw new MQClientException("Failed to publish messages", e);
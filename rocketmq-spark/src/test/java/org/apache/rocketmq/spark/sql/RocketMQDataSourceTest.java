@@ -121,6 +121,110 @@ public class RocketMQDataSourceTest {
         assertEquals(100, messageCount);
     }
 
+    @Test
+    public void testStructuredStreamingWithSplitQueues() throws Exception {
+        String sourceTopic = "source-" + UUID.randomUUID().toString();
+        String sinkTopic = "sink-" + UUID.randomUUID().toString();
+
+        mockServer.prepareDataTo(sourceTopic, 100);
+
+        Dataset<Row> dfInput = spark
+                .readStream()
+                .format(CLASS_NAME)
+                .option("nameServer", mockServer.getNameServerAddr())
+                .option("topic", sourceTopic) // required
+                .option("startingOffsets", "earliest")
+                .option("pullBatchSize", "8")
+                .option("maxOffsetsPerTrigger", "40")
+                .option("minPartitions", "16")
+                .load();
+
+        StreamingQuery query = dfInput.select("body").writeStream()
+                .outputMode("append")
+                .format(CLASS_NAME)
+                .option("nameServer", mockServer.getNameServerAddr())
+                .option("topic", sinkTopic)
+                .trigger(Trigger.ProcessingTime("500 milliseconds"))
+                .start();
+
+        // Expect the streaming sql has completed all work in several triggers
+        Thread.sleep(8000);
+        query.stop();
+
+        assertEquals(100, checkTopicData(sinkTopic));
+    }
+
+    @Test
+    public void testContinuousProcessing() throws Exception {
+        String sourceTopic = "source-" + UUID.randomUUID().toString();
+
+        mockServer.prepareDataTo(sourceTopic, 10);
+
+        Dataset<Row> dfInput = spark
+                .readStream()
+                .format(CLASS_NAME)
+                .option("nameServer", mockServer.getNameServerAddr())
+                .option("topic", sourceTopic) // required
+                .option("startingOffsets", "earliest")
+                .load();
+
+        StreamingQuery query = dfInput.select("body").writeStream()
+                .outputMode("append")
+                .format("memory")
+                .queryName("continuous_" + sourceTopic.replace('-', '_'))
+                .trigger(Trigger.Continuous("500 milliseconds"))
+                .start();
+
+        for (int batch = 0; batch < 5; batch++) {
+            mockServer.prepareDataTo(sourceTopic, 10);
+            Thread.sleep(500);
+        }
+
+        // Expect the streaming sql has completed all work
+        Thread.sleep(5000);
+        query.stop();
+
+        long count = spark.sql("select * from continuous_" + sourceTopic.replace('-', '_')).count();
+        assertEquals(60, count);
+    }
+
+    @Test
+    public void testContinuousProcessingWithSubExpression() throws Exception {
+        String sourceTopic = "source-" + UUID.randomUUID().toString();
+
+        // the queues start with messages filtered out
+        mockServer.prepareDataTo(sourceTopic, 20, "TagB");
+
+        Dataset<Row> dfInput = spark
+                .readStream()
+                .format(CLASS_NAME)
+                .option("nameServer", mockServer.getNameServerAddr())
+                .option("topic", sourceTopic) // required
+                .option("subExpression", "TagA")
+                .option("startingOffsets", "earliest")
+                .load();
+
+        StreamingQuery query = dfInput.select("body").writeStream()
+                .outputMode("append")
+                .format("memory")
+                .queryName("continuous_" + sourceTopic.replace('-', '_'))
+                .trigger(Trigger.Continuous("500 milliseconds"))
+                .start();
+
+        for (int batch = 0; batch < 5; batch++) {
+            mockServer.prepareDataTo(sourceTopic, 10, "TagA");
+            mockServer.prepareDataTo(sourceTopic, 10, "TagB");
+            Thread.sleep(500);
+        }
+
+        // Expect the streaming sql has completed all work
+        Thread.sleep(5000);
+        query.stop();
+
+        long count = spark.sql("select * from continuous_" + sourceTopic.replace('-', '_')).count();
+        assertEquals(50, count);
+    }
+
     @Test
     public void testBatchQuery() throws Exception {
         String sourceTopic = "source-" + UUID.randomUUID().toString();
@@ -151,6 +255,34 @@ public class RocketMQDataSourceTest {
         assertEquals(100, messageCount);
     }
 
+    @Test
+    public void testBatchQueryWithSmallSendBatches() throws Exception {
+        String sourceTopic = "source-" + UUID.randomUUID().toString();
+        String sinkTopic = "sink-" + UUID.randomUUID().toString();
+
+        mockServer.prepareDataTo(sourceTopic, 100);
+
+        Dataset<Row> dfInput = spark
+                .read()
+                .format(CLASS_NAME)
+                .option("nameServer", mockServer.getNameServerAddr())
+                .option("topic", sourceTopic) // required
+                .option("startingOffsets", "earliest")
+                .option("endingOffsets", "latest")
+                .load();
+
+        dfInput.select("body").write()
+                .format(CLASS_NAME)
+                .option("nameServer", mockServer.getNameServerAddr())
+                .option("topic", sinkTopic)
+                .option("sendBatchSize", "7")
+                .option("sendBatchBytes", "1024")
+                .option("sendMaxInFlight", "2")
+                .save();
+
+        assertEquals(100, checkTopicData(sinkTopic));
+    }
+
     private static int checkTopicData(String topic) throws Exception {
         DefaultMQPullConsumer consumer = new DefaultMQPullConsumer("test_consumer");
         consumer.start();
@@ -158,14 +290,17 @@ public class RocketMQDataSourceTest {
         int messageCount = 0;
         Set<MessageQueue> mqs = consumer.fetchSubscribeMessageQueues(topic);
         for (MessageQueue mq : mqs) {
-            PullResult pullResult = consumer.pull(mq, null, 0, 1000);
-            if (pullResult.getPullStatus() == PullStatus.FOUND) {
+            long offset = 0;
+            PullResult pullResult;
+            // a pull returns at most 32 messages, whole batches of the sink land in a single queue
+            while ((pullResult = consumer.pull(mq, null, offset, 1000)).getPullStatus() == PullStatus.FOUND) {
                 for (int i = 0; i < pullResult.getMsgFoundList().size(); i++) {
                     String messageBody = new String(pullResult.getMsgFoundList().get(i).getBody());
                     logger.info("Got message: " + messageBody);
                     assertEquals("\"Hello Rocket\"", messageBody.substring(0, 14));
                     messageCount++;
                 }
+                offset = pullResult.getNextBeginOffset();
             }
         }
 
@@ -27,6 +27,7 @@ import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -109,4 +110,46 @@ public class MessageRetryManagerTest {
         assertFalse(cache.containsKey(messageSet.getId()));
 
     }
+
+    @Test
+    public void testDoneOnAckOrGiveUp() throws Exception {
+        List<MessageExt> data = new ArrayList<>();
+        //ack: the messageSet is stored
+        MessageSet messageSet = new MessageSet(data);
+        messageRetryManager.mark(messageSet);
+        assertFalse(messageSet.await(0, TimeUnit.MILLISECONDS));
+        messageRetryManager.ack(messageSet.getId());
+        assertTrue(messageSet.await(0, TimeUnit.MILLISECONDS));
+        assertTrue(messageSet.isStored());
+
+        //fail: the messageSet is only given up after maxRetry
+        messageSet = new MessageSet(data);
+        for (int i = 0; i < 3; i++) {
+            messageRetryManager.mark(messageSet);
+            messageRetryManager.fail(messageSet.getId());
+            assertFalse(messageSet.await(0, TimeUnit.MILLISECONDS));
+        }
+        messageRetryManager.mark(messageSet);
+        messageRetryManager.fail(messageSet.getId());
+        assertTrue(messageSet.await(0, TimeUnit.MILLISECONDS));
+        assertFalse(messageSet.isStored());
+        assertEquals(3, queue.size());
+    }
+
+    @Test
+    public void testFailOnFullQueue() throws Exception {
+        List<MessageExt> data = new ArrayList<>();
+        while (queue.remainingCapacity() > 0) {
+            queue.offer(new MessageSet(data));
+        }
+
+        //fail: the messageSet is given up instead of waiting for room in the queue
+        MessageSet messageSet = new MessageSet(data);
+        messageRetryManager.mark(messageSet);
+        messageRetryManager.fail(messageSet.getId());
+        assertTrue(messageSet.await(0, TimeUnit.MILLISECONDS));
+        assertFalse(messageSet.isStored());
+        assertEquals(1, ((DefaultMessageRetryManager)messageRetryManager).getRejectedCount());
+        assertEquals(10, queue.size());
+    }
 }